@@ -0,0 +1,28 @@
+package unpsjb.labprog.backend.business.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.AuditArchivoMes;
+
+@Repository
+public interface AuditArchivoMesRepository extends CrudRepository<AuditArchivoMes, Integer> {
+
+    /**
+     * Archivos con registros dentro del rango, del más reciente al más antiguo
+     */
+    @Query("SELECT a FROM AuditArchivoMes a WHERE a.hasta >= :desde AND a.desde <= :hasta ORDER BY a.hasta DESC")
+    List<AuditArchivoMes> findSolapados(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
+
+    @Query("SELECT COUNT(a) > 0 FROM AuditArchivoMes a WHERE a.hasta >= :desde AND a.desde <= :hasta")
+    boolean existeEnRango(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
+
+    List<AuditArchivoMes> findByHastaBefore(LocalDateTime fecha);
+
+    List<AuditArchivoMes> findAllByOrderByDesdeDesc();
+}
@@ -0,0 +1,10 @@
+package unpsjb.labprog.backend.business.repository;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.AuditIntegridadCheckpoint;
+
+@Repository
+public interface AuditIntegridadCheckpointRepository extends CrudRepository<AuditIntegridadCheckpoint, String> {
+}
@@ -1,6 +1,7 @@
 package unpsjb.labprog.backend.business.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -79,16 +80,149 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Integer> {
        @Query("SELECT a FROM AuditLog a WHERE a.performedAt >= :since ORDER BY a.performedAt DESC")
        List<AuditLog> findRecentLogs(@Param("since") LocalDateTime since);
 
-       // Buscar logs que contengan cambios específicos
-       @Query("SELECT a FROM AuditLog a WHERE " +
-                     "(a.oldValues IS NOT NULL AND a.oldValues LIKE %:searchTerm%) OR " +
-                     "(a.newValues IS NOT NULL AND a.newValues LIKE %:searchTerm%) OR " +
-                     "a.reason LIKE %:searchTerm%")
-       List<AuditLog> findLogsContaining(@Param("searchTerm") String searchTerm);
+       // Búsqueda de texto completo sobre la columna busqueda (ver AuditBusquedaService).
+       // :consulta es una expresión to_tsquery; se combina la configuración simple y la española.
+       String CONSULTA_TEXTO = "(to_tsquery('simple', :consulta) || to_tsquery('spanish', :consulta))";
+
+       String COLUMNAS_BASICAS = "SELECT a.id, a.turno_id, a.entity_type, a.entity_id, a.action, a.performed_at, "
+                     + "a.performed_by, a.estado_anterior, a.estado_nuevo, a.reason ";
+
+       // Logs que coinciden con la búsqueda, del más relevante al menos relevante (sin LOBs)
+       @Query(value = COLUMNAS_BASICAS + "FROM audit_log a WHERE a.busqueda @@ " + CONSULTA_TEXTO
+                     + " ORDER BY ts_rank_cd(a.busqueda, " + CONSULTA_TEXTO + ") DESC, a.performed_at DESC",
+                     countQuery = "SELECT COUNT(*) FROM audit_log a WHERE a.busqueda @@ " + CONSULTA_TEXTO,
+                     nativeQuery = true)
+       Page<Object[]> buscarTexto(@Param("consulta") String consulta, Pageable pageable);
 
        // Eliminar logs antiguos (para limpieza de datos)
        void deleteByPerformedAtBefore(LocalDateTime cutoffDate);
 
+       // Registros de auditoría visibles para un centro: el turno, consultorio o staff médico auditado
+       // pertenece al centro, o el registro es del propio centro. Los demás tipos solo para superadmin.
+       String FROM_VISIBLES_POR_CENTRO = """
+                     FROM audit_log a
+                     LEFT JOIN turno t ON t.id = a.turno_id
+                     LEFT JOIN consultorio tc ON tc.id = t.consultorio_id
+                     LEFT JOIN consultorio cc ON a.entity_type = 'CONSULTORIO' AND cc.id = a.entity_id
+                     LEFT JOIN staff_medico sm ON a.entity_type = 'STAFF_MEDICO' AND sm.id = a.entity_id
+                     WHERE ((a.entity_type = 'TURNO' AND tc.centro_atencion_id = :centroId)
+                         OR (a.entity_type = 'CONSULTORIO' AND cc.centro_atencion_id = :centroId)
+                         OR (a.entity_type = 'CENTRO_ATENCION' AND a.entity_id = :centroId)
+                         OR (a.entity_type = 'STAFF_MEDICO' AND sm.centro_atencion_id = :centroId)
+                         OR (a.entity_type NOT IN ('TURNO', 'CONSULTORIO', 'CENTRO_ATENCION', 'STAFF_MEDICO')
+                             AND :superAdmin = true))
+                     """;
+
+       // Estadísticas de acciones visibles para un centro
+       @Query(value = "SELECT a.action, COUNT(*) " + FROM_VISIBLES_POR_CENTRO
+                     + " GROUP BY a.action ORDER BY COUNT(*) DESC", nativeQuery = true)
+       List<Object[]> findActionStatisticsPorCentro(@Param("centroId") Integer centroId,
+                     @Param("superAdmin") boolean superAdmin);
+
+       // Estadísticas de actividad por usuario visibles para un centro
+       @Query(value = "SELECT COALESCE(a.performed_by, 'UNKNOWN'), COUNT(*) " + FROM_VISIBLES_POR_CENTRO
+                     + " GROUP BY COALESCE(a.performed_by, 'UNKNOWN') ORDER BY COUNT(*) DESC", nativeQuery = true)
+       List<Object[]> findUserActivityStatisticsPorCentro(@Param("centroId") Integer centroId,
+                     @Param("superAdmin") boolean superAdmin);
+
+       // Búsqueda de texto completo restringida a los logs visibles para un centro
+       @Query(value = COLUMNAS_BASICAS + FROM_VISIBLES_POR_CENTRO + " AND a.busqueda @@ " + CONSULTA_TEXTO
+                     + " ORDER BY ts_rank_cd(a.busqueda, " + CONSULTA_TEXTO + ") DESC, a.performed_at DESC",
+                     countQuery = "SELECT COUNT(*) " + FROM_VISIBLES_POR_CENTRO + " AND a.busqueda @@ " + CONSULTA_TEXTO,
+                     nativeQuery = true)
+       Page<Object[]> buscarTextoPorCentro(@Param("consulta") String consulta,
+                     @Param("centroId") Integer centroId,
+                     @Param("superAdmin") boolean superAdmin,
+                     Pageable pageable);
+
+       // Filtros de findByFilters sobre audit_log para las consultas nativas por tramos
+       String FILTROS_RANGO = """
+                     AND (CAST(:entidad AS text) IS NULL OR LOWER(a.entity_type) LIKE LOWER('%' || CAST(:entidad AS text) || '%'))
+                     AND (CAST(:usuario AS text) IS NULL OR LOWER(a.performed_by) LIKE LOWER('%' || CAST(:usuario AS text) || '%'))
+                     AND (CAST(:tipoAccion AS text) IS NULL OR a.action = CAST(:tipoAccion AS text))
+                     AND a.performed_at >= :fechaDesde AND a.performed_at <= :fechaHasta
+                     """;
+
+       // Orden por fecha (ascendente o descendente según :ascendente) y una ventana de filas
+       String ORDEN_FECHA_VENTANA = """
+                      ORDER BY CASE WHEN :ascendente THEN a.performed_at END ASC,
+                               CASE WHEN :ascendente THEN a.id END ASC,
+                               a.performed_at DESC, a.id DESC
+                      LIMIT :limite OFFSET :desplazamiento
+                     """;
+
+       // Ventana de logs filtrados ordenados por fecha (sin LOBs), para paginar junto con los archivos
+       @Query(value = COLUMNAS_BASICAS + "FROM audit_log a WHERE TRUE " + FILTROS_RANGO + ORDEN_FECHA_VENTANA,
+                     nativeQuery = true)
+       List<Object[]> findVentanaPorFiltros(@Param("entidad") String entidad,
+                     @Param("usuario") String usuario,
+                     @Param("tipoAccion") String tipoAccion,
+                     @Param("fechaDesde") LocalDateTime fechaDesde,
+                     @Param("fechaHasta") LocalDateTime fechaHasta,
+                     @Param("ascendente") boolean ascendente,
+                     @Param("limite") int limite,
+                     @Param("desplazamiento") long desplazamiento);
+
+       @Query(value = "SELECT COUNT(*) FROM audit_log a WHERE TRUE " + FILTROS_RANGO, nativeQuery = true)
+       long countPorFiltros(@Param("entidad") String entidad,
+                     @Param("usuario") String usuario,
+                     @Param("tipoAccion") String tipoAccion,
+                     @Param("fechaDesde") LocalDateTime fechaDesde,
+                     @Param("fechaHasta") LocalDateTime fechaHasta);
+
+       // Igual que findVentanaPorFiltros, restringido a los logs visibles para un centro
+       @Query(value = COLUMNAS_BASICAS + FROM_VISIBLES_POR_CENTRO + FILTROS_RANGO + ORDEN_FECHA_VENTANA,
+                     nativeQuery = true)
+       List<Object[]> findVentanaPorFiltrosPorCentro(@Param("entidad") String entidad,
+                     @Param("usuario") String usuario,
+                     @Param("tipoAccion") String tipoAccion,
+                     @Param("fechaDesde") LocalDateTime fechaDesde,
+                     @Param("fechaHasta") LocalDateTime fechaHasta,
+                     @Param("centroId") Integer centroId,
+                     @Param("superAdmin") boolean superAdmin,
+                     @Param("ascendente") boolean ascendente,
+                     @Param("limite") int limite,
+                     @Param("desplazamiento") long desplazamiento);
+
+       @Query(value = "SELECT COUNT(*) " + FROM_VISIBLES_POR_CENTRO + FILTROS_RANGO, nativeQuery = true)
+       long countPorFiltrosPorCentro(@Param("entidad") String entidad,
+                     @Param("usuario") String usuario,
+                     @Param("tipoAccion") String tipoAccion,
+                     @Param("fechaDesde") LocalDateTime fechaDesde,
+                     @Param("fechaHasta") LocalDateTime fechaHasta,
+                     @Param("centroId") Integer centroId,
+                     @Param("superAdmin") boolean superAdmin);
+
+       // Visibilidad por centro de registros que ya no están en la tabla (archivados), resuelta de a
+       // muchos IDs: devuelven los IDs de la lista que pertenecen al centro
+       @Query(value = "SELECT t.id FROM turno t JOIN consultorio c ON c.id = t.consultorio_id "
+                     + "WHERE c.centro_atencion_id = :centroId AND t.id IN (:ids)", nativeQuery = true)
+       List<Integer> findTurnosDelCentro(@Param("ids") Collection<Integer> ids, @Param("centroId") Integer centroId);
+
+       @Query(value = "SELECT c.id FROM consultorio c WHERE c.centro_atencion_id = :centroId AND c.id IN (:ids)",
+                     nativeQuery = true)
+       List<Integer> findConsultoriosDelCentro(@Param("ids") Collection<Integer> ids,
+                     @Param("centroId") Integer centroId);
+
+       @Query(value = "SELECT sm.id FROM staff_medico sm WHERE sm.centro_atencion_id = :centroId AND sm.id IN (:ids)",
+                     nativeQuery = true)
+       List<Integer> findStaffMedicosDelCentro(@Param("ids") Collection<Integer> ids,
+                     @Param("centroId") Integer centroId);
+
+       // Conteo de acciones sobre turnos de un centro (solo las acciones pedidas)
+       @Query(value = """
+                     SELECT a.action, COUNT(*)
+                     FROM audit_log a
+                     JOIN turno t ON t.id = a.turno_id
+                     JOIN consultorio c ON c.id = t.consultorio_id
+                     WHERE a.entity_type = 'TURNO'
+                       AND a.action IN (:acciones)
+                       AND c.centro_atencion_id = :centroId
+                     GROUP BY a.action
+                     """, nativeQuery = true)
+       List<Object[]> countTurnoActionsPorCentro(@Param("centroId") Integer centroId,
+                     @Param("acciones") Collection<String> acciones);
+
        // Obtener estadísticas de actividad por usuario
        @Query("SELECT a.performedBy, COUNT(a) FROM AuditLog a GROUP BY a.performedBy ORDER BY COUNT(a) DESC")
        List<Object[]> findUserActivityStatistics();
@@ -109,12 +243,21 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Integer> {
        @Query(value = "SELECT COUNT(*) FROM audit_log WHERE turno_id = :turnoId", nativeQuery = true)
        Integer countAuditRecordsByTurno(@Param("turnoId") Integer turnoId);
 
-       // Contar registros por turno ID usando JPA
-       Long countByTurnoId(Integer turnoId);
+       // Resumen por turno para un lote de turnos: registro más reciente (sin LOBs) y cantidad total
+       @Query("SELECT a.turno.id, a.id, a.performedAt, a.performedBy, a.reason, " +
+                     "(SELECT COUNT(c) FROM AuditLog c WHERE c.turno.id = a.turno.id) " +
+                     "FROM AuditLog a WHERE a.turno.id IN :turnoIds " +
+                     "AND a.performedAt = (SELECT MAX(m.performedAt) FROM AuditLog m WHERE m.turno.id = a.turno.id)")
+       List<Object[]> findResumenByTurnoIds(@Param("turnoIds") Collection<Integer> turnoIds);
 
-       // Obtener solo los IDs de auditoría para un turno
-       @Query("SELECT a.id FROM AuditLog a WHERE a.turno.id = :turnoId ORDER BY a.performedAt DESC")
-       List<Integer> findAuditIdsByTurnoId(@Param("turnoId") Integer turnoId);
+       // Historial sin campos LOB de un lote de turnos, del más reciente al más antiguo
+       @Query("SELECT a.turno.id, a.id, a.action, a.performedAt, a.performedBy, a.estadoAnterior, a.estadoNuevo, a.reason " +
+                     "FROM AuditLog a WHERE a.turno.id IN :turnoIds ORDER BY a.turno.id, a.performedAt DESC")
+       List<Object[]> findHistorialBasicoByTurnoIds(@Param("turnoIds") Collection<Integer> turnoIds);
+
+       // Historial completo (con LOBs) de un lote de turnos en una sola consulta, del más reciente al más antiguo
+       @Query("SELECT a FROM AuditLog a WHERE a.turno.id IN :turnoIds ORDER BY a.turno.id, a.performedAt DESC, a.id DESC")
+       List<AuditLog> findCompletoByTurnoIds(@Param("turnoIds") Collection<Integer> turnoIds);
 
        // Obtener datos básicos sin campos LOB problemáticos
        @Query(value = "SELECT id, action, performed_by, estado_anterior, estado_nuevo, performed_at FROM audit_log WHERE id = :auditId", nativeQuery = true)
@@ -124,10 +267,6 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Integer> {
        @Query(value = "SELECT id, turno_id, entity_type, entity_id, action, performed_at, performed_by, estado_anterior, estado_nuevo, reason FROM audit_log WHERE id = :auditId", nativeQuery = true)
        Object[] findBasicRowById(@Param("auditId") Integer auditId);
 
-       // Preferir una versión JPQL (más portable) que también devuelve un Object[] con los campos esperados
-       @Query("SELECT a.id, a.turno.id, a.entityType, a.entityId, a.action, a.performedAt, a.performedBy, a.estadoAnterior, a.estadoNuevo, a.reason FROM AuditLog a WHERE a.id = :auditId")
-       Object[] findBasicRowByIdJPQL(@Param("auditId") Integer auditId);
-
        // Consulta segura sin campos LOB problemáticos
        @Query("SELECT a FROM AuditLog a WHERE a.turno.id = :turnoId ORDER BY a.performedAt DESC")
        List<AuditLog> findSafeAuditHistory(@Param("turnoId") Integer turnoId);
@@ -150,11 +289,6 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Integer> {
        // Buscar logs por tipo de entidad y acción
        List<AuditLog> findByEntityTypeAndActionOrderByPerformedAtDesc(String entityType, String action);
 
-       // Consulta segura que obtiene solo campos básicos (sin campos LOB) para evitar problemas de extracción JDBC
-       @Query("SELECT a.id, a.turno.id, a.entityType, a.entityId, a.action, a.performedAt, a.performedBy, a.estadoAnterior, a.estadoNuevo, a.reason " +
-                     "FROM AuditLog a WHERE a.entityType = :entityType AND a.action = :action ORDER BY a.performedAt DESC")
-       List<Object[]> findBasicByEntityTypeAndAction(@Param("entityType") String entityType, @Param("action") String action);
-
        // Buscar logs por tipo de entidad, ID de entidad y acción
        List<AuditLog> findByEntityTypeAndEntityIdAndActionOrderByPerformedAtDesc(String entityType, Long entityId,
                      String action);
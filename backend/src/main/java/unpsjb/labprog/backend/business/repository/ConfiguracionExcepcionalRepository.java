@@ -3,6 +3,7 @@ package unpsjb.labprog.backend.business.repository;
 import java.time.LocalDate;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
@@ -29,6 +30,17 @@ public interface ConfiguracionExcepcionalRepository extends CrudRepository<Confi
     // Buscar configuraciones por consultorio y fecha (para mantenimientos)
     List<ConfiguracionExcepcional> findByFechaAndConsultorio_IdAndActivoTrue(LocalDate fecha, Integer consultorioId);
     
+    // Cargar todas las configuraciones activas de una ventana con consultorio y esquema (calendario de agenda)
+    @Query("""
+            SELECT c FROM ConfiguracionExcepcional c
+            LEFT JOIN FETCH c.consultorio
+            LEFT JOIN FETCH c.esquemaTurno
+            WHERE c.activo = true
+              AND c.fecha BETWEEN :fechaInicio AND :fechaFin
+            ORDER BY c.fecha, c.id
+            """)
+    List<ConfiguracionExcepcional> findCalendarioActivo(LocalDate fechaInicio, LocalDate fechaFin);
+    
     // Buscar configuraciones por esquema de turno y fecha
     List<ConfiguracionExcepcional> findByFechaAndEsquemaTurno_IdAndActivoTrue(LocalDate fecha, Integer esquemaTurnoId);
     
@@ -27,4 +27,14 @@ public interface ConfiguracionRepository extends JpaRepository<Configuracion, In
     // Para obtener todas las categorías disponibles (opcional, para frontend)
     @Query("SELECT DISTINCT c.categoria FROM Configuracion c ORDER BY c.categoria")
     List<String> findDistinctCategorias();
-}
\ No newline at end of file
+
+    /**
+     * Todas las configuraciones como [id, clave, centroId, tipoValor, valorInt, valorString,
+     * valorBoolean, valorDouble], sin cargar los centros. Alimenta la caché de ConfiguracionService.
+     */
+    @Query("""
+            SELECT c.id, c.clave, ca.id, c.tipoValor, c.valorInt, c.valorString, c.valorBoolean, c.valorDouble
+            FROM Configuracion c LEFT JOIN c.centroAtencion ca
+            """)
+    List<Object[]> findValoresParaCache();
+}
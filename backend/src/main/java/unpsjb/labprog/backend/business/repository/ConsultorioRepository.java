@@ -3,6 +3,8 @@ package unpsjb.labprog.backend.business.repository;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import unpsjb.labprog.backend.model.CentroAtencion;
@@ -20,4 +22,15 @@ public interface ConsultorioRepository extends JpaRepository<Consultorio, Intege
     boolean existsByNombreAndCentroAtencion(String nombre, CentroAtencion centro);
 
     List<Consultorio> findByNombreContainingIgnoreCase(String term);
+
+    // Consultorios con centro y horarios semanales en una sola consulta (ocupación del dashboard)
+    @Query("""
+            SELECT DISTINCT c FROM Consultorio c
+            LEFT JOIN FETCH c.centroAtencion
+            LEFT JOIN FETCH c.horariosSemanales
+            WHERE (:centroId IS NULL OR c.centroAtencion.id = :centroId)
+              AND (:consultorioId IS NULL OR c.id = :consultorioId)
+            """)
+    List<Consultorio> findConHorarios(@Param("centroId") Integer centroId,
+            @Param("consultorioId") Integer consultorioId);
 }
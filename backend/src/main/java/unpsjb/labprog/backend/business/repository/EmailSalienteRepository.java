@@ -0,0 +1,36 @@
+package unpsjb.labprog.backend.business.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.EmailSaliente;
+
+@Repository
+public interface EmailSalienteRepository extends JpaRepository<EmailSaliente, Long> {
+
+    long countByEstado(String estado);
+
+    @Query("SELECT MIN(e.creadoEn) FROM EmailSaliente e WHERE e.estado = :estado")
+    LocalDateTime findCreadoMasAntiguo(@Param("estado") String estado);
+
+    /**
+     * Devuelve a la cola los correos que quedaron tomados por una instancia que se detuvo
+     * o murió durante el envío
+     */
+    @Modifying
+    @Query("""
+            UPDATE EmailSaliente e SET e.estado = :pendiente, e.tomadoEn = null
+            WHERE e.estado = :enviando AND e.tomadoEn < :limite
+            """)
+    int liberarTomadosAntesDe(@Param("pendiente") String pendiente, @Param("enviando") String enviando,
+            @Param("limite") LocalDateTime limite);
+
+    @Modifying
+    @Query("DELETE FROM EmailSaliente e WHERE e.estado = :estado AND e.enviadoEn < :limite")
+    int deleteByEstadoAndEnviadoEnBefore(@Param("estado") String estado, @Param("limite") LocalDateTime limite);
+}
@@ -27,6 +27,38 @@ public interface EsquemaTurnoRepository extends JpaRepository<EsquemaTurno, Inte
      */
     List<EsquemaTurno> findByStaffMedico_Especialidad_IdAndCentroAtencion_Id(Integer especialidadId, Integer centroId);
 
+    /**
+     * Búsqueda de esquemas para la generación de agenda con todos los filtros aplicados en SQL.
+     * Trae en la misma consulta las asociaciones que usa la generación de slots
+     * (staff médico, médico, especialidad, consultorio, centro y horarios) para evitar
+     * cargas perezosas/eager fila por fila.
+     *
+     * @param centroId          Filtro por centro del consultorio (opcional)
+     * @param staffMedicoId     Filtro por staff médico (opcional)
+     * @param especialidad      Filtro por nombre exacto de especialidad, sin distinguir mayúsculas (opcional)
+     * @param medicoExcluidoId  Excluye los esquemas de este médico (opcional)
+     * @return Esquemas que cumplen los filtros, con sus asociaciones inicializadas
+     */
+    @Query("""
+        SELECT DISTINCT et FROM EsquemaTurno et
+        JOIN FETCH et.staffMedico sm
+        JOIN FETCH sm.medico m
+        JOIN FETCH sm.especialidad e
+        JOIN FETCH et.consultorio c
+        JOIN FETCH c.centroAtencion cc
+        JOIN FETCH et.centroAtencion ca
+        JOIN FETCH et.disponibilidadMedico dm
+        LEFT JOIN FETCH et.horarios
+        WHERE (:centroId IS NULL OR cc.id = :centroId)
+           AND (:staffMedicoId IS NULL OR sm.id = :staffMedicoId)
+           AND (:especialidad IS NULL OR LOWER(e.nombre) = LOWER(:especialidad))
+           AND (:medicoExcluidoId IS NULL OR m.id <> :medicoExcluidoId)
+        """)
+    List<EsquemaTurno> findParaAgenda(@Param("centroId") Integer centroId,
+                                      @Param("staffMedicoId") Integer staffMedicoId,
+                                      @Param("especialidad") String especialidad,
+                                      @Param("medicoExcluidoId") Integer medicoExcluidoId);
+
     /**
      * Búsqueda paginada avanzada con filtros combinados y ordenamiento dinámico
      * @param staffMedico Filtro por nombre o apellido del staff médico (LIKE, opcional)
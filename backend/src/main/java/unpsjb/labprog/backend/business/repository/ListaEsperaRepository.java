@@ -1,10 +1,12 @@
 package unpsjb.labprog.backend.business.repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -144,4 +146,62 @@ public interface ListaEsperaRepository extends JpaRepository<ListaEspera, Long>
          */
         @Query("SELECT le FROM ListaEspera le WHERE le.estado = 'PENDIENTE' ORDER BY le.fechaSolicitud ASC")
         List<ListaEspera> findSolicitudesConEsperaExcesiva();
-}
\ No newline at end of file
+
+        /**
+         * Solicitudes pendientes como [id, pacienteId, especialidadId, centroId, medicoPreferidoId,
+         * fechaDeseadaDesde, fechaDeseadaHasta, urgenciaMedica, fechaSolicitud].
+         * Alimenta el índice en memoria de ListaEsperaIndiceService.
+         */
+        @Query("SELECT le.id, p.id, e.id, c.id, m.id, le.fechaDeseadaDesde, le.fechaDeseadaHasta, " +
+                        "le.urgenciaMedica, le.fechaSolicitud " +
+                        "FROM ListaEspera le LEFT JOIN le.paciente p LEFT JOIN le.especialidad e " +
+                        "LEFT JOIN le.centroAtencion c LEFT JOIN le.medicoPreferido m " +
+                        "WHERE le.estado = 'PENDIENTE'")
+        List<Object[]> findPendientesParaIndice();
+
+        /**
+         * Solicitudes pendientes cuya ventana de fechas deseadas ya terminó
+         */
+        @Query("SELECT le FROM ListaEspera le JOIN FETCH le.paciente JOIN FETCH le.especialidad " +
+                        "WHERE le.estado = 'PENDIENTE' AND le.fechaDeseadaHasta < :hoy")
+        List<ListaEspera> findPendientesVencidas(@Param("hoy") LocalDate hoy);
+
+        /**
+         * Búsqueda con filtros opcionales (null = sin filtro). El rango de fecha de solicitud
+         * siempre se aplica; quien llama usa extremos amplios si no hay filtro.
+         */
+        @Query("SELECT le FROM ListaEspera le " +
+                        "WHERE (:especialidadId IS NULL OR le.especialidad.id = :especialidadId) " +
+                        "AND (:centroId IS NULL OR le.centroAtencion.id = :centroId) " +
+                        "AND (:medicoId IS NULL OR le.medicoPreferido.id = :medicoId) " +
+                        "AND (:estado IS NULL OR le.estado = :estado) " +
+                        "AND (:urgencia IS NULL OR le.urgenciaMedica = :urgencia) " +
+                        "AND le.fechaSolicitud >= :solicitadaDesde AND le.fechaSolicitud < :solicitadaHasta")
+        List<ListaEspera> buscarConFiltros(
+                        @Param("especialidadId") Integer especialidadId,
+                        @Param("centroId") Integer centroId,
+                        @Param("medicoId") Integer medicoId,
+                        @Param("estado") String estado,
+                        @Param("urgencia") ListaEspera.UrgenciaMedica urgencia,
+                        @Param("solicitadaDesde") LocalDateTime solicitadaDesde,
+                        @Param("solicitadaHasta") LocalDateTime solicitadaHasta);
+
+        /**
+         * Marca la solicitud como CUBIERTA solo si sigue PENDIENTE.
+         * Retorna 0 si otra reasignación la tomó antes.
+         */
+        @Modifying
+        @Query("UPDATE ListaEspera le SET le.estado = 'CUBIERTA' WHERE le.id = :id AND le.estado = 'PENDIENTE'")
+        int cubrirSiPendiente(@Param("id") Long id);
+
+        /**
+         * Indica si el paciente ya tiene otra solicitud PENDIENTE para la especialidad
+         * (excluirId: la solicitud que se está editando, puede ser null)
+         */
+        @Query("SELECT COUNT(le) > 0 FROM ListaEspera le " +
+                        "WHERE le.paciente.id = :pacienteId AND le.especialidad.id = :especialidadId " +
+                        "AND le.estado = 'PENDIENTE' AND (:excluirId IS NULL OR le.id <> :excluirId)")
+        boolean existePendiente(@Param("pacienteId") Integer pacienteId,
+                        @Param("especialidadId") Integer especialidadId,
+                        @Param("excluirId") Long excluirId);
+}
@@ -0,0 +1,47 @@
+package unpsjb.labprog.backend.business.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.TareaProgramadaEjecucion;
+
+@Repository
+public interface TareaProgramadaEjecucionRepository extends JpaRepository<TareaProgramadaEjecucion, Long> {
+
+    Page<TareaProgramadaEjecucion> findAllByOrderByInicioDesc(Pageable pageable);
+
+    Page<TareaProgramadaEjecucion> findByNombreOrderByInicioDesc(String nombre, Pageable pageable);
+
+    /**
+     * Última ejecución de cada tarea
+     */
+    @Query("""
+            SELECT e FROM TareaProgramadaEjecucion e
+            WHERE e.inicio = (SELECT MAX(e2.inicio) FROM TareaProgramadaEjecucion e2 WHERE e2.nombre = e.nombre)
+            ORDER BY e.nombre
+            """)
+    List<TareaProgramadaEjecucion> findUltimasPorTarea();
+
+    /**
+     * Cierra las ejecuciones EN_CURSO de una tarea que quedaron abiertas porque su instancia
+     * se detuvo (solo se llama con el lease de la tarea tomado)
+     */
+    @Modifying
+    @Query("""
+            UPDATE TareaProgramadaEjecucion e SET e.estado = 'INTERRUMPIDA', e.fin = :ahora
+            WHERE e.nombre = :nombre AND e.estado = 'EN_CURSO'
+            """)
+    int marcarInterrumpidas(@Param("nombre") String nombre, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("DELETE FROM TareaProgramadaEjecucion e WHERE e.inicio < :limite")
+    int deleteByInicioBefore(@Param("limite") LocalDateTime limite);
+}
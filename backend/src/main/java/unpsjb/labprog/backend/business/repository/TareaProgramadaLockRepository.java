@@ -0,0 +1,10 @@
+package unpsjb.labprog.backend.business.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.TareaProgramadaLock;
+
+@Repository
+public interface TareaProgramadaLockRepository extends JpaRepository<TareaProgramadaLock, String> {
+}
@@ -0,0 +1,56 @@
+package unpsjb.labprog.backend.business.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import unpsjb.labprog.backend.model.TurnoMetricaDiaria;
+
+@Repository
+public interface TurnoMetricaDiariaRepository extends CrudRepository<TurnoMetricaDiaria, Long> {
+
+    /**
+     * Cantidad de turnos por estado en un rango de fechas.
+     * Retorna [estado, cantidad, cantidad sin consultorio asignado]
+     */
+    @Query("""
+            SELECT m.estado, SUM(m.cantidad), SUM(CASE WHEN m.consultorioId = 0 THEN m.cantidad ELSE 0 END)
+            FROM TurnoMetricaDiaria m
+            WHERE m.fecha BETWEEN :desde AND :hasta
+              AND (:staffMedicoId IS NULL OR m.staffMedicoId = :staffMedicoId)
+              AND (:especialidadId IS NULL OR m.especialidadId = :especialidadId)
+              AND (:centroId IS NULL OR m.centroAtencionId = :centroId)
+              AND (:consultorioId IS NULL OR m.consultorioId = :consultorioId)
+            GROUP BY m.estado
+            HAVING SUM(m.cantidad) > 0
+            """)
+    List<Object[]> sumarPorEstado(@Param("desde") LocalDate desde,
+            @Param("hasta") LocalDate hasta,
+            @Param("staffMedicoId") Integer staffMedicoId,
+            @Param("especialidadId") Integer especialidadId,
+            @Param("centroId") Integer centroId,
+            @Param("consultorioId") Integer consultorioId);
+
+    /**
+     * Minutos reservados (turnos no cancelados) por consultorio en un rango de fechas.
+     * Retorna [consultorioId, minutos]
+     */
+    @Query("""
+            SELECT m.consultorioId, SUM(m.minutosOcupados)
+            FROM TurnoMetricaDiaria m
+            WHERE m.fecha BETWEEN :desde AND :hasta
+              AND m.estado <> unpsjb.labprog.backend.model.EstadoTurno.CANCELADO
+              AND m.consultorioId <> 0
+              AND (:centroId IS NULL OR m.centroAtencionId = :centroId)
+              AND (:consultorioId IS NULL OR m.consultorioId = :consultorioId)
+            GROUP BY m.consultorioId
+            """)
+    List<Object[]> sumarMinutosOcupadosPorConsultorio(@Param("desde") LocalDate desde,
+            @Param("hasta") LocalDate hasta,
+            @Param("centroId") Integer centroId,
+            @Param("consultorioId") Integer consultorioId);
+}
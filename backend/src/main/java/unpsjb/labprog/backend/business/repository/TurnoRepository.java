@@ -44,6 +44,42 @@ public interface TurnoRepository extends JpaRepository<Turno, Integer>, JpaSpeci
     // Buscar turnos por fecha y staff médico
     List<Turno> findByFechaAndStaffMedico_Id(LocalDate fecha, Integer staffMedicoId);
 
+    // Turnos no cancelados del staff médico cuyo horario se superpone con [horaInicio, horaFin)
+    @Query("""
+            SELECT t FROM Turno t
+            WHERE t.staffMedico.id = :staffMedicoId
+              AND t.fecha = :fecha
+              AND t.estado <> :estadoExcluido
+              AND t.horaInicio < :horaFin
+              AND t.horaFin > :horaInicio
+              AND (:turnoId IS NULL OR t.id <> :turnoId)
+            """)
+    List<Turno> findSolapados(Integer staffMedicoId, LocalDate fecha, LocalTime horaInicio, LocalTime horaFin,
+                              Integer turnoId, EstadoTurno estadoExcluido);
+
+    /**
+     * Ocupación de un staff médico en una ventana de fechas, en una sola consulta.
+     * Devuelve solo los datos que necesita la generación de slots de la agenda
+     * para evitar hidratar la entidad Turno completa.
+     *
+     * @param staffMedicoId  ID del staff médico
+     * @param fechaDesde     Inicio de la ventana (inclusive)
+     * @param fechaHasta     Fin de la ventana (inclusive)
+     * @param estadoExcluido Estado a ignorar (normalmente CANCELADO)
+     * @return Filas [fecha, horaInicio, pacienteId, pacienteNombre, pacienteApellido]
+     */
+    @Query("""
+            SELECT t.fecha, t.horaInicio, p.id, p.nombre, p.apellido FROM Turno t
+            JOIN t.paciente p
+            WHERE t.staffMedico.id = :staffMedicoId
+              AND t.fecha BETWEEN :fechaDesde AND :fechaHasta
+              AND t.estado <> :estadoExcluido
+            """)
+    List<Object[]> findOcupacionByStaffMedicoEnRango(@Param("staffMedicoId") Integer staffMedicoId,
+            @Param("fechaDesde") LocalDate fechaDesde,
+            @Param("fechaHasta") LocalDate fechaHasta,
+            @Param("estadoExcluido") EstadoTurno estadoExcluido);
+
     // === CONSULTAS AVANZADAS PARA FILTROS ===
 
     // Filtros básicos
@@ -584,28 +620,48 @@ public interface TurnoRepository extends JpaRepository<Turno, Integer>, JpaSpeci
     }
 
     /**
-     * Encuentra turnos PROGRAMADOS que deben ser cancelados automáticamente
-     * Busca turnos cuya fecha/hora esté a MENOS de 48 horas de la fecha actual
-     * y que aún no hayan ocurrido (no se confirmaron a tiempo)
+     * Siguiente lote de IDs de turnos PROGRAMADOS que deben ser cancelados automáticamente:
+     * turnos cuya fecha/hora esté entre ahora y el límite (no se confirmaron a tiempo).
+     * Recorre por id a partir de {@code ultimoId} para poder retomar una pasada interrumpida.
      * 
      * @param estado          Estado del turno (debe ser PROGRAMADO)
      * @param fechaHoraActual Fecha/hora actual en Argentina (UTC-3)
      * @param fechaLimite     Fecha límite para cancelación (ej: ahora + 48 horas)
-     * @return Lista de turnos que deben ser cancelados
+     * @param ultimoId        Último id ya procesado (0 para empezar)
+     * @param pageable        Tamaño del lote
+     * @return IDs del lote en orden ascendente
      */
     @Query("""
-            SELECT t FROM Turno t
+            SELECT t.id FROM Turno t
             WHERE t.estado = :estado
+            AND t.id > :ultimoId
             AND (t.fecha > CAST(:fechaHoraActual AS LocalDate)
                  OR (t.fecha = CAST(:fechaHoraActual AS LocalDate) AND t.horaInicio > CAST(:fechaHoraActual AS LocalTime)))
             AND (t.fecha < CAST(:fechaLimite AS LocalDate)
                  OR (t.fecha = CAST(:fechaLimite AS LocalDate) AND t.horaInicio <= CAST(:fechaLimite AS LocalTime)))
-            ORDER BY t.fecha ASC, t.horaInicio ASC
+            ORDER BY t.id ASC
             """)
-    List<Turno> findTurnosParaCancelacionAutomatica(
+    List<Integer> findIdsParaCancelacionAutomatica(
             @Param("estado") EstadoTurno estado,
             @Param("fechaHoraActual") java.time.LocalDateTime fechaHoraActual,
-            @Param("fechaLimite") java.time.LocalDateTime fechaLimite);
+            @Param("fechaLimite") java.time.LocalDateTime fechaLimite,
+            @Param("ultimoId") Integer ultimoId,
+            Pageable pageable);
+
+    /**
+     * Turnos con los datos que usan las notificaciones (paciente, médico, especialidad, consultorio y centro)
+     */
+    @Query("""
+            SELECT t FROM Turno t
+            JOIN FETCH t.paciente
+            LEFT JOIN FETCH t.staffMedico sm
+            LEFT JOIN FETCH sm.medico
+            LEFT JOIN FETCH sm.especialidad
+            JOIN FETCH t.consultorio c
+            LEFT JOIN FETCH c.centroAtencion
+            WHERE t.id IN :ids
+            """)
+    List<Turno> findConDatosDeNotificacion(@Param("ids") List<Integer> ids);
 
     /**
      * Cuenta turnos que están por vencer para cancelación automática
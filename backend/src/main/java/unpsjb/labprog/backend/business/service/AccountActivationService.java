@@ -101,12 +101,12 @@ public class AccountActivationService {
             // Construir enlace de activación
             String activationLink = frontendUrl + "/activate-account?token=" + token;
             
-            // Enviar email de activación (llamada síncrona, ya estamos en thread @Async)
-            emailService.sendHtmlEmail(
+            // Encolar email de activación (se espera el encolado, ya estamos en thread @Async)
+            emailService.sendHtmlEmailAsync(
                 email, 
                 appName + " - Activar tu cuenta",
                 buildAccountActivationEmailBody(activationLink, user.getNombre() + " " + user.getApellido())
-            );
+            ).join();
             
             logger.info("Token de activación enviado para usuario: {}", email);
             return CompletableFuture.completedFuture(null);
@@ -0,0 +1,249 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import unpsjb.labprog.backend.dto.TurnoPublicoDTO;
+import unpsjb.labprog.backend.model.EsquemaTurno;
+
+/**
+ * Almacén materializado de la disponibilidad pública de la agenda.
+ *
+ * Guarda, por esquema de turno, los slots libres ya generados indexados por fecha.
+ * Como cada esquema pertenece a un único centro, especialidad y staff médico, la clave
+ * (esquema, fecha) cubre esas dimensiones; el staff médico y el consultorio se guardan
+ * en la entrada para poder invalidar selectivamente.
+ * La búsqueda pública consulta este almacén y solo regenera los esquemas que no
+ * están cacheados (o que fueron invalidados).
+ *
+ * Las escrituras que modifican la ocupación lo mantienen al día:
+ * - Turno creado: se quita el slot ocupado de las entradas del staff médico (parche).
+ * - Turno cancelado/reagendado/eliminado: se invalidan las entradas del staff médico.
+ * - Esquema modificado: se invalida la entrada del esquema.
+ * - Configuración excepcional: se invalida por consultorio, esquema o completa (feriados).
+ *
+ * Cada cambio se aplica de inmediato y otra vez al confirmar la transacción, para que una
+ * regeneración concurrente que leyó datos previos al commit no quede cacheada.
+ *
+ * El almacén es local a cada instancia: las escrituras hechas en otra no lo invalidan. Por eso
+ * cada entrada vence a los agenda.cache.ttl-ms de generada y se vuelve a generar.
+ */
+@Service
+public class AgendaCacheService {
+
+    private final Map<Integer, EntradaEsquema> porEsquema = new ConcurrentHashMap<>();
+
+    /**
+     * Se incrementa en cada invalidación. Una regeneración solo se guarda si la versión
+     * no cambió desde que empezó a leer la base.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    @Value("${agenda.cache.ttl-ms:60000}")
+    private long ttlMs;
+
+    // ===============================================
+    // LECTURA
+    // ===============================================
+
+    /**
+     * Versión actual del almacén. Debe obtenerse ANTES de generar los slots que luego
+     * se pasarán a {@link #guardar}.
+     */
+    public long versionActual() {
+        return version.get();
+    }
+
+    /**
+     * Obtiene los slots disponibles cacheados de un esquema para la ventana [hoy, hoy + semanas).
+     *
+     * @return Optional vacío si el esquema no está cacheado, fue generado otro día,
+     *         con menos semanas de las pedidas o su entrada venció
+     */
+    public Optional<List<TurnoPublicoDTO>> obtener(Integer esquemaId, LocalDate hoy, int semanas) {
+        EntradaEsquema entrada = porEsquema.get(esquemaId);
+        if (entrada == null || !entrada.generadoEl.equals(hoy) || entrada.semanas < semanas
+                || System.nanoTime() - entrada.venceNanos >= 0) {
+            return Optional.empty();
+        }
+
+        List<TurnoPublicoDTO> resultado = new ArrayList<>();
+        entrada.slotsPorFecha.subMap(hoy, true, hoy.plusWeeks(semanas), false)
+            .values()
+            .forEach(resultado::addAll);
+        return Optional.of(resultado);
+    }
+
+    // ===============================================
+    // ESCRITURA
+    // ===============================================
+
+    /**
+     * Guarda los slots disponibles generados para un esquema.
+     * Se descarta si hubo una invalidación desde que se obtuvo {@code versionLeida}.
+     */
+    public void guardar(EsquemaTurno esquema, LocalDate hoy, int semanas,
+                        List<TurnoPublicoDTO> slotsDisponibles, long versionLeida) {
+        NavigableMap<LocalDate, List<TurnoPublicoDTO>> slotsPorFecha = new TreeMap<>();
+        for (TurnoPublicoDTO slot : slotsDisponibles) {
+            slotsPorFecha.computeIfAbsent(slot.getFecha(), f -> new ArrayList<>()).add(slot);
+        }
+        slotsPorFecha.replaceAll((fecha, slots) -> Collections.unmodifiableList(slots));
+
+        EntradaEsquema entrada = new EntradaEsquema(
+            esquema.getId(),
+            esquema.getConsultorio() != null ? esquema.getConsultorio().getId() : null,
+            esquema.getStaffMedico() != null ? esquema.getStaffMedico().getId() : null,
+            hoy, semanas, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs),
+            Collections.unmodifiableNavigableMap(slotsPorFecha));
+
+        synchronized (this) {
+            if (version.get() == versionLeida) {
+                porEsquema.put(esquema.getId(), entrada);
+            }
+        }
+    }
+
+    /**
+     * Marca un slot como ocupado en todas las entradas del staff médico (turno nuevo).
+     * Se aplica al confirmar la transacción, para no ocultar slots si la reserva se revierte.
+     */
+    public void marcarOcupado(Integer staffMedicoId, LocalDate fecha, LocalTime horaInicio) {
+        if (staffMedicoId == null || fecha == null || horaInicio == null) {
+            return;
+        }
+        alConfirmar(() -> {
+            synchronized (this) {
+                version.incrementAndGet();
+                porEsquema.replaceAll((id, entrada) -> staffMedicoId.equals(entrada.staffMedicoId)
+                    ? entrada.sinSlot(fecha, horaInicio)
+                    : entrada);
+            }
+        }, false);
+    }
+
+    /**
+     * Invalida las entradas de un staff médico (cancelación, reagendamiento o baja de turnos).
+     */
+    public void invalidarStaffMedico(Integer staffMedicoId) {
+        if (staffMedicoId == null) {
+            invalidarTodo();
+            return;
+        }
+        invalidar(entrada -> staffMedicoId.equals(entrada.staffMedicoId));
+    }
+
+    /**
+     * Invalida la entrada de un esquema de turno (alta, modificación o baja del esquema).
+     */
+    public void invalidarEsquema(Integer esquemaId) {
+        if (esquemaId == null) {
+            return;
+        }
+        invalidar(entrada -> esquemaId.equals(entrada.esquemaId));
+    }
+
+    /**
+     * Invalida las entradas de los esquemas que atienden en un consultorio (mantenimientos).
+     */
+    public void invalidarConsultorio(Integer consultorioId) {
+        if (consultorioId == null) {
+            invalidarTodo();
+            return;
+        }
+        invalidar(entrada -> consultorioId.equals(entrada.consultorioId));
+    }
+
+    /**
+     * Invalida todo el almacén (feriados o cambios masivos de esquemas).
+     */
+    public void invalidarTodo() {
+        invalidar(entrada -> true);
+    }
+
+    private void invalidar(Predicate<EntradaEsquema> criterio) {
+        alConfirmar(() -> {
+            synchronized (this) {
+                version.incrementAndGet();
+                porEsquema.values().removeIf(criterio);
+            }
+        }, true);
+    }
+
+    /**
+     * Ejecuta la acción al confirmar la transacción activa. Si {@code tambienAhora} es true
+     * se ejecuta además de inmediato. Sin transacción activa se ejecuta una sola vez.
+     */
+    private void alConfirmar(Runnable accion, boolean tambienAhora) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        if (tambienAhora) {
+            accion.run();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+
+    // ===============================================
+    // VALUE OBJECTS
+    // ===============================================
+
+    private static class EntradaEsquema {
+        final Integer esquemaId;
+        final Integer consultorioId;
+        final Integer staffMedicoId;
+        final LocalDate generadoEl;
+        final int semanas;
+        final long venceNanos;
+        final NavigableMap<LocalDate, List<TurnoPublicoDTO>> slotsPorFecha;
+
+        EntradaEsquema(Integer esquemaId, Integer consultorioId, Integer staffMedicoId,
+                       LocalDate generadoEl, int semanas, long venceNanos,
+                       NavigableMap<LocalDate, List<TurnoPublicoDTO>> slotsPorFecha) {
+            this.esquemaId = esquemaId;
+            this.consultorioId = consultorioId;
+            this.staffMedicoId = staffMedicoId;
+            this.generadoEl = generadoEl;
+            this.semanas = semanas;
+            this.venceNanos = venceNanos;
+            this.slotsPorFecha = slotsPorFecha;
+        }
+
+        EntradaEsquema sinSlot(LocalDate fecha, LocalTime horaInicio) {
+            List<TurnoPublicoDTO> slotsDelDia = slotsPorFecha.get(fecha);
+            if (slotsDelDia == null) {
+                return this;
+            }
+            List<TurnoPublicoDTO> restantes = new ArrayList<>(slotsDelDia);
+            if (!restantes.removeIf(slot -> horaInicio.equals(slot.getHoraInicio()))) {
+                return this;
+            }
+            NavigableMap<LocalDate, List<TurnoPublicoDTO>> copia = new TreeMap<>(slotsPorFecha);
+            copia.put(fecha, Collections.unmodifiableList(restantes));
+            return new EntradaEsquema(esquemaId, consultorioId, staffMedicoId,
+                generadoEl, semanas, venceNanos, Collections.unmodifiableNavigableMap(copia));
+        }
+    }
+}
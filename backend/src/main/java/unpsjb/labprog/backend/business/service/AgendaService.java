@@ -5,18 +5,29 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import unpsjb.labprog.backend.business.repository.EsquemaTurnoRepository;
 import unpsjb.labprog.backend.business.repository.MedicoRepository;
 import unpsjb.labprog.backend.business.repository.TurnoRepository;
+import unpsjb.labprog.backend.config.AgendaConfig;
+import unpsjb.labprog.backend.dto.ConsultaAgendaDTO;
 import unpsjb.labprog.backend.dto.ConsultorioDTO;
 import unpsjb.labprog.backend.dto.TurnoDTO;
 import unpsjb.labprog.backend.dto.TurnoPublicoDTO;
@@ -29,7 +40,6 @@ import unpsjb.labprog.backend.model.Medico;
 import unpsjb.labprog.backend.model.Paciente;
 import unpsjb.labprog.backend.model.PreferenciaHoraria;
 import unpsjb.labprog.backend.model.Role;
-import unpsjb.labprog.backend.model.Turno;
 import unpsjb.labprog.backend.model.User;
 
 /**
@@ -47,6 +57,11 @@ public class AgendaService {
     private final ConfiguracionExcepcionalService configuracionExcepcionalService;
     private final MedicoRepository medicoRepository;
     private final PacienteService pacienteService;
+    private final AgendaCacheService agendaCacheService;
+
+    // === GENERACIÓN EN PARALELO POR ESQUEMA ===
+    private final ExecutorService agendaExecutor;
+    private final int paralelismo;
 
     // === COMPONENTES ESPECIALIZADOS (SRP) ===
     private final SlotGenerator slotGenerator;
@@ -54,6 +69,7 @@ public class AgendaService {
     private final ConsultorioOptimizer consultorioOptimizer;
     private final ConflictResolver conflictResolver;
     private final ExceptionalConfigurationHandler exceptionalHandler;
+    private final OcupacionLoader ocupacionLoader;
 
     // Constructor injection (DIP)
     public AgendaService(
@@ -63,7 +79,10 @@ public class AgendaService {
             ConsultorioDistribucionService consultorioDistribucionService,
             ConfiguracionExcepcionalService configuracionExcepcionalService,
             MedicoRepository medicoRepository,
-            PacienteService pacienteService) {
+            PacienteService pacienteService,
+            AgendaCacheService agendaCacheService,
+            @Qualifier("agendaGeneracionExecutor") ExecutorService agendaExecutor,
+            @Value("${agenda.generacion.paralelismo:0}") int paralelismo) {
         
         this.turnoRepository = turnoRepository;
         this.esquemaTurnoRepository = esquemaTurnoRepository;
@@ -72,6 +91,9 @@ public class AgendaService {
         this.configuracionExcepcionalService = configuracionExcepcionalService;
         this.medicoRepository = medicoRepository;
         this.pacienteService = pacienteService;
+        this.agendaCacheService = agendaCacheService;
+        this.agendaExecutor = agendaExecutor;
+        this.paralelismo = AgendaConfig.resolverParalelismo(paralelismo);
         
         // Inicializar componentes especializados
         this.slotGenerator = new SlotGenerator();
@@ -79,6 +101,7 @@ public class AgendaService {
         this.consultorioOptimizer = new ConsultorioOptimizer();
         this.conflictResolver = new ConflictResolver();
         this.exceptionalHandler = new ExceptionalConfigurationHandler();
+        this.ocupacionLoader = new OcupacionLoader();
     }
 
     // ===============================================
@@ -92,7 +115,7 @@ public class AgendaService {
         
         public List<TurnoDTO> generarSlotsParaHorario(LocalDate fecha, LocalTime inicio, LocalTime fin, 
                                                       EsquemaTurno esquemaTurno, Integer duracion,
-                                                      int eventoIdCounter) {
+                                                      OcupacionIndex ocupacion, int eventoIdCounter) {
             List<TurnoDTO> slots = new ArrayList<>();
             int intervalo = esquemaTurno.getIntervalo();
             int duracionSanitizacion = duracion != null ? duracion : 0;
@@ -107,7 +130,7 @@ public class AgendaService {
                     break;
                 }
 
-                SlotInfo slotInfo = crearSlotInfo(fecha, slotStart, esquemaTurno, intervalo);
+                SlotInfo slotInfo = crearSlotInfo(fecha, slotStart, intervalo, ocupacion);
                 TurnoDTO evento = crearEventoDesdeSlotInfo(slotInfo, eventoIdCounter++);
                 evento.setFecha(fecha);
                 evento.setHoraInicio(slotStart);
@@ -124,12 +147,10 @@ public class AgendaService {
         }
         
         private SlotInfo crearSlotInfo(LocalDate fecha, LocalTime slotStart, 
-                                      EsquemaTurno esquemaTurno, int intervalo) {
-            boolean slotOcupado = turnoRepository.existsByFechaAndHoraInicioAndStaffMedicoIdAndEstadoNot(
-                fecha, slotStart, esquemaTurno.getStaffMedico().getId(), EstadoTurno.CANCELADO);
+                                      int intervalo, OcupacionIndex ocupacion) {
+            boolean slotOcupado = ocupacion.estaOcupado(fecha, slotStart);
 
-            boolean enMantenimiento = configuracionExcepcionalService.turnoEnConflictoConMantenimiento(
-                fecha, esquemaTurno.getConsultorio().getId(), slotStart, intervalo);
+            boolean enMantenimiento = ocupacion.enMantenimiento(fecha, slotStart, slotStart.plusMinutes(intervalo));
 
             if (enMantenimiento) {
                 slotOcupado = true;
@@ -237,6 +258,7 @@ public class AgendaService {
                         consultorio.setId(consultorioId);
                         esquema.setConsultorio(consultorio);
                         esquemaTurnoRepository.save(esquema);
+                        agendaCacheService.invalidarEsquema(esquema.getId());
                     }
                 }
             }
@@ -326,6 +348,7 @@ public class AgendaService {
             if (!consultoriosDisponibles.isEmpty()) {
                 esquema.setConsultorio(consultoriosDisponibles.get(0));
                 esquemaTurnoRepository.save(esquema);
+                agendaCacheService.invalidarEsquema(esquema.getId());
             }
         }
     }
@@ -338,7 +361,7 @@ public class AgendaService {
         public List<TurnoDTO> generarSlotsParaDiaExcepcional(LocalDate fecha, LocalTime inicio, LocalTime fin, 
                                                              EsquemaTurno esquemaTurno, 
                                                              List<ConfiguracionExcepcional> configuraciones,
-                                                             int eventoIdCounter) {
+                                                             OcupacionIndex ocupacion, int eventoIdCounter) {
             List<TurnoDTO> slots = new ArrayList<>();
             int intervalo = esquemaTurno.getIntervalo();
             
@@ -353,8 +376,9 @@ public class AgendaService {
                     break;
                 }
                 
-                ExceptionalSlotInfo slotInfo = determinarTipoExcepcion(slotStart, nextSlot, context, fecha, esquemaTurno);
-                TurnoDTO evento = crearEventoExcepcional(slotInfo, eventoIdCounter++, fecha, slotStart, nextSlot, esquemaTurno);
+                ExceptionalSlotInfo slotInfo = determinarTipoExcepcion(slotStart, nextSlot, context, fecha, ocupacion);
+                TurnoDTO evento = crearEventoExcepcional(slotInfo, eventoIdCounter++, fecha, slotStart, nextSlot,
+                                                         esquemaTurno, ocupacion);
                 
                 slots.add(evento);
                 slotStart = slotStart.plusMinutes(intervalo);
@@ -385,9 +409,8 @@ public class AgendaService {
         
         private ExceptionalSlotInfo determinarTipoExcepcion(LocalTime slotStart, LocalTime nextSlot, 
                                                            ExceptionalDayContext context, LocalDate fecha, 
-                                                           EsquemaTurno esquemaTurno) {
-            boolean slotOcupado = turnoRepository.existsByFechaAndHoraInicioAndStaffMedicoIdAndEstadoNot(
-                fecha, slotStart, esquemaTurno.getStaffMedico().getId(), EstadoTurno.CANCELADO);
+                                                           OcupacionIndex ocupacion) {
+            boolean slotOcupado = ocupacion.estaOcupado(fecha, slotStart);
             
             if (context.feriado.isPresent()) {
                 return new ExceptionalSlotInfo("FERIADO", context.feriado.get().getDescripcion(), true, false);
@@ -419,7 +442,8 @@ public class AgendaService {
         }
         
         private TurnoDTO crearEventoExcepcional(ExceptionalSlotInfo slotInfo, int eventoId, LocalDate fecha, 
-                                               LocalTime slotStart, LocalTime nextSlot, EsquemaTurno esquemaTurno) {
+                                               LocalTime slotStart, LocalTime nextSlot, EsquemaTurno esquemaTurno,
+                                               OcupacionIndex ocupacion) {
             TurnoDTO evento = new TurnoDTO();
             evento.setId(eventoId);
             evento.setFecha(fecha);
@@ -435,7 +459,7 @@ public class AgendaService {
             asignarDatosEsquema(evento, esquemaTurno);
             
             if (slotInfo.ocupado && slotInfo.tipoExcepcion == null) {
-                asignarDatosPaciente(evento, fecha, slotStart, esquemaTurno);
+                asignarDatosPaciente(evento, fecha, slotStart, ocupacion);
             }
             
             return evento;
@@ -468,22 +492,43 @@ public class AgendaService {
             evento.setNombreCentro(esquemaTurno.getCentroAtencion().getNombre());
         }
         
-        private void asignarDatosPaciente(TurnoDTO evento, LocalDate fecha, LocalTime slotStart, EsquemaTurno esquemaTurno) {
-            List<Turno> turnosEnFecha = turnoRepository.findByFechaAndStaffMedico_Id(
-                fecha, esquemaTurno.getStaffMedico().getId());
+        private void asignarDatosPaciente(TurnoDTO evento, LocalDate fecha, LocalTime slotStart, OcupacionIndex ocupacion) {
+            TurnoOcupado turno = ocupacion.turnoEn(fecha, slotStart);
             
-            final LocalTime horaSlot = slotStart;
-            Optional<Turno> turnoExistente = turnosEnFecha.stream()
-                .filter(t -> t.getHoraInicio().equals(horaSlot))
-                .filter(t -> t.getEstado() != EstadoTurno.CANCELADO)
-                .findFirst();
+            if (turno != null) {
+                evento.setPacienteId(turno.pacienteId);
+                evento.setNombrePaciente(turno.nombrePaciente);
+                evento.setApellidoPaciente(turno.apellidoPaciente);
+            }
+        }
+    }
+
+    /**
+     * Cargador de ocupación especializado (SRP).
+     * Resuelve en una consulta por esquema (turnos del médico) lo que antes se consultaba slot por slot;
+     * los mantenimientos del consultorio se toman del calendario ya cargado.
+     */
+    private class OcupacionLoader {
+        
+        public OcupacionIndex cargar(EsquemaTurno esquemaTurno, LocalDate fechaDesde, LocalDate fechaHasta,
+                                     CalendarioAgenda calendario) {
+            OcupacionIndex index = new OcupacionIndex();
+            
+            List<Object[]> filas = turnoRepository.findOcupacionByStaffMedicoEnRango(
+                esquemaTurno.getStaffMedico().getId(), fechaDesde, fechaHasta, EstadoTurno.CANCELADO);
+            for (Object[] fila : filas) {
+                index.agregarTurno((LocalDate) fila[0], (LocalTime) fila[1],
+                    new TurnoOcupado((Integer) fila[2], (String) fila[3], (String) fila[4]));
+            }
             
-            if (turnoExistente.isPresent()) {
-                Turno turno = turnoExistente.get();
-                evento.setPacienteId(turno.getPaciente().getId());
-                evento.setNombrePaciente(turno.getPaciente().getNombre());
-                evento.setApellidoPaciente(turno.getPaciente().getApellido());
+            Integer consultorioId = esquemaTurno.getConsultorio().getId();
+            for (LocalDate fecha = fechaDesde; !fecha.isAfter(fechaHasta); fecha = fecha.plusDays(1)) {
+                for (ConfiguracionExcepcional mantenimiento : calendario.mantenimientos(fecha, consultorioId)) {
+                    index.agregarMantenimiento(mantenimiento);
+                }
             }
+            
+            return index;
         }
     }
 
@@ -517,6 +562,57 @@ public class AgendaService {
         }
     }
     
+    private static class TurnoOcupado {
+        final Integer pacienteId;
+        final String nombrePaciente;
+        final String apellidoPaciente;
+        
+        TurnoOcupado(Integer pacienteId, String nombrePaciente, String apellidoPaciente) {
+            this.pacienteId = pacienteId;
+            this.nombrePaciente = nombrePaciente;
+            this.apellidoPaciente = apellidoPaciente;
+        }
+    }
+    
+    /**
+     * Índice en memoria de la ocupación de un esquema en una ventana de fechas.
+     * Los turnos se indexan por (fecha, horaInicio) y los mantenimientos por fecha
+     * como intervalos horarios, de modo que cada slot se resuelve sin ir a la base.
+     */
+    private static class OcupacionIndex {
+        private final Map<LocalDate, Map<LocalTime, TurnoOcupado>> turnosPorFecha = new HashMap<>();
+        private final Map<LocalDate, List<LocalTime[]>> mantenimientosPorFecha = new HashMap<>();
+        
+        void agregarTurno(LocalDate fecha, LocalTime horaInicio, TurnoOcupado turno) {
+            turnosPorFecha.computeIfAbsent(fecha, f -> new HashMap<>()).putIfAbsent(horaInicio, turno);
+        }
+        
+        void agregarMantenimiento(ConfiguracionExcepcional mantenimiento) {
+            if (mantenimiento.getHoraInicio() == null || mantenimiento.getHoraFin() == null) {
+                return; // Sin horario no puede superponerse (igual que hayConflictoHorario)
+            }
+            mantenimientosPorFecha.computeIfAbsent(mantenimiento.getFecha(), f -> new ArrayList<>())
+                .add(new LocalTime[] { mantenimiento.getHoraInicio(), mantenimiento.getHoraFin() });
+        }
+        
+        boolean estaOcupado(LocalDate fecha, LocalTime horaInicio) {
+            return turnoEn(fecha, horaInicio) != null;
+        }
+        
+        TurnoOcupado turnoEn(LocalDate fecha, LocalTime horaInicio) {
+            return turnosPorFecha.getOrDefault(fecha, Collections.emptyMap()).get(horaInicio);
+        }
+        
+        boolean enMantenimiento(LocalDate fecha, LocalTime inicio, LocalTime fin) {
+            for (LocalTime[] intervalo : mantenimientosPorFecha.getOrDefault(fecha, Collections.emptyList())) {
+                if (inicio.isBefore(intervalo[1]) && fin.isAfter(intervalo[0])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
     private static class ExceptionalSlotInfo {
         final String tipoExcepcion;
         final String descripcion;
@@ -555,8 +651,8 @@ public class AgendaService {
      */
     private List<TurnoDTO> generarSlotsParaHorario(LocalDate fecha, LocalTime inicio, LocalTime fin, 
                                                   EsquemaTurno esquemaTurno, Integer duracion,
-                                                  int eventoIdCounter) {
-        return slotGenerator.generarSlotsParaHorario(fecha, inicio, fin, esquemaTurno, duracion, eventoIdCounter);
+                                                  OcupacionIndex ocupacion, int eventoIdCounter) {
+        return slotGenerator.generarSlotsParaHorario(fecha, inicio, fin, esquemaTurno, duracion, ocupacion, eventoIdCounter);
     }
 
     private static DayOfWeek parseDiaSemana(String dia) {
@@ -599,8 +695,28 @@ public class AgendaService {
      * Los esquemas de turno ya deben tener asignados sus consultorios cuando se crean.
      */
     public List<TurnoDTO> generarEventosDesdeEsquemaTurno(EsquemaTurno esquemaTurno, int semanas) {
-        List<TurnoDTO> eventos = new ArrayList<>();
         LocalDate hoy = LocalDate.now();
+        return generarEventosDesdeEsquemaTurno(esquemaTurno, semanas, hoy, cargarCalendario(hoy, semanas));
+    }
+
+    /**
+     * Carga en una sola consulta el calendario de configuraciones excepcionales de la ventana
+     * [hoy, hoy + semanas]. Se construye una vez por petición y se comparte entre todos los esquemas.
+     */
+    private CalendarioAgenda cargarCalendario(LocalDate hoy, int semanas) {
+        LocalDate hasta = hoy.plusWeeks(semanas);
+        return new CalendarioAgenda(
+            configuracionExcepcionalService.obtenerCalendario(hoy, hasta),
+            consultorioService::findById);
+    }
+
+    /**
+     * Genera los eventos de un esquema leyendo feriados, mantenimientos, atención especial y
+     * horarios del consultorio únicamente desde el calendario recibido (sin consultas por día).
+     */
+    private List<TurnoDTO> generarEventosDesdeEsquemaTurno(EsquemaTurno esquemaTurno, int semanas,
+                                                          LocalDate hoy, CalendarioAgenda calendario) {
+        List<TurnoDTO> eventos = new ArrayList<>();
         int eventoIdCounter = 1; // Contador para generar IDs únicos
         
         // Crear una referencia final para usar en lambdas
@@ -616,6 +732,9 @@ public class AgendaService {
                     "El consultorio asociado al EsquemaTurno con ID " + esquemaTurnoFinal.getId() + " es nulo.");
         }
 
+        // Cargar la ocupación de toda la ventana de una sola vez (turnos + mantenimientos)
+        OcupacionIndex ocupacion = ocupacionLoader.cargar(esquemaTurnoFinal, hoy, hoy.plusWeeks(semanas), calendario);
+
         for (EsquemaTurno.Horario horario : horarios) {
             DayOfWeek dayOfWeek = parseDiaSemana(horario.getDia());
             LocalDate fecha = hoy.with(TemporalAdjusters.nextOrSame(dayOfWeek));
@@ -627,18 +746,17 @@ public class AgendaService {
                 // System.out.println("--- Procesando fecha: " + fechaEvento + " (semana " + i + ") ---");
 
                 // Verificar si existe una configuración excepcional para esta fecha
-                List<ConfiguracionExcepcional> configuracionesDelDia = configuracionExcepcionalService.obtenerConfiguraciones(fechaEvento);
+                List<ConfiguracionExcepcional> configuracionesDelDia = calendario.configuraciones(fechaEvento);
 
                 
                 // Verificar si es feriado (afecta todo el día)
-                boolean esFeriado = configuracionesDelDia.stream()
-                    .anyMatch(c -> c.getTipo() == ConfiguracionExcepcional.TipoExcepcion.FERIADO);
+                boolean esFeriado = calendario.esFeriado(fechaEvento);
                 
                 
                 if (esFeriado) {
                     // Para feriados, generar slots especiales para todo el día
                     List<TurnoDTO> slotsFeriado = exceptionalHandler.generarSlotsParaDiaExcepcional(fechaEvento, horario.getHoraInicio(), horario.getHoraFin(), 
-                        esquemaTurnoFinal, configuracionesDelDia, eventoIdCounter);
+                        esquemaTurnoFinal, configuracionesDelDia, ocupacion, eventoIdCounter);
                     eventos.addAll(slotsFeriado);
                     eventoIdCounter += 50;
                     continue;
@@ -648,7 +766,7 @@ public class AgendaService {
                 // si está en conflicto con un horario de mantenimiento
                 
                 // Verificar si hay atención especial específica para este esquema
-                Optional<ConfiguracionExcepcional> atencionEspecial = configuracionExcepcionalService.obtenerAtencionEspecial(fechaEvento, esquemaTurnoFinal.getId());
+                Optional<ConfiguracionExcepcional> atencionEspecial = calendario.atencionEspecial(fechaEvento, esquemaTurnoFinal.getId());
                 
 
                 
@@ -676,7 +794,7 @@ public class AgendaService {
                             .collect(Collectors.toList());
                         
                         List<TurnoDTO> slotsAtencionEspecial = exceptionalHandler.generarSlotsParaDiaExcepcional(fechaEvento, horario.getHoraInicio(), horario.getHoraFin(), 
-                            esquemaTurnoFinal, configuracionesEspecificas, eventoIdCounter);
+                            esquemaTurnoFinal, configuracionesEspecificas, ocupacion, eventoIdCounter);
                         eventos.addAll(slotsAtencionEspecial);
                         eventoIdCounter += 50;
                         continue;
@@ -689,8 +807,8 @@ public class AgendaService {
                 // NUEVA VALIDACIÓN: Verificar horarios del consultorio y ajustar ventana temporal
                 String diaSemana = convertirDiaInglesToEspanol(fechaEvento.getDayOfWeek().name());
                 
-                // Obtener información del consultorio
-                Optional<ConsultorioDTO> consultorioOpt = consultorioService.findById(consultorio.getId());
+                // Obtener información del consultorio (cargada una sola vez por petición)
+                Optional<ConsultorioDTO> consultorioOpt = calendario.consultorio(consultorio.getId());
                 if (!consultorioOpt.isPresent()) {
                     continue; // Saltar si no se encuentra el consultorio
                 }
@@ -732,7 +850,7 @@ public class AgendaService {
                 
                 // Generar slots usando el método estándar que maneja mantenimiento correctamente
                 List<TurnoDTO> slotsGenerados = generarSlotsParaHorario(fechaEvento, slotStart, slotEnd, 
-                    esquemaTurnoFinal, duracion, eventoIdCounter);
+                    esquemaTurnoFinal, duracion, ocupacion, eventoIdCounter);
                 eventos.addAll(slotsGenerados);
                 eventoIdCounter += 50;
             }
@@ -788,8 +906,8 @@ public class AgendaService {
     public List<TurnoDTO> obtenerSlotsDisponiblesPorMedico(Integer staffMedicoId, int semanas) {
         List<TurnoDTO> slotsDisponibles = new ArrayList<>();
         
-        // Buscar todos los esquemas de turno para este médico
-        List<EsquemaTurno> esquemas = esquemaTurnoRepository.findByStaffMedicoId(staffMedicoId);
+        // Buscar todos los esquemas de turno para este médico (con sus asociaciones ya cargadas)
+        List<EsquemaTurno> esquemas = esquemaTurnoRepository.findParaAgenda(null, staffMedicoId, null, null);
         
         if (esquemas.isEmpty()) {
             return slotsDisponibles;
@@ -797,12 +915,13 @@ public class AgendaService {
         
         // Generar slots para cada esquema en las próximas semanas
         LocalDate fechaInicio = LocalDate.now();
+        CalendarioAgenda calendario = cargarCalendario(fechaInicio, semanas);
         
-        for (EsquemaTurno esquema : esquemas) {
-            List<TurnoDTO> slots = generarEventosDesdeEsquemaTurno(esquema, semanas);
+        slotsDisponibles.addAll(generarPorEsquema(esquemas, calendario, esquema -> {
+            List<TurnoDTO> slots = generarEventosDesdeEsquemaTurno(esquema, semanas, fechaInicio, calendario);
             
             // Filtrar solo los slots disponibles (no ocupados)
-            List<TurnoDTO> slotsLibres = slots.stream()
+            return slots.stream()
                 .filter(slot -> slot.getOcupado() == null || !slot.getOcupado()) // Solo slots libres
                 .filter(slot -> {
                     // Filtrar slots que sean de fechas futuras
@@ -810,9 +929,7 @@ public class AgendaService {
                     return !fechaSlot.isBefore(fechaInicio);
                 })
                 .collect(Collectors.toList());
-            
-            slotsDisponibles.addAll(slotsLibres);
-        }
+        }));
         
         // Ordenar por fecha y hora
         slotsDisponibles.sort((s1, s2) -> {
@@ -848,197 +965,212 @@ public class AgendaService {
             boolean filtrarPorPreferencia,
             User currentUser) {
         
-        // === INICIO: CONCIENCIA DEL USUARIO (TAREA 1) ===
-        // Usamos un array de un elemento para permitir modificación dentro del lambda
-        final Integer[] medicoIdToExcludeWrapper = {null}; // Por defecto, no excluimos a nadie.
-
-        if (currentUser != null) {
-            // === TAREA 2: Verificar si el usuario es un MÉDICO ===
+        ConsultaAgendaDTO consulta = nuevaConsulta(centroId, especialidad, staffMedicoId, semanas,
+            filtrarPorPreferencia, currentUser);
+        int semanasAGenerar = consulta.getSemanas();
+        
+        // Los filtros (centro, staff médico, especialidad y médico excluido) se aplican en la base,
+        // que además trae las asociaciones necesarias para generar los slots en la misma consulta
+        List<EsquemaTurno> esquemas = esquemasPara(consulta);
+        
+        System.out.println("✅ [AgendaService] Esquemas después de filtros: " + esquemas.size());
+        
+        // Filtrar solo slots disponibles (no ocupados) y mapear a DTO público
+        LocalDate fechaActual = LocalDate.now();
+        List<TurnoPublicoDTO> slotsDisponibles = new ArrayList<>();
+        
+        // Obtener los slots de cada esquema desde el almacén de disponibilidad
+        List<EsquemaTurno> esquemasNoCacheados = new ArrayList<>();
+        for (EsquemaTurno esquema : esquemas) {
+            agendaCacheService.obtener(esquema.getId(), fechaActual, semanasAGenerar)
+                .ifPresentOrElse(slotsDisponibles::addAll, () -> esquemasNoCacheados.add(esquema));
+        }
+        
+        // Los esquemas que no están cacheados se generan compartiendo un único calendario de excepciones.
+        // La versión se lee antes de consultar la base para descartar el resultado si hubo escrituras entretanto
+        if (!esquemasNoCacheados.isEmpty()) {
+            long version = agendaCacheService.versionActual();
+            CalendarioAgenda calendario = cargarCalendario(fechaActual, semanasAGenerar);
             
-            // Verificamos si el usuario tiene el rol de MEDICO
-            if (currentUser.getRole() == Role.MEDICO) {
-                // Buscar la entidad Medico asociada mediante el email
-                medicoRepository.findByEmail(currentUser.getEmail())
-                    .ifPresent(medico -> {
-                        // Si encontramos el médico, almacenamos su ID para exclusión
-                        medicoIdToExcludeWrapper[0] = medico.getId();
-                        System.out.println("👨‍⚕️ [AgendaService] Petición de un MÉDICO (ID: " + medicoIdToExcludeWrapper[0] + 
-                                         "). Se excluirán sus propios turnos de la agenda.");
-                    });
-                
-                if (medicoIdToExcludeWrapper[0] == null) {
-                    System.out.println("⚠️ [AgendaService] Usuario con rol MEDICO pero sin entidad Medico asociada: " + 
-                                     currentUser.getEmail());
+            slotsDisponibles.addAll(generarPorEsquema(esquemasNoCacheados, calendario, esquema -> {
+                try {
+                    return generarSlotsPublicosDeEsquema(esquema, semanasAGenerar, fechaActual, calendario, version);
+                } catch (Exception e) {
+                    System.err.println("❌ [Público] Error processing EsquemaTurno ID " + esquema.getId() + 
+                                     ": " + e.getMessage());
+                    return Collections.<TurnoPublicoDTO>emptyList();
                 }
-            } else {
-                System.out.println("✅ [AgendaService] Petición de agenda realizada por el usuario: " + 
-                                 currentUser.getEmail() + " (Rol: " + currentUser.getRole().getName() + ")");
-            }
-        } else {
-            System.out.println("🔓 [AgendaService] Petición de agenda anónima (sin autenticación)");
+            }));
         }
         
-        // Extraer el valor del wrapper para usar en el resto del método
-        Integer medicoIdToExclude = medicoIdToExcludeWrapper[0];
-        // === FIN: CONCIENCIA DEL USUARIO (TAREA 2) ===
+        System.out.println("✅ [AgendaService] Total slots disponibles: " + slotsDisponibles.size());
         
-        System.out.println("🔍 [AgendaService] Filtros recibidos:");
-        System.out.println("   - centroId: " + centroId);
-        System.out.println("   - especialidad: " + especialidad);
-        System.out.println("   - staffMedicoId: " + staffMedicoId);
-        System.out.println("   - semanas: " + semanas);
-        System.out.println("   - medicoIdToExclude: " + medicoIdToExclude);
-        
-        // Generar todos los eventos desde los esquemas de turno (misma lógica que /eventos/todos)
-        List<EsquemaTurno> esquemas;
-        int semanasAGenerar = semanas != null ? semanas : 4;
+        // Filtro de preferencias horarias del paciente (si se pidió) y orden por fecha y hora
+        List<TurnoPublicoDTO> resultado = slotsDisponibles.stream()
+            .filter(slot -> incluye(consulta, slot.getFecha(), slot.getHoraInicio()))
+            .sorted(Comparator.comparing(TurnoPublicoDTO::getFecha).thenComparing(TurnoPublicoDTO::getHoraInicio))
+            .collect(Collectors.toList());
         
-        // === TAREA 3: Filtrar esquemas excluyendo al médico autenticado ===
-        esquemas = esquemaTurnoRepository.findAll().stream()
-            .filter(e -> {
-                // Validar que tenga consultorio
-                if (e.getConsultorio() == null) {
-                    return false;
-                }
-                
-                // === NUEVO: EXCLUIR TURNOS DEL MÉDICO AUTENTICADO ===
-                // Si medicoIdToExclude tiene valor, excluir esquemas de ese médico
-                if (medicoIdToExclude != null && e.getStaffMedico() != null && 
-                    e.getStaffMedico().getMedico() != null) {
-                    
-                    Integer medicoIdDelEsquema = e.getStaffMedico().getMedico().getId();
-                    if (medicoIdDelEsquema != null && medicoIdDelEsquema.equals(medicoIdToExclude)) {
-                        // Este esquema pertenece al médico autenticado, excluirlo
-                        return false;
-                    }
-                }
-                // === FIN: EXCLUSIÓN DE MÉDICO ===
-                
-                //  FILTRAR POR CENTRO DE ATENCIÓN
-                if (centroId != null && e.getConsultorio().getCentroAtencion() != null) {
-                    if (!e.getConsultorio().getCentroAtencion().getId().equals(centroId)) {
-                        return false;
-                    }
-                }
-                
-                //  FILTRAR POR STAFF MÉDICO
-                if (staffMedicoId != null && e.getStaffMedico() != null) {
-                    if (!e.getStaffMedico().getId().equals(staffMedicoId)) {
-                        return false;
-                    }
-                }
-                
-                //  FILTRAR POR ESPECIALIDAD
-                if (especialidad != null && !especialidad.isEmpty() && 
-                    e.getStaffMedico() != null && 
-                    e.getStaffMedico().getEspecialidad() != null) {
-                    
-                    String especialidadEsquema = e.getStaffMedico().getEspecialidad().getNombre();
-                    if (!especialidadEsquema.equalsIgnoreCase(especialidad.trim())) {
-                        return false;
-                    }
-                }
+        if (consulta.getPreferencias() != null && !consulta.getPreferencias().isEmpty()) {
+            System.out.println("✅ [AgendaService] Turnos después de filtrar por preferencias: " + resultado.size());
+        }
                 
-                return true;
-            })
-            .collect(Collectors.toList());
+        return resultado;
+    }
+    
+    /**
+     * Arma la consulta de agenda resolviendo lo que depende del usuario autenticado:
+     * un MÉDICO no ve sus propios esquemas y, si se pide, se cargan las preferencias
+     * horarias del paciente asociado al usuario.
+     *
+     * @param currentUser Usuario autenticado (puede ser null si es anónimo)
+     */
+    public ConsultaAgendaDTO nuevaConsulta(Integer centroId, String especialidad, Integer staffMedicoId,
+                                           Integer semanas, boolean filtrarPorPreferencia, User currentUser) {
+        ConsultaAgendaDTO consulta = new ConsultaAgendaDTO();
+        consulta.setCentroId(centroId);
+        consulta.setEspecialidad(especialidad != null && !especialidad.trim().isEmpty() ? especialidad.trim() : null);
+        consulta.setStaffMedicoId(staffMedicoId);
+        if (semanas != null) {
+            consulta.setSemanas(semanas);
+        }
         
-        System.out.println("✅ [AgendaService] Esquemas después de filtros: " + esquemas.size());
+        if (currentUser != null && currentUser.getRole() == Role.MEDICO) {
+            Optional<Medico> medico = medicoRepository.findByEmail(currentUser.getEmail());
+            if (medico.isPresent()) {
+                consulta.setMedicoIdExcluido(medico.get().getId());
+            } else {
+                System.out.println("⚠️ [AgendaService] Usuario con rol MEDICO pero sin entidad Medico asociada: " + 
+                                 currentUser.getEmail());
+            }
+        }
         
-        List<TurnoDTO> todosLosSlots = new ArrayList<>();
+        if (filtrarPorPreferencia && currentUser != null) {
+            Paciente paciente = pacienteService.findByUserWithPreferencias(currentUser);
+            if (paciente != null && paciente.getPreferenciasHorarias() != null) {
+                consulta.setPreferencias(paciente.getPreferenciasHorarias());
+            }
+        }
+        return consulta;
+    }
+
+    /**
+     * Todos los eventos de la agenda (slots libres, ocupados, feriados, mantenimientos) que
+     * cumplen la consulta, ordenados por fecha y hora. Comparte con la agenda pública el
+     * filtrado de esquemas en la base y un único calendario de excepciones por petición;
+     * cada esquema carga su ocupación de la ventana de una sola vez.
+     */
+    public List<TurnoDTO> consultarEventos(ConsultaAgendaDTO consulta) {
+        List<EsquemaTurno> esquemas = esquemasPara(consulta);
+        LocalDate hoy = LocalDate.now();
+        int semanas = consulta.getSemanas();
+        CalendarioAgenda calendario = cargarCalendario(hoy, semanas);
         
-        // Generar eventos desde cada esquema (lógica idéntica a obtenerTodosLosEventos)
-        for (EsquemaTurno esquema : esquemas) {
+        List<TurnoDTO> eventos = generarPorEsquema(esquemas, calendario, esquema -> {
             try {
-                List<TurnoDTO> eventos = generarEventosDesdeEsquemaTurno(esquema, semanasAGenerar);
-                todosLosSlots.addAll(eventos);
+                return generarEventosDesdeEsquemaTurno(esquema, semanas, hoy, calendario).stream()
+                    .filter(evento -> incluye(consulta, evento.getFecha(), evento.getHoraInicio()))
+                    .collect(Collectors.toList());
             } catch (Exception e) {
-                System.err.println("❌ [Público] Error processing EsquemaTurno ID " + esquema.getId() + 
-                                 ": " + e.getMessage());
-                continue;
+                System.err.println("❌ Error processing EsquemaTurno ID " + esquema.getId() + ": " + e.getMessage());
+                return Collections.<TurnoDTO>emptyList();
             }
+        });
+        
+        eventos.sort(Comparator.comparing(TurnoDTO::getFecha)
+            .thenComparing(TurnoDTO::getHoraInicio, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return eventos;
+    }
+
+    private List<EsquemaTurno> esquemasPara(ConsultaAgendaDTO consulta) {
+        return esquemaTurnoRepository.findParaAgenda(consulta.getCentroId(), consulta.getStaffMedicoId(),
+            consulta.getEspecialidad(), consulta.getMedicoIdExcluido());
+    }
+
+    /**
+     * Un slot entra en la consulta si cae en la ventana de fechas pedida y, si hay preferencias
+     * horarias, en alguna de ellas: mismo día y hora de inicio en [horaDesde, horaHasta).
+     */
+    private boolean incluye(ConsultaAgendaDTO consulta, LocalDate fecha, LocalTime horaInicio) {
+        if (consulta.getFechaDesde() != null && fecha.isBefore(consulta.getFechaDesde())) {
+            return false;
+        }
+        if (consulta.getFechaHasta() != null && fecha.isAfter(consulta.getFechaHasta())) {
+            return false;
+        }
+        Set<PreferenciaHoraria> preferencias = consulta.getPreferencias();
+        if (preferencias == null || preferencias.isEmpty()) {
+            return true;
+        }
+        if (horaInicio == null) {
+            return false;
+        }
+        DiaDeLaSemana dia = convertirDayOfWeekADiaDeLaSemana(fecha.getDayOfWeek());
+        return preferencias.stream().anyMatch(pref -> pref.getDiaDeLaSemana().equals(dia)
+            && !horaInicio.isBefore(pref.getHoraDesde())
+            && horaInicio.isBefore(pref.getHoraHasta()));
+    }
+
+    /**
+     * Aplica el generador a cada esquema en el executor de la agenda y une los resultados en el
+     * orden de la lista de esquemas, de modo que la salida no depende del paralelismo configurado.
+     * Con paralelismo 1 (o un solo esquema) se genera en el hilo de la petición.
+     */
+    private <T> List<T> generarPorEsquema(List<EsquemaTurno> esquemas, CalendarioAgenda calendario,
+                                          Function<EsquemaTurno, List<T>> generador) {
+        List<T> resultado = new ArrayList<>();
+        if (paralelismo <= 1 || esquemas.size() <= 1) {
+            esquemas.forEach(esquema -> resultado.addAll(generador.apply(esquema)));
+            return resultado;
         }
         
-        System.out.println("✅ [AgendaService] Total slots generados: " + todosLosSlots.size());
+        // Los consultorios se cargan en el hilo de la petición (con su sesión abierta);
+        // los hilos del executor solo leen del calendario ya completo
+        esquemas.stream()
+            .filter(esquema -> esquema.getConsultorio() != null)
+            .forEach(esquema -> calendario.consultorio(esquema.getConsultorio().getId()));
         
-        // === FILTRADO POR PREFERENCIAS HORARIAS (TAREA 7) ===
-        Set<PreferenciaHoraria> preferenciasDelPaciente = null;
+        List<Future<List<T>>> tareas = new ArrayList<>(esquemas.size());
+        for (EsquemaTurno esquema : esquemas) {
+            tareas.add(agendaExecutor.submit(() -> generador.apply(esquema)));
+        }
         
-        if (filtrarPorPreferencia && currentUser != null) {
-            System.out.println("🔍 [AgendaService] Filtrado por preferencias activado para usuario: " + currentUser.getEmail());
-            
-            // Obtener el paciente asociado al usuario autenticado
-            Paciente paciente = pacienteService.findByUser(currentUser);
-            
-            if (paciente != null) {
-                preferenciasDelPaciente = paciente.getPreferenciasHorarias();
-                
-                if (preferenciasDelPaciente != null && !preferenciasDelPaciente.isEmpty()) {
-                    System.out.println("✅ [AgendaService] Paciente encontrado con " + preferenciasDelPaciente.size() + " preferencias horarias");
-                } else {
-                    System.out.println("⚠️ [AgendaService] Paciente encontrado pero sin preferencias horarias configuradas");
-                }
-            } else {
-                System.out.println("⚠️ [AgendaService] No se encontró entidad Paciente para el usuario: " + currentUser.getEmail());
+        try {
+            for (Future<List<T>> tarea : tareas) {
+                resultado.addAll(tarea.get());
+            }
+        } catch (InterruptedException e) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generación de agenda interrumpida", e);
+        } catch (ExecutionException e) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException("Error al generar la agenda", e.getCause());
         }
-        
-        // Crear una copia final de la variable para usar en el lambda
-        final Set<PreferenciaHoraria> preferenciasFinales = preferenciasDelPaciente;
-        // === FIN: FILTRADO POR PREFERENCIAS ===
-        
-        // Filtrar solo slots disponibles (no ocupados) y mapear a DTO público
-        LocalDate fechaActual = LocalDate.now();
-        
-        List<TurnoPublicoDTO> resultado = todosLosSlots.stream()
+        return resultado;
+    }
+    
+    /**
+     * Genera los slots públicos disponibles de un esquema no cacheado y los guarda en el
+     * almacén materializado de disponibilidad.
+     *
+     * @param version Versión del almacén leída antes de cargar el calendario
+     */
+    private List<TurnoPublicoDTO> generarSlotsPublicosDeEsquema(EsquemaTurno esquema, int semanas, LocalDate hoy,
+                                                               CalendarioAgenda calendario, long version) {
+        List<TurnoPublicoDTO> disponibles = generarEventosDesdeEsquemaTurno(esquema, semanas, hoy, calendario).stream()
             .filter(slot -> slot.getEsSlot() != null && slot.getEsSlot()) // Solo slots generados
             .filter(slot -> slot.getOcupado() == null || !slot.getOcupado()) // Solo disponibles
             .filter(slot -> slot.getEnMantenimiento() == null || !slot.getEnMantenimiento()) // Sin mantenimiento
-            .filter(slot -> !slot.getFecha().isBefore(fechaActual)) // Solo fechas futuras
-            .filter(slot -> {
-                // === APLICAR FILTRO DE PREFERENCIAS SI ESTÁ ACTIVADO ===
-                if (preferenciasFinales == null || preferenciasFinales.isEmpty()) {
-                    return true; // Sin preferencias, mostrar todos los turnos
-                }
-                
-                // Obtener el día de la semana del turno
-                DayOfWeek dayOfWeek = slot.getFecha().getDayOfWeek();
-                DiaDeLaSemana diaDelTurno = convertirDayOfWeekADiaDeLaSemana(dayOfWeek);
-                
-                // Verificar si alguna preferencia coincide con el turno
-                boolean coincideConPreferencia = preferenciasFinales.stream()
-                    .anyMatch(pref -> {
-                        // Verificar si el día coincide
-                        if (!pref.getDiaDeLaSemana().equals(diaDelTurno)) {
-                            return false;
-                        }
-                        
-                        // Verificar si la hora del turno está dentro del rango de la preferencia
-                        LocalTime horaInicioTurno = slot.getHoraInicio();
-                        LocalTime horaDesdePreferencia = pref.getHoraDesde();
-                        LocalTime horaHastaPreferencia = pref.getHoraHasta();
-                        
-                        // El turno debe empezar en o después de horaDesde y antes de horaHasta
-                        return !horaInicioTurno.isBefore(horaDesdePreferencia) && 
-                               horaInicioTurno.isBefore(horaHastaPreferencia);
-                    });
-                
-                return coincideConPreferencia;
-            })
+            .filter(slot -> !slot.getFecha().isBefore(hoy)) // Solo fechas futuras
             .map(this::mapearSlotATurnoPublico)
-            .sorted((t1, t2) -> {
-                // Ordenar por fecha y luego por hora
-                int fechaComp = t1.getFecha().compareTo(t2.getFecha());
-                if (fechaComp != 0) return fechaComp;
-                return t1.getHoraInicio().compareTo(t2.getHoraInicio());
-            })
             .collect(Collectors.toList());
         
-        if (filtrarPorPreferencia && preferenciasFinales != null && !preferenciasFinales.isEmpty()) {
-            System.out.println("✅ [AgendaService] Turnos después de filtrar por preferencias: " + resultado.size());
-        }
-                
-        return resultado;
+        agendaCacheService.guardar(esquema, hoy, semanas, disponibles, version);
+        return disponibles;
     }
     
     /**
@@ -0,0 +1,444 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import unpsjb.labprog.backend.business.repository.AuditArchivoMesRepository;
+import unpsjb.labprog.backend.model.AuditArchivoMes;
+import unpsjb.labprog.backend.model.AuditLog;
+
+/**
+ * Separación en caliente/frío de la auditoría.
+ *
+ * audit_log conserva solo los últimos meses (auditoria.archivo.meses-en-caliente). Una vez por
+ * mes los meses cerrados más viejos se compactan en un archivo JSONL con gzip por mes en
+ * auditoria.archivo.directorio y se borran de la tabla, así sus índices y los LOB no crecen
+ * indefinidamente. Cada archivo queda registrado en audit_archivo_mes con el rango de fechas
+ * que cubre.
+ *
+ * Viene deshabilitado por defecto: solo findByFilters (paginado por archivo) y getLogsByDateRange
+ * (hasta MAX_REGISTROS_ARCHIVO registros archivados) leen los archivos. El historial por turno,
+ * las estadísticas, la búsqueda de texto, los logs por usuario o entidad y verifyAuditIntegrity
+ * ven solo la tabla, así que al habilitarlo esos registros dejan de aparecer ahí.
+ *
+ * auditoria.archivo.directorio tiene que ser almacenamiento compartido (volumen de red u otro
+ * montaje común) visible con la misma ruta desde todas las instancias: el archivo lo escribe la
+ * instancia que toma el lease de la tarea y lo leen todas al consultar.
+ *
+ * Con la cadena de integridad activa un mes se archiva recién cuando todos sus registros están
+ * sellados, y se archiva un prefijo contiguo de la cadena (hasta la mayor secuencia del mes),
+ * de modo que en la tabla no quedan huecos y la verificación retoma desde el primer registro que
+ * queda. Los registros archivados conservan secuencia y hashes para poder verificarlos fuera.
+ */
+@Service
+public class AuditArchivoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditArchivoService.class);
+
+    private static final ZoneId ZONA = ZoneId.of("America/Argentina/Buenos_Aires");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AuditArchivoMesRepository archivoRepository;
+
+    @Autowired
+    private AuditIntegridadService auditIntegridadService;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_ARCHIVO = "auditoria.archivo.meses-cerrados";
+
+    @Value("${auditoria.archivo.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${auditoria.archivo.directorio:./audit-archive}")
+    private String directorio;
+
+    @Value("${auditoria.archivo.meses-en-caliente:12}")
+    private int mesesEnCaliente;
+
+    private TransactionTemplate transaccionArchivo;
+    private JdbcTemplate jdbcLectura;
+
+    @PostConstruct
+    public void iniciar() {
+        // Lectura y borrado sobre la misma foto: lo que se inserte mientras tanto queda en la tabla
+        transaccionArchivo = new TransactionTemplate(transactionManager);
+        transaccionArchivo.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        jdbcLectura = new JdbcTemplate(dataSource);
+        jdbcLectura.setFetchSize(500);
+    }
+
+    /**
+     * Archiva los meses cerrados que quedaron fuera de la ventana en caliente, del más antiguo
+     * al más reciente. Se detiene en el primer mes que todavía no se puede archivar. Corre en
+     * una sola instancia a la vez (lease de TareaProgramadaService).
+     */
+    @Scheduled(cron = "${auditoria.archivo.cron:0 0 3 1 * ?}", zone = "America/Argentina/Buenos_Aires")
+    public void archivarMesesCerrados() {
+        if (!habilitado) {
+            return;
+        }
+        tareaProgramadaService.ejecutar(TAREA_ARCHIVO, Duration.ofHours(1), this::archivarMesesCerradosEnInstancia);
+    }
+
+    /**
+     * Ejecución manual del archivado. false si otra instancia tiene tomada la tarea.
+     */
+    public boolean archivarMesesCerradosManual() {
+        if (!habilitado) {
+            throw new IllegalStateException("El archivo de auditoría está deshabilitado");
+        }
+        return tareaProgramadaService.ejecutar(TAREA_ARCHIVO, Duration.ofHours(1),
+                this::archivarMesesCerradosEnInstancia);
+    }
+
+    private void archivarMesesCerradosEnInstancia() {
+        YearMonth primerMesEnCaliente = YearMonth.now(ZONA).minusMonths(mesesEnCaliente);
+        try {
+            while (true) {
+                LocalDateTime masAntiguo = jdbcTemplate.queryForObject(
+                        "SELECT MIN(performed_at) FROM audit_log", LocalDateTime.class);
+                if (masAntiguo == null) {
+                    return;
+                }
+                YearMonth mes = YearMonth.from(masAntiguo);
+                if (!mes.isBefore(primerMesEnCaliente) || !archivarMes(mes)) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error archivando auditoría: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registros archivados cuyo performedAt está en el rango y cumplen el filtro, del archivo
+     * más reciente al más antiguo, hasta un máximo.
+     */
+    public List<AuditLog> buscar(LocalDateTime desde, LocalDateTime hasta, Predicate<AuditLog> filtro, int maximo) {
+        List<AuditLog> resultado = new ArrayList<>();
+        for (AuditArchivoMes archivo : archivoRepository.findSolapados(desde, hasta)) {
+            leer(archivo, desde, hasta, filtro, maximo - resultado.size(), resultado);
+            if (resultado.size() >= maximo) {
+                break;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Archivos con registros dentro del rango, del más reciente al más antiguo
+     */
+    public List<AuditArchivoMes> archivosSolapados(LocalDateTime desde, LocalDateTime hasta) {
+        return archivoRepository.findSolapados(desde, hasta);
+    }
+
+    /**
+     * Todos los registros de un archivo cuyo performedAt está en el rango y cumplen el filtro,
+     * en el orden del archivo (por id)
+     */
+    public List<AuditLog> leer(AuditArchivoMes archivo, LocalDateTime desde, LocalDateTime hasta,
+            Predicate<AuditLog> filtro) {
+        List<AuditLog> resultado = new ArrayList<>();
+        leer(archivo, desde, hasta, filtro, Integer.MAX_VALUE, resultado);
+        return resultado;
+    }
+
+    private void leer(AuditArchivoMes archivo, LocalDateTime desde, LocalDateTime hasta, Predicate<AuditLog> filtro,
+            int maximo, List<AuditLog> resultado) {
+        int leidos = 0;
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(Paths.get(archivo.getArchivo()))), StandardCharsets.UTF_8))) {
+            String linea;
+            while (leidos < maximo && (linea = lector.readLine()) != null) {
+                RegistroArchivado registro = objectMapper.readValue(linea, RegistroArchivado.class);
+                if (registro.performedAt() == null || registro.performedAt().isBefore(desde)
+                        || registro.performedAt().isAfter(hasta)) {
+                    continue;
+                }
+                AuditLog auditLog = registro.aAuditLog();
+                if (filtro == null || filtro.test(auditLog)) {
+                    resultado.add(auditLog);
+                    leidos++;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("❌ No se pudo leer el archivo de auditoría {}: {}", archivo.getArchivo(), e.getMessage());
+        }
+    }
+
+    /**
+     * true si hay registros archivados que pueden caer en el rango
+     */
+    public boolean hayArchivadosEntre(LocalDateTime desde, LocalDateTime hasta) {
+        return archivoRepository.existeEnRango(desde, hasta);
+    }
+
+    /**
+     * Borra los archivos cuyos registros son todos anteriores a la fecha
+     *
+     * @return cantidad de archivos eliminados
+     */
+    public int eliminarArchivosAnteriores(LocalDateTime fecha) {
+        int eliminados = 0;
+        for (AuditArchivoMes archivo : archivoRepository.findByHastaBefore(fecha)) {
+            try {
+                Files.deleteIfExists(Paths.get(archivo.getArchivo()));
+                archivoRepository.delete(archivo);
+                eliminados++;
+            } catch (IOException e) {
+                logger.error("❌ No se pudo borrar el archivo de auditoría {}: {}", archivo.getArchivo(), e.getMessage());
+            }
+        }
+        return eliminados;
+    }
+
+    /**
+     * Configuración y archivos generados
+     */
+    public Map<String, Object> getEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitado", habilitado);
+        estado.put("directorio", Paths.get(directorio).toAbsolutePath().toString());
+        estado.put("mesesEnCaliente", mesesEnCaliente);
+        List<AuditArchivoMes> archivos = archivoRepository.findAllByOrderByDesdeDesc();
+        estado.put("registrosArchivados", archivos.stream().mapToLong(AuditArchivoMes::getRegistros).sum());
+        estado.put("bytesArchivados", archivos.stream().mapToLong(AuditArchivoMes::getTamanoBytes).sum());
+        estado.put("archivos", archivos);
+        return estado;
+    }
+
+    /**
+     * Archiva un mes cerrado
+     *
+     * @return true si se archivaron registros
+     */
+    private boolean archivarMes(YearMonth mes) throws IOException {
+        LocalDateTime fin = mes.plusMonths(1).atDay(1).atStartOfDay();
+
+        if (auditIntegridadService.isHabilitada()) {
+            Long sinSellar = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM audit_log WHERE performed_at < ? AND secuencia_integridad IS NULL",
+                    Long.class, Timestamp.valueOf(fin));
+            if (sinSellar != null && sinSellar > 0) {
+                logger.info("⏳ Archivo de auditoría {} pospuesto: {} registros sin sellar", mes, sinSellar);
+                return false;
+            }
+        }
+
+        Path carpeta = Paths.get(directorio);
+        Files.createDirectories(carpeta);
+        Path destino = carpeta.resolve("audit-" + mes + "-" + System.currentTimeMillis() + ".jsonl.gz");
+        Path temporal = carpeta.resolve(destino.getFileName() + ".tmp");
+
+        try {
+            Boolean archivado = transaccionArchivo.execute(status -> {
+                Long hastaSecuencia = jdbcTemplate.queryForObject(
+                        "SELECT MAX(secuencia_integridad) FROM audit_log WHERE performed_at < ?",
+                        Long.class, Timestamp.valueOf(fin));
+                String criterio = " WHERE a.performed_at < ? OR a.secuencia_integridad <= ?";
+
+                Resumen resumen = escribirArchivo(temporal, criterio, fin, hastaSecuencia);
+                if (resumen.registros == 0) {
+                    return false;
+                }
+
+                if (auditIntegridadService.lobsEnLargeObjects()) {
+                    jdbcTemplate.query("SELECT lo_unlink(l.oid) FROM pg_largeobject_metadata l WHERE l.oid IN ("
+                            + "SELECT a.old_values FROM audit_log a" + criterio
+                            + " UNION SELECT a.new_values FROM audit_log a" + criterio + ")",
+                            rs -> { }, Timestamp.valueOf(fin), hastaSecuencia, Timestamp.valueOf(fin), hastaSecuencia);
+                }
+                int borrados = jdbcTemplate.update("DELETE FROM audit_log a" + criterio, Timestamp.valueOf(fin),
+                        hastaSecuencia);
+                if (borrados != resumen.registros) {
+                    throw new IllegalStateException("Se archivaron " + resumen.registros + " registros pero se borrarían "
+                            + borrados);
+                }
+
+                try {
+                    Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                AuditArchivoMes archivo = new AuditArchivoMes();
+                archivo.setMes(mes.toString());
+                archivo.setArchivo(destino.toAbsolutePath().toString());
+                archivo.setRegistros(resumen.registros);
+                archivo.setDesde(resumen.desde);
+                archivo.setHasta(resumen.hasta);
+                archivo.setSecuenciaDesde(resumen.secuenciaDesde);
+                archivo.setSecuenciaHasta(resumen.secuenciaHasta);
+                archivo.setSha256(resumen.sha256);
+                archivo.setTamanoBytes(resumen.tamanoBytes);
+                archivo.setCreadoEn(LocalDateTime.now(ZONA));
+                archivoRepository.save(archivo);
+
+                logger.info("📦 Auditoría de {} archivada: {} registros en {} ({} bytes)", mes, resumen.registros,
+                        destino, resumen.tamanoBytes);
+                return true;
+            });
+            return Boolean.TRUE.equals(archivado);
+        } catch (RuntimeException e) {
+            // Si la transacción no confirmó, los registros siguen en la tabla: el archivo sobra
+            Files.deleteIfExists(destino);
+            throw e;
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    private Resumen escribirArchivo(Path temporal, String criterio, LocalDateTime fin, Long hastaSecuencia) {
+        Resumen resumen = new Resumen();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DigestOutputStream salida = new DigestOutputStream(Files.newOutputStream(temporal), digest);
+                    BufferedWriter escritor = new BufferedWriter(new OutputStreamWriter(
+                            new GZIPOutputStream(salida), StandardCharsets.UTF_8))) {
+                jdbcLectura.query("SELECT " + auditIntegridadService.columnasSelect() + " FROM audit_log a" + criterio
+                        + " ORDER BY a.id", rs -> {
+                            RegistroArchivado registro = RegistroArchivado.de(rs);
+                            try {
+                                escritor.write(objectMapper.writeValueAsString(registro));
+                                escritor.newLine();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            resumen.agregar(registro);
+                        }, Timestamp.valueOf(fin), hastaSecuencia);
+            }
+            resumen.sha256 = HexFormat.of().formatHex(digest.digest());
+            resumen.tamanoBytes = Files.size(temporal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+        return resumen;
+    }
+
+    /**
+     * Totales del archivo que se está escribiendo
+     */
+    private static class Resumen {
+        long registros;
+        LocalDateTime desde;
+        LocalDateTime hasta;
+        Long secuenciaDesde;
+        Long secuenciaHasta;
+        String sha256;
+        long tamanoBytes;
+
+        void agregar(RegistroArchivado registro) {
+            registros++;
+            if (desde == null || registro.performedAt().isBefore(desde)) {
+                desde = registro.performedAt();
+            }
+            if (hasta == null || registro.performedAt().isAfter(hasta)) {
+                hasta = registro.performedAt();
+            }
+            Long secuencia = registro.secuenciaIntegridad();
+            if (secuencia != null) {
+                secuenciaDesde = secuenciaDesde == null ? secuencia : Math.min(secuenciaDesde, secuencia);
+                secuenciaHasta = secuenciaHasta == null ? secuencia : Math.max(secuenciaHasta, secuencia);
+            }
+        }
+    }
+
+    /**
+     * Línea del archivo: un registro de audit_log completo, con sus valores y su sellado
+     */
+    record RegistroArchivado(Integer id, Integer turnoId, String entityType, Long entityId, String action,
+            LocalDateTime performedAt, String performedBy, String estadoAnterior, String estadoNuevo,
+            String oldValues, String newValues, String reason, Long secuenciaIntegridad, String hashAnterior,
+            String hashRegistro) {
+
+        static RegistroArchivado de(ResultSet rs) throws SQLException {
+            Timestamp performedAt = rs.getTimestamp("performed_at");
+            return new RegistroArchivado(rs.getInt("id"), (Integer) rs.getObject("turno_id"),
+                    rs.getString("entity_type"), (Long) rs.getObject("entity_id"), rs.getString("action"),
+                    performedAt != null ? performedAt.toLocalDateTime() : null, rs.getString("performed_by"),
+                    rs.getString("estado_anterior"), rs.getString("estado_nuevo"), rs.getString("old_values"),
+                    rs.getString("new_values"), rs.getString("reason"), (Long) rs.getObject("secuencia_integridad"),
+                    rs.getString("hash_anterior"), rs.getString("hash_registro"));
+        }
+
+        AuditLog aAuditLog() {
+            // El turno no se carga (igual que en las consultas paginadas); queda en entityId
+            AuditLog auditLog = new AuditLog();
+            auditLog.setId(id);
+            auditLog.setEntityType(entityType);
+            auditLog.setEntityId(entityId);
+            auditLog.setAction(action);
+            auditLog.setPerformedAt(performedAt);
+            auditLog.setPerformedBy(performedBy);
+            auditLog.setEstadoAnterior(estadoAnterior);
+            auditLog.setEstadoNuevo(estadoNuevo);
+            auditLog.setOldValues(oldValues);
+            auditLog.setNewValues(newValues);
+            auditLog.setReason(reason);
+            auditLog.setSecuenciaIntegridad(secuenciaIntegridad);
+            auditLog.setHashAnterior(hashAnterior);
+            auditLog.setHashRegistro(hashRegistro);
+            return auditLog;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Índice de búsqueda de texto completo sobre audit_log.
+ *
+ * La columna busqueda (tsvector, índice GIN idx_audit_busqueda) la completa un trigger en cada
+ * alta o cambio de los campos buscables, sin importar quién inserte (JPA o AuditLogPipelineService).
+ * Pondera usuario y acción (A), motivo (B), tipo de entidad y estados (C) y los valores JSON (D).
+ * Usuario, acción y estados usan la configuración 'simple' (sin stemming) y los textos libres
+ * 'spanish'; la consulta combina ambas. Hibernate no conoce la columna, por eso la crea
+ * prepararIndice() al arrancar; los registros previos se indexan de a lotes en segundo plano.
+ */
+@Service
+public class AuditBusquedaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditBusquedaService.class);
+
+    public static final String INDICE_BUSQUEDA = "idx_audit_busqueda";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuditIntegridadService auditIntegridadService;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_INDEXADO = "auditoria.busqueda.indexado";
+
+    @Value("${auditoria.busqueda.tamano-lote:5000}")
+    private int tamanoLote;
+
+    @Value("${auditoria.busqueda.indexado-ms:30000}")
+    private long indexadoMs;
+
+    private volatile boolean indiceCompleto;
+
+    /**
+     * Crea (o actualiza) la columna, la función de documento, el trigger y el índice GIN
+     */
+    public void prepararIndice() {
+        jdbcTemplate.execute("ALTER TABLE audit_log ADD COLUMN IF NOT EXISTS busqueda tsvector");
+
+        String oldValues = valorLob("old_values");
+        String newValues = valorLob("new_values");
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION audit_log_documento(a audit_log) RETURNS tsvector
+                LANGUAGE sql STABLE AS $$
+                    SELECT setweight(to_tsvector('simple', coalesce(a.performed_by, '') || ' ' || coalesce(a.action, '')), 'A')
+                        || setweight(to_tsvector('spanish', coalesce(a.reason, '')), 'B')
+                        || setweight(to_tsvector('simple', coalesce(a.entity_type, '') || ' '
+                               || coalesce(a.estado_anterior, '') || ' ' || coalesce(a.estado_nuevo, '')), 'C')
+                        || setweight(to_tsvector('spanish', left(coalesce(%s, '') || ' ' || coalesce(%s, ''), 200000)), 'D')
+                $$
+                """.formatted(oldValues, newValues));
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION audit_log_busqueda_trigger() RETURNS trigger
+                LANGUAGE plpgsql AS $$
+                BEGIN
+                    NEW.busqueda := audit_log_documento(NEW);
+                    RETURN NEW;
+                END
+                $$
+                """);
+        jdbcTemplate.execute("DROP TRIGGER IF EXISTS audit_log_busqueda ON audit_log");
+        jdbcTemplate.execute("""
+                CREATE TRIGGER audit_log_busqueda
+                BEFORE INSERT OR UPDATE OF performed_by, action, reason, entity_type, estado_anterior, estado_nuevo,
+                    old_values, new_values
+                ON audit_log FOR EACH ROW EXECUTE FUNCTION audit_log_busqueda_trigger()
+                """);
+        // CONCURRENTLY: la primera creación sobre una tabla grande no bloquea las escrituras
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + INDICE_BUSQUEDA
+                + " ON audit_log USING gin (busqueda)");
+        logger.info("✅ Índice de búsqueda de auditoría listo");
+    }
+
+    /**
+     * Indexa los registros anteriores al trigger, de a lotes, hasta que no quede ninguno.
+     * Corre en una sola instancia a la vez; las demás lo dan por completo al no encontrar pendientes.
+     */
+    @Scheduled(fixedDelayString = "${auditoria.busqueda.indexado-ms:30000}", initialDelay = 20000)
+    public void completarIndice() {
+        if (indiceCompleto) {
+            return;
+        }
+        tareaProgramadaService.ejecutar(TAREA_INDEXADO, Duration.ofMillis(indexadoMs * 9 / 10),
+                this::completarIndiceEnInstancia);
+    }
+
+    private void completarIndiceEnInstancia() {
+        try {
+            int total = 0;
+            int actualizados;
+            do {
+                actualizados = jdbcTemplate.update("""
+                        UPDATE audit_log a SET busqueda = audit_log_documento(a)
+                        WHERE a.id IN (SELECT id FROM audit_log WHERE busqueda IS NULL LIMIT ?)
+                        """, tamanoLote);
+                total += actualizados;
+            } while (actualizados == tamanoLote);
+            if (total > 0) {
+                logger.info("🔎 Índice de búsqueda de auditoría: {} registros previos indexados", total);
+            }
+            indiceCompleto = true;
+        } catch (Exception e) {
+            logger.error("❌ Error indexando registros de auditoría para búsqueda: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Convierte el texto ingresado en una consulta to_tsquery: cada palabra como prefijo y todas
+     * requeridas. Retorna null si no queda ninguna palabra buscable.
+     */
+    public static String consultaTexto(String termino) {
+        if (termino == null) {
+            return null;
+        }
+        String consulta = Arrays.stream(termino.replaceAll("[^\\p{L}\\p{N}@._-]+", " ").trim().split(" "))
+                .filter(palabra -> palabra.matches(".*[\\p{L}\\p{N}].*"))
+                .map(palabra -> palabra + ":*")
+                .collect(Collectors.joining(" & "));
+        return consulta.isEmpty() ? null : consulta;
+    }
+
+    private String valorLob(String columna) {
+        if (!auditIntegridadService.lobsEnLargeObjects()) {
+            return "a." + columna;
+        }
+        return "(SELECT convert_from(lo_get(m.oid), 'UTF8') FROM pg_largeobject_metadata m WHERE m.oid = a."
+                + columna + ")";
+    }
+}
@@ -0,0 +1,472 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import unpsjb.labprog.backend.business.repository.AuditIntegridadCheckpointRepository;
+import unpsjb.labprog.backend.model.AuditIntegridadCheckpoint;
+
+/**
+ * Cadena de hashes de la auditoría y su verificación incremental.
+ *
+ * Sellado: los registros se insertan sin hash (por JPA o por AuditLogPipelineService) y este
+ * servicio los encadena en orden de id. A cada uno le asigna una secuencia consecutiva, el hash
+ * del registro anterior y su propio hash: SHA-256(hashAnterior + secuencia + contenido). Sellar
+ * después de insertar evita serializar las escrituras de auditoría, y como la cadena sigue la
+ * secuencia (no el id), un registro que confirma tarde simplemente entra más adelante.
+ *
+ * Verificación: recorre la cadena por secuencia en lotes, recalcula cada hash y controla que no
+ * falten eslabones, guardando en audit_integridad_checkpoint hasta dónde llegó. Cada ejecución
+ * retoma desde ahí, así que millones de registros se cubren de a poco. Una vez al día se reinicia
+ * la pasada desde el principio para volver a controlar los registros ya verificados.
+ *
+ * Si la depuración de logs antiguos borró el comienzo de la cadena, la pasada toma como ancla el
+ * hash anterior del primer registro que queda; los huecos posteriores sí se reportan. Lo mismo
+ * cuando el archivado (AuditArchivoService) se llevó un prefijo de la cadena mientras la pasada
+ * estaba dentro de él: las secuencias faltantes hasta la mayor registrada en audit_archivo_mes
+ * están en los archivos y la pasada se ancla en el primer registro que queda en la tabla.
+ */
+@Service
+public class AuditIntegridadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditIntegridadService.class);
+
+    public static final String HASH_INICIAL = "0".repeat(64);
+
+    public static final String ESTADO_VERIFICANDO = "VERIFICANDO";
+    public static final String ESTADO_OK = "OK";
+    public static final String ESTADO_ALTERADO = "ALTERADO";
+
+    private static final String[] COLUMNAS_CONTENIDO = { "id", "turno_id", "entity_type", "entity_id", "action",
+            "performed_at", "performed_by", "estado_anterior", "estado_nuevo", "old_values", "new_values", "reason" };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AuditIntegridadCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_SELLADO = "auditoria.integridad.sellado";
+    static final String TAREA_VERIFICACION = "auditoria.integridad.verificacion";
+    static final String TAREA_REINICIO_VERIFICACION = "auditoria.integridad.reinicio-verificacion";
+
+    @Value("${auditoria.integridad.habilitada:true}")
+    private boolean habilitada;
+
+    @Value("${auditoria.integridad.tamano-lote:1000}")
+    private int tamanoLote;
+
+    @Value("${auditoria.integridad.max-lotes:50}")
+    private int maxLotes;
+
+    @Value("${auditoria.integridad.sellado-ms:15000}")
+    private long selladoMs;
+
+    @Value("${auditoria.integridad.verificacion-ms:60000}")
+    private long verificacionMs;
+
+    private TransactionTemplate transaccion;
+    private volatile String columnasSelect;
+    private volatile Boolean lobsEnLargeObjects;
+
+    // Métricas
+    private final AtomicLong registrosSellados = new AtomicLong();
+    private final AtomicLong registrosVerificados = new AtomicLong();
+    private final AtomicLong nanosVerificando = new AtomicLong();
+    private final AtomicLong alteracionesDetectadas = new AtomicLong();
+    private volatile double ultimaTasaVerificacion;
+
+    @PostConstruct
+    public void iniciar() {
+        transaccion = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sella los registros pendientes (hasta max-lotes lotes por ejecución). Una sola instancia
+     * sella a la vez: la cadena avanza en orden de secuencia.
+     */
+    @Scheduled(fixedDelayString = "${auditoria.integridad.sellado-ms:15000}", initialDelay = 30000)
+    public void sellarPendientes() {
+        if (!habilitada) {
+            return;
+        }
+        tareaProgramadaService.ejecutar(TAREA_SELLADO, Duration.ofMillis(selladoMs * 9 / 10),
+                this::sellarPendientesEnInstancia);
+    }
+
+    private void sellarPendientesEnInstancia() {
+        try {
+            for (int i = 0; i < maxLotes; i++) {
+                Integer sellados = transaccion.execute(status -> sellarLote());
+                if (sellados == null || sellados < tamanoLote) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error sellando registros de auditoría: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Avanza la verificación desde el último checkpoint (hasta max-lotes lotes por ejecución)
+     */
+    @Scheduled(fixedDelayString = "${auditoria.integridad.verificacion-ms:60000}", initialDelay = 60000)
+    public void verificarPendientes() {
+        if (!habilitada) {
+            return;
+        }
+        tareaProgramadaService.ejecutar(TAREA_VERIFICACION, Duration.ofMillis(verificacionMs * 9 / 10),
+                this::verificarPendientesEnInstancia);
+    }
+
+    private void verificarPendientesEnInstancia() {
+        long inicio = System.nanoTime();
+        long verificadosAntes = registrosVerificados.get();
+        try {
+            for (int i = 0; i < maxLotes; i++) {
+                Boolean quedan = transaccion.execute(status -> verificarLote());
+                if (!Boolean.TRUE.equals(quedan)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error verificando la cadena de auditoría: {}", e.getMessage(), e);
+        }
+        long nanos = System.nanoTime() - inicio;
+        long verificados = registrosVerificados.get() - verificadosAntes;
+        if (verificados > 0) {
+            nanosVerificando.addAndGet(nanos);
+            ultimaTasaVerificacion = verificados * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    /**
+     * Reinicio diario de la verificación (una sola instancia lo ejecuta)
+     */
+    @Scheduled(cron = "${auditoria.integridad.reverificacion-cron:0 0 4 * * ?}", zone = "America/Argentina/Buenos_Aires")
+    public void reiniciarVerificacionProgramada() {
+        if (!habilitada) {
+            return;
+        }
+        tareaProgramadaService.ejecutar(TAREA_REINICIO_VERIFICACION, Duration.ofHours(1), this::reiniciarVerificacion);
+    }
+
+    /**
+     * Reinicia la verificación desde el comienzo de la cadena. Es una sola actualización del
+     * checkpoint, así que el pedido manual no espera al lease de la tarea diaria.
+     */
+    public void reiniciarVerificacion() {
+        if (!habilitada) {
+            return;
+        }
+        transaccion.executeWithoutResult(status -> {
+            asegurarCheckpoint(AuditIntegridadCheckpoint.VERIFICACION);
+            jdbcTemplate.update("""
+                    UPDATE audit_integridad_checkpoint
+                    SET secuencia = 0, hash = ?, estado = ?, detalle = NULL, actualizado_en = ?
+                    WHERE nombre = ?
+                    """, HASH_INICIAL, ESTADO_VERIFICANDO, Timestamp.valueOf(LocalDateTime.now()),
+                    AuditIntegridadCheckpoint.VERIFICACION);
+        });
+        logger.info("🔁 Verificación de la cadena de auditoría reiniciada desde el comienzo");
+    }
+
+    /**
+     * Verifica los hashes de los registros sellados de un turno (los pendientes de sellar no cuentan)
+     */
+    public boolean verificarTurno(Integer turnoId) {
+        List<Registro> registros = jdbcTemplate.query(
+                "SELECT " + columnasSelect() + " FROM audit_log a"
+                        + " WHERE a.turno_id = ? AND a.secuencia_integridad IS NOT NULL",
+                this::mapearRegistro, turnoId);
+        for (Registro registro : registros) {
+            if (!calcularHash(registro.hashAnterior(), registro.secuencia(), registro.contenido())
+                    .equals(registro.hashRegistro())) {
+                logger.warn("⚠️ Registro de auditoría {} del turno {} no coincide con su hash", registro.id(), turnoId);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estado de los checkpoints y métricas de sellado y verificación
+     */
+    public Map<String, Object> getEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitada", habilitada);
+        for (AuditIntegridadCheckpoint checkpoint : checkpointRepository.findAll()) {
+            Map<String, Object> datos = new LinkedHashMap<>();
+            datos.put("secuencia", checkpoint.getSecuencia());
+            datos.put("estado", checkpoint.getEstado());
+            datos.put("detalle", checkpoint.getDetalle());
+            datos.put("pasadasCompletas", checkpoint.getPasadasCompletas());
+            datos.put("actualizadoEn", checkpoint.getActualizadoEn());
+            estado.put(checkpoint.getNombre().toLowerCase(), datos);
+        }
+        estado.put("pendientesDeSellar", jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM audit_log WHERE secuencia_integridad IS NULL", Long.class));
+        estado.put("registrosSellados", registrosSellados.get());
+        estado.put("registrosVerificados", registrosVerificados.get());
+        estado.put("alteracionesDetectadas", alteracionesDetectadas.get());
+        long nanos = nanosVerificando.get();
+        estado.put("registrosPorSegundo", nanos > 0 ? Math.round(registrosVerificados.get() * 1_000_000_000.0 / nanos) : 0);
+        estado.put("registrosPorSegundoUltimaEjecucion", Math.round(ultimaTasaVerificacion));
+        return estado;
+    }
+
+    private int sellarLote() {
+        Checkpoint checkpoint = bloquearCheckpoint(AuditIntegridadCheckpoint.SELLADO);
+        if (checkpoint == null) {
+            return 0; // Otra instancia está sellando
+        }
+
+        List<Registro> pendientes = jdbcTemplate.query(
+                "SELECT " + columnasSelect() + " FROM audit_log a"
+                        + " WHERE a.secuencia_integridad IS NULL ORDER BY a.id LIMIT ?",
+                this::mapearRegistro, tamanoLote);
+        if (pendientes.isEmpty()) {
+            return 0;
+        }
+
+        long secuencia = checkpoint.secuencia();
+        String hashAnterior = checkpoint.hash();
+        List<Object[]> filas = new ArrayList<>(pendientes.size());
+        for (Registro registro : pendientes) {
+            secuencia++;
+            String hash = calcularHash(hashAnterior, secuencia, registro.contenido());
+            filas.add(new Object[] { secuencia, hashAnterior, hash, registro.id() });
+            hashAnterior = hash;
+        }
+
+        jdbcTemplate.batchUpdate(
+                "UPDATE audit_log SET secuencia_integridad = ?, hash_anterior = ?, hash_registro = ? WHERE id = ?",
+                filas);
+        guardarCheckpoint(AuditIntegridadCheckpoint.SELLADO, secuencia, hashAnterior, null, null, 0);
+        registrosSellados.addAndGet(pendientes.size());
+        return pendientes.size();
+    }
+
+    /**
+     * Verifica un lote a partir del checkpoint.
+     *
+     * @return true si quedan registros sellados por verificar
+     */
+    private boolean verificarLote() {
+        Checkpoint checkpoint = bloquearCheckpoint(AuditIntegridadCheckpoint.VERIFICACION);
+        if (checkpoint == null) {
+            return false; // Otra instancia está verificando
+        }
+        // Se lee antes que los registros: todo lo sellado hasta aquí ya está confirmado
+        Long selladoHasta = jdbcTemplate.queryForObject(
+                "SELECT secuencia FROM audit_integridad_checkpoint WHERE nombre = ?", Long.class,
+                AuditIntegridadCheckpoint.SELLADO);
+
+        List<Registro> registros = jdbcTemplate.query(
+                "SELECT " + columnasSelect() + " FROM audit_log a"
+                        + " WHERE a.secuencia_integridad > ? ORDER BY a.secuencia_integridad LIMIT ?",
+                this::mapearRegistro, checkpoint.secuencia(), tamanoLote);
+
+        // Mayor secuencia archivada: lo que falta hasta ahí se movió a los archivos, no se borró
+        Long archivadoHasta = jdbcTemplate.queryForObject(
+                "SELECT MAX(secuencia_hasta) FROM audit_archivo_mes", Long.class);
+
+        long secuencia = checkpoint.secuencia();
+        String hashAnterior = checkpoint.hash();
+        String estado = checkpoint.estado() != null ? checkpoint.estado() : ESTADO_VERIFICANDO;
+        String detalle = checkpoint.detalle();
+        String inconsistencia;
+
+        for (Registro registro : registros) {
+            inconsistencia = null;
+            if ((secuencia == 0 && registro.secuencia() > 1)
+                    || (registro.secuencia() > secuencia + 1 && archivadoHasta != null
+                            && registro.secuencia() - 1 <= archivadoHasta)) {
+                // Comienzo de la cadena depurado o archivado: el primer registro que queda es el ancla
+                hashAnterior = registro.hashAnterior() != null ? registro.hashAnterior() : "";
+            } else if (registro.secuencia() != secuencia + 1) {
+                inconsistencia = "faltan las secuencias " + (secuencia + 1) + " a " + (registro.secuencia() - 1);
+            } else if (!hashAnterior.equals(registro.hashAnterior())) {
+                inconsistencia = "el hash anterior no coincide con el registro previo";
+            }
+            if (inconsistencia == null && !calcularHash(registro.hashAnterior(), registro.secuencia(),
+                    registro.contenido()).equals(registro.hashRegistro())) {
+                inconsistencia = "el contenido no coincide con su hash";
+            }
+
+            if (inconsistencia != null) {
+                alteracionesDetectadas.incrementAndGet();
+                logger.error("🚨 Cadena de auditoría alterada en el registro {} (secuencia {}): {}",
+                        registro.id(), registro.secuencia(), inconsistencia);
+                if (!ESTADO_ALTERADO.equals(estado)) {
+                    estado = ESTADO_ALTERADO;
+                    detalle = "Registro " + registro.id() + " (secuencia " + registro.secuencia() + "): " + inconsistencia;
+                }
+            }
+            // Se continúa desde el registro tal como está para seguir verificando el resto
+            secuencia = registro.secuencia();
+            hashAnterior = registro.hashRegistro() != null ? registro.hashRegistro() : "";
+        }
+        registrosVerificados.addAndGet(registros.size());
+
+        boolean quedan = registros.size() == tamanoLote;
+        long pasadas = 0;
+        if (!quedan) {
+            if (selladoHasta != null && secuencia < selladoHasta
+                    && (archivadoHasta == null || selladoHasta > archivadoHasta)) {
+                alteracionesDetectadas.incrementAndGet();
+                logger.error("🚨 Cadena de auditoría alterada: faltan los registros sellados {} a {}",
+                        secuencia + 1, selladoHasta);
+                if (!ESTADO_ALTERADO.equals(estado)) {
+                    estado = ESTADO_ALTERADO;
+                    detalle = "Faltan los registros sellados " + (secuencia + 1) + " a " + selladoHasta;
+                }
+            }
+            if (ESTADO_VERIFICANDO.equals(estado)) {
+                estado = ESTADO_OK;
+                pasadas = 1;
+                logger.info("✅ Pasada de verificación de la cadena de auditoría completa hasta la secuencia {}", secuencia);
+            }
+        }
+
+        guardarCheckpoint(AuditIntegridadCheckpoint.VERIFICACION, secuencia, hashAnterior, estado, detalle, pasadas);
+        return quedan;
+    }
+
+    private void asegurarCheckpoint(String nombre) {
+        jdbcTemplate.update("""
+                INSERT INTO audit_integridad_checkpoint (nombre, secuencia, hash, estado, pasadas_completas, actualizado_en)
+                VALUES (?, 0, ?, ?, 0, ?)
+                ON CONFLICT (nombre) DO NOTHING
+                """, nombre, HASH_INICIAL, AuditIntegridadCheckpoint.VERIFICACION.equals(nombre) ? ESTADO_VERIFICANDO : null,
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Bloquea la fila del checkpoint; null si otra transacción ya la tiene tomada
+     */
+    private Checkpoint bloquearCheckpoint(String nombre) {
+        asegurarCheckpoint(nombre);
+        List<Checkpoint> filas = jdbcTemplate.query(
+                "SELECT secuencia, hash, estado, detalle FROM audit_integridad_checkpoint WHERE nombre = ? FOR UPDATE SKIP LOCKED",
+                (rs, i) -> new Checkpoint(rs.getLong("secuencia"), rs.getString("hash"), rs.getString("estado"),
+                        rs.getString("detalle")),
+                nombre);
+        return filas.isEmpty() ? null : filas.get(0);
+    }
+
+    private void guardarCheckpoint(String nombre, long secuencia, String hash, String estado, String detalle,
+            long pasadasNuevas) {
+        jdbcTemplate.update("""
+                UPDATE audit_integridad_checkpoint
+                SET secuencia = ?, hash = ?, estado = ?, detalle = ?, pasadas_completas = pasadas_completas + ?,
+                    actualizado_en = ?
+                WHERE nombre = ?
+                """, secuencia, hash, estado, detalle, pasadasNuevas, Timestamp.valueOf(LocalDateTime.now()), nombre);
+    }
+
+    private Registro mapearRegistro(ResultSet rs, int fila) throws SQLException {
+        StringBuilder contenido = new StringBuilder();
+        for (String columna : COLUMNAS_CONTENIDO) {
+            Object valor = rs.getObject(columna);
+            String texto = valor instanceof Timestamp ts ? ts.toLocalDateTime().toString()
+                    : valor != null ? valor.toString() : null;
+            // Largo como prefijo para que la concatenación no sea ambigua
+            if (texto == null) {
+                contenido.append("-1:");
+            } else {
+                contenido.append(texto.length()).append(':').append(texto);
+            }
+        }
+        long secuencia = rs.getLong("secuencia_integridad"); // 0 si no está sellado
+        return new Registro(rs.getInt("id"), secuencia, rs.getString("hash_anterior"),
+                rs.getString("hash_registro"), contenido.toString());
+    }
+
+    static String calcularHash(String hashAnterior, long secuencia, String contenido) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((hashAnterior != null ? hashAnterior : "").getBytes(StandardCharsets.UTF_8));
+            digest.update(("|" + secuencia + "|").getBytes(StandardCharsets.UTF_8));
+            digest.update(contenido.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Columnas de audit_log (alias a) con el contenido y el sellado de cada registro. Según el tipo
+     * real de las columnas LOB: con oid se lee el contenido del large object (null si ya no existe)
+     * para que el hash cubra el JSON y no solo la referencia. También lo usa AuditArchivoService.
+     */
+    String columnasSelect() {
+        if (columnasSelect == null) {
+            boolean oid = lobsEnLargeObjects();
+            columnasSelect = "a.id, a.turno_id, a.entity_type, a.entity_id, a.action, a.performed_at, a.performed_by,"
+                    + " a.estado_anterior, a.estado_nuevo, "
+                    + (oid ? lobComoTexto("old_values") : "a.old_values AS old_values") + ", "
+                    + (oid ? lobComoTexto("new_values") : "a.new_values AS new_values") + ", "
+                    + "a.reason, a.secuencia_integridad, a.hash_anterior, a.hash_registro";
+        }
+        return columnasSelect;
+    }
+
+    /**
+     * true si old_values/new_values son oid (esquema generado por Hibernate para @Lob String)
+     */
+    boolean lobsEnLargeObjects() {
+        if (lobsEnLargeObjects == null) {
+            List<String> tipos = jdbcTemplate.queryForList(
+                    "SELECT data_type FROM information_schema.columns WHERE table_name = 'audit_log' AND column_name = 'old_values'",
+                    String.class);
+            lobsEnLargeObjects = !tipos.isEmpty() && "oid".equalsIgnoreCase(tipos.get(0));
+        }
+        return lobsEnLargeObjects;
+    }
+
+    private static String lobComoTexto(String columna) {
+        return "CASE WHEN EXISTS (SELECT 1 FROM pg_largeobject_metadata m WHERE m.oid = a." + columna + ")"
+                + " THEN convert_from(lo_get(a." + columna + "), 'UTF8') END AS " + columna;
+    }
+
+    private record Checkpoint(long secuencia, String hash, String estado, String detalle) {
+    }
+
+    private record Registro(Integer id, long secuencia, String hashAnterior, String hashRegistro, String contenido) {
+    }
+}
@@ -0,0 +1,275 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import unpsjb.labprog.backend.model.AuditLog;
+
+/**
+ * Escritura por lotes de los registros de auditoría de turnos, dentro de la transacción del
+ * llamador.
+ *
+ * Cada llamada solo arma el registro y lo deja en el lote de la transacción en curso. Al
+ * confirmarse (beforeCommit) el lote se escribe con un único INSERT por lotes de JDBC: la
+ * serialización JSON de los valores, el flush de la sesión (una vez, el mismo que haría el
+ * commit) y los INSERT salen de cada acción y se pagan una vez por transacción.
+ *
+ * Garantías:
+ * - Las filas se escriben en la misma transacción que el cambio que auditan: se confirman o se
+ *   revierten con él y un evento confirmado nunca queda solo en memoria. Si el INSERT falla, la
+ *   transacción del llamador se revierte.
+ * - El AuditLog devuelto recibe su ID al escribirse el lote; las lecturas hechas después del
+ *   commit lo ven. Dentro de la misma transacción los registros del lote todavía no están en la tabla.
+ * - Cada transacción tiene su propio lote (una REQUIRES_NEW anidada escribe el suyo al confirmar).
+ * - Fuera de una transacción el registro se escribe en el momento.
+ * - No debe llamarse desde afterCommit: ahí la transacción terminada sigue activa y el lote ya
+ *   no se escribiría (igual que EmailSalienteService.encolar).
+ *
+ * Los procesos por lotes que ya agrupan sus registros los escriben directamente con
+ * escribirEnTransaccionActual.
+ */
+@Service
+public class AuditLogPipelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogPipelineService.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile String sqlInsert;
+
+    // Métricas
+    private final AtomicLong registrados = new AtomicLong();
+    private final AtomicLong escritos = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong nanosEscritura = new AtomicLong();
+    private final AtomicInteger maxPorLote = new AtomicInteger();
+
+    /**
+     * Agrega el registro al lote de la transacción activa (o lo escribe en el momento si no hay
+     * ninguna). Los valores que no son Map ni String (por ejemplo una entidad) se serializan acá,
+     * mientras reflejan el estado de la acción; los Map se serializan al escribir el lote.
+     *
+     * @param auditLog  Registro ya armado (no persistido)
+     * @param oldValues Valores anteriores
+     * @param newValues Valores nuevos
+     * @return el mismo AuditLog; su ID se asigna al escribirse el lote
+     */
+    public AuditLog registrar(AuditLog auditLog, Object oldValues, Object newValues) {
+        registrados.incrementAndGet();
+        Pendiente pendiente = new Pendiente(auditLog, instantanea(oldValues), instantanea(newValues));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            escribir(List.of(pendiente), false);
+            return auditLog;
+        }
+        LoteTransaccion lote = loteActual();
+        if (lote.escrito) {
+            // Registrado desde otro beforeCommit, después de escribir el lote: todavía dentro de la transacción
+            escribir(List.of(pendiente), true);
+            return auditLog;
+        }
+        lote.pendientes.add(pendiente);
+        return auditLog;
+    }
+
+    /**
+     * Escribe los registros con un único INSERT por lotes en la transacción activa del llamador:
+     * quedan confirmados o revertidos junto con el cambio que auditan. Pensado para procesos por
+     * lotes que ya agrupan sus cambios en transacciones acotadas.
+     */
+    public void escribirEnTransaccionActual(List<AuditLog> registros) {
+        if (registros.isEmpty()) {
+            return;
+        }
+        List<Pendiente> pendientes = new ArrayList<>(registros.size());
+        for (AuditLog registro : registros) {
+            pendientes.add(new Pendiente(registro, registro.getOldValues(), registro.getNewValues()));
+        }
+        registrados.addAndGet(registros.size());
+        escribir(pendientes, false);
+    }
+
+    /**
+     * Contadores de escritura de auditoría
+     */
+    public Map<String, Object> getEstadisticas() {
+        long totalLotes = lotes.get();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("registrados", registrados.get());
+        estadisticas.put("escritos", escritos.get());
+        estadisticas.put("lotes", totalLotes);
+        estadisticas.put("maxPorLote", maxPorLote.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("tiempoPromedioLoteMicros", totalLotes > 0 ? nanosEscritura.get() / totalLotes / 1_000 : 0);
+        return estadisticas;
+    }
+
+    /**
+     * Lote de la transacción en curso. Se busca entre sus sincronizaciones (que se suspenden con
+     * la transacción) para que una transacción anidada no escriba en el lote de la exterior.
+     */
+    private LoteTransaccion loteActual() {
+        for (TransactionSynchronization sincronizacion : TransactionSynchronizationManager.getSynchronizations()) {
+            if (sincronizacion instanceof LoteTransaccion lote) {
+                return lote;
+            }
+        }
+        LoteTransaccion lote = new LoteTransaccion();
+        TransactionSynchronizationManager.registerSynchronization(lote);
+        return lote;
+    }
+
+    private void escribir(List<Pendiente> pendientes, boolean sincronizarSesion) {
+        long inicio = System.nanoTime();
+        try {
+            if (sincronizarSesion && entityManager.isJoinedToTransaction()) {
+                // El turno auditado puede estar pendiente de flush (ID por secuencia): la FK lo necesita
+                entityManager.flush();
+            }
+            List<Object[]> filas = new ArrayList<>(pendientes.size());
+            for (Pendiente pendiente : pendientes) {
+                AuditLog auditLog = pendiente.auditLog();
+                auditLog.setOldValues(aJson(pendiente.oldValues()));
+                auditLog.setNewValues(aJson(pendiente.newValues()));
+                filas.add(fila(auditLog));
+            }
+            String sql = sqlInsert();
+            jdbcTemplate.execute((ConnectionCallback<Void>) conexion -> {
+                try (PreparedStatement ps = conexion.prepareStatement(sql, new String[] { "id" })) {
+                    for (Object[] fila : filas) {
+                        for (int i = 0; i < fila.length; i++) {
+                            ps.setObject(i + 1, fila[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet ids = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < pendientes.size() && ids.next(); i++) {
+                            pendientes.get(i).auditLog().setId(ids.getInt(1));
+                        }
+                    }
+                }
+                return null;
+            });
+            escritos.addAndGet(pendientes.size());
+            lotes.incrementAndGet();
+            maxPorLote.accumulateAndGet(pendientes.size(), Math::max);
+        } catch (RuntimeException e) {
+            errores.incrementAndGet();
+            logger.error("❌ No se pudo escribir un lote de {} registros de auditoría: {}", pendientes.size(),
+                    e.getMessage());
+            throw e;
+        } finally {
+            nanosEscritura.addAndGet(System.nanoTime() - inicio);
+        }
+    }
+
+    private Object instantanea(Object valores) {
+        if (valores == null || valores instanceof Map || valores instanceof String) {
+            return valores;
+        }
+        return aJson(valores);
+    }
+
+    private Object[] fila(AuditLog auditLog) {
+        return new Object[] {
+                auditLog.getTurno() != null ? auditLog.getTurno().getId() : null,
+                auditLog.getEntityType(),
+                auditLog.getEntityId(),
+                auditLog.getAction(),
+                Timestamp.valueOf(auditLog.getPerformedAt()),
+                auditLog.getPerformedBy(),
+                auditLog.getEstadoAnterior(),
+                auditLog.getEstadoNuevo(),
+                auditLog.getOldValues(),
+                auditLog.getNewValues(),
+                auditLog.getReason()
+        };
+    }
+
+    private String aJson(Object valores) {
+        if (valores == null || valores instanceof String) {
+            return (String) valores;
+        }
+        try {
+            return objectMapper.writeValueAsString(valores);
+        } catch (JsonProcessingException e) {
+            logger.warn("⚠️ No se pudieron serializar valores de auditoría: {}", e.getMessage());
+            return String.valueOf(valores);
+        }
+    }
+
+    /**
+     * Arma el INSERT según el tipo real de las columnas LOB (oid en esquemas generados por
+     * Hibernate para @Lob String en PostgreSQL, text si se migraron), para que los valores
+     * queden legibles por la entidad AuditLog.
+     */
+    private String sqlInsert() {
+        if (sqlInsert == null) {
+            List<String> tipos = jdbcTemplate.queryForList(
+                    "SELECT data_type FROM information_schema.columns WHERE table_name = 'audit_log' AND column_name = 'old_values'",
+                    String.class);
+            String valorLob = !tipos.isEmpty() && "oid".equalsIgnoreCase(tipos.get(0))
+                    ? "lo_from_bytea(0, convert_to(?, 'UTF8'))"
+                    : "?";
+            sqlInsert = "INSERT INTO audit_log (turno_id, entity_type, entity_id, action, performed_at, performed_by,"
+                    + " estado_anterior, estado_nuevo, old_values, new_values, reason)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, " + valorLob + ", " + valorLob + ", ?)";
+        }
+        return sqlInsert;
+    }
+
+    /**
+     * Registros de auditoría de una transacción, escritos justo antes de confirmarla
+     */
+    private class LoteTransaccion implements TransactionSynchronization {
+
+        private final List<Pendiente> pendientes = new ArrayList<>();
+        private boolean escrito;
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            escrito = true;
+            if (!pendientes.isEmpty()) {
+                escribir(pendientes, true);
+                pendientes.clear();
+            }
+        }
+    }
+
+    /**
+     * Registro a escribir con sus valores tomados al momento de la acción (Map o String)
+     */
+    private record Pendiente(AuditLog auditLog, Object oldValues, Object newValues) {
+    }
+}
@@ -3,11 +3,18 @@ package unpsjb.labprog.backend.business.service;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +36,8 @@ import unpsjb.labprog.backend.business.repository.AuditLogRepository;
 import unpsjb.labprog.backend.business.repository.TurnoRepository;
 import unpsjb.labprog.backend.business.repository.ConsultorioRepository;
 import unpsjb.labprog.backend.business.repository.StaffMedicoRepository;
+import unpsjb.labprog.backend.dto.AuditResumenDTO;
+import unpsjb.labprog.backend.model.AuditArchivoMes;
 import unpsjb.labprog.backend.model.AuditLog;
 import unpsjb.labprog.backend.model.EstadoTurno;
 import unpsjb.labprog.backend.model.Turno;
@@ -40,6 +49,18 @@ import unpsjb.labprog.backend.model.Turno;
 @Service
 public class AuditLogService {
 
+    // Cantidad de turnos por consulta en las lecturas de auditoría en lote
+    private static final int TAMANO_LOTE_AUDITORIA = 1000;
+
+    // Tope de registros leídos de los archivos de auditoría en getLogsByDateRange
+    private static final int MAX_REGISTROS_ARCHIVO = 10000;
+
+    // Conteos por archivo y filtros guardados antes de vaciar la caché
+    private static final int MAX_CONTEOS_ARCHIVO = 1000;
+
+    // Conteo de registros visibles de cada archivo de auditoría, por archivo (id y hash) y filtros
+    private final Map<String, Long> conteosArchivo = new ConcurrentHashMap<>();
+
     @Autowired
     private AuditLogRepository auditLogRepository;
 
@@ -55,6 +76,15 @@ public class AuditLogService {
     @Autowired
     private ObjectMapper objectMapper; // Usar el ObjectMapper configurado de Spring
 
+    @Autowired
+    private AuditLogPipelineService auditLogPipelineService;
+
+    @Autowired
+    private AuditIntegridadService auditIntegridadService;
+
+    @Autowired
+    private AuditArchivoService auditArchivoService;
+
     @Autowired
     @Lazy
     private CentroAtencionService centroAtencionService;
@@ -62,32 +92,24 @@ public class AuditLogService {
     /**
      * Registra una acción de auditoría para un turno.
      * Este método es inmutable - una vez guardado el registro no puede modificarse.
+     * El registro se inserta al confirmar la transacción del llamador, en un único INSERT por
+     * lotes con los demás de esa transacción (ver AuditLogPipelineService).
      */
     @Transactional
     public AuditLog logTurnoAction(Turno turno, String action, String performedBy,
             String previousStatus, String newStatus,
             Object oldValues, Object newValues, String reason) {
 
-
-        try {
-            String oldValuesJson = oldValues != null ? objectMapper.writeValueAsString(oldValues) : null;
-            String newValuesJson = newValues != null ? objectMapper.writeValueAsString(newValues) : null;
-
-            AuditLog auditLog = new AuditLog(
-                    turno, action, performedBy, previousStatus, newStatus,
-                    oldValuesJson, newValuesJson, reason);
-
-            // Guardar de forma inmutable
-            AuditLog saved = auditLogRepository.save(auditLog);
-            return saved;
-
-        } catch (JsonProcessingException e) {
-            System.err.println("❌ ERROR: Error al serializar datos de auditoría: " + e.getMessage());
-            throw new RuntimeException("Error al serializar datos de auditoría", e);
-        } catch (Exception e) {
-            System.err.println("❌ ERROR: Error al guardar AuditLog: " + e.getMessage());
-            throw e;
+        AuditLog auditLog = new AuditLog(
+                turno, action, performedBy, previousStatus, newStatus,
+                null, null, reason);
+        if ("DELETE".equals(action)) {
+            // El turno se elimina a continuación; el registro conserva el entityId
+            auditLog.setTurno(null);
         }
+
+        // Guardar de forma inmutable
+        return auditLogPipelineService.registrar(auditLog, oldValues, newValues);
     }
 
     /**
@@ -222,7 +244,8 @@ public class AuditLogService {
     }
 
     /**
-     * Obtiene el historial de auditoría de un turno específico
+     * Obtiene el historial de auditoría de un turno específico (una consulta, ordenado del
+     * más reciente al más antiguo)
      */
     public List<AuditLog> getTurnoAuditHistory(Integer turnoId) {
         try {
@@ -238,76 +261,153 @@ public class AuditLogService {
                     }
                 }
             }
-            // Primero contar cuántos registros hay
-            Long count = auditLogRepository.countByTurnoId(turnoId);
-            // count retrieved
-
-            if (count == 0) {
-                return new java.util.ArrayList<>();
-            }
-
-            // Intentar obtener los registros uno por uno para identificar el problemático
-            return getAuditRecordsIndividually(turnoId);
+            return leerHistorialCompleto(List.of(turnoId)).getOrDefault(turnoId, new ArrayList<>());
 
         } catch (Exception e) {
             System.err.println(
                     "❌ ERROR: Fallo al obtener historial de auditoría para turno " + turnoId + ": " + e.getMessage());
-            System.err.println("❌ ERROR: Detalles del error: " + e.getClass().getSimpleName());
+            return new java.util.ArrayList<>();
+        }
+    }
+
+    /**
+     * Lee el historial completo (con oldValues/newValues) de un lote de turnos con una sola
+     * consulta ordenada. Si la consulta falla por un registro con LOB ilegible, se vuelve a
+     * leer el lote registro por registro: los válidos se devuelven completos y los dañados
+     * solo con sus datos básicos.
+     *
+     * @return Mapa turnoId -> historial, del registro más reciente al más antiguo
+     */
+    private Map<Integer, List<AuditLog>> leerHistorialCompleto(List<Integer> turnoIds) {
+        Map<Integer, List<AuditLog>> historiales = new HashMap<>();
+        try {
+            for (AuditLog registro : auditLogRepository.findCompletoByTurnoIds(turnoIds)) {
+                historiales.computeIfAbsent(registro.getTurno().getId(), id -> new ArrayList<>()).add(registro);
+            }
+            return historiales;
+        } catch (Exception e) {
+            System.err.println("⚠️ WARN: Falló la lectura en bloque del historial de auditoría ("
+                    + e.getMessage() + "), se lee registro por registro");
+            return leerRegistroPorRegistro(turnoIds);
+        }
+    }
+
+    /**
+     * Camino de respaldo: lista los registros sin LOBs y carga cada uno completo por separado.
+     * Los que no se pueden decodificar quedan con los datos básicos (sin oldValues/newValues).
+     */
+    private Map<Integer, List<AuditLog>> leerRegistroPorRegistro(List<Integer> turnoIds) {
+        Map<Integer, List<AuditLog>> historiales = new HashMap<>();
 
-            // Intentar obtener registros individualmente
+        for (Object[] fila : auditLogRepository.findHistorialBasicoByTurnoIds(turnoIds)) {
+            Integer turnoId = (Integer) fila[0];
+            Integer auditId = (Integer) fila[1];
+            AuditLog registro;
             try {
-                return getAuditRecordsIndividually(turnoId);
-            } catch (Exception e2) {
-                System.err.println("❌ ERROR: Todas las consultas fallaron. Retornando lista vacía");
-                System.err.println("❌ ERROR: Último error: " + e2.getMessage());
-                return new java.util.ArrayList<>();
+                registro = auditLogRepository.findById(auditId).orElse(null);
+            } catch (Exception e) {
+                System.err.println("⚠️ WARN: Registro " + auditId + " tiene datos corruptos en old_values o new_values");
+                registro = null;
             }
+            if (registro == null) {
+                registro = registroBasico(fila);
+            }
+            historiales.computeIfAbsent(turnoId, id -> new ArrayList<>()).add(registro);
         }
+        return historiales;
     }
 
     /**
-     * Obtiene registros de auditoría uno por uno para identificar el problemático
+     * Arma un AuditLog sin LOBs a partir de una fila de findHistorialBasicoByTurnoIds
      */
-    private List<AuditLog> getAuditRecordsIndividually(Integer turnoId) {
+    private AuditLog registroBasico(Object[] fila) {
+        Integer turnoId = (Integer) fila[0];
+        AuditLog registro = new AuditLog();
+        registro.setId((Integer) fila[1]);
+        registro.setEntityType(AuditLog.EntityTypes.TURNO);
+        registro.setEntityId(turnoId.longValue());
+        registro.setAction((String) fila[2]);
+        registro.setPerformedAt((LocalDateTime) fila[3]);
+        registro.setPerformedBy((String) fila[4]);
+        registro.setEstadoAnterior((String) fila[5]);
+        registro.setEstadoNuevo((String) fila[6]);
+        registro.setReason((String) fila[7]);
+        return registro;
+    }
 
-        List<AuditLog> validRecords = new java.util.ArrayList<>();
+    /**
+     * Obtiene en lote el resumen de auditoría (última modificación y cantidad de registros)
+     * de varios turnos. Reemplaza la consulta del historial completo turno por turno en
+     * exportaciones y listados: se ejecuta una consulta cada TAMANO_LOTE_AUDITORIA turnos.
+     * Respeta la misma restricción de tenant que getTurnoAuditHistory.
+     *
+     * @return Mapa turnoId -> resumen (los turnos sin auditoría o fuera del tenant no figuran)
+     */
+    public Map<Integer, AuditResumenDTO> getResumenAuditoriaTurnos(List<Turno> turnos) {
+        Map<Integer, AuditResumenDTO> resumenes = new HashMap<>();
+        Map<Integer, Integer> idRegistroPorTurno = new HashMap<>();
 
-        try {
-            // Primero obtener solo los IDs de los registros
-            List<Integer> auditIds = auditLogRepository.findAuditIdsByTurnoId(turnoId);
+        for (List<Integer> lote : lotesVisibles(turnos)) {
+            for (Object[] fila : auditLogRepository.findResumenByTurnoIds(lote)) {
+                Integer turnoId = (Integer) fila[0];
+                Integer auditId = (Integer) fila[1];
 
-            // Ahora obtener cada registro individualmente
-            for (Integer auditId : auditIds) {
-                try {
-                    AuditLog record = auditLogRepository.findById(auditId).orElse(null);
-                    if (record != null) {
-                        validRecords.add(record);
-                    } else {
-                        System.err.println("⚠️ WARN: Registro " + auditId + " no encontrado");
-                    }
-                } catch (Exception e) {
-                    System.err.println("❌ ERROR: Fallo al obtener registro " + auditId + ": " + e.getMessage());
-                    // Intentar obtener los datos básicos directamente
-                    try {
-                        Object[] basicData = auditLogRepository.findBasicAuditData(auditId);
-                        if (basicData != null && basicData.length >= 6) {
-                            System.err.println("⚠️ WARN: Registro " + auditId + " tiene datos corruptos en old_values o new_values");
-                        }
-                    } catch (Exception e2) {
-                        System.err.println("❌ ERROR: No se pudieron obtener ni los datos básicos del registro "
-                                + auditId + ": " + e2.getMessage());
-                    }
+                // Ante empate en performedAt se toma el registro con mayor ID
+                Integer previo = idRegistroPorTurno.get(turnoId);
+                if (previo != null && previo > auditId) {
+                    continue;
                 }
+                idRegistroPorTurno.put(turnoId, auditId);
+                resumenes.put(turnoId, new AuditResumenDTO(
+                        turnoId,
+                        (LocalDateTime) fila[2],
+                        (String) fila[3],
+                        (String) fila[4],
+                        ((Number) fila[5]).intValue()));
             }
+        }
+        return resumenes;
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ ERROR: Fallo al obtener IDs de auditoría: " + e.getMessage());
+    /**
+     * Obtiene en lote el historial de auditoría de varios turnos, sin leer los campos LOB
+     * (oldValues/newValues). Cada lista está ordenada del registro más reciente al más antiguo.
+     *
+     * @return Mapa turnoId -> historial (los turnos sin auditoría o fuera del tenant no figuran)
+     */
+    public Map<Integer, List<AuditLog>> getHistorialAuditoriaTurnos(List<Turno> turnos) {
+        Map<Integer, List<AuditLog>> historiales = new HashMap<>();
+
+        for (List<Integer> lote : lotesVisibles(turnos)) {
+            for (Object[] fila : auditLogRepository.findHistorialBasicoByTurnoIds(lote)) {
+                historiales.computeIfAbsent((Integer) fila[0], id -> new ArrayList<>()).add(registroBasico(fila));
+            }
         }
+        return historiales;
+    }
 
-        // Ordenar por fecha descendente
-        validRecords.sort((a, b) -> b.getPerformedAt().compareTo(a.getPerformedAt()));
+    /**
+     * Divide en lotes los IDs de los turnos cuya auditoría puede ver el usuario actual
+     */
+    private List<List<Integer>> lotesVisibles(List<Turno> turnos) {
+        Integer centroId = unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()
+                ? unpsjb.labprog.backend.config.TenantContext.getCurrentCentroId()
+                : null;
 
-        return validRecords;
+        List<Integer> ids = turnos.stream()
+                .filter(t -> t.getId() != null)
+                .filter(t -> centroId == null || (t.getConsultorio() != null
+                        && t.getConsultorio().getCentroAtencion() != null
+                        && centroId.equals(t.getConsultorio().getCentroAtencion().getId())))
+                .map(Turno::getId)
+                .distinct()
+                .collect(Collectors.toList());
+
+        List<List<Integer>> lotes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += TAMANO_LOTE_AUDITORIA) {
+            lotes.add(ids.subList(i, Math.min(i + TAMANO_LOTE_AUDITORIA, ids.size())));
+        }
+        return lotes;
     }
 
     /**
@@ -356,6 +456,13 @@ public class AuditLogService {
 
         try {
             List<AuditLog> results = auditLogRepository.findByPerformedAtBetweenOrderByPerformedAtDesc(start, end);
+
+            // Los meses ya archivados se leen de sus archivos comprimidos
+            if (auditArchivoService.hayArchivadosEntre(start, end)) {
+                results = new ArrayList<>(results);
+                results.addAll(auditArchivoService.buscar(start, end, null, MAX_REGISTROS_ARCHIVO));
+                results.sort(Comparator.comparing(AuditLog::getPerformedAt).reversed());
+            }
             return results;
 
         } catch (Exception e) {
@@ -392,64 +499,11 @@ public class AuditLogService {
      * Obtiene estadísticas de acciones
      */
     public List<Object[]> getActionStatistics() {
-        // Si el contexto está restringido a un centro, computar solo con logs visibles
-        if (unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) {
-            // Consulta segura: iterar IDs y usar datos básicos para evitar cargar LOBs
-            List<Integer> ids = auditLogRepository.findRecentLogIds(LocalDateTime.now().minusYears(1000));
-            Map<String, Long> map = new HashMap<>();
-            for (Integer id : ids) {
-                try {
-                    // Try to get a portable basic row (JPQL) and fallback to native
-                    Object[] basic = auditLogRepository.findBasicRowByIdJPQL(id);
-                    if (basic == null || basic.length == 0) {
-                        basic = auditLogRepository.findBasicRowById(id);
-                    }
-
-                    // If we still get a single-column result, attempt to rebuild from entity
-                    if (basic != null && basic.length == 1) {
-                        try {
-                            Optional<AuditLog> full = auditLogRepository.findById(id);
-                            if (full.isPresent()) {
-                                AuditLog a = full.get();
-                                basic = new Object[] {
-                                    a.getId(),
-                                    a.getTurno() != null ? a.getTurno().getId() : null,
-                                    a.getEntityType(),
-                                    a.getEntityId(),
-                                    a.getAction(),
-                                    a.getPerformedAt(),
-                                    a.getPerformedBy(),
-                                    a.getEstadoAnterior(),
-                                    a.getEstadoNuevo(),
-                                    a.getReason()
-                                };
-                            } else {
-                                continue;
-                            }
-                        } catch (Exception ex) {
-                            // If loading full entity fails (LOB issues), skip this row
-                            continue;
-                        }
-                    }
-
-                    if (basic == null || basic.length < 5) continue;
-                    String action = basic[4] != null ? basic[4].toString() : "UNKNOWN";
-
-                    // Use basic-row visibility check to avoid loading LOB fields per-row
-                    if (!isAuditRowVisibleForCurrentCentro(basic)) continue;
-
-                    map.put(action, map.getOrDefault(action, 0L) + 1L);
-                } catch (Exception e) {
-                    System.err.println("⚠️ WARN: Error obteniendo datos básicos para id " + id + ": " + e.getMessage());
-                }
-            }
-
-            List<Object[]> results = map.entrySet().stream()
-                    .map(e -> new Object[] { e.getKey(), e.getValue() })
-                    .sorted((a, b) -> Long.compare((Long) b[1], (Long) a[1]))
-                    .collect(Collectors.toList());
-
-            return results;
+        // Si el contexto está restringido a un centro, contar solo los logs visibles en una sola consulta
+        Integer centroId = centroVisibleActual();
+        if (centroId != null) {
+            return auditLogRepository.findActionStatisticsPorCentro(centroId,
+                    unpsjb.labprog.backend.config.TenantContext.isSuperAdmin());
         }
 
         List<Object[]> stats = auditLogRepository.findActionStatistics();
@@ -548,22 +602,22 @@ public class AuditLogService {
     }
 
     /**
-     * Busca logs que contengan un término específico
+     * Busca logs por texto en usuario, acción, motivo, estados y valores, ordenados por relevancia.
+     * Usa el índice de texto completo de audit_log; no incluye los meses ya archivados.
      */
-    public List<AuditLog> searchLogs(String searchTerm) {
-
-        try {
-            // Intentar la búsqueda normal
-            List<AuditLog> results = auditLogRepository.findLogsContaining(searchTerm);
-            return results;
-
-        } catch (Exception e) {
-            System.err.println("❌ ERROR: Fallo en búsqueda de logs: " + e.getMessage());
-            System.err.println("⚠️ WARN: La búsqueda puede contener registros con campos LOB problemáticos");
-            // Por ahora retornar lista vacía, pero en el futuro se podría implementar
-            // búsqueda segura
-            return new java.util.ArrayList<>();
+    public Page<AuditLog> searchLogs(String searchTerm, int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), 100));
+        String consulta = AuditBusquedaService.consultaTexto(searchTerm);
+        if (consulta == null) {
+            return Page.empty(pageable);
         }
+
+        Integer centroId = centroVisibleActual();
+        Page<Object[]> filas = centroId != null
+                ? auditLogRepository.buscarTextoPorCentro(consulta, centroId,
+                        unpsjb.labprog.backend.config.TenantContext.isSuperAdmin(), pageable)
+                : auditLogRepository.buscarTexto(consulta, pageable);
+        return filas.map(this::convertObjectArrayToAuditLog);
     }
 
     /**
@@ -592,6 +646,7 @@ public class AuditLogService {
             throw new IllegalArgumentException("Solo se pueden eliminar logs con más de 2 años de antigüedad");
         }
         auditLogRepository.deleteByPerformedAtBefore(cutoffDate);
+        auditArchivoService.eliminarArchivosAnteriores(cutoffDate);
     }
 
     /**
@@ -601,6 +656,11 @@ public class AuditLogService {
     public boolean verifyAuditIntegrity(Integer turnoId) {
         List<AuditLog> logs = getTurnoAuditHistory(turnoId);
 
+        // Los registros ya sellados deben coincidir con su hash en la cadena de auditoría
+        if (!auditIntegridadService.verificarTurno(turnoId)) {
+            return false;
+        }
+
         // Verificaciones básicas de integridad
         for (int i = 0; i < logs.size() - 1; i++) {
             AuditLog current = logs.get(i);
@@ -636,19 +696,19 @@ public class AuditLogService {
         long createdCount = 0L;
 
         // Usar consultas seguras para evitar cargar campos LOB que pueden estar corruptos
-        if (unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) {
-            // Para tenant-restricted, obtener solo campos básicos y filtrar por visibilidad
-            List<Object[]> confirms = auditLogRepository.findBasicByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "CONFIRM");
-            List<Object[]> cancels = auditLogRepository.findBasicByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "CANCEL");
-            List<Object[]> reschedules = auditLogRepository.findBasicByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "RESCHEDULE");
-            List<Object[]> statusChanges = auditLogRepository.findBasicByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "UPDATE_STATUS");
-            List<Object[]> creates = auditLogRepository.findBasicByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "CREATE");
-
-            confirmedCount = confirms.stream().filter(row -> isAuditRowVisibleForCurrentCentro(row)).count();
-            canceledCount = cancels.stream().filter(row -> isAuditRowVisibleForCurrentCentro(row)).count();
-            rescheduledCount = reschedules.stream().filter(row -> isAuditRowVisibleForCurrentCentro(row)).count();
-            statusChangedCount = statusChanges.stream().filter(row -> isAuditRowVisibleForCurrentCentro(row)).count();
-            createdCount = creates.stream().filter(row -> isAuditRowVisibleForCurrentCentro(row)).count();
+        Integer centroId = centroVisibleActual();
+        if (centroId != null) {
+            // Para tenant-restricted, un único conteo agrupado por acción sobre los turnos del centro
+            Map<String, Long> porAccion = new HashMap<>();
+            for (Object[] fila : auditLogRepository.countTurnoActionsPorCentro(centroId,
+                    List.of("CONFIRM", "CANCEL", "RESCHEDULE", "UPDATE_STATUS", "CREATE"))) {
+                porAccion.put((String) fila[0], ((Number) fila[1]).longValue());
+            }
+            confirmedCount = porAccion.getOrDefault("CONFIRM", 0L);
+            canceledCount = porAccion.getOrDefault("CANCEL", 0L);
+            rescheduledCount = porAccion.getOrDefault("RESCHEDULE", 0L);
+            statusChangedCount = porAccion.getOrDefault("UPDATE_STATUS", 0L);
+            createdCount = porAccion.getOrDefault("CREATE", 0L);
         } else {
             // No tenant restriction: usar conteos directos para mejor performance y evitar LOBs
             confirmedCount = auditLogRepository.countByEntityTypeAndAction(AuditLog.EntityTypes.TURNO, "CONFIRM");
@@ -676,140 +736,25 @@ public class AuditLogService {
     }
 
     /**
-     * Verifica la visibilidad de una fila 'básica' de auditoría (Object[] devuelto por consultas sin LOBs)
-     * Formato esperado de la fila: [id, turnoId, entityType, entityId, action, performedAt, performedBy, estadoAnterior, estadoNuevo, reason]
+     * Centro al que se restringen las estadísticas de auditoría, o null si el contexto ve todo
+     * (sin restricción de tenant o restringido pero sin centro asignado).
      */
-    private boolean isAuditRowVisibleForCurrentCentro(Object[] row) {
-        try {
-            if (!unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) return true;
-            Integer centroId = unpsjb.labprog.backend.config.TenantContext.getCurrentCentroId();
-            if (centroId == null) return true;
-
-            if (row == null || row.length < 4) {
-                System.err.println("⚠️ WARN: Fila básica inesperada (longitud=" + (row == null ? 0 : row.length) + "). Se ignorará.");
-                return false;
-            }
-
-            String type = row[2] != null ? row[2].toString() : null;
-            Number entityIdNum = (Number) row[3];
-            Long entityId = entityIdNum != null ? entityIdNum.longValue() : null;
-
-            if (type == null) return false;
-
-            switch (type) {
-                case AuditLog.EntityTypes.TURNO:
-                    Integer turnoId = row.length > 1 && row[1] instanceof Integer ? (Integer) row[1] : null;
-                    if (turnoId == null) return false;
-                    var turnoOpt = turnoRepository.findById(turnoId);
-                    if (turnoOpt.isEmpty()) return false;
-                    var turno = turnoOpt.get();
-                    if (turno.getConsultorio() != null && turno.getConsultorio().getCentroAtencion() != null) {
-                        return centroId.equals(turno.getConsultorio().getCentroAtencion().getId());
-                    }
-                    return false;
-
-                case AuditLog.EntityTypes.CONSULTORIO:
-                    if (entityId == null) return false;
-                    return consultorioRepository.findById(entityId.intValue())
-                            .map(c -> c.getCentroAtencion() != null && centroId.equals(c.getCentroAtencion().getId()))
-                            .orElse(false);
-
-                case AuditLog.EntityTypes.CENTRO_ATENCION:
-                    return entityId != null && entityId.intValue() == centroId;
-
-                case AuditLog.EntityTypes.STAFF_MEDICO:
-                    if (entityId == null) return false;
-                    return staffMedicoRepository.findById(entityId.intValue())
-                            .map(sm -> sm.getCentroAtencion() != null && centroId.equals(sm.getCentroAtencion().getId()))
-                            .orElse(false);
-
-                default:
-                    return unpsjb.labprog.backend.config.TenantContext.isSuperAdmin();
-            }
-        } catch (Exception e) {
-            System.err.println("❌ ERROR comprobando visibilidad desde fila básica: " + e.getMessage());
-            return false;
+    private Integer centroVisibleActual() {
+        if (!unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) {
+            return null;
         }
+        return unpsjb.labprog.backend.config.TenantContext.getCurrentCentroId();
     }
 
     /**
      * Obtiene estadísticas de actividad por usuario
      */
     public List<Object[]> getUserActivityStatistics() {
-        if (unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) {
-            // Consulta segura: obtener solo campos básicos sin LOBs
-
-            // En tenant-restricted preferimos obtener todos los IDs básicos y contar manualmente
-            List<Object[]> basicRows = auditLogRepository.findRecentLogIds(LocalDateTime.now().minusYears(1000))
-                    .stream()
-                    .map(id -> {
-                        try {
-                            Object[] basic = auditLogRepository.findBasicRowByIdJPQL((Integer) id);
-                            if (basic == null || basic.length == 0) basic = auditLogRepository.findBasicRowById((Integer) id);
-                            // If returned as single column, try to reconstruct
-                            if (basic != null && basic.length == 1) {
-                                try {
-                                    Optional<AuditLog> full = auditLogRepository.findById((Integer) id);
-                                    if (full.isPresent()) {
-                                        AuditLog a = full.get();
-                                        basic = new Object[] {
-                                            a.getId(),
-                                            a.getTurno() != null ? a.getTurno().getId() : null,
-                                            a.getEntityType(),
-                                            a.getEntityId(),
-                                            a.getAction(),
-                                            a.getPerformedAt(),
-                                            a.getPerformedBy(),
-                                            a.getEstadoAnterior(),
-                                            a.getEstadoNuevo(),
-                                            a.getReason()
-                                        };
-                                    } else {
-                                        return null;
-                                    }
-                                } catch (Exception ex) {
-                                    return null;
-                                }
-                            }
-                            return basic; // may be null
-                        } catch (Exception e) {
-                            return null;
-                        }
-                    })
-                    .filter(r -> r != null)
-                    .collect(Collectors.toList());
-
-            Map<String, Long> map = new java.util.HashMap<>();
-            for (Object[] row : basicRows) {
-                if (row == null || row.length < 3) {
-                    System.err.println("⚠️ WARN: Fila básica inválida (longitud=" + (row == null ? 0 : row.length) + "). Se omite.");
-                    continue;
-                }
-                // In our basic-row format, performedBy is at index 6
-                String performedBy = row.length > 6 && row[6] != null ? row[6].toString() : "UNKNOWN";
-                Integer auditId = row[0] instanceof Integer ? (Integer) row[0] : null;
-                if (auditId == null) {
-                    System.err.println("⚠️ WARN: ID de auditoría inválido en fila básica. Se omite.");
-                    continue;
-                }
-                // Reuse existing isVisibleForCurrentCentro by loading minimal AuditLog if necessary
-                try {
-                    // Use basic-row visibility check to avoid loading LOBs per row
-                    if (!isAuditRowVisibleForCurrentCentro(row)) continue;
-                } catch (Exception e) {
-                    System.err.println("⚠️ WARN: Error verificando visibilidad para auditId " + auditId + ": " + e.getMessage());
-                    continue; // skip problematic rows
-                }
-
-                map.put(performedBy, map.getOrDefault(performedBy, 0L) + 1L);
-            }
-
-            List<Object[]> results = map.entrySet().stream()
-                    .map(e -> new Object[] { e.getKey(), e.getValue() })
-                    .sorted((a, b) -> Long.compare((Long) b[1], (Long) a[1]))
-                    .collect(Collectors.toList());
-
-            return results;
+        // Si el contexto está restringido a un centro, contar solo los logs visibles en una sola consulta
+        Integer centroId = centroVisibleActual();
+        if (centroId != null) {
+            return auditLogRepository.findUserActivityStatisticsPorCentro(centroId,
+                    unpsjb.labprog.backend.config.TenantContext.isSuperAdmin());
         }
 
         List<Object[]> userStats = auditLogRepository.findUserActivityStatistics();
@@ -1247,6 +1192,27 @@ public class AuditLogService {
         }
     }
 
+    /**
+     * Registra la cancelación automática de un lote de turnos con un único INSERT por lotes,
+     * dentro de la transacción del lote (mismo contenido que logTurnoCancelledAutomatically).
+     */
+    public void logTurnosCancelledAutomatically(List<Integer> turnoIds, String motivo) {
+        List<AuditLog> registros = new ArrayList<>(turnoIds.size());
+        for (Integer turnoId : turnoIds) {
+            registros.add(new AuditLog(
+                    AuditLog.EntityTypes.TURNO,
+                    turnoId.longValue(),
+                    "CANCELLED_AUTO",
+                    "SYSTEM_AUTO_CANCELLATION",
+                    "PROGRAMADO",
+                    "CANCELADO",
+                    "estado=PROGRAMADO",
+                    "estado=CANCELADO, motivo=" + motivo,
+                    motivo));
+        }
+        auditLogPipelineService.escribirEnTransaccionActual(registros);
+    }
+
     // ===============================
     // MÉTODOS GENÉRICOS PARA AUDITORÍA DE CUALQUIER ENTIDAD
     // ===============================
@@ -1612,6 +1578,12 @@ public class AuditLogService {
         // Crear paginación con ordenamiento
         Pageable pageable = PageRequest.of(page, size, sort);
 
+        // Si el rango incluye meses archivados, paginar por tramos (tabla y archivos mensuales)
+        if (auditArchivoService.hayArchivadosEntre(fechaDesdeFilter, fechaHastaFilter)) {
+            return findByFiltersConArchivo(entidad, usuario, tipoAccion, fechaDesdeFilter, fechaHastaFilter,
+                    pageable, direction == Sort.Direction.ASC);
+        }
+
         // Si estamos en modo tenant-restringido, traer todos los candidatos y paginar en memoria
         if (unpsjb.labprog.backend.config.TenantContext.isTenantRestricted()) {
             // Cap razonable para evitar OOM en caso de datos masivos
@@ -1748,6 +1720,172 @@ public class AuditLogService {
         return auditLog;
     }
 
+    /**
+     * findByFilters para rangos que incluyen meses archivados. Pagina por tramos ordenados por
+     * fecha: la tabla (meses en caliente) y cada archivo mensual. El total es exacto (conteo en la
+     * tabla más el conteo de cada archivo, cacheado por filtros) y solo se descomprimen los archivos
+     * que caen en la página pedida. Con archivos de por medio el orden es siempre por performedAt;
+     * los demás campos de ordenamiento solo aplican a rangos sin archivar.
+     */
+    private Page<AuditLog> findByFiltersConArchivo(String entidad, String usuario, String tipoAccion,
+            LocalDateTime fechaDesde, LocalDateTime fechaHasta, Pageable pageable, boolean ascendente) {
+        Integer centroId = centroVisibleActual();
+        boolean superAdmin = unpsjb.labprog.backend.config.TenantContext.isSuperAdmin();
+
+        long totalTabla = centroId == null
+                ? auditLogRepository.countPorFiltros(entidad, usuario, tipoAccion, fechaDesde, fechaHasta)
+                : auditLogRepository.countPorFiltrosPorCentro(entidad, usuario, tipoAccion, fechaDesde, fechaHasta,
+                        centroId, superAdmin);
+
+        // Los archivos vienen del más reciente al más antiguo; la tabla tiene los meses posteriores
+        List<AuditArchivoMes> archivos = new ArrayList<>(auditArchivoService.archivosSolapados(fechaDesde, fechaHasta));
+        if (ascendente) {
+            Collections.reverse(archivos);
+        }
+
+        // Mismo criterio que la consulta findByFilters; la visibilidad por centro se resuelve por lotes
+        Predicate<AuditLog> filtro = a -> (entidad == null || contieneIgnorandoMayusculas(a.getEntityType(), entidad))
+                && (usuario == null || contieneIgnorandoMayusculas(a.getPerformedBy(), usuario))
+                && (tipoAccion == null || tipoAccion.equals(a.getAction()));
+        String claveFiltros = String.join("|", String.valueOf(entidad), String.valueOf(usuario),
+                String.valueOf(tipoAccion), String.valueOf(fechaDesde), String.valueOf(fechaHasta),
+                String.valueOf(centroId), String.valueOf(superAdmin));
+
+        Map<Integer, List<AuditLog>> leidos = new HashMap<>();
+        long[] conteos = new long[archivos.size()];
+        long total = totalTabla;
+        for (int i = 0; i < archivos.size(); i++) {
+            AuditArchivoMes archivo = archivos.get(i);
+            boolean sinFiltros = entidad == null && usuario == null && tipoAccion == null && centroId == null
+                    && !fechaDesde.isAfter(archivo.getDesde()) && !fechaHasta.isBefore(archivo.getHasta());
+            if (sinFiltros) {
+                conteos[i] = archivo.getRegistros();
+            } else {
+                String clave = archivo.getId() + ":" + archivo.getSha256() + "|" + claveFiltros;
+                Long conteo = conteosArchivo.get(clave);
+                if (conteo == null) {
+                    List<AuditLog> registros = registrosArchivo(archivo, fechaDesde, fechaHasta, filtro, centroId,
+                            superAdmin);
+                    leidos.put(archivo.getId(), registros);
+                    conteo = (long) registros.size();
+                    if (conteosArchivo.size() >= MAX_CONTEOS_ARCHIVO) {
+                        conteosArchivo.clear();
+                    }
+                    conteosArchivo.put(clave, conteo);
+                }
+                conteos[i] = conteo;
+            }
+            total += conteos[i];
+        }
+
+        long inicio = pageable.getOffset();
+        long fin = inicio + pageable.getPageSize();
+        List<AuditLog> contenido = new ArrayList<>();
+        long desplazamiento = 0;
+
+        if (!ascendente) {
+            agregarVentanaTabla(contenido, entidad, usuario, tipoAccion, fechaDesde, fechaHasta, centroId, superAdmin,
+                    false, desplazamiento, totalTabla, inicio, fin);
+            desplazamiento += totalTabla;
+        }
+        for (int i = 0; i < archivos.size() && desplazamiento < fin; i++) {
+            long conteo = conteos[i];
+            if (conteo > 0 && desplazamiento + conteo > inicio) {
+                AuditArchivoMes archivo = archivos.get(i);
+                List<AuditLog> registros = leidos.get(archivo.getId());
+                if (registros == null) {
+                    registros = registrosArchivo(archivo, fechaDesde, fechaHasta, filtro, centroId, superAdmin);
+                }
+                Comparator<AuditLog> porFecha = Comparator.comparing(AuditLog::getPerformedAt)
+                        .thenComparing(AuditLog::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+                registros.sort(ascendente ? porFecha : porFecha.reversed());
+                int desde = (int) Math.max(0, inicio - desplazamiento);
+                int hasta = (int) Math.min(registros.size(), fin - desplazamiento);
+                if (desde < hasta) {
+                    contenido.addAll(registros.subList(desde, hasta));
+                }
+            }
+            desplazamiento += conteo;
+        }
+        if (ascendente) {
+            agregarVentanaTabla(contenido, entidad, usuario, tipoAccion, fechaDesde, fechaHasta, centroId, superAdmin,
+                    true, desplazamiento, totalTabla, inicio, fin);
+        }
+
+        return new PageImpl<>(contenido, pageable, total);
+    }
+
+    /**
+     * Agrega a la página la parte del tramo de la tabla que cae entre inicio y fin
+     */
+    private void agregarVentanaTabla(List<AuditLog> contenido, String entidad, String usuario, String tipoAccion,
+            LocalDateTime fechaDesde, LocalDateTime fechaHasta, Integer centroId, boolean superAdmin,
+            boolean ascendente, long desplazamiento, long totalTabla, long inicio, long fin) {
+        if (totalTabla == 0 || desplazamiento + totalTabla <= inicio || desplazamiento >= fin) {
+            return;
+        }
+        long desde = Math.max(0, inicio - desplazamiento);
+        int limite = (int) (Math.min(totalTabla, fin - desplazamiento) - desde);
+        List<Object[]> filas = centroId == null
+                ? auditLogRepository.findVentanaPorFiltros(entidad, usuario, tipoAccion, fechaDesde, fechaHasta,
+                        ascendente, limite, desde)
+                : auditLogRepository.findVentanaPorFiltrosPorCentro(entidad, usuario, tipoAccion, fechaDesde,
+                        fechaHasta, centroId, superAdmin, ascendente, limite, desde);
+        filas.stream().map(this::convertObjectArrayToAuditLog).forEach(contenido::add);
+    }
+
+    /**
+     * Registros de un archivo que cumplen el filtro y, en modo tenant-restringido, son visibles
+     * para el centro (mismo criterio que FROM_VISIBLES_POR_CENTRO, resuelto por lotes de IDs)
+     */
+    private List<AuditLog> registrosArchivo(AuditArchivoMes archivo, LocalDateTime fechaDesde,
+            LocalDateTime fechaHasta, Predicate<AuditLog> filtro, Integer centroId, boolean superAdmin) {
+        List<AuditLog> registros = auditArchivoService.leer(archivo, fechaDesde, fechaHasta, filtro);
+        if (centroId == null) {
+            return registros;
+        }
+
+        Set<Integer> turnos = idsDelCentro(registros, AuditLog.EntityTypes.TURNO,
+                ids -> auditLogRepository.findTurnosDelCentro(ids, centroId));
+        Set<Integer> consultorios = idsDelCentro(registros, AuditLog.EntityTypes.CONSULTORIO,
+                ids -> auditLogRepository.findConsultoriosDelCentro(ids, centroId));
+        Set<Integer> staffMedicos = idsDelCentro(registros, AuditLog.EntityTypes.STAFF_MEDICO,
+                ids -> auditLogRepository.findStaffMedicosDelCentro(ids, centroId));
+
+        return registros.stream().filter(a -> {
+            String tipo = a.getEntityType();
+            if (tipo == null) {
+                return false;
+            }
+            Integer entityId = a.getEntityId() != null ? a.getEntityId().intValue() : null;
+            return switch (tipo) {
+                case AuditLog.EntityTypes.TURNO -> turnos.contains(entityId);
+                case AuditLog.EntityTypes.CONSULTORIO -> consultorios.contains(entityId);
+                case AuditLog.EntityTypes.STAFF_MEDICO -> staffMedicos.contains(entityId);
+                case AuditLog.EntityTypes.CENTRO_ATENCION -> centroId.equals(entityId);
+                default -> superAdmin;
+            };
+        }).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private Set<Integer> idsDelCentro(List<AuditLog> registros, String tipo,
+            Function<List<Integer>, List<Integer>> consulta) {
+        List<Integer> ids = registros.stream()
+                .filter(a -> tipo.equals(a.getEntityType()) && a.getEntityId() != null)
+                .map(a -> a.getEntityId().intValue())
+                .distinct()
+                .collect(Collectors.toList());
+        Set<Integer> delCentro = new HashSet<>();
+        for (int i = 0; i < ids.size(); i += TAMANO_LOTE_AUDITORIA) {
+            delCentro.addAll(consulta.apply(ids.subList(i, Math.min(i + TAMANO_LOTE_AUDITORIA, ids.size()))));
+        }
+        return delCentro;
+    }
+
+    private static boolean contieneIgnorandoMayusculas(String valor, String termino) {
+        return valor != null && valor.toLowerCase().contains(termino.toLowerCase());
+    }
+
     /**
      * Obtiene estadísticas de auditoría agrupadas por tipo de entidad
      */
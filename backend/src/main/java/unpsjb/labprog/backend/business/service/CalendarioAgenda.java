@@ -0,0 +1,99 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import unpsjb.labprog.backend.dto.ConsultorioDTO;
+import unpsjb.labprog.backend.model.ConfiguracionExcepcional;
+
+/**
+ * Calendario de configuraciones excepcionales (feriados, mantenimientos y atención especial)
+ * para una ventana de fechas de la agenda.
+ *
+ * Se construye una vez por petición con una sola consulta y deja indexadas las configuraciones
+ * por fecha, por (fecha, consultorio) y por (fecha, esquema). También memoiza los horarios
+ * semanales de cada consultorio, que antes se consultaban en cada iteración de la generación.
+ */
+public class CalendarioAgenda {
+
+    private final Map<LocalDate, List<ConfiguracionExcepcional>> porFecha = new HashMap<>();
+    private final Map<LocalDate, Map<Integer, List<ConfiguracionExcepcional>>> mantenimientosPorConsultorio = new HashMap<>();
+    private final Map<LocalDate, Map<Integer, ConfiguracionExcepcional>> atencionEspecialPorEsquema = new HashMap<>();
+
+    private final Function<Integer, Optional<ConsultorioDTO>> cargadorConsultorio;
+    private final Map<Integer, Optional<ConsultorioDTO>> consultorios = new ConcurrentHashMap<>();
+
+    /**
+     * @param configuraciones     Configuraciones activas de la ventana
+     * @param cargadorConsultorio Función para obtener un consultorio (se invoca a lo sumo una vez por ID)
+     */
+    public CalendarioAgenda(List<ConfiguracionExcepcional> configuraciones,
+                            Function<Integer, Optional<ConsultorioDTO>> cargadorConsultorio) {
+        this.cargadorConsultorio = cargadorConsultorio;
+
+        for (ConfiguracionExcepcional config : configuraciones) {
+            porFecha.computeIfAbsent(config.getFecha(), f -> new ArrayList<>()).add(config);
+
+            if (config.getTipo() == ConfiguracionExcepcional.TipoExcepcion.MANTENIMIENTO
+                    && config.getConsultorio() != null) {
+                mantenimientosPorConsultorio
+                    .computeIfAbsent(config.getFecha(), f -> new HashMap<>())
+                    .computeIfAbsent(config.getConsultorio().getId(), c -> new ArrayList<>())
+                    .add(config);
+            }
+
+            if (config.getTipo() == ConfiguracionExcepcional.TipoExcepcion.ATENCION_ESPECIAL
+                    && config.getEsquemaTurno() != null) {
+                // Se conserva la primera, igual que obtenerAtencionEspecial()
+                atencionEspecialPorEsquema
+                    .computeIfAbsent(config.getFecha(), f -> new HashMap<>())
+                    .putIfAbsent(config.getEsquemaTurno().getId(), config);
+            }
+        }
+    }
+
+    /**
+     * Todas las configuraciones activas de una fecha
+     */
+    public List<ConfiguracionExcepcional> configuraciones(LocalDate fecha) {
+        return porFecha.getOrDefault(fecha, Collections.emptyList());
+    }
+
+    /**
+     * Verificar si una fecha es feriado
+     */
+    public boolean esFeriado(LocalDate fecha) {
+        return configuraciones(fecha).stream()
+            .anyMatch(c -> c.getTipo() == ConfiguracionExcepcional.TipoExcepcion.FERIADO);
+    }
+
+    /**
+     * Mantenimientos de un consultorio en una fecha
+     */
+    public List<ConfiguracionExcepcional> mantenimientos(LocalDate fecha, Integer consultorioId) {
+        return mantenimientosPorConsultorio.getOrDefault(fecha, Collections.emptyMap())
+            .getOrDefault(consultorioId, Collections.emptyList());
+    }
+
+    /**
+     * Atención especial de un esquema en una fecha
+     */
+    public Optional<ConfiguracionExcepcional> atencionEspecial(LocalDate fecha, Integer esquemaTurnoId) {
+        return Optional.ofNullable(atencionEspecialPorEsquema.getOrDefault(fecha, Collections.emptyMap())
+            .get(esquemaTurnoId));
+    }
+
+    /**
+     * Consultorio con sus horarios semanales, cargado una sola vez por petición
+     */
+    public Optional<ConsultorioDTO> consultorio(Integer consultorioId) {
+        return consultorios.computeIfAbsent(consultorioId, cargadorConsultorio);
+    }
+}
@@ -34,6 +34,9 @@ public class ConfiguracionExcepcionalService {
     @Autowired
     private EsquemaTurnoRepository esquemaTurnoRepository;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
     /**
      * Crear un feriado (aplica a todo el sistema)
      */
@@ -46,7 +49,7 @@ public class ConfiguracionExcepcionalService {
         config.setActivo(true);
         // centroAtencion, consultorio y esquemaTurno quedan null (aplica globalmente)
         
-        return repository.save(config);
+        return guardar(config);
     }
 
     /**
@@ -75,7 +78,7 @@ public class ConfiguracionExcepcionalService {
         config.setDuracion(duracion);
         config.setActivo(true);
         
-        return repository.save(config);
+        return guardar(config);
     }
 
     /**
@@ -102,7 +105,40 @@ public class ConfiguracionExcepcionalService {
         config.setDuracion(duracion);
         config.setActivo(true);
         
-        return repository.save(config);
+        return guardar(config);
+    }
+
+    /**
+     * Guarda una configuración e invalida la disponibilidad pública afectada
+     */
+    private ConfiguracionExcepcional guardar(ConfiguracionExcepcional config) {
+        ConfiguracionExcepcional guardada = repository.save(config);
+        invalidarDisponibilidad(guardada);
+        return guardada;
+    }
+
+    /**
+     * Invalida el almacén de disponibilidad pública según el alcance de la configuración:
+     * feriados afectan a todo el sistema, mantenimientos a un consultorio y
+     * atención especial a un esquema.
+     */
+    private void invalidarDisponibilidad(ConfiguracionExcepcional config) {
+        switch (config.getTipo()) {
+            case MANTENIMIENTO:
+                agendaCacheService.invalidarConsultorio(
+                    config.getConsultorio() != null ? config.getConsultorio().getId() : null);
+                break;
+            case ATENCION_ESPECIAL:
+                if (config.getEsquemaTurno() != null) {
+                    agendaCacheService.invalidarEsquema(config.getEsquemaTurno().getId());
+                } else {
+                    agendaCacheService.invalidarTodo();
+                }
+                break;
+            default:
+                agendaCacheService.invalidarTodo();
+                break;
+        }
     }
 
     /**
@@ -180,6 +216,15 @@ public class ConfiguracionExcepcionalService {
         return false; // No conflicts found
     }
 
+    /**
+     * Obtener todas las configuraciones activas de un rango de fechas para la agenda.
+     * Permite construir el calendario de excepciones de una ventana en una sola consulta
+     * en lugar de consultar día por día.
+     */
+    public List<ConfiguracionExcepcional> obtenerCalendario(LocalDate fechaInicio, LocalDate fechaFin) {
+        return repository.findCalendarioActivo(fechaInicio, fechaFin);
+    }
+
     /**
      * Método auxiliar para verificar si dos rangos de horarios se superponen
      */
@@ -245,7 +290,7 @@ public class ConfiguracionExcepcionalService {
         Optional<ConfiguracionExcepcional> config = repository.findById(configId);
         if (config.isPresent()) {
             config.get().setActivo(false);
-            repository.save(config.get());
+            guardar(config.get());
         } else {
             throw new IllegalArgumentException("Configuración no encontrada con ID: " + configId);
         }
@@ -273,10 +318,13 @@ public class ConfiguracionExcepcionalService {
             throw new IllegalArgumentException("La configuración especificada no es un feriado");
         }
         
+        // Invalidar la agenda pública para la ubicación anterior de la configuración
+        invalidarDisponibilidad(config);
+        
         config.setFecha(fecha);
         config.setDescripcion(descripcion);
         
-        return repository.save(config);
+        return guardar(config);
     }
 
     /**
@@ -296,6 +344,9 @@ public class ConfiguracionExcepcionalService {
             throw new IllegalArgumentException("La configuración especificada no es un mantenimiento");
         }
         
+        // Invalidar la agenda pública para la ubicación anterior de la configuración
+        invalidarDisponibilidad(config);
+        
         Optional<Consultorio> consultorio = consultorioRepository.findById(consultorioId);
         if (!consultorio.isPresent()) {
             throw new IllegalArgumentException("Consultorio no encontrado con ID: " + consultorioId);
@@ -312,7 +363,7 @@ public class ConfiguracionExcepcionalService {
         }
         config.setDuracion(duracion);
         
-        return repository.save(config);
+        return guardar(config);
     }
 
     /**
@@ -332,6 +383,9 @@ public class ConfiguracionExcepcionalService {
             throw new IllegalArgumentException("La configuración especificada no es atención especial");
         }
         
+        // Invalidar la agenda pública para la ubicación anterior de la configuración
+        invalidarDisponibilidad(config);
+        
         Optional<EsquemaTurno> esquema = esquemaTurnoRepository.findById(esquemaTurnoId);
         if (!esquema.isPresent()) {
             throw new IllegalArgumentException("EsquemaTurno no encontrado con ID: " + esquemaTurnoId);
@@ -346,7 +400,7 @@ public class ConfiguracionExcepcionalService {
         config.setHoraFin(horaFin);
         config.setDuracion(duracion);
         
-        return repository.save(config);
+        return guardar(config);
     }
 
     /**
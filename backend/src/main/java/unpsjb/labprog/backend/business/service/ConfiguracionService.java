@@ -1,8 +1,11 @@
 package unpsjb.labprog.backend.business.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import unpsjb.labprog.backend.business.repository.ConfiguracionRepository;
 import unpsjb.labprog.backend.model.Configuracion;
@@ -14,6 +17,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ConfiguracionService {
@@ -21,6 +26,50 @@ public class ConfiguracionService {
     @Autowired
     private ConfiguracionRepository configuracionRepository;
 
+    /**
+     * Caché de configuraciones indexada por (clave, centro); centroId null es la global.
+     * Se carga completa en la primera consulta y se descarta en cada escritura
+     * (actualizarConfiguracion, resetToDefaults, creación de valores por defecto).
+     * Las escrituras hechas en otra instancia no la invalidan: por eso vence a los
+     * configuracion.cache.ttl-ms y se vuelve a cargar. null = sin cargar.
+     */
+    private volatile CacheCargada cache;
+
+    @Value("${configuracion.cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    /**
+     * Se incrementa en cada invalidación. Una carga solo se publica si la versión
+     * no cambió desde que empezó a leer la base.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Recurso ligado a la transacción que escribió configuraciones, hasta que termina:
+     * lo que esa transacción lea de la base no se publica en la caché.
+     */
+    private static final Object ESCRITURA_PENDIENTE = new Object();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong cargas = new AtomicLong();
+
+    private record ClaveConfiguracion(String clave, Integer centroId) {
+    }
+
+    private record CacheCargada(Map<ClaveConfiguracion, ValorConfiguracion> valores, long venceNanos) {
+        boolean vigente() {
+            return System.nanoTime() - venceNanos < 0;
+        }
+    }
+
+    /**
+     * Valor tipado e inmutable de una configuración, copiado de la entidad al cargar la caché
+     */
+    private record ValorConfiguracion(Integer id, String tipoValor, Integer valorInt, String valorString,
+            Boolean valorBoolean, Double valorDouble) {
+    }
+
     /**
      * Busca una configuración aplicando la lógica de override por centro.
      * 1. Si el usuario está asociado a un centro, busca primero override específico del centro
@@ -30,31 +79,105 @@ public class ConfiguracionService {
      * @param clave Clave de la configuración a buscar
      * @return Optional con la configuración encontrada (override o global)
      */
-    private Optional<Configuracion> findConfiguracionConOverride(String clave) {
+    private Optional<ValorConfiguracion> findConfiguracionConOverride(String clave) {
+        Map<ClaveConfiguracion, ValorConfiguracion> valores = cacheCargada();
         Integer centroId = TenantContext.getFilteredCentroId();
         
         if (centroId != null) {
             // Usuario limitado por centro - buscar primero override del centro
-            Optional<Configuracion> overrideCentro = configuracionRepository.findAll().stream()
-                .filter(c -> c.getClave().equals(clave) && 
-                            c.getCentroAtencion() != null && 
-                            c.getCentroAtencion().getId().equals(centroId))
-                .findFirst();
-            
-            if (overrideCentro.isPresent()) {
-                return overrideCentro; // Usar override del centro
+            ValorConfiguracion overrideCentro = valores.get(new ClaveConfiguracion(clave, centroId));
+            if (overrideCentro != null) {
+                return Optional.of(overrideCentro); // Usar override del centro
             }
         }
         
         // Buscar configuración global (centroAtencion = null)
-        return configuracionRepository.findAll().stream()
-            .filter(c -> c.getClave().equals(clave) && c.getCentroAtencion() == null)
-            .findFirst();
+        return Optional.ofNullable(valores.get(new ClaveConfiguracion(clave, null)));
+    }
+
+    private Map<ClaveConfiguracion, ValorConfiguracion> cacheCargada() {
+        CacheCargada cargada = cache;
+        if (cargada != null && cargada.vigente()) {
+            aciertos.incrementAndGet();
+            return cargada.valores();
+        }
+        fallos.incrementAndGet();
+        return cargarCache();
+    }
+
+    private synchronized Map<ClaveConfiguracion, ValorConfiguracion> cargarCache() {
+        CacheCargada cargada = cache;
+        if (cargada != null && cargada.vigente()) {
+            return cargada.valores();
+        }
+        long versionLectura = version.get();
+        Map<ClaveConfiguracion, ValorConfiguracion> valores = new HashMap<>();
+        for (Object[] fila : configuracionRepository.findValoresParaCache()) {
+            valores.put(new ClaveConfiguracion((String) fila[1], (Integer) fila[2]),
+                    new ValorConfiguracion((Integer) fila[0], (String) fila[3], (Integer) fila[4],
+                            (String) fila[5], (Boolean) fila[6], (Double) fila[7]));
+        }
+        valores = Map.copyOf(valores);
+        cargas.incrementAndGet();
+        // Si hubo una escritura mientras se leía, o la transacción actual tiene escrituras sin
+        // confirmar, se usa el resultado pero no se publica
+        if (version.get() == versionLectura
+                && !TransactionSynchronizationManager.hasResource(ESCRITURA_PENDIENTE)) {
+            cache = new CacheCargada(valores, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs));
+        }
+        return valores;
+    }
+
+    /**
+     * Descarta la caché de inmediato y otra vez al terminar la transacción en curso (confirmada
+     * o revertida), para que no quede publicada una carga concurrente que leyó datos previos al
+     * commit ni valores que se revirtieron.
+     */
+    private void invalidarCache() {
+        descartarCache();
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(ESCRITURA_PENDIENTE)) {
+            TransactionSynchronizationManager.bindResource(ESCRITURA_PENDIENTE, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ESCRITURA_PENDIENTE);
+                    descartarCache();
+                }
+            });
+        }
+    }
+
+    private void descartarCache() {
+        version.incrementAndGet();
+        cache = null;
+    }
+
+    /**
+     * Estadísticas de la caché de configuraciones: aciertos, fallos (consultas que
+     * debieron cargarla), cargas desde la base y claves en memoria
+     */
+    public Map<String, Object> getEstadisticasCache() {
+        CacheCargada cargada = cache;
+        Map<ClaveConfiguracion, ValorConfiguracion> valores = cargada != null && cargada.vigente() ? cargada.valores() : null;
+        long totalAciertos = aciertos.get();
+        long totalFallos = fallos.get();
+        long total = totalAciertos + totalFallos;
+
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("aciertos", totalAciertos);
+        estadisticas.put("fallos", totalFallos);
+        estadisticas.put("cargas", cargas.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : (double) totalAciertos / total);
+        estadisticas.put("cargada", valores != null);
+        estadisticas.put("entradas", valores != null ? valores.size() : 0);
+        estadisticas.put("ttlMs", ttlMs);
+        return estadisticas;
     }
 
     public int getDiasMinConfirmacion() {
         return findConfiguracionConOverride("turnos.dias_min_confirmacion")
-                .map(Configuracion::getValorInt)
+                .map(ValorConfiguracion::valorInt)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.dias_min_confirmacion", 2,
                             "Mínimo de días de anticipación requeridos para confirmar un turno", "TURNOS");
@@ -64,7 +187,7 @@ public class ConfiguracionService {
 
     public int getDiasMaxNoConfirm() {
         return findConfiguracionConOverride("turnos.dias_max_no_confirm")
-                .map(Configuracion::getValorInt)
+                .map(ValorConfiguracion::valorInt)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.dias_max_no_confirm", 7,
                             "Máximo de días que un turno puede estar sin confirmar antes de cancelarse automáticamente",
@@ -75,7 +198,7 @@ public class ConfiguracionService {
 
     public LocalTime getHoraCorteConfirmacion() {
         String horaStr = findConfiguracionConOverride("turnos.hora_corte_confirmacion")
-                .map(Configuracion::getValorString)
+                .map(ValorConfiguracion::valorString)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.hora_corte_confirmacion", "00:00",
                             "Hora límite del día para confirmar turnos (formato HH:MM)", "TURNOS");
@@ -86,7 +209,7 @@ public class ConfiguracionService {
 
     public boolean isHabilitadaCancelacionAutomatica() {
         return findConfiguracionConOverride("turnos.habilitar_cancelacion_automatica")
-                .map(Configuracion::getValorBoolean)
+                .map(ValorConfiguracion::valorBoolean)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.habilitar_cancelacion_automatica", true,
                             "Habilita la cancelación automática de turnos no confirmados", "TURNOS");
@@ -115,6 +238,7 @@ public class ConfiguracionService {
         defaultConfigs.forEach((clave, valor) -> {
             actualizarConfiguracion(clave, valor);
         });
+        invalidarCache();
     }
 
     /**
@@ -125,14 +249,16 @@ public class ConfiguracionService {
      * @return Configuracion o null si no existe
      */
     public Configuracion getConfiguracion(String clave) {
-        return findConfiguracionConOverride(clave).orElse(null);
+        return findConfiguracionConOverride(clave)
+                .flatMap(valor -> configuracionRepository.findById(valor.id()))
+                .orElse(null);
     }
 
     // === CONFIGURACIONES DE RECORDATORIOS ===
 
     public boolean isHabilitadosRecordatorios() {
         return findConfiguracionConOverride("turnos.habilitar_recordatorios")
-                .map(Configuracion::getValorBoolean)
+                .map(ValorConfiguracion::valorBoolean)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.habilitar_recordatorios", true,
                             "Habilita el envío de recordatorios de confirmación", "TURNOS");
@@ -142,7 +268,7 @@ public class ConfiguracionService {
 
     public int getDiasRecordatorioConfirmacion() {
         return findConfiguracionConOverride("turnos.dias_recordatorio_confirmacion")
-                .map(Configuracion::getValorInt)
+                .map(ValorConfiguracion::valorInt)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.dias_recordatorio_confirmacion", 4,
                             "Días de anticipación para enviar recordatorios de confirmación", "TURNOS");
@@ -152,7 +278,7 @@ public class ConfiguracionService {
 
     public LocalTime getHoraEnvioRecordatorios() {
         String horaStr = findConfiguracionConOverride("turnos.hora_envio_recordatorios")
-                .map(Configuracion::getValorString)
+                .map(ValorConfiguracion::valorString)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("turnos.hora_envio_recordatorios", "09:00",
                             "Hora del día para enviar recordatorios de confirmación (formato HH:MM)", "TURNOS");
@@ -165,7 +291,7 @@ public class ConfiguracionService {
 
     public boolean isHabilitadoEmailNotificaciones() {
         return findConfiguracionConOverride("notificaciones.habilitar_email")
-                .map(Configuracion::getValorBoolean)
+                .map(ValorConfiguracion::valorBoolean)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("notificaciones.habilitar_email", true,
                             "Habilita el envío de notificaciones por email", "NOTIFICACIONES");
@@ -175,7 +301,7 @@ public class ConfiguracionService {
 
     public boolean isHabilitadoSmsNotificaciones() {
         return findConfiguracionConOverride("notificaciones.habilitar_sms")
-                .map(Configuracion::getValorBoolean)
+                .map(ValorConfiguracion::valorBoolean)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("notificaciones.habilitar_sms", false,
                             "Habilita el envío de notificaciones por SMS", "NOTIFICACIONES");
@@ -187,7 +313,7 @@ public class ConfiguracionService {
 
     public String getNombreClinica() {
         return findConfiguracionConOverride("sistema.nombre_clinica")
-                .map(Configuracion::getValorString)
+                .map(ValorConfiguracion::valorString)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("sistema.nombre_clinica", "Clínica Médica",
                             "Nombre de la clínica para usar en notificaciones", "SISTEMA");
@@ -197,7 +323,7 @@ public class ConfiguracionService {
 
     public String getEmailNotificaciones() {
         return findConfiguracionConOverride("sistema.email_notificaciones")
-                .map(Configuracion::getValorString)
+                .map(ValorConfiguracion::valorString)
                 .orElseGet(() -> {
                     crearConfiguracionPorDefecto("sistema.email_notificaciones", "notificaciones@clinica.com",
                             "Email remitente para las notificaciones automáticas", "SISTEMA");
@@ -230,6 +356,7 @@ public class ConfiguracionService {
         }
 
         configuracionRepository.save(config);
+        invalidarCache();
         System.out.println("Configuración actualizada: " + clave + " = " + valor);
     }
 
@@ -256,6 +383,7 @@ public class ConfiguracionService {
             }
 
             configuracionRepository.save(config);
+            invalidarCache();
             System.out.println("Configuración creada por defecto: " + clave + " = " + defaultValue);
         } catch (Exception e) {
             System.err.println("Error al crear configuración por defecto: " + e.getMessage());
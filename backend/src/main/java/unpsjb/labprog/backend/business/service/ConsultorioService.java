@@ -34,6 +34,9 @@ public class ConsultorioService {
     @Autowired
     private AuditLogService auditLogService;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
     /**
      * Obtiene todos los consultorios con filtrado automático multi-tenencia.
      * - SUPERADMIN: Ve todos los consultorios globalmente
@@ -107,6 +110,7 @@ public class ConsultorioService {
                                            reason != null ? reason : "Eliminación de consultorio");
         
         repository.deleteById(id);
+        agendaCacheService.invalidarConsultorio(id);
     }
 
     private ConsultorioDTO toDTO(Consultorio c) {
@@ -282,6 +286,8 @@ public class ConsultorioService {
             existente.setNombre(consultorio.getNombre());
             existente.setHorariosSemanales(consultorio.getHorariosSemanales());
             Consultorio saved = repository.save(existente);
+            // Los horarios del consultorio acotan los slots generados
+            agendaCacheService.invalidarConsultorio(saved.getId());
             
             auditLogService.logConsultorioUpdated(saved.getId().longValue(), performedBy, 
                                                 oldData, newData, "Actualización de consultorio");
@@ -18,10 +18,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import unpsjb.labprog.backend.business.repository.ConsultorioRepository;
-import unpsjb.labprog.backend.business.repository.TurnoRepository;
 import unpsjb.labprog.backend.business.repository.EncuestaRespuestaRepository;
 import unpsjb.labprog.backend.business.repository.AuditLogRepository;
 import unpsjb.labprog.backend.business.repository.ListaEsperaRepository;
+import unpsjb.labprog.backend.business.repository.TurnoMetricaDiariaRepository;
 import unpsjb.labprog.backend.dto.FiltrosDashboardDTO;
 import unpsjb.labprog.backend.dto.MetricasDashboardDTO;
 import unpsjb.labprog.backend.dto.OcupacionConsultorioDTO;
@@ -37,9 +37,6 @@ import unpsjb.labprog.backend.model.EncuestaRespuesta;
 @Transactional(readOnly = true)
 public class DashboardService {
 
-    @Autowired
-    private TurnoRepository turnoRepository;
-
     @Autowired
     private ConsultorioRepository consultorioRepository;
 
@@ -52,41 +49,34 @@ public class DashboardService {
     @Autowired
     private ListaEsperaRepository listaEsperaRepository;
 
+    @Autowired
+    private TurnoMetricaDiariaRepository metricaDiariaRepository;
+
     // Fechas por defecto para evitar errores JDBC con nulls
     private static final LocalDateTime FECHA_INICIO_DEFAULT = LocalDateTime.of(1970, 1, 1, 0, 0);
     private static final LocalDateTime FECHA_FIN_DEFAULT = LocalDateTime.of(2100, 12, 31, 23, 59);
 
     /**
      * Calcula métricas básicas (conteos y tasas) aplicando filtros de fechas y
-     * entidades
+     * entidades. Lee del agregado diario (turno_metrica_diaria), no de la tabla turno.
      */
     public MetricasDashboardDTO getMetricasBasicas(FiltrosDashboardDTO filtros) {
         MetricasDashboardDTO dto = new MetricasDashboardDTO();
 
-        LocalDate desde = filtros != null ? filtros.getFechaDesde() : null;
-        LocalDate hasta = filtros != null ? filtros.getFechaHasta() : null;
-
-        var spec = TurnoRepository.buildSpecification(
-                null,
-                null,
-                filtros != null ? filtros.getStaffMedicoId() : null,
-                filtros != null ? filtros.getEspecialidadId() : null,
-                filtros != null ? filtros.getCentroId() : null,
-                filtros != null ? filtros.getConsultorioId() : null,
-                desde,
-                hasta,
-                null,
-                null,
-                null,
-                null,
-                null);
-
-        List<Turno> turnos = turnoRepository.findAll(spec);
+        LocalDate desde = filtros != null && filtros.getFechaDesde() != null ? filtros.getFechaDesde()
+                : FECHA_INICIO_DEFAULT.toLocalDate();
+        LocalDate hasta = filtros != null && filtros.getFechaHasta() != null ? filtros.getFechaHasta()
+                : FECHA_FIN_DEFAULT.toLocalDate();
+        Integer staffMedicoId = filtros != null ? filtros.getStaffMedicoId() : null;
+        Integer especialidadId = filtros != null ? filtros.getEspecialidadId() : null;
+        Integer centroId = filtros != null ? filtros.getCentroId() : null;
+        Integer consultorioId = filtros != null ? filtros.getConsultorioId() : null;
 
-        long total = turnos.size();
+        ConteoTurnos conteo = ConteoTurnos.de(metricaDiariaRepository.sumarPorEstado(
+                desde, hasta, staffMedicoId, especialidadId, centroId, consultorioId));
 
-        Map<String, Long> porEstado = turnos.stream()
-                .collect(Collectors.groupingBy(t -> t.getEstado().name(), Collectors.counting()));
+        Map<String, Long> porEstado = conteo.porEstado;
+        long total = conteo.total;
 
         long completos = porEstado.getOrDefault(EstadoTurno.COMPLETO.name(), 0L);
         long ausentes = porEstado.getOrDefault(EstadoTurno.AUSENTE.name(), 0L);
@@ -102,21 +92,17 @@ public class DashboardService {
         dto.setPorcentajeCancelaciones(percentSafe(cancelados, total));
         dto.setConfirmadosVsProgramados(percentSafe(confirmados, confirmados + programados));
 
-        int sinConsultorio = (int) turnos.stream().filter(t -> t.getConsultorio() == null).count();
-        dto.setTurnosSinConsultorio(sinConsultorio);
+        dto.setTurnosSinConsultorio((int) conteo.sinConsultorio);
 
-        LocalDate hoy = LocalDate.now();
-        List<Turno> futuros = turnos.stream().filter(t -> t.getFecha() != null && !t.getFecha().isBefore(hoy))
-                .collect(Collectors.toList());
-        long totalFuturos = futuros.size();
-        long asignados = futuros.stream().filter(t -> t.getConsultorio() != null).count();
-        dto.setEficienciaAsignacion(percentSafe(asignados, totalFuturos));
+        ConteoTurnos futuros = contarFuturos(desde, hasta, staffMedicoId, especialidadId, centroId, consultorioId);
+        dto.setEficienciaAsignacion(percentSafe(futuros.total - futuros.sinConsultorio, futuros.total));
 
         return dto;
     }
 
     /**
-     * Calcula métricas de ocupación por consultorio en el rango de fechas
+     * Calcula métricas de ocupación por consultorio en el rango de fechas.
+     * Los minutos reservados salen del agregado diario (turno_metrica_diaria).
      */
     public MetricasDashboardDTO getMetricasOcupacion(FiltrosDashboardDTO filtros) {
         MetricasDashboardDTO dto = new MetricasDashboardDTO();
@@ -133,38 +119,28 @@ public class DashboardService {
             hasta = desde.plusDays(30);
         }
 
-        List<Consultorio> consultorios;
-        if (filtros != null && filtros.getConsultorioId() != null) {
-            consultorios = consultorioRepository.findById(filtros.getConsultorioId()).map(List::of).orElse(List.of());
-        } else if (filtros != null && filtros.getCentroId() != null) {
-            consultorios = consultorioRepository.findByCentroAtencionId(filtros.getCentroId());
-        } else {
-            consultorios = consultorioRepository.findAll();
+        Integer centroId = filtros != null ? filtros.getCentroId() : null;
+        Integer consultorioId = filtros != null ? filtros.getConsultorioId() : null;
+
+        // Con consultorio explícito el centro no se aplica (igual que antes)
+        List<Consultorio> consultorios = consultorioRepository.findConHorarios(
+                consultorioId != null ? null : centroId, consultorioId);
+
+        Map<Integer, Long> minutosPorConsultorio = new HashMap<>();
+        for (Object[] row : metricaDiariaRepository.sumarMinutosOcupadosPorConsultorio(
+                desde, hasta, centroId, consultorioId)) {
+            minutosPorConsultorio.put((Integer) row[0], ((Number) row[1]).longValue());
         }
 
+        long[] ocurrenciasPorDia = contarDiasDeSemana(desde, hasta);
+
         Map<Integer, Double> ocupacionMap = new HashMap<>();
         List<OcupacionConsultorioDTO> ocupacionDetallada = new ArrayList<>();
 
-        var spec = TurnoRepository.buildSpecification(
-                null, null, null, null,
-                filtros != null ? filtros.getCentroId() : null,
-                filtros != null ? filtros.getConsultorioId() : null,
-                desde, hasta, null, null, null, null, null);
-
-        List<Turno> turnos = turnoRepository.findAll(spec);
-
         for (Consultorio c : consultorios) {
-            List<Turno> turnosC = turnos.stream().filter(t -> t.getConsultorio() != null &&
-                    t.getConsultorio().getId().equals(c.getId())).collect(Collectors.toList());
-
-            long minutosOcupados = 0;
-            for (Turno t : turnosC) {
-                if (t.getEstado() != EstadoTurno.CANCELADO && t.getHoraInicio() != null && t.getHoraFin() != null) {
-                    minutosOcupados += ChronoUnit.MINUTES.between(t.getHoraInicio(), t.getHoraFin());
-                }
-            }
+            long minutosOcupados = minutosPorConsultorio.getOrDefault(c.getId(), 0L);
 
-            long minutosDisponibles = calcularMinutosDisponiblesConsultorio(c, desde, hasta);
+            long minutosDisponibles = calcularMinutosDisponiblesConsultorio(c, ocurrenciasPorDia);
 
             double porcentaje = 0.0;
             if (minutosDisponibles > 0) {
@@ -192,63 +168,115 @@ public class DashboardService {
         dto.setOcupacionPorConsultorio(ocupacionMap);
         dto.setOcupacionDetallada(ocupacionDetallada);
 
-        LocalDate hoy = LocalDate.now();
-        long futurosTotal = turnos.stream().filter(t -> t.getFecha() != null && !t.getFecha().isBefore(hoy)).count();
-        long futurosAsignados = turnos.stream()
-                .filter(t -> t.getFecha() != null && !t.getFecha().isBefore(hoy) && t.getConsultorio() != null).count();
-        dto.setEficienciaAsignacion(percentSafe(futurosAsignados, futurosTotal));
+        ConteoTurnos futuros = contarFuturos(desde, hasta, null, null, centroId, consultorioId);
+        dto.setEficienciaAsignacion(percentSafe(futuros.total - futuros.sinConsultorio, futuros.total));
 
         return dto;
     }
 
+    /**
+     * Conteo de turnos desde hoy (inclusive) dentro del rango pedido
+     */
+    private ConteoTurnos contarFuturos(LocalDate desde, LocalDate hasta, Integer staffMedicoId,
+            Integer especialidadId, Integer centroId, Integer consultorioId) {
+        LocalDate hoy = LocalDate.now();
+        LocalDate desdeFuturo = desde.isBefore(hoy) ? hoy : desde;
+        if (desdeFuturo.isAfter(hasta)) {
+            return ConteoTurnos.de(List.of());
+        }
+        return ConteoTurnos.de(metricaDiariaRepository.sumarPorEstado(
+                desdeFuturo, hasta, staffMedicoId, especialidadId, centroId, consultorioId));
+    }
+
+    /**
+     * Totales de turnos por estado leídos del agregado diario
+     */
+    private static class ConteoTurnos {
+        private final Map<String, Long> porEstado = new HashMap<>();
+        private long total;
+        private long sinConsultorio;
+
+        static ConteoTurnos de(List<Object[]> filas) {
+            ConteoTurnos conteo = new ConteoTurnos();
+            for (Object[] row : filas) {
+                long cantidad = ((Number) row[1]).longValue();
+                conteo.porEstado.put(((EstadoTurno) row[0]).name(), cantidad);
+                conteo.total += cantidad;
+                conteo.sinConsultorio += ((Number) row[2]).longValue();
+            }
+            return conteo;
+        }
+    }
+
     private double percentSafe(long numerator, long denominator) {
         if (denominator <= 0)
             return 0.0;
         return ((double) numerator / (double) denominator) * 100.0;
     }
 
-    private long calcularMinutosDisponiblesConsultorio(Consultorio consultorio, LocalDate desde, LocalDate hasta) {
-        if (consultorio == null || desde == null || hasta == null)
+    /**
+     * Cuenta cuántas veces aparece cada día de la semana en el rango (inclusive),
+     * indexado por DayOfWeek.ordinal(). Semanas completas más el resto, sin recorrer día por día.
+     */
+    private static long[] contarDiasDeSemana(LocalDate desde, LocalDate hasta) {
+        long[] ocurrencias = new long[7];
+        if (desde == null || hasta == null || hasta.isBefore(desde))
+            return ocurrencias;
+
+        long dias = ChronoUnit.DAYS.between(desde, hasta) + 1;
+        Arrays.fill(ocurrencias, dias / 7);
+        for (int i = 0; i < dias % 7; i++) {
+            ocurrencias[desde.plusDays(i).getDayOfWeek().ordinal()]++;
+        }
+        return ocurrencias;
+    }
+
+    /**
+     * Minutos disponibles de un consultorio: minutos de cada día de la semana por la
+     * cantidad de veces que ese día aparece en el rango
+     */
+    private long calcularMinutosDisponiblesConsultorio(Consultorio consultorio, long[] ocurrenciasPorDia) {
+        if (consultorio == null)
             return 0;
 
         long total = 0;
-        long fallbackMinutes = 480;
-        LocalDate d = desde;
-        while (!d.isAfter(hasta)) {
-            DayOfWeek dow = d.getDayOfWeek();
-            String diaName = dow.name();
-
-            var horarioOpt = consultorio.getHorariosSemanales().stream()
-                    .filter(h -> h.getActivo() != null && h.getActivo())
-                    .filter(h -> h.getDiaSemana() != null
-                            && h.getDiaSemana().toUpperCase().contains(diaName.substring(0, 3)))
-                    .findFirst();
-
-            if (horarioOpt.isPresent()) {
-                var h = horarioOpt.get();
-                if (h.getHoraApertura() != null && h.getHoraCierre() != null
-                        && h.getHoraCierre().isAfter(h.getHoraApertura())) {
-                    long mins = ChronoUnit.MINUTES.between(h.getHoraApertura(), h.getHoraCierre());
-                    total += mins;
-                } else {
-                    // Configurado pero horas inválidas -> 0
-                    total += 0;
-                }
-            } else {
-                // --- CORRECCIÓN AQUÍ ---
-                // Si no hay horario configurado, solo aplicamos fallback de lunes a viernes.
-                // Evitamos sumar 8 horas los domingos, lo que diluye la métrica.
-                if (dow != DayOfWeek.SATURDAY && dow != DayOfWeek.SUNDAY) {
-                    total += fallbackMinutes;
-                } else {
-                    total += 0; // Fines de semana cerrados por defecto
-                }
+        for (DayOfWeek dow : DayOfWeek.values()) {
+            long ocurrencias = ocurrenciasPorDia[dow.ordinal()];
+            if (ocurrencias > 0) {
+                total += minutosDisponiblesDia(consultorio, dow) * ocurrencias;
             }
-            d = d.plusDays(1);
         }
         return total;
     }
 
+    private long minutosDisponiblesDia(Consultorio consultorio, DayOfWeek dow) {
+        long fallbackMinutes = 480;
+        String diaName = dow.name();
+
+        var horarioOpt = consultorio.getHorariosSemanales().stream()
+                .filter(h -> h.getActivo() != null && h.getActivo())
+                .filter(h -> h.getDiaSemana() != null
+                        && h.getDiaSemana().toUpperCase().contains(diaName.substring(0, 3)))
+                .findFirst();
+
+        if (horarioOpt.isPresent()) {
+            var h = horarioOpt.get();
+            if (h.getHoraApertura() != null && h.getHoraCierre() != null
+                    && h.getHoraCierre().isAfter(h.getHoraApertura())) {
+                return ChronoUnit.MINUTES.between(h.getHoraApertura(), h.getHoraCierre());
+            }
+            // Configurado pero horas inválidas -> 0
+            return 0;
+        }
+
+        // Si no hay horario configurado, solo aplicamos fallback de lunes a viernes.
+        // Evitamos sumar 8 horas los domingos, lo que diluye la métrica.
+        if (dow != DayOfWeek.SATURDAY && dow != DayOfWeek.SUNDAY) {
+            return fallbackMinutes;
+        }
+        return 0; // Fines de semana cerrados por defecto
+    }
+
     /**
      * Calcula métricas de calidad usando encuestas y auditoría.
      * Usa lógica "Safe-Dates" para evitar errores JDBC con nulls.
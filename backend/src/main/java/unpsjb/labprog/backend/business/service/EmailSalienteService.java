@@ -0,0 +1,505 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import unpsjb.labprog.backend.business.repository.EmailSalienteRepository;
+import unpsjb.labprog.backend.model.EmailSaliente;
+
+/**
+ * Cola persistente de correos salientes (tabla email_saliente) y los hilos que la envían.
+ *
+ * EmailService encola cada correo con {@link #encolar}: la fila se guarda en la transacción
+ * del llamador (o en una propia si no hay), así un reinicio no pierde correos y una operación
+ * revertida no envía nada. Un pool fijo de
+ * hilos (email.saliente.hilos) toma lotes con FOR UPDATE SKIP LOCKED (varias instancias pueden
+ * compartir la cola) y envía cada lote por una sola conexión SMTP.
+ *
+ * Control de envío:
+ * - Límite por dominio de destino (email.saliente.limite-por-dominio-por-minuto, por instancia):
+ *   lo que excede el cupo vuelve a la cola para cuando haya cupo, sin contar como intento.
+ * - Los fallos (servidor caído, timeouts, errores de E/S) se reintentan con espera exponencial
+ *   hasta email.saliente.max-intentos; los errores definitivos (dirección rechazada o mensaje
+ *   que no se puede armar) y los agotados quedan FALLIDO.
+ * - Los correos tomados por una instancia que murió vuelven a la cola pasado
+ *   email.saliente.tomado-maximo-ms, por lo que un correo puede llegar a enviarse dos veces.
+ *
+ * Para probar contra un SMTP local (GreenMail, MailHog) alcanza con apuntar spring.mail.host y
+ * spring.mail.port a ese servidor.
+ */
+@Service
+public class EmailSalienteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailSalienteService.class);
+
+    private static final String SQL_TOMAR_LOTE = """
+            UPDATE email_saliente SET estado = 'ENVIANDO', tomado_en = ?
+            WHERE id IN (SELECT id FROM email_saliente
+                         WHERE estado = 'PENDIENTE' AND proximo_intento <= ?
+                         ORDER BY proximo_intento, id
+                         LIMIT ?
+                         FOR UPDATE SKIP LOCKED)
+            RETURNING id
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EmailSalienteRepository emailSalienteRepository;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Value("${spring.mail.username}")
+    private String fromEmail;
+
+    @Value("${email.saliente.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${email.saliente.hilos:2}")
+    private int hilos;
+
+    @Value("${email.saliente.tamano-lote:20}")
+    private int tamanoLote;
+
+    @Value("${email.saliente.intervalo-sondeo-ms:2000}")
+    private long intervaloSondeoMs;
+
+    @Value("${email.saliente.limite-por-dominio-por-minuto:60}")
+    private int limitePorDominioPorMinuto;
+
+    @Value("${email.saliente.max-intentos:6}")
+    private int maxIntentos;
+
+    @Value("${email.saliente.reintento-inicial-ms:30000}")
+    private long reintentoInicialMs;
+
+    @Value("${email.saliente.reintento-maximo-ms:3600000}")
+    private long reintentoMaximoMs;
+
+    @Value("${email.saliente.tomado-maximo-ms:600000}")
+    private long tomadoMaximoMs;
+
+    @Value("${email.saliente.retencion-dias:7}")
+    private int retencionDias;
+
+    private TransactionTemplate transaccionPropia;
+    private ExecutorService workers;
+    private volatile boolean activo;
+
+    /** Avisos de correos nuevos para que un hilo ocioso no espere al próximo sondeo */
+    private final Semaphore avisos = new Semaphore(0);
+
+    /** Cupo de envío por dominio de destino. Protegido por sí mismo */
+    private final Map<String, CupoDominio> cupos = new HashMap<>();
+
+    // Métricas
+    private final AtomicLong encolados = new AtomicLong();
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong diferidosPorLimite = new AtomicLong();
+    private final AtomicLong lotesSmtp = new AtomicLong();
+    private final AtomicLong tiempoTotalSmtpMs = new AtomicLong();
+    private final AtomicLong tiempoTotalEntregaMs = new AtomicLong();
+    private final AtomicLong tiempoMaximoEntregaMs = new AtomicLong();
+
+    @PostConstruct
+    public void iniciar() {
+        transaccionPropia = new TransactionTemplate(transactionManager);
+        transaccionPropia.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!habilitado) {
+            logger.info("ℹ️ Envío de correos deshabilitado en esta instancia: los correos solo se encolan");
+            return;
+        }
+        int cantidad = Math.max(1, hilos);
+        AtomicInteger contador = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(cantidad, runnable -> {
+            Thread hilo = new Thread(runnable, "email-saliente-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        activo = true;
+        for (int i = 0; i < cantidad; i++) {
+            workers.submit(this::procesarCola);
+        }
+        logger.info("✅ Cola de correos salientes iniciada ({} hilos, lotes de {})", cantidad, tamanoLote);
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (workers == null) {
+            return;
+        }
+        activo = false;
+        avisos.release(Math.max(1, hilos));
+        workers.shutdown();
+        try {
+            workers.awaitTermination(15, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Guarda un correo en la cola. Con una transacción activa se escribe en ella: el correo sale
+     * solo si el llamador confirma, y los hilos se avisan recién al confirmar. Sin transacción
+     * se guarda en una propia antes de volver. El cuerpo se arma junto con la escritura, con lo
+     * que necesite persistir (por ejemplo, tokens de deep link).
+     *
+     * No debe llamarse desde afterCommit: ahí la transacción terminada sigue activa y la fila no
+     * se confirmaría. Esos correos se encolan antes, dentro de la transacción.
+     *
+     * @return ID del correo encolado
+     */
+    public Long encolar(String destinatario, String asunto, Supplier<String> cuerpo, boolean html) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            Long id = guardar(destinatario, asunto, cuerpo, html);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    encolados.incrementAndGet();
+                    despertar();
+                }
+            });
+            return id;
+        }
+
+        Long id = transaccionPropia.execute(status -> guardar(destinatario, asunto, cuerpo, html));
+        encolados.incrementAndGet();
+        despertar();
+        return id;
+    }
+
+    private Long guardar(String destinatario, String asunto, Supplier<String> cuerpo, boolean html) {
+        String contenido = cuerpo.get();
+        LocalDateTime ahora = LocalDateTime.now();
+        EmailSaliente email = new EmailSaliente();
+        email.setDestinatario(destinatario.trim());
+        email.setAsunto(asunto);
+        email.setCuerpo(contenido);
+        email.setHtml(html);
+        email.setCreadoEn(ahora);
+        email.setProximoIntento(ahora);
+        return emailSalienteRepository.save(email).getId();
+    }
+
+    /**
+     * Profundidad de la cola, latencias y contadores de envío
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalEnviados = enviados.get();
+        long totalLotes = lotesSmtp.get();
+        estadisticas.put("habilitado", habilitado);
+        estadisticas.put("hilos", habilitado ? Math.max(1, hilos) : 0);
+        estadisticas.put("pendientes", emailSalienteRepository.countByEstado(EmailSaliente.PENDIENTE));
+        estadisticas.put("enviando", emailSalienteRepository.countByEstado(EmailSaliente.ENVIANDO));
+        estadisticas.put("fallidosEnCola", emailSalienteRepository.countByEstado(EmailSaliente.FALLIDO));
+        estadisticas.put("pendienteMasAntiguo", emailSalienteRepository.findCreadoMasAntiguo(EmailSaliente.PENDIENTE));
+        estadisticas.put("encolados", encolados.get());
+        estadisticas.put("enviados", totalEnviados);
+        estadisticas.put("fallidos", fallidos.get());
+        estadisticas.put("reintentos", reintentos.get());
+        estadisticas.put("diferidosPorLimite", diferidosPorLimite.get());
+        estadisticas.put("lotesSmtp", totalLotes);
+        estadisticas.put("tiempoPromedioLoteSmtpMs", totalLotes == 0 ? 0 : tiempoTotalSmtpMs.get() / totalLotes);
+        estadisticas.put("tiempoPromedioEntregaMs", totalEnviados == 0 ? 0 : tiempoTotalEntregaMs.get() / totalEnviados);
+        estadisticas.put("tiempoMaximoEntregaMs", tiempoMaximoEntregaMs.get());
+        return estadisticas;
+    }
+
+    /**
+     * Devuelve a la cola los correos tomados hace más de email.saliente.tomado-maximo-ms
+     * (instancia detenida o muerta durante el envío)
+     */
+    @Scheduled(fixedDelayString = "${email.saliente.mantenimiento-ms:60000}")
+    public void liberarTomados() {
+        try {
+            LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(tomadoMaximoMs));
+            Integer liberados = transaccionPropia.execute(status -> emailSalienteRepository
+                    .liberarTomadosAntesDe(EmailSaliente.PENDIENTE, EmailSaliente.ENVIANDO, limite));
+            if (liberados != null && liberados > 0) {
+                logger.warn("⚠️ {} correos tomados sin resultado volvieron a la cola", liberados);
+                despertar();
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error al liberar correos tomados: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Borra los correos enviados más antiguos que email.saliente.retencion-dias
+     * (idempotente en todas las instancias)
+     */
+    @Scheduled(cron = "${email.saliente.limpieza-cron:0 40 3 * * ?}", zone = "America/Argentina/Buenos_Aires")
+    public void limpiarEnviados() {
+        try {
+            LocalDateTime limite = LocalDateTime.now().minusDays(retencionDias);
+            Integer borrados = transaccionPropia.execute(status -> emailSalienteRepository
+                    .deleteByEstadoAndEnviadoEnBefore(EmailSaliente.ENVIADO, limite));
+            logger.info("🧹 Correos enviados anteriores a {} eliminados: {}", limite, borrados);
+        } catch (Exception e) {
+            logger.error("❌ Error al limpiar correos enviados: {}", e.getMessage());
+        }
+    }
+
+    private void despertar() {
+        if (activo && avisos.availablePermits() < Math.max(1, hilos)) {
+            avisos.release();
+        }
+    }
+
+    private void procesarCola() {
+        while (activo) {
+            try {
+                List<EmailSaliente> lote = tomarLote();
+                if (lote.isEmpty()) {
+                    avisos.tryAcquire(intervaloSondeoMs, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                procesarLote(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("❌ Error inesperado en la cola de correos salientes: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(intervaloSondeoMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<EmailSaliente> tomarLote() {
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> ids = transaccionPropia.execute(status ->
+                jdbcTemplate.queryForList(SQL_TOMAR_LOTE, Long.class, ahora, ahora, tamanoLote));
+        return ids == null || ids.isEmpty() ? List.of() : emailSalienteRepository.findAllById(ids);
+    }
+
+    /**
+     * Envía los correos del lote que tienen cupo en su dominio, difiere el resto y guarda el
+     * resultado de todos en una transacción
+     */
+    private void procesarLote(List<EmailSaliente> lote) {
+        List<EmailSaliente> aEnviar = new ArrayList<>(lote.size());
+        for (EmailSaliente email : lote) {
+            long espera = reservarCupo(dominio(email.getDestinatario()));
+            if (espera > 0) {
+                email.setEstado(EmailSaliente.PENDIENTE);
+                email.setTomadoEn(null);
+                email.setProximoIntento(LocalDateTime.now().plus(Duration.ofMillis(espera)));
+                diferidosPorLimite.incrementAndGet();
+            } else {
+                aEnviar.add(email);
+            }
+        }
+
+        Map<EmailSaliente, Exception> errores = enviar(aEnviar);
+
+        LocalDateTime ahora = LocalDateTime.now();
+        for (EmailSaliente email : aEnviar) {
+            email.setIntentos(email.getIntentos() + 1);
+            email.setTomadoEn(null);
+            Exception error = errores.get(email);
+            if (error == null) {
+                email.setEstado(EmailSaliente.ENVIADO);
+                email.setEnviadoEn(ahora);
+                email.setUltimoError(null);
+                long ms = Duration.between(email.getCreadoEn(), ahora).toMillis();
+                enviados.incrementAndGet();
+                tiempoTotalEntregaMs.addAndGet(ms);
+                tiempoMaximoEntregaMs.accumulateAndGet(ms, Math::max);
+            } else {
+                programarReintento(email, error);
+            }
+        }
+
+        transaccionPropia.executeWithoutResult(status -> emailSalienteRepository.saveAll(lote));
+    }
+
+    /**
+     * Envía los correos por una única conexión SMTP
+     *
+     * @return error de cada correo que no se pudo enviar
+     */
+    private Map<EmailSaliente, Exception> enviar(List<EmailSaliente> correos) {
+        Map<EmailSaliente, Exception> errores = new HashMap<>();
+        Map<MimeMessage, EmailSaliente> porMensaje = new LinkedHashMap<>();
+        for (EmailSaliente email : correos) {
+            try {
+                porMensaje.put(crearMensaje(email), email);
+            } catch (MessagingException | RuntimeException e) {
+                // Dirección o contenido que no se pueden armar: no se resuelve reintentando
+                errores.put(email, new MailPreparationException("No se pudo armar el correo: " + e.getMessage(), e));
+            }
+        }
+        if (porMensaje.isEmpty()) {
+            return errores;
+        }
+
+        long inicio = System.nanoTime();
+        try {
+            mailSender.send(porMensaje.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                porMensaje.values().forEach(email -> errores.put(email, e));
+            } else {
+                e.getFailedMessages().forEach((mensaje, error) -> {
+                    EmailSaliente email = porMensaje.get(mensaje);
+                    if (email != null) {
+                        errores.put(email, error);
+                    }
+                });
+            }
+        } catch (MailException e) {
+            porMensaje.values().forEach(email -> errores.put(email, e));
+        } finally {
+            lotesSmtp.incrementAndGet();
+            tiempoTotalSmtpMs.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        }
+        return errores;
+    }
+
+    private MimeMessage crearMensaje(EmailSaliente email) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, email.isHtml(), "UTF-8");
+        helper.setFrom(fromEmail);
+        helper.setTo(email.getDestinatario());
+        helper.setSubject(email.getAsunto());
+        helper.setText(email.getCuerpo(), email.isHtml());
+        return message;
+    }
+
+    private void programarReintento(EmailSaliente email, Exception error) {
+        String mensaje = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        email.setUltimoError(mensaje.length() > 1000 ? mensaje.substring(0, 1000) : mensaje);
+
+        if (esDefinitivo(error) || email.getIntentos() >= maxIntentos) {
+            email.setEstado(EmailSaliente.FALLIDO);
+            fallidos.incrementAndGet();
+            logger.error("❌ Correo ID {} a {} descartado tras {} intentos: {}",
+                    email.getId(), email.getDestinatario(), email.getIntentos(), mensaje);
+            return;
+        }
+
+        long espera = Math.min(reintentoMaximoMs, reintentoInicialMs << Math.min(email.getIntentos() - 1, 20));
+        email.setEstado(EmailSaliente.PENDIENTE);
+        email.setProximoIntento(LocalDateTime.now().plus(Duration.ofMillis(espera)));
+        reintentos.incrementAndGet();
+        logger.warn("⚠️ Correo ID {} a {} falló (intento {}), se reintenta en {} ms: {}",
+                email.getId(), email.getDestinatario(), email.getIntentos(), espera, mensaje);
+    }
+
+    /**
+     * Errores que no se resuelven reintentando: mensaje mal armado o destinatario rechazado.
+     * Todo lo demás (conexión, autenticación, E/S, que en getFailedMessages llegan como
+     * MessagingException sueltas) se reintenta con espera.
+     */
+    private boolean esDefinitivo(Exception error) {
+        if (error instanceof MailParseException || error instanceof MailPreparationException) {
+            return true;
+        }
+        Exception actual = error;
+        while (actual != null) {
+            if (actual instanceof SendFailedException enviado) {
+                return enviado.getInvalidAddresses() != null && enviado.getInvalidAddresses().length > 0;
+            }
+            actual = actual instanceof MessagingException mensaje ? mensaje.getNextException() : null;
+        }
+        return false;
+    }
+
+    /**
+     * Reserva un envío en el cupo del dominio
+     *
+     * @return 0 si hay cupo, o los milisegundos hasta que lo haya
+     */
+    private long reservarCupo(String dominio) {
+        if (limitePorDominioPorMinuto <= 0) {
+            return 0;
+        }
+        synchronized (cupos) {
+            CupoDominio cupo = cupos.computeIfAbsent(dominio,
+                    d -> new CupoDominio(limitePorDominioPorMinuto, System.nanoTime()));
+            return cupo.reservar(limitePorDominioPorMinuto, System.nanoTime());
+        }
+    }
+
+    private static String dominio(String destinatario) {
+        int arroba = destinatario.lastIndexOf('@');
+        return (arroba >= 0 ? destinatario.substring(arroba + 1) : destinatario).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Balde de fichas: se recarga de forma continua hasta {@code limite} envíos por minuto
+     */
+    private static final class CupoDominio {
+
+        private double disponibles;
+        private long actualizadoNanos;
+
+        CupoDominio(int limite, long ahoraNanos) {
+            this.disponibles = limite;
+            this.actualizadoNanos = ahoraNanos;
+        }
+
+        long reservar(int limite, long ahoraNanos) {
+            double porMs = limite / 60_000.0;
+            disponibles = Math.min(limite, disponibles + (ahoraNanos - actualizadoNanos) / 1_000_000.0 * porMs);
+            actualizadoNanos = ahoraNanos;
+            if (disponibles >= 1) {
+                disponibles -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - disponibles) / porMs);
+        }
+    }
+}
@@ -8,17 +8,18 @@ import org.springframework.mail.MailException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Servicio para el envío de correos electrónicos.
  * Soporta envío de mensajes de texto plano y HTML de forma síncrona y
- * asíncrona.
+ * asíncrona. Los envíos asíncronos se guardan en la cola persistente de
+ * correos salientes (ver EmailSalienteService), que los envía con reintentos.
  * 
  */
 @Service
@@ -33,6 +34,9 @@ public class EmailService {
 
     private DeepLinkService deepLinkService;
 
+    @Autowired
+    private EmailSalienteService emailSalienteService;
+
     @Value("${spring.mail.username}")
     private String fromEmail;
 
@@ -106,16 +110,8 @@ public class EmailService {
      * @param body    Cuerpo del mensaje en texto plano
      * @return CompletableFuture<Void> para manejar el resultado asíncrono
      */
-    @Async
     public CompletableFuture<Void> sendTextEmailAsync(String to, String subject, String body) {
-        try {
-            sendTextEmail(to, subject, body);
-            logger.info("[Async] Correo de texto enviado exitosamente a: {}", to);
-            return CompletableFuture.completedFuture(null);
-        } catch (Exception ex) {
-            logger.error("[Async] Error al enviar correo de texto a {}: {}", to, ex.getMessage());
-            return CompletableFuture.failedFuture(ex);
-        }
+        return encolar(to, subject, () -> body, false);
     }
 
     /**
@@ -126,16 +122,8 @@ public class EmailService {
      * @param htmlBody Cuerpo del mensaje en HTML
      * @return CompletableFuture<Void> para manejar el resultado asíncrono
      */
-    @Async
     public CompletableFuture<Void> sendHtmlEmailAsync(String to, String subject, String htmlBody) {
-        try {
-            sendHtmlEmail(to, subject, htmlBody);
-            logger.info("[Async] Correo HTML enviado exitosamente a: {}", to);
-            return CompletableFuture.completedFuture(null);
-        } catch (Exception ex) {
-            logger.error("[Async] Error al enviar correo HTML a {}: {}", to, ex.getMessage());
-            return CompletableFuture.failedFuture(ex);
-        }
+        return encolar(to, subject, () -> htmlBody, true);
     }
 
     /**
@@ -144,12 +132,9 @@ public class EmailService {
      * @param to        Dirección de correo del usuario
      * @param resetLink Enlace para restablecer la contraseña
      */
-    @Async
     public CompletableFuture<Void> sendPasswordResetEmail(String to, String resetLink) {
         String subject = appName + " - Restablecer contraseña";
-        String htmlBody = buildPasswordResetEmailBody(resetLink);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(to, subject, () -> buildPasswordResetEmailBody(resetLink), true);
     }
 
     /**
@@ -159,12 +144,9 @@ public class EmailService {
      * @param activationLink Enlace para activar la cuenta
      * @param userName       Nombre del usuario
      */
-    @Async
     public CompletableFuture<Void> sendAccountActivationEmail(String to, String activationLink, String userName) {
         String subject = appName + " - Activar tu cuenta";
-        String htmlBody = buildAccountActivationEmailBody(activationLink, userName);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(to, subject, () -> buildAccountActivationEmailBody(activationLink, userName), true);
     }
 
     /**
@@ -174,12 +156,9 @@ public class EmailService {
      * @param userName          Nombre del usuario
      * @param temporaryPassword Contraseña temporal
      */
-    @Async
     public CompletableFuture<Void> sendInitialCredentialsEmail(String to, String userName, String temporaryPassword) {
         String subject = appName + " - Credenciales de acceso";
-        String htmlBody = buildInitialCredentialsEmailBody(userName, temporaryPassword);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(to, subject, () -> buildInitialCredentialsEmailBody(userName, temporaryPassword), true);
     }
 
     /**
@@ -189,24 +168,24 @@ public class EmailService {
      * @param patientName        Nombre del paciente
      * @param appointmentDetails Detalles del turno
      */
-    @Async
     public CompletableFuture<Void> sendAppointmentConfirmationEmail(String to, String patientName,
             String appointmentDetails, Integer pacienteId, Integer turnoId) {
         String subject = appName + " - Confirmación de turno";
 
-        String dashboardUrl;
-        if (pacienteId != null && turnoId != null) {
-            // Generar deep-link de acceso (no activar confirmación automática)
-            String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "ACCESO");
-            dashboardUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
-        } else {
-            // Fallback: redirigir al dashboard sin token si no se proporcionan IDs
-            dashboardUrl = appUrl + "/paciente-dashboard";
-        }
-
-        String htmlBody = buildAppointmentConfirmationEmailBody(patientName, appointmentDetails, dashboardUrl);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        // El enlace se genera al encolar, en la misma transacción que el correo
+        return encolar(to, subject, () -> {
+            String dashboardUrl;
+            if (pacienteId != null && turnoId != null) {
+                // Generar deep-link de acceso (no activar confirmación automática)
+                String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "ACCESO");
+                dashboardUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
+            } else {
+                // Fallback: redirigir al dashboard sin token si no se proporcionan IDs
+                dashboardUrl = appUrl + "/paciente-dashboard";
+            }
+
+            return buildAppointmentConfirmationEmailBody(patientName, appointmentDetails, dashboardUrl);
+        }, true);
     }
 
     /**
@@ -218,18 +197,18 @@ public class EmailService {
      * @param pacienteId          ID del paciente para generar deep link
      * @param turnoId             ID del turno cancelado
      */
-    @Async
     public CompletableFuture<Void> sendAppointmentCancellationEmail(String to, String patientName,
             String cancellationDetails, Integer pacienteId, Integer turnoId) {
+        String subject = appName + " - Turno cancelado";
 
-        // Generar deep link token para reagendar
-        String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "CANCELACION");
-        String rescheduleUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
+        // El enlace se genera al encolar, en la misma transacción que el correo
+        return encolar(to, subject, () -> {
+            // Generar deep link token para reagendar
+            String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "CANCELACION");
+            String rescheduleUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
 
-        String subject = appName + " - Turno cancelado";
-        String htmlBody = buildAppointmentCancellationEmailBody(patientName, cancellationDetails, rescheduleUrl);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+            return buildAppointmentCancellationEmailBody(patientName, cancellationDetails, rescheduleUrl);
+        }, true);
     }
 
     /**
@@ -239,15 +218,12 @@ public class EmailService {
      * @param patientName        Nombre del paciente
      * @param appointmentDetails Detalles del turno cancelado
      * @param rescheduleUrl      URL para reagendar
-     * @return CompletableFuture que se completa cuando el email es enviado
+     * @return CompletableFuture que se completa cuando el email queda encolado
      */
-    @Async
     public CompletableFuture<Void> sendAutomaticCancellationEmail(String to, String patientName,
             String appointmentDetails, String rescheduleUrl) {
         String subject = appName + " - Turno cancelado automáticamente";
-        String htmlBody = buildAutomaticCancellationEmailBody(patientName, appointmentDetails, rescheduleUrl);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(to, subject, () -> buildAutomaticCancellationEmailBody(patientName, appointmentDetails, rescheduleUrl), true);
     }
 
     /**
@@ -256,13 +232,10 @@ public class EmailService {
      * @param adminUser         Usuario administrador creado
      * @param temporaryPassword Contraseña temporal asignada
      */
-    @Async
     public CompletableFuture<Void> sendAdminWelcomeEmail(unpsjb.labprog.backend.model.User adminUser,
             String temporaryPassword) {
         String subject = appName + " - Cuenta de Administrador Creada";
-        String htmlBody = buildAdminWelcomeEmailBody(adminUser.getNombre(), temporaryPassword);
-        sendHtmlEmail(adminUser.getEmail(), subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(adminUser.getEmail(), subject, () -> buildAdminWelcomeEmailBody(adminUser.getNombre(), temporaryPassword), true);
     }
 
     private String buildAdminWelcomeEmailBody(String adminName, String temporaryPassword) {
@@ -318,13 +291,10 @@ public class EmailService {
      * @param medicoUser        Usuario médico creado
      * @param temporaryPassword Contraseña temporal asignada
      */
-    @Async
     public CompletableFuture<Void> sendMedicoWelcomeEmail(unpsjb.labprog.backend.model.User medicoUser,
             String temporaryPassword) {
         String subject = appName + " - Bienvenido Dr./Dra. " + medicoUser.getApellido();
-        String htmlBody = buildMedicoWelcomeEmailBody(medicoUser.getNombre(), medicoUser.getApellido(), temporaryPassword);
-        sendHtmlEmail(medicoUser.getEmail(), subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+        return encolar(medicoUser.getEmail(), subject, () -> buildMedicoWelcomeEmailBody(medicoUser.getNombre(), medicoUser.getApellido(), temporaryPassword), true);
     }
 
     private String buildMedicoWelcomeEmailBody(String nombre, String apellido, String temporaryPassword) {
@@ -554,18 +524,18 @@ public class EmailService {
      * @param turnoId         ID del turno para generar el deep-link
      * @return CompletableFuture<Void> para manejo asíncrono
      */
-    @Async
     public CompletableFuture<Void> sendAppointmentReminderEmail(String to, String patientName, String reminderDetails,
             Integer pacienteId, Integer turnoId) {
         String subject = appName + " - Recordatorio de turno";
 
-        // Generar deep-link para confirmación directa
-        String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "CONFIRMACION");
-        String confirmUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
+        // El enlace se genera al encolar, en la misma transacción que el correo
+        return encolar(to, subject, () -> {
+            // Generar deep-link para confirmación directa
+            String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "CONFIRMACION");
+            String confirmUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
 
-        String htmlBody = buildAppointmentReminderEmailBody(patientName, reminderDetails, confirmUrl);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+            return buildAppointmentReminderEmailBody(patientName, reminderDetails, confirmUrl);
+        }, true);
     }
 
     /**
@@ -578,17 +548,17 @@ public class EmailService {
      * @param pacienteId    ID del paciente para generar deep-link token
      * @return CompletableFuture<Void> para manejo asíncrono
      */
-    @Async
     public CompletableFuture<Void> sendSurveyInvitationEmail(String to, String patientName, String turnoDetails, Integer turnoId, Integer pacienteId) {
         String subject = appName + " - Invitación a encuesta de satisfacción";
-        
-        // Generar deep-link token para acceso directo a la encuesta
-        String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "ENCUESTA");
-        String surveyUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
-        
-        String htmlBody = buildSurveyInvitationEmailBody(patientName, turnoDetails, surveyUrl);
-        sendHtmlEmail(to, subject, htmlBody);
-        return CompletableFuture.completedFuture(null);
+
+        // El enlace se genera al encolar, en la misma transacción que el correo
+        return encolar(to, subject, () -> {
+            // Generar deep-link token para acceso directo a la encuesta
+            String deepLinkToken = deepLinkService.generarDeepLinkToken(pacienteId, turnoId, "ENCUESTA");
+            String surveyUrl = appUrl + "/link-verificacion?token=" + deepLinkToken;
+
+            return buildSurveyInvitationEmailBody(patientName, turnoDetails, surveyUrl);
+        }, true);
     }
 
     /**
@@ -714,6 +684,32 @@ public class EmailService {
                 appName, patientName, appointmentDetails, rescheduleUrl);
     }
 
+    /**
+     * Deja el correo en la cola persistente de correos salientes.
+     * El cuerpo se arma y se valida dentro de la transacción del encolado.
+     *
+     * @param to      Dirección de correo del destinatario
+     * @param subject Asunto del correo
+     * @param cuerpo  Arma el cuerpo del mensaje
+     * @param html    true si el cuerpo es HTML
+     * @return CompletableFuture que se completa cuando el correo quedó encolado
+     *         (o falla si no se pudo encolar)
+     */
+    private CompletableFuture<Void> encolar(String to, String subject, Supplier<String> cuerpo, boolean html) {
+        try {
+            Long id = emailSalienteService.encolar(to, subject, () -> {
+                String body = cuerpo.get();
+                validateEmailParameters(to, subject, body);
+                return body;
+            }, html);
+            logger.info("Correo ID {} encolado para: {}", id, to);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception ex) {
+            logger.error("Error al encolar correo para {}: {}", to, ex.getMessage());
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
     /**
      * Valida los parámetros básicos para el envío de correos.
      * 
@@ -1,5 +1,6 @@
 package unpsjb.labprog.backend.business.service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -38,6 +39,12 @@ public class EncuestaInvitacionService {
     @Autowired
     private EncuestaService encuestaService;
 
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_INVITACIONES_PENDIENTES = "encuestas.invitaciones-pendientes";
+    static final String TAREA_LIMPIEZA_INVITACIONES = "encuestas.limpieza-invitaciones";
+
     // Configuración desde application.properties
     @Value("${app.encuesta.invitacion.horas-envio-inicial:2}")
     private int horasEnvioInicial;
@@ -158,6 +165,10 @@ public class EncuestaInvitacionService {
     @Scheduled(fixedRate = 3600000) // Cada hora (3600000 ms)
     @Transactional
     public void procesarInvitacionesPendientes() {
+        tareaProgramadaService.ejecutar(TAREA_INVITACIONES_PENDIENTES, Duration.ofMinutes(50), this::procesarInvitacionesPendientesEnInstancia);
+    }
+
+    private void procesarInvitacionesPendientesEnInstancia() {
         logger.info("Iniciando procesamiento de invitaciones pendientes de encuesta");
 
         try {
@@ -337,6 +348,10 @@ public class EncuestaInvitacionService {
     @Scheduled(fixedRate = 86400000) // Cada 24 horas (86400000 ms)
     @Transactional
     public void limpiarInvitacionesExpiradas() {
+        tareaProgramadaService.ejecutar(TAREA_LIMPIEZA_INVITACIONES, Duration.ofHours(23), this::limpiarInvitacionesExpiradasEnInstancia);
+    }
+
+    private void limpiarInvitacionesExpiradasEnInstancia() {
         try {
             LocalDateTime fechaLimite = LocalDateTime.now().minusDays(limiteDiasLimpieza);
             List<EncuestaInvitacion> invitacionesExpiradas =
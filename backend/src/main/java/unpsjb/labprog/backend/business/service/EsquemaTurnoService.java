@@ -42,6 +42,9 @@ public class EsquemaTurnoService {
     @Autowired
     private ConsultorioDistribucionService consultorioDistribucionService;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
     /**
      * Obtiene todos los esquemas de turno con filtrado automático multi-tenencia.
      * - SUPERADMIN: Ve todos los esquemas globalmente
@@ -77,6 +80,7 @@ public class EsquemaTurnoService {
     @Transactional
     public void deleteById(Integer id) {
         esquemaTurnoRepository.deleteById(id);
+        agendaCacheService.invalidarEsquema(id);
     }
 
     public List<EsquemaTurnoDTO> findByCentroAtencion(Integer centroId) {
@@ -432,7 +436,9 @@ public class EsquemaTurnoService {
             validarDisponibilidadConsultorio(esquemaTurno);
         }
 
-        return toDTO(esquemaTurnoRepository.save(esquemaTurno));
+        EsquemaTurno guardado = esquemaTurnoRepository.save(esquemaTurno);
+        agendaCacheService.invalidarEsquema(guardado.getId());
+        return toDTO(guardado);
     }
 
     /**
@@ -476,6 +482,7 @@ public class EsquemaTurnoService {
                     }
                     
                     esquemaTurnoRepository.save(esquema);
+                    agendaCacheService.invalidarEsquema(esquema.getId());
                     procesados++;
                 }
             } catch (Exception e) {
@@ -618,6 +625,7 @@ public class EsquemaTurnoService {
                         .orElseThrow(() -> new IllegalArgumentException(
                             "Consultorio no encontrado con ID: " + nuevoConsultorioId)));
                     esquemaTurnoRepository.save(esquema);
+                    agendaCacheService.invalidarEsquema(esquema.getId());
                     procesados++;
                 }
             } catch (Exception e) {
@@ -911,6 +919,7 @@ public class EsquemaTurnoService {
 
         // Guardar el esquema actualizado
         EsquemaTurno actualizado = esquemaTurnoRepository.save(esquemaExistente);
+        agendaCacheService.invalidarEsquema(actualizado.getId());
 
         System.out.println("✅ Esquema actualizado exitosamente. Se agregaron " + horariosAgregados + " horario(s) nuevo(s).");
 
@@ -1,8 +1,12 @@
 package unpsjb.labprog.backend.business.service;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -40,42 +44,60 @@ public class ExportService {
         private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
 
         /**
-         * Exporta turnos a formato CSV
+         * Exporta turnos a formato CSV escribiendo directamente en el stream de salida.
+         * Los turnos se leen y escriben por lotes (ver TurnoService.procesarParaExportacion),
+         * de modo que la memoria usada no crece con el tamaño de la exportación.
          */
-        public String exportToCSV(TurnoFilterDTO filter) {
-                List<TurnoDTO> turnos = turnoService.findForExport(filter);
+        public void exportToCSV(TurnoFilterDTO filter, OutputStream salida) {
+                PrintWriter writer = new PrintWriter(
+                                new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8)));
+
+                // Escribir encabezados
+                writer.println(
+                                "ID,Fecha,Hora Inicio,Hora Fin,Estado,Paciente,Medico,Especialidad,Centro,Consultorio,Ultima Modificacion,Usuario Modificacion,Total Modificaciones");
+
+                // Escribir datos a medida que llegan los lotes
+                turnoService.procesarParaExportacion(filter, lote -> {
+                        for (TurnoDTO turno : lote) {
+                                escribirFilaCSV(writer, turno);
+                        }
+                        verificarEscritura(writer);
+                });
 
-                StringWriter stringWriter = new StringWriter();
-                try (PrintWriter writer = new PrintWriter(stringWriter)) {
-                        // Escribir encabezados
-                        writer.println(
-                                        "ID,Fecha,Hora Inicio,Hora Fin,Estado,Paciente,Medico,Especialidad,Centro,Consultorio,Ultima Modificacion,Usuario Modificacion,Total Modificaciones");
+                verificarEscritura(writer);
+        }
 
-                        // Escribir datos
-                        for (TurnoDTO turno : turnos) {
-                                writer.printf("%d,%s,%s,%s,%s,\"%s %s\",\"%s %s\",%s,%s,%s,%s,%s,%d%n",
-                                                turno.getId(),
-                                                turno.getFecha().format(DATE_FORMATTER),
-                                                turno.getHoraInicio().format(TIME_FORMATTER),
-                                                turno.getHoraFin().format(TIME_FORMATTER),
-                                                turno.getEstado(),
-                                                escapeCSV(turno.getNombrePaciente()),
-                                                escapeCSV(turno.getApellidoPaciente()),
-                                                escapeCSV(turno.getStaffMedicoNombre()),
-                                                escapeCSV(turno.getStaffMedicoApellido()),
-                                                escapeCSV(turno.getEspecialidadStaffMedico()),
-                                                escapeCSV(turno.getNombreCentro()),
-                                                escapeCSV(turno.getConsultorioNombre()),
-                                                turno.getFechaUltimaModificacion() != null
-                                                                ? turno.getFechaUltimaModificacion()
-                                                                                .format(DATETIME_FORMATTER)
-                                                                : "",
-                                                escapeCSV(turno.getUltimoUsuarioModificacion()),
-                                                (turno.getTotalModificaciones() != null ? turno.getTotalModificaciones()
-                                                                : Integer.valueOf(0)));
-                        }
+        /**
+         * PrintWriter no lanza excepciones de E/S: si el cliente cortó la conexión se corta
+         * la exportación en vez de seguir leyendo lotes que nadie va a recibir
+         */
+        private void verificarEscritura(PrintWriter writer) {
+                if (writer.checkError()) {
+                        throw new IllegalStateException("No se pudo escribir la exportación CSV (conexión cerrada)");
                 }
-                return stringWriter.toString();
+        }
+
+        private void escribirFilaCSV(PrintWriter writer, TurnoDTO turno) {
+                writer.printf("%d,%s,%s,%s,%s,\"%s %s\",\"%s %s\",%s,%s,%s,%s,%s,%d%n",
+                                turno.getId(),
+                                turno.getFecha().format(DATE_FORMATTER),
+                                turno.getHoraInicio().format(TIME_FORMATTER),
+                                turno.getHoraFin().format(TIME_FORMATTER),
+                                turno.getEstado(),
+                                escapeCSV(turno.getNombrePaciente()),
+                                escapeCSV(turno.getApellidoPaciente()),
+                                escapeCSV(turno.getStaffMedicoNombre()),
+                                escapeCSV(turno.getStaffMedicoApellido()),
+                                escapeCSV(turno.getEspecialidadStaffMedico()),
+                                escapeCSV(turno.getNombreCentro()),
+                                escapeCSV(turno.getConsultorioNombre()),
+                                turno.getFechaUltimaModificacion() != null
+                                                ? turno.getFechaUltimaModificacion()
+                                                                .format(DATETIME_FORMATTER)
+                                                : "",
+                                escapeCSV(turno.getUltimoUsuarioModificacion()),
+                                (turno.getTotalModificaciones() != null ? turno.getTotalModificaciones()
+                                                : Integer.valueOf(0)));
         }
 
         /**
@@ -163,16 +185,19 @@ public class ExportService {
         }
 
         /**
-         * Exporta turnos a formato PDF
+         * Exporta turnos a formato PDF escribiendo directamente en el stream de salida.
+         *
+         * La tabla se arma en modo "large table" de iText: se agrega al documento antes de
+         * tener filas y después de cada lote de TurnoService.procesarParaExportacion se hace
+         * flush, de modo que las páginas completas se escriben y se liberan a medida que se
+         * generan. La memoria usada depende del tamaño del lote, no de la exportación.
          */
-        public byte[] exportToPDF(TurnoFilterDTO filter) {
-                List<TurnoDTO> turnos = turnoService.findForExport(filter);
+        public void exportToPDF(TurnoFilterDTO filter, OutputStream salida) {
+                long cantidadTurnos = turnoService.contarParaExportacion(filter);
 
                 try {
-                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
                         // Crear el documento PDF con iText7
-                        PdfWriter writer = new PdfWriter(outputStream);
+                        PdfWriter writer = new PdfWriter(salida);
                         PdfDocument pdfDoc = new PdfDocument(writer);
                         Document document = new Document(pdfDoc);
 
@@ -190,7 +215,7 @@ public class ExportService {
                                         .setTextAlignment(TextAlignment.CENTER);
                         document.add(info);
 
-                        Paragraph totalTurnos = new Paragraph("Total de turnos: " + turnos.size())
+                        Paragraph totalTurnos = new Paragraph("Total de turnos: " + cantidadTurnos)
                                         .setFontSize(12)
                                         .setBold()
                                         .setTextAlignment(TextAlignment.LEFT);
@@ -199,12 +224,12 @@ public class ExportService {
                         // Espacio
                         document.add(new Paragraph("\n"));
 
-                        // Crear tabla
+                        // Crear tabla incremental (largeTable = true)
                         float[] columnWidths = { 1, 2, 1.5f, 1.5f, 2, 3, 3, 2.5f };
-                        Table table = new Table(UnitValue.createPercentArray(columnWidths))
+                        Table table = new Table(UnitValue.createPercentArray(columnWidths), true)
                                         .setWidth(UnitValue.createPercentValue(100));
 
-                        // Encabezados de la tabla
+                        // Encabezados de la tabla (se repiten en cada página)
                         table.addHeaderCell(new Cell().add(new Paragraph("ID").setBold()));
                         table.addHeaderCell(new Cell().add(new Paragraph("Fecha").setBold()));
                         table.addHeaderCell(new Cell().add(new Paragraph("Inicio").setBold()));
@@ -214,36 +239,43 @@ public class ExportService {
                         table.addHeaderCell(new Cell().add(new Paragraph("Médico").setBold()));
                         table.addHeaderCell(new Cell().add(new Paragraph("Especialidad").setBold()));
 
-                        // Agregar datos a la tabla
-                        for (TurnoDTO turno : turnos) {
-                                table.addCell(new Cell().add(new Paragraph(String.valueOf(turno.getId()))));
-                                table.addCell(new Cell().add(new Paragraph(turno.getFecha().format(DATE_FORMATTER))));
-                                table.addCell(new Cell()
-                                                .add(new Paragraph(turno.getHoraInicio().format(TIME_FORMATTER))));
-                                table.addCell(new Cell().add(new Paragraph(turno.getHoraFin().format(TIME_FORMATTER))));
-                                table.addCell(new Cell().add(new Paragraph(turno.getEstado())));
-                                table.addCell(new Cell().add(new Paragraph(
-                                                truncate(turno.getNombrePaciente() + " " + turno.getApellidoPaciente(),
-                                                                25))));
-                                table.addCell(new Cell().add(new Paragraph(
-                                                truncate(turno.getStaffMedicoNombre() + " "
-                                                                + turno.getStaffMedicoApellido(), 25))));
-                                table.addCell(new Cell().add(new Paragraph(
-                                                truncate(turno.getEspecialidadStaffMedico(), 20))));
-                        }
-
                         document.add(table);
 
-                        // Cerrar el documento
-                        document.close();
+                        // Agregar datos a medida que llegan los lotes
+                        turnoService.procesarParaExportacion(filter, lote -> {
+                                for (TurnoDTO turno : lote) {
+                                        agregarFilaPDF(table, turno);
+                                }
+                                table.flush();
+                        });
 
-                        return outputStream.toByteArray();
+                        table.complete();
+
+                        // Cerrar el documento (escribe el trailer y cierra el stream)
+                        document.close();
 
                 } catch (Exception e) {
                         throw new RuntimeException("Error al generar PDF: " + e.getMessage(), e);
                 }
         }
 
+        private void agregarFilaPDF(Table table, TurnoDTO turno) {
+                table.addCell(new Cell().add(new Paragraph(String.valueOf(turno.getId()))));
+                table.addCell(new Cell().add(new Paragraph(turno.getFecha().format(DATE_FORMATTER))));
+                table.addCell(new Cell()
+                                .add(new Paragraph(turno.getHoraInicio().format(TIME_FORMATTER))));
+                table.addCell(new Cell().add(new Paragraph(turno.getHoraFin().format(TIME_FORMATTER))));
+                table.addCell(new Cell().add(new Paragraph(turno.getEstado())));
+                table.addCell(new Cell().add(new Paragraph(
+                                truncate(turno.getNombrePaciente() + " " + turno.getApellidoPaciente(),
+                                                25))));
+                table.addCell(new Cell().add(new Paragraph(
+                                truncate(turno.getStaffMedicoNombre() + " "
+                                                + turno.getStaffMedicoApellido(), 25))));
+                table.addCell(new Cell().add(new Paragraph(
+                                truncate(turno.getEspecialidadStaffMedico(), 20))));
+        }
+
         /**
          * Trunca un string a una longitud máxima
          */
@@ -0,0 +1,348 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import unpsjb.labprog.backend.business.repository.ListaEsperaRepository;
+import unpsjb.labprog.backend.model.ListaEspera;
+
+/**
+ * Índice en memoria de las solicitudes PENDIENTES de la lista de espera.
+ *
+ * Agrupa las solicitudes por (especialidad, centro, médico preferido) y dentro de cada grupo
+ * las mantiene ordenadas por prioridad: urgencia médica descendente, luego fecha de solicitud.
+ * Un turno liberado solo mira dos grupos (su médico y "sin preferencia") y los recorre en
+ * orden de prioridad comparando la ventana de fechas deseada; normalmente el primero ya sirve.
+ *
+ * Las escrituras de ListaEsperaService lo mantienen al día con {@link #registrar} y
+ * {@link #quitar}, que se aplican al confirmar la transacción (las bajas también de inmediato,
+ * para que dos cancelaciones simultáneas no elijan la misma solicitud). Además se resincroniza
+ * periódicamente con la base, lo que cubre escrituras de otras instancias.
+ */
+@Service
+public class ListaEsperaIndiceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListaEsperaIndiceService.class);
+
+    /** Urgencia descendente (URGENTE > ALTA > MEDIA > BAJA), luego la solicitud más antigua */
+    static final Comparator<Pendiente> PRIORIDAD = Comparator
+            .comparing(Pendiente::urgencia, Comparator.reverseOrder())
+            .thenComparing(Pendiente::fechaSolicitud, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Pendiente::id);
+
+    @Autowired
+    private ListaEsperaRepository repository;
+
+    private final Map<ClaveGrupo, NavigableSet<Pendiente>> porGrupo = new HashMap<>();
+    private final Map<Long, Pendiente> porId = new HashMap<>();
+
+    private boolean cargado;
+
+    /**
+     * Cambios aplicados mientras una sincronización lee la base; se vuelven a aplicar sobre
+     * lo leído para no perderlos (null = solicitud que dejó de estar pendiente)
+     */
+    private Map<Long, Pendiente> cambiosDuranteCarga;
+
+    private final Object cargaLock = new Object();
+
+    private record ClaveGrupo(Integer especialidadId, Integer centroId, Integer medicoId) {
+    }
+
+    /**
+     * Datos de una solicitud pendiente necesarios para el matching
+     */
+    record Pendiente(Long id, Integer pacienteId, Integer especialidadId, Integer centroId, Integer medicoId,
+            LocalDate desde, LocalDate hasta, ListaEspera.UrgenciaMedica urgencia, LocalDateTime fechaSolicitud) {
+
+        static Pendiente de(ListaEspera solicitud) {
+            return new Pendiente(solicitud.getId(),
+                    solicitud.getPaciente() != null ? solicitud.getPaciente().getId() : null,
+                    solicitud.getEspecialidad() != null ? solicitud.getEspecialidad().getId() : null,
+                    solicitud.getCentroAtencion() != null ? solicitud.getCentroAtencion().getId() : null,
+                    solicitud.getMedicoPreferido() != null ? solicitud.getMedicoPreferido().getId() : null,
+                    solicitud.getFechaDeseadaDesde(), solicitud.getFechaDeseadaHasta(),
+                    solicitud.getUrgenciaMedica() != null ? solicitud.getUrgenciaMedica()
+                            : ListaEspera.UrgenciaMedica.BAJA,
+                    solicitud.getFechaSolicitud());
+        }
+
+        boolean aceptaFecha(LocalDate fecha) {
+            return (desde == null || !fecha.isBefore(desde)) && (hasta == null || !fecha.isAfter(hasta));
+        }
+
+        ClaveGrupo grupo() {
+            return new ClaveGrupo(especialidadId, centroId, medicoId);
+        }
+    }
+
+    // ===============================================
+    // CONSULTAS
+    // ===============================================
+
+    /**
+     * Solicitudes compatibles con un turno libre, en orden de prioridad.
+     * Compatibles: misma especialidad, mismo centro (cualquiera si centroId es null), médico
+     * preferido igual al del turno o sin preferencia, y la fecha dentro de la ventana deseada.
+     *
+     * @param excluir Solicitudes ya probadas, que se saltean (para pedir la página siguiente)
+     * @param maximo  Cantidad máxima de candidatos a devolver
+     * @return IDs de las solicitudes
+     */
+    public List<Long> candidatos(Integer especialidadId, Integer centroId, Integer medicoId, LocalDate fecha,
+            Set<Long> excluir, int maximo) {
+        asegurarCargado();
+        synchronized (this) {
+            List<NavigableSet<Pendiente>> grupos = new ArrayList<>();
+            if (centroId != null) {
+                agregarGrupo(grupos, new ClaveGrupo(especialidadId, centroId, medicoId));
+                if (medicoId != null) {
+                    agregarGrupo(grupos, new ClaveGrupo(especialidadId, centroId, null));
+                }
+            } else {
+                porGrupo.forEach((clave, grupo) -> {
+                    if (Objects.equals(clave.especialidadId(), especialidadId)
+                            && (clave.medicoId() == null || clave.medicoId().equals(medicoId))) {
+                        grupos.add(grupo);
+                    }
+                });
+            }
+            return recorrerEnOrden(grupos, fecha, excluir, maximo);
+        }
+    }
+
+    /**
+     * Solicitudes pendientes de una especialidad (todos los centros y médicos) en orden de prioridad
+     *
+     * @return IDs de las solicitudes
+     */
+    public List<Long> pendientesPorEspecialidad(Integer especialidadId) {
+        asegurarCargado();
+        synchronized (this) {
+            List<NavigableSet<Pendiente>> grupos = new ArrayList<>();
+            porGrupo.forEach((clave, grupo) -> {
+                if (Objects.equals(clave.especialidadId(), especialidadId)) {
+                    grupos.add(grupo);
+                }
+            });
+            return recorrerEnOrden(grupos, null, Set.of(), Integer.MAX_VALUE);
+        }
+    }
+
+    public long contarPendientes() {
+        asegurarCargado();
+        synchronized (this) {
+            return porId.size();
+        }
+    }
+
+    private void agregarGrupo(List<NavigableSet<Pendiente>> grupos, ClaveGrupo clave) {
+        NavigableSet<Pendiente> grupo = porGrupo.get(clave);
+        if (grupo != null) {
+            grupos.add(grupo);
+        }
+    }
+
+    /**
+     * Mezcla los grupos (ya ordenados) avanzando siempre por el de mayor prioridad, y se detiene
+     * al juntar el máximo pedido
+     */
+    private List<Long> recorrerEnOrden(List<NavigableSet<Pendiente>> grupos, LocalDate fecha, Set<Long> excluir,
+            int maximo) {
+        List<Iterator<Pendiente>> iteradores = new ArrayList<>();
+        List<Pendiente> cabezas = new ArrayList<>();
+        for (NavigableSet<Pendiente> grupo : grupos) {
+            Iterator<Pendiente> it = grupo.iterator();
+            if (it.hasNext()) {
+                iteradores.add(it);
+                cabezas.add(it.next());
+            }
+        }
+
+        List<Long> resultado = new ArrayList<>();
+        while (resultado.size() < maximo && !cabezas.isEmpty()) {
+            int mejor = 0;
+            for (int i = 1; i < cabezas.size(); i++) {
+                if (PRIORIDAD.compare(cabezas.get(i), cabezas.get(mejor)) < 0) {
+                    mejor = i;
+                }
+            }
+            Pendiente pendiente = cabezas.get(mejor);
+            if ((fecha == null || pendiente.aceptaFecha(fecha)) && !excluir.contains(pendiente.id())) {
+                resultado.add(pendiente.id());
+            }
+            Iterator<Pendiente> it = iteradores.get(mejor);
+            if (it.hasNext()) {
+                cabezas.set(mejor, it.next());
+            } else {
+                cabezas.remove(mejor);
+                iteradores.remove(mejor);
+            }
+        }
+        return resultado;
+    }
+
+    // ===============================================
+    // ESCRITURAS
+    // ===============================================
+
+    /**
+     * Refleja el estado de la solicitud en el índice: si está PENDIENTE se agrega o reubica,
+     * si no, se quita. Se toma una copia de los datos en el momento de la llamada.
+     */
+    public void registrar(ListaEspera solicitud) {
+        if (solicitud.getId() == null) {
+            return;
+        }
+        if (!"PENDIENTE".equals(solicitud.getEstado())) {
+            quitar(solicitud.getId());
+            return;
+        }
+        Pendiente pendiente = Pendiente.de(solicitud);
+        alConfirmar(() -> aplicar(pendiente.id(), pendiente));
+    }
+
+    /**
+     * Quita la solicitud del índice de inmediato (y otra vez al confirmar). Si la transacción
+     * se revierte se recarga el índice completo.
+     */
+    public void quitar(Long id) {
+        aplicar(id, null);
+        alConfirmar(() -> aplicar(id, null));
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    accion.run();
+                } else {
+                    invalidar();
+                }
+            }
+        });
+    }
+
+    private synchronized void aplicar(Long id, Pendiente pendiente) {
+        if (cambiosDuranteCarga != null) {
+            cambiosDuranteCarga.put(id, pendiente);
+        }
+        if (!cargado) {
+            return;
+        }
+        quitarDeGrupos(id);
+        if (pendiente != null) {
+            porId.put(id, pendiente);
+            porGrupo.computeIfAbsent(pendiente.grupo(), clave -> new TreeSet<>(PRIORIDAD)).add(pendiente);
+        }
+    }
+
+    private void quitarDeGrupos(Long id) {
+        Pendiente anterior = porId.remove(id);
+        if (anterior == null) {
+            return;
+        }
+        NavigableSet<Pendiente> grupo = porGrupo.get(anterior.grupo());
+        if (grupo != null) {
+            grupo.remove(anterior);
+            if (grupo.isEmpty()) {
+                porGrupo.remove(anterior.grupo());
+            }
+        }
+    }
+
+    private synchronized void invalidar() {
+        cargado = false;
+        porGrupo.clear();
+        porId.clear();
+    }
+
+    // ===============================================
+    // SINCRONIZACIÓN CON LA BASE
+    // ===============================================
+
+    private void asegurarCargado() {
+        synchronized (this) {
+            if (cargado) {
+                return;
+            }
+        }
+        synchronized (cargaLock) {
+            synchronized (this) {
+                if (cargado) {
+                    return;
+                }
+            }
+            sincronizar();
+        }
+    }
+
+    /**
+     * Reconstruye el índice con las solicitudes pendientes de la base
+     */
+    @Scheduled(fixedDelayString = "${lista-espera.indice.resincronizacion-ms:600000}", initialDelay = 600000)
+    public void resincronizar() {
+        synchronized (cargaLock) {
+            try {
+                sincronizar();
+            } catch (Exception e) {
+                logger.error("❌ Error resincronizando el índice de lista de espera: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void sincronizar() {
+        synchronized (this) {
+            cambiosDuranteCarga = new HashMap<>();
+        }
+        List<Object[]> filas;
+        try {
+            filas = repository.findPendientesParaIndice();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                cambiosDuranteCarga = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            porGrupo.clear();
+            porId.clear();
+            for (Object[] fila : filas) {
+                Pendiente pendiente = new Pendiente((Long) fila[0], (Integer) fila[1], (Integer) fila[2],
+                        (Integer) fila[3], (Integer) fila[4], (LocalDate) fila[5], (LocalDate) fila[6],
+                        (ListaEspera.UrgenciaMedica) fila[7], (LocalDateTime) fila[8]);
+                porId.put(pendiente.id(), pendiente);
+                porGrupo.computeIfAbsent(pendiente.grupo(), clave -> new TreeSet<>(PRIORIDAD)).add(pendiente);
+            }
+            Map<Long, Pendiente> cambios = cambiosDuranteCarga;
+            cambiosDuranteCarga = null;
+            cargado = true;
+            cambios.forEach(this::aplicar);
+            logger.debug("Índice de lista de espera sincronizado: {} solicitudes pendientes", porId.size());
+        }
+    }
+}
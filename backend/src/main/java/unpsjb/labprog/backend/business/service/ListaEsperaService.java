@@ -1,14 +1,20 @@
 package unpsjb.labprog.backend.business.service;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import unpsjb.labprog.backend.business.repository.*;
 import unpsjb.labprog.backend.dto.ListaEsperaDTO;
 import unpsjb.labprog.backend.dto.TurnoDTO;
 import unpsjb.labprog.backend.model.*;
 import unpsjb.labprog.backend.config.AuditContext;
 import unpsjb.labprog.backend.config.TenantContext;
+import unpsjb.labprog.backend.exception.OverlapException;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -16,10 +22,12 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalDouble;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -49,6 +57,34 @@ public class ListaEsperaService {
     @Autowired
     private TurnoRepository turnoRepository;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
+    @Autowired
+    @Lazy
+    private TurnoService turnoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** Transacción propia de cada intento de reasignación */
+    private TransactionTemplate transaccionCandidato;
+
+    @Autowired
+    private ListaEsperaIndiceService indice;
+
+    /** Candidatos leídos del índice por vuelta cuando se libera un turno (el primero normalmente alcanza) */
+    private static final int CANDIDATOS_POR_VUELTA = 5;
+
+    private static final LocalDateTime SOLICITUD_MIN = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalDateTime SOLICITUD_MAX = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    @PostConstruct
+    public void iniciar() {
+        transaccionCandidato = new TransactionTemplate(transactionManager);
+        transaccionCandidato.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     /**
      * Obtiene todas las entradas de la lista de espera con filtrado automático multi-tenencia.
      * - SUPERADMIN: Ve todas las listas de espera globalmente
@@ -110,8 +146,10 @@ public class ListaEsperaService {
         // Validar la solicitud
         validarSolicitud(listaEspera);
 
-        // Guardar y convertir resultado a DTO
-        return convertToDTO(repository.save(listaEspera));
+        // Guardar, reflejar en el índice y convertir resultado a DTO
+        ListaEspera guardada = repository.save(listaEspera);
+        indice.registrar(guardada);
+        return convertToDTO(guardada);
     }
 
     /**
@@ -137,8 +175,10 @@ public class ListaEsperaService {
         // Validar la solicitud
         validarSolicitud(listaEspera);
 
-        // Guardar y convertir resultado a DTO
-        return convertToDTO(repository.save(listaEspera));
+        // Guardar, reflejar en el índice y convertir resultado a DTO
+        ListaEspera guardada = repository.save(listaEspera);
+        indice.registrar(guardada);
+        return convertToDTO(guardada);
     }
 
     /**
@@ -156,6 +196,7 @@ public class ListaEsperaService {
 
         ListaEspera listaEspera = listaEsperaOpt.get();
         listaEspera.setEstado("RESUELTA");
+        indice.registrar(listaEspera);
         return convertToDTO(repository.save(listaEspera));
     }
 
@@ -174,6 +215,7 @@ public class ListaEsperaService {
 
         ListaEspera listaEspera = listaEsperaOpt.get();
         listaEspera.setEstado("CUBIERTA");
+        indice.registrar(listaEspera);
         return convertToDTO(repository.save(listaEspera));
     }
 
@@ -188,6 +230,7 @@ public class ListaEsperaService {
             throw new RuntimeException("Entrada de lista de espera no encontrada con ID: " + id);
         }
         repository.deleteById(id);
+        indice.quitar(id);
     }
 
     /**
@@ -196,9 +239,7 @@ public class ListaEsperaService {
      * @return Número de solicitudes con estado PENDIENTE
      */
     public long contarPendientes() {
-        return repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
-                .count();
+        return indice.contarPendientes();
     }
 
     /**
@@ -207,8 +248,7 @@ public class ListaEsperaService {
      * @return Lista de solicitudes con estado PENDIENTE
      */
     public List<ListaEsperaDTO> findPendientes() {
-        return repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        return repository.findByEstado("PENDIENTE").stream()
                 .map(this::convertToDTO)
                 .toList();
     }
@@ -219,9 +259,7 @@ public class ListaEsperaService {
      * @return Lista de solicitudes marcadas como urgencia médica
      */
     public List<ListaEsperaDTO> findUrgentes() {
-        return repository.findAll().stream()
-                .filter(le -> le.getUrgenciaMedica() == ListaEspera.UrgenciaMedica.ALTA
-                        || le.getUrgenciaMedica() == ListaEspera.UrgenciaMedica.URGENTE)
+        return repository.findByUrgenciaMedicaAltaOUrgente().stream()
                 .map(this::convertToDTO)
                 .toList();
     }
@@ -266,84 +304,126 @@ public class ListaEsperaService {
     }
 
     /**
-     * Busca un paciente en la lista de espera para reasignar a un turno cancelado
-     * 
-     * @param turnoCancelado El turno que fue cancelado
-     * @return true si se encontró y reasignó un paciente, false en caso contrario
+     * Reasigna a la lista de espera un turno cancelado.
+     * La llama ReasignacionListaEsperaService después de que la cancelación confirmó, por lo
+     * que verifica que el turno siga cancelado y que nadie haya tomado el slot entretanto.
+     * Cada candidato se prueba en su propia transacción: si uno falla (datos inválidos, error
+     * al crear el turno) se revierte solo ese intento y se sigue con el siguiente.
+     *
+     * @param turnoId ID del turno cancelado
+     * @return true si el slot quedó asignado a un paciente de la lista de espera
      */
-    @Transactional
-    public boolean buscarPacienteParaReasignar(Turno turnoCancelado) {
-        System.out
-                .println("🔍 Buscando paciente en lista de espera para turno cancelado ID: " + turnoCancelado.getId());
-
-        try {
-            // 1. Buscar solicitudes pendientes que coincidan con el turno cancelado
-            List<ListaEspera> candidatos = buscarCandidatosParaTurno(turnoCancelado);
-
-            if (candidatos.isEmpty()) {
-                System.out.println("ℹ️ No se encontraron pacientes en lista de espera que coincidan con el turno");
-                return false;
-            }
-
-            // 2. Ordenar candidatos por prioridad (urgencia médica primero, luego por fecha
-            // de solicitud)
-            List<ListaEspera> candidatosOrdenados = candidatos.stream()
-                    .sorted((a, b) -> {
-                        // Primero por nivel de urgencia médica (URGENTE > ALTA > MEDIA > BAJA)
-                        int urgenciaCompare = b.getUrgenciaMedica().compareTo(a.getUrgenciaMedica());
-                        if (urgenciaCompare != 0) {
-                            return urgenciaCompare;
-                        }
-                        // Luego por antigüedad de la solicitud
-                        return a.getFechaSolicitud().compareTo(b.getFechaSolicitud());
-                    })
-                    .toList();
-
-            // 3. Intentar reasignar al primer candidato válido
-            for (ListaEspera solicitud : candidatosOrdenados) {
-                ListaEsperaDTO dto = convertToDTO(solicitud);
-                if (intentarReasignarTurno(solicitud, turnoCancelado)) {
-                    System.out.println(
-                            "✅ Turno reasignado exitosamente al paciente Nombre/Apellido: " + dto.getPacienteNombre()
-                                    + " " + dto.getPacienteApellido());
+    public boolean reasignarTurnoLiberado(Integer turnoId) {
+        Set<Long> probadas = new HashSet<>();
+        List<Long> candidatos;
+        while (!(candidatos = transaccionCandidato.execute(status -> idsCandidatosSiSlotLibre(turnoId, probadas)))
+                .isEmpty()) {
+            for (Long solicitudId : candidatos) {
+                IntentoReasignacion intento;
+                try {
+                    intento = transaccionCandidato.execute(status -> reasignarASolicitud(turnoId, solicitudId));
+                } catch (OverlapException e) {
+                    System.out.println("ℹ️ El slot del turno cancelado ID " + turnoId + " se ocupó durante la reasignación");
+                    return false;
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ No se pudo reasignar el turno ID " + turnoId + " a la solicitud ID "
+                            + solicitudId + ", se prueba el siguiente candidato: " + e.getMessage());
+                    continue;
+                }
+                if (intento == IntentoReasignacion.REASIGNADO) {
                     return true;
                 }
+                if (intento == IntentoReasignacion.SLOT_OCUPADO) {
+                    return false;
+                }
             }
+        }
+        return false;
+    }
 
-            System.out.println("⚠️ No se pudo reasignar el turno a ningún candidato");
-            return false;
+    private enum IntentoReasignacion {
+        REASIGNADO, NO_TOMADA, SLOT_OCUPADO
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ ERROR al buscar paciente para reasignar: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+    /**
+     * Siguiente tanda de candidatos para el turno, o ninguno si el slot ya no está libre
+     */
+    private List<Long> idsCandidatosSiSlotLibre(Integer turnoId, Set<Long> probadas) {
+        Turno turnoCancelado = slotLibre(turnoId);
+        if (turnoCancelado == null) {
+            return List.of();
+        }
+        return buscarCandidatosParaTurno(turnoCancelado, probadas).stream()
+                .map(ListaEspera::getId)
+                .toList();
+    }
+
+    private IntentoReasignacion reasignarASolicitud(Integer turnoId, Long solicitudId) {
+        Turno turnoCancelado = slotLibre(turnoId);
+        if (turnoCancelado == null) {
+            return IntentoReasignacion.SLOT_OCUPADO;
+        }
+        ListaEspera solicitud = repository.findById(solicitudId).orElse(null);
+        if (solicitud == null) {
+            return IntentoReasignacion.NO_TOMADA;
         }
+        return intentarReasignarTurno(solicitud, turnoCancelado)
+                ? IntentoReasignacion.REASIGNADO
+                : IntentoReasignacion.NO_TOMADA;
+    }
+
+    /**
+     * El turno si sigue cancelado y ningún otro turno activo ocupa su slot; null en otro caso
+     */
+    private Turno slotLibre(Integer turnoId) {
+        Turno turnoCancelado = turnoRepository.findById(turnoId).orElse(null);
+        if (turnoCancelado == null || turnoCancelado.getEstado() != EstadoTurno.CANCELADO
+                || turnoCancelado.getStaffMedico() == null) {
+            return null;
+        }
+        if (turnoRepository.existsByFechaAndHoraInicioAndStaffMedicoIdAndEstadoNot(turnoCancelado.getFecha(),
+                turnoCancelado.getHoraInicio(), turnoCancelado.getStaffMedico().getId(), EstadoTurno.CANCELADO)) {
+            System.out.println("ℹ️ El slot del turno cancelado ID " + turnoId + " ya fue ocupado");
+            return null;
+        }
+        return turnoCancelado;
     }
 
     /**
      * Busca candidatos en la lista de espera que coincidan con el turno disponible
-     * ordenados por prioridad (urgencia médica y tiempo de espera)
+     * ordenados por prioridad (urgencia médica y tiempo de espera).
+     * Los resuelve el índice en memoria; solo se leen de la base las solicitudes elegidas.
+     * Devuelve la siguiente tanda de candidatos sin repetir los de probadas, y los agrega ahí;
+     * vacía cuando no quedan más.
      */
-    private List<ListaEspera> buscarCandidatosParaTurno(Turno turnoDisponible) {
-        LocalDate fechaTurno = turnoDisponible.getFecha();
-        Especialidad especialidad = turnoDisponible.getStaffMedico().getEspecialidad();
-        CentroAtencion centroAtencion = turnoDisponible.getStaffMedico().getCentroAtencion();
-
-        return repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
-                .filter(le -> especialidad.equals(le.getEspecialidad()))
-                .filter(le -> centroAtencion == null || centroAtencion.equals(le.getCentroAtencion()))
-                .filter(le -> esFechaCompatibleDTO(convertToDTO(le), fechaTurno))
-                .filter(le -> esMedicoCompatibleDTO(convertToDTO(le), turnoDisponible.getStaffMedico().getMedico()))
-                .sorted((a, b) -> {
-                    // Primero por nivel de urgencia médica (URGENTE > ALTA > MEDIA > BAJA)
-                    int urgenciaCompare = b.getUrgenciaMedica().compareTo(a.getUrgenciaMedica());
-                    if (urgenciaCompare != 0) {
-                        return urgenciaCompare;
-                    }
-                    // Luego por antigüedad de la solicitud
-                    return a.getFechaSolicitud().compareTo(b.getFechaSolicitud());
-                })
+    private List<ListaEspera> buscarCandidatosParaTurno(Turno turnoDisponible, Set<Long> probadas) {
+        StaffMedico staffMedico = turnoDisponible.getStaffMedico();
+        CentroAtencion centroAtencion = staffMedico.getCentroAtencion();
+
+        List<Long> ids = indice.candidatos(
+                staffMedico.getEspecialidad().getId(),
+                centroAtencion != null ? centroAtencion.getId() : null,
+                staffMedico.getMedico() != null ? staffMedico.getMedico().getId() : null,
+                turnoDisponible.getFecha(),
+                probadas,
+                CANDIDATOS_POR_VUELTA);
+        probadas.addAll(ids);
+
+        return cargarEnOrden(ids);
+    }
+
+    /**
+     * Lee las solicitudes por ID respetando el orden recibido (las que ya no existen se omiten)
+     */
+    private List<ListaEspera> cargarEnOrden(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, ListaEspera> porId = repository.findAllById(ids).stream()
+                .collect(Collectors.toMap(ListaEspera::getId, le -> le));
+        return ids.stream()
+                .map(porId::get)
+                .filter(le -> le != null)
                 .toList();
     }
 
@@ -362,46 +442,46 @@ public class ListaEsperaService {
             Integer tiempoEsperaMaximo,
             String ordenamiento) {
 
-        Especialidad especialidad = especialidadId != null ? especialidadRepository.findById(especialidadId)
-                .orElseThrow(() -> new RuntimeException("Especialidad no encontrada: " + especialidadId)) : null;
-
-        CentroAtencion centroAtencion = centroAtencionId != null ? centroAtencionRepository.findById(centroAtencionId)
-                .orElseThrow(() -> new RuntimeException("Centro de atención no encontrado: " + centroAtencionId))
-                : null;
+        if (especialidadId != null && !especialidadRepository.existsById(especialidadId)) {
+            throw new RuntimeException("Especialidad no encontrada: " + especialidadId);
+        }
+        if (centroAtencionId != null && !centroAtencionRepository.existsById(centroAtencionId)) {
+            throw new RuntimeException("Centro de atención no encontrado: " + centroAtencionId);
+        }
+        if (medicoId != null && !medicoRepository.existsById(medicoId)) {
+            throw new RuntimeException("Médico no encontrado: " + medicoId);
+        }
 
-        Medico medico = medicoId != null ? medicoRepository.findById(medicoId)
-                .orElseThrow(() -> new RuntimeException("Médico no encontrado: " + medicoId)) : null;
+        ListaEspera.UrgenciaMedica urgencia = null;
+        if (urgenciaMedica != null) {
+            try {
+                urgencia = ListaEspera.UrgenciaMedica.valueOf(urgenciaMedica.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // Si el valor del string no coincide con ningún enum, se ignora el filtro
+                System.err.println("⚠️ Valor de urgencia médica inválido: " + urgenciaMedica);
+            }
+        }
 
+        // Las fechas de solicitud y el tiempo de espera (en días) se traducen a un único
+        // rango [solicitadaDesde, solicitadaHasta) sobre fechaSolicitud
         LocalDate hoy = LocalDate.now();
+        LocalDateTime solicitadaDesde = SOLICITUD_MIN;
+        LocalDateTime solicitadaHasta = SOLICITUD_MAX;
+        if (fechaDesde != null) {
+            solicitadaDesde = max(solicitadaDesde, fechaDesde.atStartOfDay());
+        }
+        if (tiempoEsperaMaximo != null) {
+            solicitadaDesde = max(solicitadaDesde, hoy.minusDays(tiempoEsperaMaximo).atStartOfDay());
+        }
+        if (fechaHasta != null) {
+            solicitadaHasta = min(solicitadaHasta, fechaHasta.plusDays(1).atStartOfDay());
+        }
+        if (tiempoEsperaMinimo != null) {
+            solicitadaHasta = min(solicitadaHasta, hoy.minusDays(tiempoEsperaMinimo).plusDays(1).atStartOfDay());
+        }
 
-        return repository.findAll().stream()
-                .filter(le -> especialidad == null || especialidad.equals(le.getEspecialidad()))
-                .filter(le -> centroAtencion == null || centroAtencion.equals(le.getCentroAtencion()))
-                .filter(le -> medico == null || medico.equals(le.getMedicoPreferido()))
-                .filter(le -> estado == null || estado.equals(le.getEstado()))
-                .filter(le -> {
-                    if (urgenciaMedica == null)
-                        return true;
-                    try {
-                        ListaEspera.UrgenciaMedica urgenciaEnum = ListaEspera.UrgenciaMedica
-                                .valueOf(urgenciaMedica.toUpperCase());
-                        return urgenciaEnum.equals(le.getUrgenciaMedica());
-                    } catch (IllegalArgumentException e) {
-                        // Si el valor del string no coincide con ningún enum, ignorar filtro o
-                        // manejarlo según tus reglas
-                        System.err.println("⚠️ Valor de urgencia médica inválido: " + urgenciaMedica);
-                        return true; // o false, si querés descartar en caso de valor inválido
-                    }
-                })
-                .filter(le -> fechaDesde == null || !le.getFechaSolicitud().toLocalDate().isBefore(fechaDesde))
-                .filter(le -> fechaHasta == null || !le.getFechaSolicitud().toLocalDate().isAfter(fechaHasta))
-                .filter(le -> {
-                    if (tiempoEsperaMinimo == null && tiempoEsperaMaximo == null)
-                        return true;
-                    long diasEspera = ChronoUnit.DAYS.between(le.getFechaSolicitud().toLocalDate(), hoy);
-                    return (tiempoEsperaMinimo == null || diasEspera >= tiempoEsperaMinimo) &&
-                            (tiempoEsperaMaximo == null || diasEspera <= tiempoEsperaMaximo);
-                })
+        return repository.buscarConFiltros(especialidadId, centroAtencionId, medicoId, estado, urgencia,
+                        solicitadaDesde, solicitadaHasta).stream()
                 .sorted((a, b) -> {
                     if ("URGENCIA_TIEMPO".equals(ordenamiento)) {
                         // Ordenar por urgencia primero, luego por tiempo de espera
@@ -424,6 +504,14 @@ public class ListaEsperaService {
                 .toList();
     }
 
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
     /**
      * Obtiene el ranking de pacientes en espera por especialidad
      */
@@ -431,18 +519,8 @@ public class ListaEsperaService {
         Especialidad especialidad = especialidadRepository.findById(especialidadId)
                 .orElseThrow(() -> new RuntimeException("Especialidad no encontrada: " + especialidadId));
 
-        List<ListaEspera> solicitudes = repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
-                .filter(le -> especialidad.equals(le.getEspecialidad()))
-                .sorted((a, b) -> {
-                    // Ordenar por nivel de urgencia (URGENTE > ALTA > MEDIA > BAJA)
-                    int urgenciaCompare = b.getUrgenciaMedica().compareTo(a.getUrgenciaMedica());
-                    if (urgenciaCompare != 0) {
-                        return urgenciaCompare;
-                    }
-                    return a.getFechaSolicitud().compareTo(b.getFechaSolicitud());
-                })
-                .toList();
+        // Ordenadas por nivel de urgencia (URGENTE > ALTA > MEDIA > BAJA) y antigüedad
+        List<ListaEspera> solicitudes = cargarEnOrden(indice.pendientesPorEspecialidad(especialidad.getId()));
 
         List<Map<String, Object>> ranking = new ArrayList<>();
         int posicion = 1;
@@ -477,9 +555,12 @@ public class ListaEsperaService {
         try {
             System.out.println("🔄 Intentando reasignar turno al paciente ID: " + solicitud.getPaciente().getId());
 
-            // 1. Verificar que la solicitud sigue pendiente
-            if (!"PENDIENTE".equals(solicitud.getEstado())) {
+            // 1. Tomar la solicitud solo si sigue pendiente (otra reasignación concurrente
+            // pudo haberla cubierto)
+            if (!"PENDIENTE".equals(solicitud.getEstado())
+                    || repository.cubrirSiPendiente(solicitud.getId()) == 0) {
                 System.out.println("⚠️ La solicitud ya no está pendiente");
+                indice.quitar(solicitud.getId());
                 return false;
             }
 
@@ -489,6 +570,7 @@ public class ListaEsperaService {
             // 3. Marcar la solicitud como CUBIERTA
             solicitud.setEstado("CUBIERTA");
             solicitud = repository.save(solicitud);
+            indice.registrar(solicitud);
 
             // 4. Registrar en auditoría (dentro de la misma transacción)
             registrarAuditoriaReasignacion(solicitud, nuevoTurnoDTO, turnoDisponible);
@@ -505,6 +587,8 @@ public class ListaEsperaService {
             System.out.println("✅ Turno reasignado exitosamente");
             return true;
 
+        } catch (OverlapException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("❌ ERROR al intentar reasignar turno: " + e.getMessage());
             e.printStackTrace();
@@ -518,7 +602,6 @@ public class ListaEsperaService {
     // ========== MÉTODO: crearNuevoTurno (ACTUALIZADO) ==========
     private TurnoDTO crearNuevoTurno(ListaEspera solicitud, Turno turnoCancelado) {
         try {
-            // Crear la entidad Turno directamente sin pasar por TurnoService
             Turno nuevoTurno = new Turno();
 
             // Asignar paciente
@@ -542,12 +625,16 @@ public class ListaEsperaService {
             nuevoTurno.setEstado(EstadoTurno.PROGRAMADO);
             nuevoTurno.setObservaciones("Reasignado desde lista de espera");
 
-            // Guardar directamente en el repositorio
-            Turno turnoGuardado = turnoRepository.save(nuevoTurno);
+            // Se guarda con la misma traducción de choques de slot que TurnoService.save
+            Turno turnoGuardado = turnoService.guardarTurnoSinSolapamiento(nuevoTurno);
+            agendaCacheService.marcarOcupado(turnoGuardado.getStaffMedico().getId(),
+                turnoGuardado.getFecha(), turnoGuardado.getHoraInicio());
 
             // Convertir a DTO usando el método privado de conversión
             return convertTurnoToDTO(turnoGuardado);
 
+        } catch (OverlapException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("Error al crear nuevo turno: " + e.getMessage());
             throw new RuntimeException("Error al crear nuevo turno: " + e.getMessage());
@@ -682,29 +769,26 @@ public class ListaEsperaService {
      */
     public Map<String, Object> obtenerEstadisticasGenerales() {
         Map<String, Object> estadisticas = new HashMap<>();
-        List<ListaEspera> todas = repository.findAll();
+        List<ListaEspera> pendientes = repository.findByEstado("PENDIENTE");
 
-        estadisticas.put("totalSolicitudes", todas.size());
-        estadisticas.put("pendientes", contarPendientes());
+        estadisticas.put("totalSolicitudes", repository.count());
+        estadisticas.put("pendientes", pendientes.size());
 
-        long urgentes = todas.stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        long urgentes = pendientes.stream()
                 .filter(le -> le.getUrgenciaMedica() == ListaEspera.UrgenciaMedica.ALTA
                         || le.getUrgenciaMedica() == ListaEspera.UrgenciaMedica.URGENTE)
                 .count();
         estadisticas.put("urgentes", urgentes);
 
         // Agregar estadísticas por nivel de urgencia
-        Map<String, Long> porNivel = todas.stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        Map<String, Long> porNivel = pendientes.stream()
                 .collect(Collectors.groupingBy(
                         le -> le.getUrgenciaMedica().name(),
                         Collectors.counting()));
         estadisticas.put("porNivelUrgencia", porNivel);
 
         // Tiempo promedio de espera
-        OptionalDouble tiempoPromedioEspera = todas.stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        OptionalDouble tiempoPromedioEspera = pendientes.stream()
                 .mapToLong(le -> java.time.temporal.ChronoUnit.DAYS.between(
                         le.getFechaSolicitud().toLocalDate(),
                         LocalDate.now()))
@@ -761,18 +845,6 @@ public class ListaEsperaService {
         return true;
     }
 
-    /**
-     * Verifica si el médico es compatible con las preferencias del paciente usando
-     * el DTO
-     */
-    private boolean esMedicoCompatibleDTO(ListaEsperaDTO dto, Medico medico) {
-        if (dto.getMedicoPreferidoId() == null) {
-            return true; // Sin preferencia de médico
-        }
-
-        return dto.getMedicoPreferidoId().equals(medico.getId());
-    }
-
     /**
      * Cancela solicitudes que han expirado (fecha deseada hasta ha pasado)
      */
@@ -781,26 +853,20 @@ public class ListaEsperaService {
         LocalDate hoy = LocalDate.now();
         int canceladas = 0;
 
-        List<ListaEsperaDTO> pendientes = repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
-                .filter(le -> le.getFechaDeseadaHasta() != null)
-                .filter(le -> le.getFechaDeseadaHasta().isBefore(hoy))
-                .map(this::convertToDTO)
-                .toList();
+        List<ListaEspera> vencidas = repository.findPendientesVencidas(hoy);
 
-        for (ListaEsperaDTO dto : pendientes) {
-            ListaEspera solicitud = repository.findById(dto.getId())
-                    .orElseThrow(() -> new RuntimeException("Solicitud no encontrada: " + dto.getId()));
+        for (ListaEspera solicitud : vencidas) {
             solicitud.setEstado("RESUELTA");
             repository.save(solicitud);
+            indice.registrar(solicitud);
 
             // Notificar al paciente
             if (notificacionService != null) {
                 try {
                     notificacionService.crearNotificacion(
-                            dto.getPacienteId(),
+                            solicitud.getPaciente().getId(),
                             "Solicitud en Lista de Espera Expirada",
-                            "Su solicitud en lista de espera para " + dto.getEspecialidadNombre() +
+                            "Su solicitud en lista de espera para " + solicitud.getEspecialidad().getNombre() +
                                     " ha expirado. Por favor, realice una nueva solicitud si aún requiere atención.",
                             TipoNotificacion.URGENTE,
                             null,
@@ -825,8 +891,7 @@ public class ListaEsperaService {
         LocalDateTime fechaLimite = LocalDateTime.now().minusDays(diasMinimos);
         int recordatoriosEnviados = 0;
 
-        List<ListaEsperaDTO> solicitudesAntiguas = repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        List<ListaEsperaDTO> solicitudesAntiguas = repository.findByEstado("PENDIENTE").stream()
                 .filter(le -> le.getFechaSolicitud().isBefore(fechaLimite))
                 .map(this::convertToDTO)
                 .toList();
@@ -881,6 +946,7 @@ public class ListaEsperaService {
 
         // Cambiar estado y registrar fecha de resolución
         listaEspera.setEstado("RESUELTA_POR_OTRO_MEDIO");
+        indice.registrar(listaEspera);
 
         // Registrar en auditoría
         try {
@@ -933,8 +999,7 @@ public class ListaEsperaService {
         }
 
         // Filtrar solicitudes por fecha y estado, y agrupar por especialidad
-        return repository.findAll().stream()
-                .filter(le -> "PENDIENTE".equals(le.getEstado()))
+        return repository.findByEstado("PENDIENTE").stream()
                 .filter(le -> !le.getFechaSolicitud().toLocalDate().isBefore(fechaInicio))
                 .collect(Collectors.groupingBy(
                         le -> le.getEspecialidad().getNombre(),
@@ -947,11 +1012,10 @@ public class ListaEsperaService {
     public boolean validarSolicitud(ListaEspera solicitud) {
         // Verificar que el paciente no tenga ya una solicitud pendiente para la misma
         // especialidad, excluyendo la solicitud actual si es una edición
-        List<ListaEsperaDTO> solicitudesPendientes = findPendientes();
-        boolean tieneSolicitudDuplicada = solicitudesPendientes.stream()
-                .filter(dto -> !dto.getId().equals(solicitud.getId())) // Excluir la solicitud actual si es edición
-                .anyMatch(dto -> dto.getPacienteId().equals(solicitud.getPaciente().getId()) &&
-                        dto.getEspecialidadId().equals(solicitud.getEspecialidad().getId()));
+        boolean tieneSolicitudDuplicada = repository.existePendiente(
+                solicitud.getPaciente().getId(),
+                solicitud.getEspecialidad().getId(),
+                solicitud.getId()); // Excluir la solicitud actual si es edición
 
         if (tieneSolicitudDuplicada) {
             throw new RuntimeException("El paciente ya tiene una solicitud pendiente para esta especialidad");
@@ -95,8 +95,8 @@ public class PasswordResetService {
             // Construir el enlace de recuperación
             String resetLink = appUrl + "/reset-password?token=" + token;
             
-            // Enviar email (llamada síncrona, ya estamos en thread @Async)
-            emailService.sendHtmlEmail(user.getEmail(), "Restablecer contraseña", buildPasswordResetEmailBody(resetLink));
+            // Encolar email (se espera el encolado, ya estamos en thread @Async)
+            emailService.sendHtmlEmailAsync(user.getEmail(), "Restablecer contraseña", buildPasswordResetEmailBody(resetLink)).join();
             
             logger.info("Token de recuperación generado para usuario: {} (expira: {})", 
                        email, expiresAt);
@@ -0,0 +1,265 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import unpsjb.labprog.backend.model.Turno;
+
+/**
+ * Reasignación de turnos liberados a la lista de espera, fuera de la transacción de cancelación.
+ *
+ * Las cancelaciones avisan con {@link #turnoLiberado(Turno)}; el aviso se encola recién cuando
+ * la cancelación confirma (si se revierte, se descarta). Un pool de hilos toma los avisos
+ * agrupados por staff médico: si un médico cancela un día completo, sus turnos se juntan en un
+ * solo lote (sin duplicados) que procesa un único hilo en orden de fecha y hora. Cada turno se
+ * reasigna con ListaEsperaService.reasignarTurnoLiberado, que prueba cada candidato en su propia
+ * transacción.
+ *
+ * Los avisos viven en memoria: si el proceso se detiene con avisos pendientes, esos turnos
+ * quedan libres en la agenda (se informa en el log al detener).
+ */
+@Service
+public class ReasignacionListaEsperaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReasignacionListaEsperaService.class);
+
+    @Autowired
+    private ListaEsperaService listaEsperaService;
+
+    @Value("${lista-espera.reasignacion.hilos:2}")
+    private int hilos;
+
+    @Value("${lista-espera.reasignacion.espera-agrupacion-ms:500}")
+    private long esperaAgrupacionMs;
+
+    /** Turnos liberados por staff médico, sin duplicados (turnoId -> aviso). Protegido por this */
+    private final Map<Integer, Map<Integer, TurnoLiberado>> pendientesPorStaff = new HashMap<>();
+
+    /** Staff médicos que un hilo está procesando; sus nuevos avisos esperan al lote siguiente */
+    private final Set<Integer> enProceso = new HashSet<>();
+
+    private final BlockingQueue<Integer> staffListos = new LinkedBlockingQueue<>();
+
+    private ExecutorService workers;
+    private volatile boolean activo;
+
+    // Métricas
+    private final AtomicLong recibidos = new AtomicLong();
+    private final AtomicLong agrupados = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong procesados = new AtomicLong();
+    private final AtomicLong reasignados = new AtomicLong();
+    private final AtomicLong sinCandidato = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong tiempoTotalReasignacionMs = new AtomicLong();
+    private final AtomicLong tiempoMaximoReasignacionMs = new AtomicLong();
+    private final AtomicInteger maxPendientes = new AtomicInteger();
+
+    @PostConstruct
+    public void iniciar() {
+        int cantidad = Math.max(1, hilos);
+        AtomicInteger contador = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(cantidad, runnable -> {
+            Thread hilo = new Thread(runnable, "lista-espera-reasignacion-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        activo = true;
+        for (int i = 0; i < cantidad; i++) {
+            workers.submit(this::procesarCola);
+        }
+        logger.info("✅ Reasignación de lista de espera iniciada ({} hilos)", cantidad);
+    }
+
+    @PreDestroy
+    public void detener() {
+        activo = false;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int restantes;
+        synchronized (this) {
+            restantes = pendientesPorStaff.values().stream().mapToInt(Map::size).sum();
+        }
+        if (restantes > 0) {
+            logger.warn("⚠️ {} turnos liberados quedaron sin procesar para la lista de espera", restantes);
+        }
+    }
+
+    /**
+     * Avisa que un turno cancelado liberó su slot. Dentro de una transacción se encola al
+     * confirmarse; fuera de una transacción se encola de inmediato.
+     */
+    public void turnoLiberado(Turno turno) {
+        if (turno.getId() == null || turno.getStaffMedico() == null) {
+            return;
+        }
+        TurnoLiberado aviso = new TurnoLiberado(turno.getId(), turno.getStaffMedico().getId(),
+                turno.getFecha(), turno.getHoraInicio(), System.nanoTime());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    encolar(aviso.conLiberacionAhora());
+                }
+            });
+        } else {
+            encolar(aviso);
+        }
+    }
+
+    /**
+     * Estado de la cola y contadores de la reasignación
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        synchronized (this) {
+            estadisticas.put("pendientes", pendientesPorStaff.values().stream().mapToInt(Map::size).sum());
+            estadisticas.put("staffEnProceso", enProceso.size());
+        }
+        long totalReasignados = reasignados.get();
+        estadisticas.put("maxPendientes", maxPendientes.get());
+        estadisticas.put("recibidos", recibidos.get());
+        estadisticas.put("agrupados", agrupados.get());
+        estadisticas.put("lotes", lotes.get());
+        estadisticas.put("procesados", procesados.get());
+        estadisticas.put("reasignados", totalReasignados);
+        estadisticas.put("sinCandidato", sinCandidato.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("tiempoPromedioReasignacionMs",
+                totalReasignados == 0 ? 0 : tiempoTotalReasignacionMs.get() / totalReasignados);
+        estadisticas.put("tiempoMaximoReasignacionMs", tiempoMaximoReasignacionMs.get());
+        return estadisticas;
+    }
+
+    private void encolar(TurnoLiberado aviso) {
+        recibidos.incrementAndGet();
+        synchronized (this) {
+            Map<Integer, TurnoLiberado> delStaff = pendientesPorStaff.get(aviso.staffMedicoId());
+            boolean nuevoLote = delStaff == null;
+            if (nuevoLote) {
+                delStaff = new LinkedHashMap<>();
+                pendientesPorStaff.put(aviso.staffMedicoId(), delStaff);
+            }
+            boolean duplicado = delStaff.putIfAbsent(aviso.turnoId(), aviso) != null;
+            if (duplicado || !nuevoLote) {
+                agrupados.incrementAndGet();
+            }
+            if (nuevoLote && !enProceso.contains(aviso.staffMedicoId())) {
+                staffListos.offer(aviso.staffMedicoId());
+            }
+            maxPendientes.accumulateAndGet(pendientesPorStaff.values().stream().mapToInt(Map::size).sum(),
+                    Math::max);
+        }
+    }
+
+    private void procesarCola() {
+        while (activo) {
+            try {
+                Integer staffMedicoId = staffListos.poll(500, TimeUnit.MILLISECONDS);
+                if (staffMedicoId == null) {
+                    continue;
+                }
+                // Breve espera para que una ráfaga de cancelaciones del mismo médico entre en el lote
+                if (esperaAgrupacionMs > 0) {
+                    Thread.sleep(esperaAgrupacionMs);
+                }
+
+                List<TurnoLiberado> lote;
+                synchronized (this) {
+                    Map<Integer, TurnoLiberado> delStaff = pendientesPorStaff.remove(staffMedicoId);
+                    if (delStaff == null) {
+                        continue;
+                    }
+                    enProceso.add(staffMedicoId);
+                    lote = new ArrayList<>(delStaff.values());
+                }
+
+                try {
+                    procesarLote(lote);
+                } finally {
+                    synchronized (this) {
+                        enProceso.remove(staffMedicoId);
+                        if (pendientesPorStaff.containsKey(staffMedicoId)) {
+                            staffListos.offer(staffMedicoId);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("❌ Error inesperado en la reasignación de lista de espera: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void procesarLote(List<TurnoLiberado> lote) {
+        lotes.incrementAndGet();
+        lote.sort(Comparator.comparing(TurnoLiberado::fecha, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(TurnoLiberado::horaInicio, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        for (TurnoLiberado aviso : lote) {
+            try {
+                boolean reasignado = listaEsperaService.reasignarTurnoLiberado(aviso.turnoId());
+                if (reasignado) {
+                    long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - aviso.liberadoEnNanos());
+                    reasignados.incrementAndGet();
+                    tiempoTotalReasignacionMs.addAndGet(ms);
+                    tiempoMaximoReasignacionMs.accumulateAndGet(ms, Math::max);
+                    logger.info("✅ Turno liberado ID {} reasignado desde la lista de espera en {} ms",
+                            aviso.turnoId(), ms);
+                } else {
+                    sinCandidato.incrementAndGet();
+                }
+            } catch (Exception e) {
+                errores.incrementAndGet();
+                logger.error("❌ Error reasignando el turno liberado ID {}: {}", aviso.turnoId(), e.getMessage());
+            } finally {
+                procesados.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Datos del turno liberado tomados al cancelar; liberadoEnNanos marca el inicio de la
+     * medición del tiempo hasta la reasignación
+     */
+    private record TurnoLiberado(Integer turnoId, Integer staffMedicoId, LocalDate fecha, LocalTime horaInicio,
+            long liberadoEnNanos) {
+
+        TurnoLiberado conLiberacionAhora() {
+            return new TurnoLiberado(turnoId, staffMedicoId, fecha, horaInicio, System.nanoTime());
+        }
+    }
+}
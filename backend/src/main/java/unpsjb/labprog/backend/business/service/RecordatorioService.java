@@ -1,5 +1,6 @@
 package unpsjb.labprog.backend.business.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
@@ -25,6 +26,11 @@ public class RecordatorioService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_RECORDATORIOS = "recordatorios.confirmacion";
+
     // === MÉTODOS PRINCIPALES ===
 
     /**
@@ -35,6 +41,21 @@ public class RecordatorioService {
     @Scheduled(cron = "0 0 9 * * ?", zone = "America/Argentina/Buenos_Aires") // Diariamente a las 9:00 AM
     @Transactional
     public void enviarRecordatoriosPendientes() {
+        tareaProgramadaService.ejecutar(TAREA_RECORDATORIOS, Duration.ofHours(1), this::enviarRecordatoriosPendientesEnInstancia);
+    }
+
+    /**
+     * Ejecución manual de los recordatorios, con el mismo lease que la tarea programada.
+     *
+     * @return false si la tarea está tomada (en curso o recién ejecutada) y no se ejecutó
+     */
+    @Transactional
+    public boolean ejecutarRecordatoriosManual() {
+        System.out.println("🔧 Ejecución manual de recordatorios solicitada");
+        return tareaProgramadaService.ejecutar(TAREA_RECORDATORIOS, Duration.ofHours(1), this::enviarRecordatoriosPendientesEnInstancia);
+    }
+
+    private void enviarRecordatoriosPendientesEnInstancia() {
         if (!configuracionService.isHabilitadosRecordatorios()) {
             System.out.println("📧 Recordatorios de confirmación deshabilitados por configuración");
             return;
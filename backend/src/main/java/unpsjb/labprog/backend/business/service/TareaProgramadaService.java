@@ -0,0 +1,317 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import unpsjb.labprog.backend.business.repository.TareaProgramadaEjecucionRepository;
+import unpsjb.labprog.backend.business.repository.TareaProgramadaLockRepository;
+import unpsjb.labprog.backend.model.TareaProgramadaEjecucion;
+import unpsjb.labprog.backend.model.TareaProgramadaLock;
+
+/**
+ * Coordinación de las tareas programadas entre varias instancias de la aplicación.
+ *
+ * Cada instancia sigue disparando sus @Scheduled, pero el cuerpo de la tarea se ejecuta con
+ * {@link #ejecutar}: solo la instancia que toma el lease de la tarea en tarea_programada_lock
+ * la ejecuta; las demás la omiten. Mientras trabaja, un hilo de latido renueva el lease; si la
+ * instancia muere, el lease vence y otra puede volver a tomarla.
+ *
+ * Al terminar, el lease se conserva hasta cumplir el mínimo indicado por la tarea (por ejemplo,
+ * casi todo su período), así una instancia que dispara la misma ejecución unos segundos o minutos
+ * más tarde no la repite. Si la tarea corre dentro de una transacción, el lease se libera y la
+ * ejecución se cierra recién cuando esa transacción termina.
+ *
+ * Cada ejecución queda en tarea_programada_ejecucion con su instancia, duración y resultado.
+ */
+@Service
+public class TareaProgramadaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TareaProgramadaService.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TareaProgramadaLockRepository lockRepository;
+
+    @Autowired
+    private TareaProgramadaEjecucionRepository ejecucionRepository;
+
+    @Value("${tareas.lock.lease-ms:120000}")
+    private long leaseMs;
+
+    @Value("${tareas.lock.latido-ms:30000}")
+    private long latidoMs;
+
+    @Value("${tareas.historial.dias:30}")
+    private int diasHistorial;
+
+    private TransactionTemplate transaccionPropia;
+    private ScheduledExecutorService latido;
+    private String instancia;
+
+    /** Tareas cuyo lease tiene esta instancia y que siguen ejecutándose */
+    private final Map<String, Boolean> enEjecucion = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void iniciar() {
+        // Transacción propia: el lease debe verse en las otras instancias aunque la tarea
+        // corra dentro de una transacción larga, y también se escribe desde afterCompletion
+        transaccionPropia = new TransactionTemplate(transactionManager);
+        transaccionPropia.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        instancia = nombreInstancia();
+
+        // El planificador de Spring usa un solo hilo: el latido va aparte para no quedar detrás de una tarea larga
+        latido = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread hilo = new Thread(runnable, "tareas-latido");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        latido.scheduleWithFixedDelay(this::renovarLeases, latidoMs, latidoMs, TimeUnit.MILLISECONDS);
+        logger.info("✅ Coordinación de tareas programadas iniciada (instancia {})", instancia);
+    }
+
+    @PreDestroy
+    public void detener() {
+        latido.shutdownNow();
+    }
+
+    /**
+     * Ejecuta la tarea si esta instancia logra tomar su lease.
+     *
+     * @param nombre          Nombre único de la tarea
+     * @param mantenerAlMenos Tiempo mínimo (desde que se tomó) que el lease sigue tomado al terminar
+     * @param tarea           Cuerpo de la tarea
+     * @return true si la tarea se ejecutó en esta instancia, false si otra la tenía tomada
+     */
+    public boolean ejecutar(String nombre, Duration mantenerAlMenos, Runnable tarea) {
+        if (!adquirir(nombre)) {
+            logger.debug("⏭️ Tarea {} omitida: otra instancia la tiene tomada", nombre);
+            return false;
+        }
+
+        enEjecucion.put(nombre, Boolean.TRUE);
+        long inicioNanos = System.nanoTime();
+        Long ejecucionId;
+        try {
+            ejecucionId = registrarInicio(nombre);
+        } catch (RuntimeException e) {
+            enEjecucion.remove(nombre);
+            liberar(nombre, mantenerAlMenos);
+            throw e;
+        }
+
+        try {
+            tarea.run();
+        } catch (RuntimeException e) {
+            finalizar(nombre, mantenerAlMenos, ejecucionId, inicioNanos, e);
+            throw e;
+        }
+        finalizar(nombre, mantenerAlMenos, ejecucionId, inicioNanos, null);
+        return true;
+    }
+
+    /**
+     * Leases actuales y última ejecución de cada tarea
+     */
+    public Map<String, Object> getEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("instancia", instancia);
+        estado.put("enEjecucionEnEstaInstancia", List.copyOf(enEjecucion.keySet()));
+        estado.put("leases", lockRepository.findAll().stream()
+                .map(this::lockAMapa)
+                .toList());
+        estado.put("ultimasEjecuciones", ejecucionRepository.findUltimasPorTarea());
+        return estado;
+    }
+
+    public Page<TareaProgramadaEjecucion> getHistorial(String nombre, Pageable pageable) {
+        return nombre != null && !nombre.isBlank()
+                ? ejecucionRepository.findByNombreOrderByInicioDesc(nombre, pageable)
+                : ejecucionRepository.findAllByOrderByInicioDesc(pageable);
+    }
+
+    /**
+     * Borra el historial más antiguo que tareas.historial.dias (idempotente en todas las instancias)
+     */
+    @Scheduled(cron = "${tareas.historial.limpieza-cron:0 20 3 * * ?}", zone = "America/Argentina/Buenos_Aires")
+    public void limpiarHistorial() {
+        try {
+            Integer borradas = transaccionPropia.execute(status ->
+                    ejecucionRepository.deleteByInicioBefore(LocalDateTime.now().minusDays(diasHistorial)));
+            if (borradas != null && borradas > 0) {
+                logger.info("🧹 Historial de tareas programadas: {} ejecuciones antiguas eliminadas", borradas);
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error limpiando el historial de tareas programadas: {}", e.getMessage(), e);
+        }
+    }
+
+    // ===============================================
+    // LEASE
+    // ===============================================
+
+    /**
+     * Toma el lease si no existe o está vencido; una sola sentencia, atómica entre instancias
+     */
+    private boolean adquirir(String nombre) {
+        Integer filas = transaccionPropia.execute(status -> jdbcTemplate.update("""
+                INSERT INTO tarea_programada_lock (nombre, instancia, adquirido_en, latido_en, expira_en)
+                VALUES (?, ?, LOCALTIMESTAMP, LOCALTIMESTAMP, LOCALTIMESTAMP + ? * INTERVAL '1 millisecond')
+                ON CONFLICT (nombre) DO UPDATE SET
+                    instancia = EXCLUDED.instancia,
+                    adquirido_en = EXCLUDED.adquirido_en,
+                    latido_en = EXCLUDED.latido_en,
+                    expira_en = EXCLUDED.expira_en
+                WHERE tarea_programada_lock.expira_en <= LOCALTIMESTAMP
+                """, nombre, instancia, leaseMs));
+        return filas != null && filas > 0;
+    }
+
+    private void renovarLeases() {
+        for (String nombre : enEjecucion.keySet()) {
+            try {
+                Integer filas = transaccionPropia.execute(status -> jdbcTemplate.update("""
+                        UPDATE tarea_programada_lock
+                        SET latido_en = LOCALTIMESTAMP,
+                            expira_en = GREATEST(expira_en, LOCALTIMESTAMP + ? * INTERVAL '1 millisecond')
+                        WHERE nombre = ? AND instancia = ?
+                        """, leaseMs, nombre, instancia));
+                if (filas == null || filas == 0) {
+                    logger.warn("⚠️ La tarea {} perdió su lease (otra instancia pudo tomarla)", nombre);
+                }
+            } catch (Exception e) {
+                logger.warn("⚠️ No se pudo renovar el lease de la tarea {}: {}", nombre, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deja el lease tomado hasta cumplir el mínimo desde que se adquirió (o lo libera si ya pasó)
+     */
+    private void liberar(String nombre, Duration mantenerAlMenos) {
+        try {
+            transaccionPropia.executeWithoutResult(status -> jdbcTemplate.update("""
+                    UPDATE tarea_programada_lock
+                    SET latido_en = LOCALTIMESTAMP,
+                        expira_en = GREATEST(LOCALTIMESTAMP, adquirido_en + ? * INTERVAL '1 millisecond')
+                    WHERE nombre = ? AND instancia = ?
+                    """, mantenerAlMenos.toMillis(), nombre, instancia));
+        } catch (Exception e) {
+            // El lease vence solo al cumplirse leaseMs
+            logger.warn("⚠️ No se pudo liberar el lease de la tarea {}: {}", nombre, e.getMessage());
+        }
+    }
+
+    // ===============================================
+    // HISTORIAL
+    // ===============================================
+
+    private Long registrarInicio(String nombre) {
+        return transaccionPropia.execute(status -> {
+            LocalDateTime ahora = LocalDateTime.now();
+            // Con el lease tomado, una ejecución EN_CURSO solo puede ser de una instancia que murió
+            ejecucionRepository.marcarInterrumpidas(nombre, ahora);
+
+            TareaProgramadaEjecucion ejecucion = new TareaProgramadaEjecucion();
+            ejecucion.setNombre(nombre);
+            ejecucion.setInstancia(instancia);
+            ejecucion.setInicio(ahora);
+            ejecucion.setEstado(TareaProgramadaEjecucion.EN_CURSO);
+            return ejecucionRepository.save(ejecucion).getId();
+        });
+    }
+
+    /**
+     * Cierra la ejecución y libera el lease; si la tarea corre en una transacción, al terminar esta
+     */
+    private void finalizar(String nombre, Duration mantenerAlMenos, Long ejecucionId, long inicioNanos,
+            RuntimeException error) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    String detalle = error != null ? error.getMessage()
+                            : status == STATUS_COMMITTED ? null : "Transacción revertida";
+                    cerrar(nombre, mantenerAlMenos, ejecucionId, inicioNanos, detalle, error == null
+                            && status == STATUS_COMMITTED);
+                }
+            });
+            return;
+        }
+        cerrar(nombre, mantenerAlMenos, ejecucionId, inicioNanos, error != null ? error.getMessage() : null,
+                error == null);
+    }
+
+    private void cerrar(String nombre, Duration mantenerAlMenos, Long ejecucionId, long inicioNanos,
+            String detalle, boolean exitosa) {
+        enEjecucion.remove(nombre);
+        long duracionMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+        try {
+            transaccionPropia.executeWithoutResult(status -> ejecucionRepository.findById(ejecucionId)
+                    .ifPresent(ejecucion -> {
+                        ejecucion.setFin(LocalDateTime.now());
+                        ejecucion.setDuracionMs(duracionMs);
+                        ejecucion.setEstado(exitosa ? TareaProgramadaEjecucion.COMPLETADA
+                                : TareaProgramadaEjecucion.FALLIDA);
+                        ejecucion.setDetalle(detalle != null && detalle.length() > 1000
+                                ? detalle.substring(0, 1000) : detalle);
+                    }));
+        } catch (Exception e) {
+            logger.warn("⚠️ No se pudo registrar el fin de la tarea {}: {}", nombre, e.getMessage());
+        }
+        liberar(nombre, mantenerAlMenos);
+        logger.info("{} Tarea {} {} en {} ms", exitosa ? "✅" : "❌", nombre,
+                exitosa ? "completada" : "fallida", duracionMs);
+    }
+
+    private Map<String, Object> lockAMapa(TareaProgramadaLock lock) {
+        Map<String, Object> mapa = new LinkedHashMap<>();
+        mapa.put("nombre", lock.getNombre());
+        mapa.put("instancia", lock.getInstancia());
+        mapa.put("adquiridoEn", lock.getAdquiridoEn());
+        mapa.put("latidoEn", lock.getLatidoEn());
+        mapa.put("expiraEn", lock.getExpiraEn());
+        return mapa;
+    }
+
+    private static String nombreInstancia() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "desconocido";
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
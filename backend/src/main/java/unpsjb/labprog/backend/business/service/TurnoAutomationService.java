@@ -1,21 +1,34 @@
 package unpsjb.labprog.backend.business.service;
 
+import jakarta.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import unpsjb.labprog.backend.business.repository.TareaProgramadaCheckpointRepository;
 import unpsjb.labprog.backend.business.repository.TurnoRepository;
 import unpsjb.labprog.backend.model.EstadoTurno;
+import unpsjb.labprog.backend.model.TareaProgramadaCheckpoint;
 import unpsjb.labprog.backend.model.Turno;
 
+import java.sql.PreparedStatement;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Servicio para automatización de turnos
@@ -31,10 +44,33 @@ public class TurnoAutomationService {
     
     @Autowired
     private AuditLogService auditLogService;
+
+    @Autowired
+    private ReasignacionListaEsperaService reasignacionListaEsperaService;
     
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    @Autowired
+    private TareaProgramadaCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private TurnoMetricasService turnoMetricasService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaccionLote;
+
     @Value("${turnos.auto-cancel.enabled:true}")
     private Boolean autoCancelEnabled;
     
@@ -44,16 +80,46 @@ public class TurnoAutomationService {
     @Value("${app.url:http://localhost:4200}")
     private String appUrl;
 
+    @Value("${turnos.auto-cancel.check-interval:3600000}")
+    private long checkIntervalMs;
+
+    @Value("${turnos.auto-cancel.tamano-lote:200}")
+    private int tamanoLote;
+
+    static final String TAREA_CANCELACION_NO_CONFIRMADOS = "turnos.cancelacion-no-confirmados";
+
+    private static final String SQL_CANCELAR_LOTE =
+            "UPDATE turno SET estado = 'CANCELADO' WHERE id = ANY (?) AND estado = 'PROGRAMADO' RETURNING id";
+
     // Zona horaria de Argentina
     private static final ZoneId ARGENTINA_ZONE = ZoneId.of("America/Argentina/Buenos_Aires");
 
+    @PostConstruct
+    public void iniciar() {
+        // Cada lote en su propia transacción, aunque el proceso se invoque dentro de otra
+        transaccionLote = new TransactionTemplate(transactionManager);
+        transaccionLote.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     /**
      * Job que se ejecuta cada hora para cancelar turnos no confirmados
-     * Cancela turnos PROGRAMADOS que no fueron confirmados dentro del tiempo límite
+     * Cancela turnos PROGRAMADOS que no fueron confirmados dentro del tiempo límite.
+     * Sin transacción propia: cada lote confirma en la suya (ver procesarLote).
      */
     @Scheduled(fixedRateString = "${turnos.auto-cancel.check-interval:3600000}") // Default: cada hora
-    @Transactional
     public void cancelarTurnosNoConfirmados() {
+        tareaProgramadaService.ejecutar(TAREA_CANCELACION_NO_CONFIRMADOS, mantenerLeaseCancelacion(), this::cancelarTurnosNoConfirmadosEnInstancia);
+    }
+
+    /**
+     * El lease se mantiene casi un intervalo completo para que las demás instancias, cuyo
+     * fixedRate dispara en otros momentos, no repitan la pasada del mismo período
+     */
+    private Duration mantenerLeaseCancelacion() {
+        return Duration.ofMillis(checkIntervalMs * 9 / 10);
+    }
+
+    private void cancelarTurnosNoConfirmadosEnInstancia() {
         if (!autoCancelEnabled) {
             logger.debug("🔧 Cancelación automática de turnos está deshabilitada");
             return;
@@ -61,7 +127,16 @@ public class TurnoAutomationService {
         
         try {
             logger.info("🔄 Iniciando proceso de cancelación automática de turnos...");
-            
+
+            // Si la pasada anterior se interrumpió, se completa primero con su misma ventana
+            Optional<TareaProgramadaCheckpoint> interrumpida = checkpointRepository.findById(TAREA_CANCELACION_NO_CONFIRMADOS);
+            if (interrumpida.isPresent()) {
+                TareaProgramadaCheckpoint checkpoint = interrumpida.get();
+                logger.info("↩️ Retomando pasada interrumpida ({} - {}) desde el turno ID {} ({} ya cancelados)",
+                        checkpoint.getDesde(), checkpoint.getHasta(), checkpoint.getUltimoId(), checkpoint.getProcesados());
+                procesarPasada(checkpoint.getDesde(), checkpoint.getHasta());
+            }
+
             // Obtener fecha/hora actual en zona horaria de Argentina (UTC-3)
             ZonedDateTime ahoraArgentina = ZonedDateTime.now(ARGENTINA_ZONE);
             LocalDateTime ahora = ahoraArgentina.toLocalDateTime();
@@ -70,87 +145,123 @@ public class TurnoAutomationService {
             LocalDateTime limiteConfirmacion = ahora.plusHours(horasAnticipacion);
             logger.info("📅 Fecha/hora actual (Argentina UTC-3): {} | Límite de confirmación: {} ({} horas)", 
                        ahora, limiteConfirmacion, horasAnticipacion);
-            
-            // Buscar turnos PROGRAMADOS cuya fecha/hora sea dentro del límite y no hayan sido confirmados
-            List<Turno> turnosACancelar = turnoRepository.findTurnosParaCancelacionAutomatica(
-                EstadoTurno.PROGRAMADO,
-                ahora,
-                limiteConfirmacion
-            );
-            
-            if (turnosACancelar.isEmpty()) {
-                logger.info("✅ No hay turnos para cancelar automáticamente");
-                return;
-            }
-            
-            logger.info("⚠️  Encontrados {} turnos para cancelar automáticamente", turnosACancelar.size());
-            
-            int cancelados = 0;
-            int errores = 0;
-            
-            for (Turno turno : turnosACancelar) {
-                try {
-                    cancelarTurnoAutomaticamente(turno);
-                    cancelados++;
-                } catch (Exception e) {
-                    errores++;
-                    logger.error("❌ Error al cancelar turno ID {}: {}", turno.getId(), e.getMessage());
-                }
-            }
-            
-            logger.info("✅ Proceso completado: {} turnos cancelados automáticamente, {} errores", 
-                       cancelados, errores);
-            
+
+            procesarPasada(ahora, limiteConfirmacion);
+
         } catch (Exception e) {
-            logger.error("❌ Error crítico en proceso de cancelación automática: {}", e.getMessage(), e);
+            logger.error("❌ Error crítico en proceso de cancelación automática (se retoma desde el último lote confirmado en la próxima ejecución): {}",
+                    e.getMessage(), e);
         }
     }
-    
+
     /**
-     * Cancela un turno específico por falta de confirmación
-     * @param turno el turno a cancelar
+     * Cancela por lotes los turnos PROGRAMADOS de la ventana, avanzando el checkpoint con cada
+     * lote confirmado. Al terminar borra el checkpoint; si un lote falla, el error se propaga y
+     * el checkpoint queda en el último lote confirmado.
      */
-    private void cancelarTurnoAutomaticamente(Turno turno) {
-        logger.info("🚫 Cancelando turno ID {} - Paciente: {} {} - Fecha: {} {}", 
-            turno.getId(), 
-            turno.getPaciente().getNombre(),
-            turno.getPaciente().getApellido(),
-            turno.getFecha(),
-            turno.getHoraInicio()
-        );
+    private void procesarPasada(LocalDateTime desde, LocalDateTime hasta) {
+        TareaProgramadaCheckpoint checkpoint = checkpointRepository.findById(TAREA_CANCELACION_NO_CONFIRMADOS)
+                .filter(existente -> existente.getDesde().equals(desde) && existente.getHasta().equals(hasta))
+                .orElseGet(() -> nuevoCheckpoint(desde, hasta));
 
-        // Cambiar estado a CANCELADO
-        turno.setEstado(EstadoTurno.CANCELADO);
-        // No existe observaciones ni fechaModificacion en Turno, si se requiere guardar motivo, hacerlo en auditoría
+        int cancelados = 0;
+        int lotes = 0;
+        Integer canceladosEnLote;
+        while ((canceladosEnLote = transaccionLote.execute(status -> procesarLote(desde, hasta))) != null) {
+            cancelados += canceladosEnLote;
+            lotes++;
+        }
+        checkpointRepository.deleteById(TAREA_CANCELACION_NO_CONFIRMADOS);
 
-        // Guardar cambios
-        turnoRepository.save(turno);
+        if (cancelados == 0 && checkpoint.getProcesados() == 0) {
+            logger.info("✅ No hay turnos para cancelar automáticamente");
+        } else {
+            logger.info("✅ Proceso completado: {} turnos cancelados automáticamente en {} lotes",
+                    checkpoint.getProcesados() + cancelados, lotes);
+        }
+    }
 
-        // Registrar en auditoría
-        auditLogService.logTurnoCancelledAutomatically(
-            turno.getId() != null ? turno.getId().longValue() : null,
-            turno.getPaciente() != null && turno.getPaciente().getId() != null ? turno.getPaciente().getId().longValue() : null,
-            String.format("Cancelación automática por falta de confirmación %d horas antes", horasAnticipacion)
-        );
+    private TareaProgramadaCheckpoint nuevoCheckpoint(LocalDateTime desde, LocalDateTime hasta) {
+        LocalDateTime ahora = LocalDateTime.now(ARGENTINA_ZONE);
+        TareaProgramadaCheckpoint checkpoint = new TareaProgramadaCheckpoint();
+        checkpoint.setNombre(TAREA_CANCELACION_NO_CONFIRMADOS);
+        checkpoint.setDesde(desde);
+        checkpoint.setHasta(hasta);
+        checkpoint.setIniciadoEn(ahora);
+        checkpoint.setActualizadoEn(ahora);
+        return checkpointRepository.save(checkpoint);
+    }
 
-        logger.debug("✅ Turno ID {} cancelado y registrado en auditoría", turno.getId());
+    /**
+     * Cancela el siguiente lote en la transacción actual: un UPDATE masivo (solo los que siguen
+     * PROGRAMADOS), la auditoría en un INSERT por lotes, el delta de métricas diarias y el avance
+     * del checkpoint. Las notificaciones se encolan en la misma transacción y salen solo si el
+     * lote confirma.
+     *
+     * @return cantidad de turnos cancelados, o null si no quedan turnos en la ventana
+     */
+    private Integer procesarLote(LocalDateTime desde, LocalDateTime hasta) {
+        TareaProgramadaCheckpoint checkpoint = checkpointRepository.findById(TAREA_CANCELACION_NO_CONFIRMADOS)
+                .orElseThrow(() -> new IllegalStateException("Checkpoint de cancelación automática inexistente"));
+
+        List<Integer> ids = turnoRepository.findIdsParaCancelacionAutomatica(EstadoTurno.PROGRAMADO, desde, hasta,
+                checkpoint.getUltimoId().intValue(), PageRequest.of(0, tamanoLote));
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        // El estado se vuelve a verificar en el UPDATE: un turno confirmado mientras tanto no se toca
+        List<Integer> cancelados = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SQL_CANCELAR_LOTE);
+            ps.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+            return ps;
+        }, (rs, fila) -> rs.getInt(1));
+
+        if (!cancelados.isEmpty()) {
+            turnoMetricasService.aplicarCambioDeEstado(cancelados, EstadoTurno.PROGRAMADO, EstadoTurno.CANCELADO);
+            auditLogService.logTurnosCancelledAutomatically(cancelados,
+                String.format("Cancelación automática por falta de confirmación %d horas antes", horasAnticipacion));
+
+            Set<Integer> staffInvalidados = new HashSet<>();
+            for (Turno turno : turnoRepository.findConDatosDeNotificacion(cancelados)) {
+                Integer staffMedicoId = turno.getStaffMedico() != null ? turno.getStaffMedico().getId() : null;
+                // El slot vuelve a estar disponible en la agenda pública
+                if (staffInvalidados.add(staffMedicoId)) {
+                    agendaCacheService.invalidarStaffMedico(staffMedicoId);
+                }
+                // Ofrecer el slot a la lista de espera cuando el lote confirme
+                reasignacionListaEsperaService.turnoLiberado(turno);
+
+                NotificacionCancelacion notificacion = prepararNotificacion(turno);
+                if (notificacion != null) {
+                    // Se encola en la transacción del lote: sale solo si el lote confirma
+                    enviarNotificacion(notificacion);
+                }
+            }
+        }
 
-        // Notificar al paciente por email
-        notificarCancelacionAutomatica(turno);
+        checkpoint.setUltimoId(ids.get(ids.size() - 1).longValue());
+        checkpoint.setProcesados(checkpoint.getProcesados() + cancelados.size());
+        checkpoint.setActualizadoEn(LocalDateTime.now(ARGENTINA_ZONE));
+        checkpointRepository.save(checkpoint);
 
-        logger.debug("✅ Notificación enviada al paciente para turno ID {}", turno.getId());
+        logger.info("🚫 Lote de cancelación automática: {} turnos cancelados (hasta ID {})",
+                cancelados.size(), checkpoint.getUltimoId());
+        return cancelados.size();
     }
     
     /**
-     * Envía notificación por email al paciente sobre la cancelación automática
+     * Arma la notificación por email de la cancelación automática (dentro de la transacción del
+     * lote, con el turno cargado)
      * @param turno el turno que fue cancelado
+     * @return la notificación, o null si el paciente no tiene email
      */
-    private void notificarCancelacionAutomatica(Turno turno) {
+    private NotificacionCancelacion prepararNotificacion(Turno turno) {
         try {
             // Verificar que el paciente tenga email
             if (turno.getPaciente() == null || turno.getPaciente().getEmail() == null || turno.getPaciente().getEmail().trim().isEmpty()) {
                 logger.warn("⚠️  No se puede enviar notificación: paciente sin email para turno ID {}", turno.getId());
-                return;
+                return null;
             }
             
             String patientEmail = turno.getPaciente().getEmail();
@@ -172,24 +283,37 @@ public class TurnoAutomationService {
                 turno.getConsultorio() != null && turno.getConsultorio().getCentroAtencion() != null ? turno.getConsultorio().getCentroAtencion().getNombre() : "N/A",
                 turno.getConsultorio() != null ? turno.getConsultorio().getNombre() : "N/A"
             );
-            
+
+            return new NotificacionCancelacion(turno.getId(), patientEmail, patientName, appointmentDetails);
+                
+        } catch (Exception e) {
+            logger.error("❌ Error al preparar notificación de cancelación automática para turno ID {}: {}", turno.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Envía notificación por email al paciente sobre la cancelación automática
+     * @param notificacion datos ya armados de la notificación
+     */
+    private void enviarNotificacion(NotificacionCancelacion notificacion) {
+        try {
             // URL para reagendar (puede ser la URL base de la aplicación)
             String rescheduleUrl = appUrl;
             
-            logger.info("📧 Enviando notificación de cancelación automática a {} para turno ID {}", patientEmail, turno.getId());
+            logger.info("📧 Enviando notificación de cancelación automática a {} para turno ID {}", notificacion.email(), notificacion.turnoId());
             
-            // Enviar email de forma asíncrona
-            emailService.sendAutomaticCancellationEmail(patientEmail, patientName, appointmentDetails, rescheduleUrl)
+            // Encolar email en la cola persistente de correos salientes
+            emailService.sendAutomaticCancellationEmail(notificacion.email(), notificacion.nombre(), notificacion.detalles(), rescheduleUrl)
                 .whenComplete((result, throwable) -> {
                     if (throwable != null) {
-                        logger.error("❌ Error al enviar notificación de cancelación automática para turno ID {}: {}", turno.getId(), throwable.getMessage());
+                        logger.error("❌ Error al encolar notificación de cancelación automática para turno ID {}: {}", notificacion.turnoId(), throwable.getMessage());
                     } else {
-                        logger.info("✅ Notificación de cancelación automática enviada exitosamente para turno ID {}", turno.getId());
+                        logger.info("✅ Notificación de cancelación automática encolada para turno ID {}", notificacion.turnoId());
                     }
                 });
-                
         } catch (Exception e) {
-            logger.error("❌ Error al preparar notificación de cancelación automática para turno ID {}: {}", turno.getId(), e.getMessage());
+            logger.error("❌ Error al enviar notificación de cancelación automática para turno ID {}: {}", notificacion.turnoId(), e.getMessage());
         }
     }
     
@@ -216,9 +340,17 @@ public class TurnoAutomationService {
     /**
      * Ejecuta manualmente el proceso de cancelación automática
      * Útil para testing y ejecución manual desde admin
+     *
+     * @return false si la tarea está tomada (en curso o recién ejecutada) y no se ejecutó
      */
-    public void ejecutarCancelacionManual() {
+    public boolean ejecutarCancelacionManual() {
         logger.info("🔧 Ejecución manual del proceso de cancelación automática solicitada");
-        cancelarTurnosNoConfirmados();
+        return tareaProgramadaService.ejecutar(TAREA_CANCELACION_NO_CONFIRMADOS, mantenerLeaseCancelacion(), this::cancelarTurnosNoConfirmadosEnInstancia);
+    }
+
+    /**
+     * Datos de la notificación de una cancelación automática, tomados dentro del lote
+     */
+    private record NotificacionCancelacion(Integer turnoId, String email, String nombre, String detalles) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package unpsjb.labprog.backend.business.service;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import unpsjb.labprog.backend.business.repository.TurnoMetricaDiariaRepository;
+import unpsjb.labprog.backend.model.EstadoTurno;
+
+/**
+ * Reconciliación del agregado diario de turnos (turno_metrica_diaria) que usa el dashboard.
+ *
+ * Durante el día la tabla se actualiza incrementalmente (ver TurnoMetricasListener). Cada noche
+ * se reconstruye completa desde la tabla turno con un único INSERT ... SELECT agrupado, lo que
+ * corrige cualquier diferencia (actualizaciones masivas, cambios de especialidad de un staff,
+ * datos cargados por fuera de la aplicación).
+ */
+@Service
+public class TurnoMetricasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnoMetricasService.class);
+
+    private static final String SQL_RECONSTRUIR = """
+            INSERT INTO turno_metrica_diaria
+                (fecha, centro_atencion_id, consultorio_id, staff_medico_id, especialidad_id, estado,
+                 cantidad, minutos_ocupados)
+            SELECT t.fecha,
+                   COALESCE(c.centro_atencion_id, 0),
+                   COALESCE(t.consultorio_id, 0),
+                   COALESCE(t.staff_medico_id, 0),
+                   COALESCE(sm.especialidad_id, 0),
+                   t.estado,
+                   COUNT(*),
+                   COALESCE(SUM(CAST(EXTRACT(EPOCH FROM (t.hora_fin - t.hora_inicio)) / 60 AS BIGINT)), 0)
+            FROM turno t
+            LEFT JOIN consultorio c ON c.id = t.consultorio_id
+            LEFT JOIN staff_medico sm ON sm.id = t.staff_medico_id
+            GROUP BY t.fecha, COALESCE(c.centro_atencion_id, 0), COALESCE(t.consultorio_id, 0),
+                     COALESCE(t.staff_medico_id, 0), COALESCE(sm.especialidad_id, 0), t.estado
+            """;
+
+    /**
+     * Mueve los turnos indicados de un estado a otro en el agregado (resta en el estado anterior y
+     * suma en el nuevo), con la misma clave que usa TurnoMetricasListener
+     */
+    private static final String SQL_CAMBIO_ESTADO = """
+            INSERT INTO turno_metrica_diaria
+                (fecha, centro_atencion_id, consultorio_id, staff_medico_id, especialidad_id, estado,
+                 cantidad, minutos_ocupados)
+            SELECT t.fecha,
+                   COALESCE(c.centro_atencion_id, 0),
+                   COALESCE(t.consultorio_id, 0),
+                   COALESCE(t.staff_medico_id, 0),
+                   COALESCE(sm.especialidad_id, 0),
+                   e.estado,
+                   SUM(e.signo),
+                   COALESCE(SUM(e.signo * CAST(EXTRACT(EPOCH FROM (t.hora_fin - t.hora_inicio)) / 60 AS BIGINT)), 0)
+            FROM turno t
+            LEFT JOIN consultorio c ON c.id = t.consultorio_id
+            LEFT JOIN staff_medico sm ON sm.id = t.staff_medico_id
+            CROSS JOIN (VALUES (?, -1), (?, 1)) AS e(estado, signo)
+            WHERE t.id = ANY (?)
+            GROUP BY t.fecha, COALESCE(c.centro_atencion_id, 0), COALESCE(t.consultorio_id, 0),
+                     COALESCE(t.staff_medico_id, 0), COALESCE(sm.especialidad_id, 0), e.estado
+            ON CONFLICT (fecha, centro_atencion_id, consultorio_id, staff_medico_id, especialidad_id, estado)
+            DO UPDATE SET cantidad = turno_metrica_diaria.cantidad + EXCLUDED.cantidad,
+                          minutos_ocupados = turno_metrica_diaria.minutos_ocupados + EXCLUDED.minutos_ocupados
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TurnoMetricaDiariaRepository metricaDiariaRepository;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_RECONCILIACION = "metricas.reconciliacion-diaria";
+
+    /**
+     * Reconstruye el agregado completo a partir de la tabla turno.
+     * Bloquea las actualizaciones incrementales mientras dura para no perder deltas concurrentes.
+     *
+     * @return cantidad de filas generadas
+     */
+    @Transactional
+    public int reconstruir() {
+        long inicio = System.currentTimeMillis();
+        jdbcTemplate.execute("LOCK TABLE turno_metrica_diaria IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM turno_metrica_diaria");
+        int filas = jdbcTemplate.update(SQL_RECONSTRUIR);
+        logger.info("📊 Métricas diarias de turnos reconstruidas: {} filas en {} ms",
+                filas, System.currentTimeMillis() - inicio);
+        return filas;
+    }
+
+    /**
+     * Aplica al agregado un cambio de estado hecho con una actualización masiva (que no pasa por
+     * TurnoMetricasListener). Corre en la transacción del llamador, junto con la actualización.
+     *
+     * @param turnoIds Turnos que pasaron de {@code anterior} a {@code nuevo}
+     */
+    public void aplicarCambioDeEstado(List<Integer> turnoIds, EstadoTurno anterior, EstadoTurno nuevo) {
+        if (turnoIds.isEmpty() || anterior == nuevo) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SQL_CAMBIO_ESTADO);
+            ps.setString(1, anterior.name());
+            ps.setString(2, nuevo.name());
+            ps.setArray(3, connection.createArrayOf("integer", turnoIds.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Reconstruye el agregado solo si está vacío (primer arranque con la tabla nueva)
+     */
+    @Transactional
+    public void reconstruirSiVacio() {
+        if (metricaDiariaRepository.count() == 0) {
+            reconstruir();
+        }
+    }
+
+    /**
+     * Reconciliación nocturna del agregado (una sola instancia la ejecuta)
+     */
+    @Scheduled(cron = "${dashboard.metricas.reconciliacion-cron:0 30 2 * * ?}", zone = "America/Argentina/Buenos_Aires")
+    @Transactional
+    public void reconciliarMetricas() {
+        tareaProgramadaService.ejecutar(TAREA_RECONCILIACION, Duration.ofHours(1), () -> reconstruir());
+    }
+}
@@ -1,31 +1,52 @@
 package unpsjb.labprog.backend.business.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import unpsjb.labprog.backend.business.repository.ConsultorioRepository;
 import unpsjb.labprog.backend.business.repository.EsquemaTurnoRepository;
 import unpsjb.labprog.backend.business.repository.PacienteRepository;
 import unpsjb.labprog.backend.business.repository.StaffMedicoRepository;
 import unpsjb.labprog.backend.business.repository.TurnoRepository;
 
+import unpsjb.labprog.backend.dto.AuditResumenDTO;
 import unpsjb.labprog.backend.dto.CancelacionDataDTO;
 import unpsjb.labprog.backend.dto.HistorialTurnoDTO;
 import unpsjb.labprog.backend.dto.TurnoDTO;
@@ -45,6 +66,7 @@ import unpsjb.labprog.backend.model.User;
 import unpsjb.labprog.backend.business.repository.OperadorRepository;
 import unpsjb.labprog.backend.business.repository.UserRepository;
 import unpsjb.labprog.backend.config.TenantContext;
+import unpsjb.labprog.backend.config.TurnoIndicesInitializer;
 
 @Service
 public class TurnoService {
@@ -59,7 +81,7 @@ public class TurnoService {
     private StaffMedicoRepository staffMedicoRepository;
 
     @Autowired
-    private ListaEsperaService listaEsperaService;
+    private ReasignacionListaEsperaService reasignacionListaEsperaService;
 
     @Autowired
     private ConsultorioRepository consultorioRepository;
@@ -91,6 +113,23 @@ public class TurnoService {
     @Autowired
     private EncuestaInvitacionService encuestaInvitacionService;
 
+    @Autowired
+    private AgendaCacheService agendaCacheService;
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    static final String TAREA_CANCELACION_DIARIA = "turnos.cancelacion-automatica-diaria";
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Cantidad de turnos por lote en las exportaciones en streaming
+    private static final int TAMANO_LOTE_EXPORTACION = 500;
+
     // === VALIDACIONES DE TRANSICIÓN DE ESTADO ===
 
     // Parámetro de configuración: días máximos para confirmar un turno antes de la
@@ -210,30 +249,35 @@ public class TurnoService {
             Turno turno = toEntity(dto); // Convertir DTO a entidad
             validarTurno(turno); // Validar el turno
 
-            // Validar solapamiento: si el DTO indica permitirSolapamiento==true, entonces
-            // se permitirá crear el turno aun cuando exista conflicto (sobreturno confirmado
-            // por el usuario). En caso contrario, se retornará un CONFLICT con detalles.
+            // Si el DTO indica permitirSolapamiento==true se permitirá crear el turno aun
+            // cuando exista conflicto (sobreturno confirmado por el usuario). En caso
+            // contrario, se retornará un CONFLICT con detalles.
             boolean permitir = dto.getPermitirSolapamiento() != null && dto.getPermitirSolapamiento();
-            validarSolapamiento(turno, permitir);
 
             boolean isNewTurno = dto.getId() == null || dto.getId() == 0;
             EstadoTurno previousStatus = null;
+            Integer previousStaffMedicoId = null;
 
             if (!isNewTurno) {
                 // Es una actualización, obtener el estado anterior
                 Optional<Turno> existingTurno = repository.findById(turno.getId());
                 if (existingTurno.isPresent()) {
                     previousStatus = existingTurno.get().getEstado();
+                    previousStaffMedicoId = existingTurno.get().getStaffMedico() != null
+                            ? existingTurno.get().getStaffMedico().getId() : null;
+                    turno.setSobreturno(existingTurno.get().isSobreturno());
                 }
             }
 
-            Turno saved = repository.save(turno); // Guardar el turno
+            Turno saved = guardarSinSolapamiento(turno, permitir); // Guardar el turno
 
             // Asegurar que el turno tenga ID después de guardar
             if (saved.getId() == null) {
                 throw new IllegalStateException("Error: El turno no recibió ID después de guardar");
             }
 
+            actualizarDisponibilidadPublica(saved, isNewTurno, previousStaffMedicoId);
+
             if (isNewTurno) {
                 try {
                     auditLogService.logTurnoCreated(saved, performedBy);
@@ -252,8 +296,8 @@ public class TurnoService {
                             "Actualización de turno");
                     if (auditResult != null) {
                         System.out
-                                .println("✅ DEBUG TurnoService.save: Auditoría de cambio de estado registrada con ID: "
-                                        + auditResult.getId());
+                                .println("✅ DEBUG TurnoService.save: Auditoría de cambio de estado registrada: "
+                                        + auditResult.getAction());
                     } else {
                         System.err.println(
                                 "❌ ERROR TurnoService.save: Falló el registro de auditoría de cambio de estado");
@@ -399,11 +443,14 @@ public class TurnoService {
             }
         }
 
+        turnoOpt.ifPresent(turno -> agendaCacheService.invalidarStaffMedico(staffMedicoIdDe(turno)));
+
         repository.deleteById(id);
     }
 
     public void deleteAll() {
         repository.deleteAll();
+        agendaCacheService.invalidarTodo();
     }
 
     @Transactional
@@ -442,6 +489,9 @@ public class TurnoService {
         turno.setEstado(EstadoTurno.CANCELADO);
         Turno savedTurno = repository.save(turno);
 
+        // El slot vuelve a estar libre en la agenda pública
+        agendaCacheService.invalidarStaffMedico(staffMedicoIdDe(savedTurno));
+
         // Registrar auditoría de cancelación
         try {
             auditLogService.logTurnoCanceled(savedTurno, previousStatus.name(), performedBy, motivo);
@@ -467,9 +517,8 @@ public class TurnoService {
         // Enviar notificación por email si el paciente tiene email verificado
         enviarNotificacionCancelacionEmail(savedTurno, cancelacionData, validacionContacto, performedBy);
 
-        // Buscar pacientes en lista de espera que coincidan con el turno cancelado
-        boolean buscarPacienteParaReasignar = listaEsperaService.buscarPacienteParaReasignar(savedTurno);
-        System.out.println("Estado buscarPacienteParaReasignar: " + buscarPacienteParaReasignar);
+        // Ofrecer el slot a la lista de espera cuando la cancelación confirme (en segundo plano)
+        reasignacionListaEsperaService.turnoLiberado(savedTurno);
 
         // Cancelar invitaciones a encuesta pendientes para este turno
         try {
@@ -607,6 +656,10 @@ public class TurnoService {
     @Scheduled(cron = "0 0 0 * * ?", zone = "America/Argentina/Buenos_Aires") // ✅ CORREGIDO: especificar zona
     @Transactional
     public void cancelarTurnosNoConfirmadosAutomaticamente() {
+        tareaProgramadaService.ejecutar(TAREA_CANCELACION_DIARIA, Duration.ofHours(1), this::cancelarTurnosNoConfirmadosAutomaticamenteEnInstancia);
+    }
+
+    private void cancelarTurnosNoConfirmadosAutomaticamenteEnInstancia() {
         if (!configuracionService.isHabilitadaCancelacionAutomatica()) {
             System.out.println("Cancelación automática deshabilitada por configuración");
             return;
@@ -706,7 +759,10 @@ public class TurnoService {
         turno.setHoraFin(nuevosDatos.getHoraFin());
         turno.setEstado(EstadoTurno.REAGENDADO);
 
-        Turno savedTurno = repository.save(turno);
+        Turno savedTurno = guardarSinSolapamiento(turno, false);
+
+        // Se libera el slot anterior y se ocupa el nuevo
+        agendaCacheService.invalidarStaffMedico(staffMedicoIdDe(savedTurno));
 
         // Registrar auditoría de reagendamiento
         try {
@@ -935,6 +991,29 @@ public class TurnoService {
         return toDTO(savedTurno);
     }
 
+    /**
+     * Mantiene al día el almacén de disponibilidad pública tras guardar un turno.
+     * Un turno nuevo solo ocupa su slot (parche); una modificación puede haber
+     * cambiado fecha, hora, médico o estado, así que invalida los médicos involucrados.
+     */
+    private void actualizarDisponibilidadPublica(Turno saved, boolean isNewTurno, Integer previousStaffMedicoId) {
+        Integer staffMedicoId = staffMedicoIdDe(saved);
+        if (isNewTurno) {
+            if (saved.getEstado() != EstadoTurno.CANCELADO) {
+                agendaCacheService.marcarOcupado(staffMedicoId, saved.getFecha(), saved.getHoraInicio());
+            }
+            return;
+        }
+        agendaCacheService.invalidarStaffMedico(staffMedicoId);
+        if (previousStaffMedicoId != null && !previousStaffMedicoId.equals(staffMedicoId)) {
+            agendaCacheService.invalidarStaffMedico(previousStaffMedicoId);
+        }
+    }
+
+    private Integer staffMedicoIdDe(Turno turno) {
+        return turno.getStaffMedico() != null ? turno.getStaffMedico().getId() : null;
+    }
+
     // Métodos de validación de reglas de negocio
     private void validarCancelacion(Turno turno) {
         // Validar que el turno puede ser modificado
@@ -1141,7 +1220,7 @@ public class TurnoService {
         // (save) porque en caso de "sobreturno" necesitamos permitir la creación
         // previa confirmación del usuario. Esto permite que el frontend solicite
         // confirmación y luego reintente con el flag `permitirSolapamiento=true`.
-        // validarSolapamiento(turno);  // movido al flujo de guardado
+        // Ver guardarSinSolapamiento()
 
     }
 
@@ -1167,56 +1246,99 @@ public class TurnoService {
         }
     }
 
-    private void validarSolapamiento(Turno turno, boolean permitirSolapamiento) {
-        // Buscar turnos existentes del mismo médico en la misma fecha
-        List<Turno> turnosExistentes = repository.findByFechaAndStaffMedico_Id(
-                turno.getFecha(),
-                turno.getStaffMedico().getId());
-
-        // Filtrar turnos que no estén cancelados
-        turnosExistentes = turnosExistentes.stream()
-                .filter(t -> t.getEstado() != EstadoTurno.CANCELADO)
-                .collect(Collectors.toList());
+    /**
+     * Guarda un turno armado por otro servicio (p. ej. la reasignación desde lista de espera)
+     * con la misma detección de solapamientos que save(): un slot ya tomado se informa como
+     * OverlapException.
+     */
+    @Transactional
+    public Turno guardarTurnoSinSolapamiento(Turno turno) {
+        return guardarSinSolapamiento(turno, false);
+    }
 
-        // Buscar solapamientos
-        List<Turno> conflictos = turnosExistentes.stream()
-                .filter(turnoExistente -> {
-                    // Excluir el turno actual si es una edición (tiene ID)
-                    if (turno.getId() != null && turno.getId().equals(turnoExistente.getId())) {
-                        return false;
-                    }
-                    // Verificar solapamiento: dos intervalos se solapan si el inicio de uno
-                    // está antes del fin del otro Y el fin de uno está después del inicio del otro
-                    return turno.getHoraInicio().isBefore(turnoExistente.getHoraFin()) &&
-                            turno.getHoraFin().isAfter(turnoExistente.getHoraInicio());
-                })
-                .collect(Collectors.toList());
+    /**
+     * Guarda el turno sin leer antes la agenda del día (camino optimista).
+     *
+     * El índice único ux_turno_slot_activo impide que dos reservas concurrentes tomen el mismo
+     * slot: la segunda falla al escribir y se traduce en un OverlapException. Una vez escrito,
+     * se verifica con una consulta puntual que no haya turnos superpuestos con otra hora de inicio.
+     *
+     * Con permitirSolapamiento (sobreturno confirmado) se consulta antes si hay conflicto para
+     * marcar el turno como sobreturno y dejarlo fuera del índice único.
+     */
+    private Turno guardarSinSolapamiento(Turno turno, boolean permitirSolapamiento) {
+        if (permitirSolapamiento && !turno.isSobreturno() && turno.getStaffMedico() != null
+                && !buscarSolapamientos(turno).isEmpty()) {
+            // Loggear advertencia y permitir la creación (sobreturno confirmado)
+            System.out.println("⚠️ WARNING: Creando turno con solapamiento manual (sobreturno): " +
+                    "Turno fecha=" + turno.getFecha() + " hora=" + turno.getHoraInicio() + "-" + turno.getHoraFin());
+            turno.setSobreturno(true);
+        }
 
-        if (!conflictos.isEmpty()) {
-            if (permitirSolapamiento) {
-                // Loggear advertencia y permitir la creación (sobreturno confirmado)
-                System.out.println("⚠️ WARNING: Creando turno con solapamiento manual (sobreturno): " +
-                        "Turno fecha=" + turno.getFecha() + " hora=" + turno.getHoraInicio() + "-" + turno.getHoraFin());
-                return;
+        Turno saved;
+        try {
+            saved = repository.saveAndFlush(turno);
+        } catch (DataIntegrityViolationException e) {
+            if (!esViolacionDeSlot(e)) {
+                throw e;
+            }
+            // La sesión actual quedó inválida tras el error: los conflictos se leen en otra transacción
+            TransactionTemplate lectura = new TransactionTemplate(transactionManager);
+            lectura.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            lectura.setReadOnly(true);
+            List<Object> infoConflictos = lectura.execute(status -> resumirConflictos(buscarSolapamientos(turno)));
+            throw crearOverlapException(turno, infoConflictos);
+        }
+
+        if (!saved.isSobreturno() && saved.getStaffMedico() != null) {
+            List<Turno> conflictos = buscarSolapamientos(saved);
+            if (!conflictos.isEmpty()) {
+                if (permitirSolapamiento) {
+                    return saved;
+                }
+                throw crearOverlapException(saved, resumirConflictos(conflictos));
             }
-
-            // Preparar información resumida de conflictos para enviar al frontend
-            List<Object> infoConflictos = conflictos.stream().map(t -> {
-                return Map.of(
-                        "id", t.getId(),
-                        "horaInicio", t.getHoraInicio().toString(),
-                        "horaFin", t.getHoraFin().toString(),
-                        "paciente", t.getPaciente().getNombre() + " " + t.getPaciente().getApellido());
-            }).collect(Collectors.toList());
-
-            throw new unpsjb.labprog.backend.exception.OverlapException(
-                    String.format("Ya existe(n) %d turno(s) en conflicto para el médico %s %s en la fecha %s",
-                            infoConflictos.size(),
-                            turno.getStaffMedico().getMedico().getNombre(),
-                            turno.getStaffMedico().getMedico().getApellido(),
-                            turno.getFecha().toString()),
-                    infoConflictos);
         }
+        return saved;
+    }
+
+    private List<Turno> buscarSolapamientos(Turno turno) {
+        // Dos intervalos se solapan si el inicio de uno está antes del fin del otro
+        // Y el fin de uno está después del inicio del otro (se excluye el propio turno)
+        return repository.findSolapados(
+                turno.getStaffMedico().getId(),
+                turno.getFecha(),
+                turno.getHoraInicio(),
+                turno.getHoraFin(),
+                turno.getId(),
+                EstadoTurno.CANCELADO);
+    }
+
+    private boolean esViolacionDeSlot(DataIntegrityViolationException e) {
+        String mensaje = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        return mensaje != null && mensaje.contains(TurnoIndicesInitializer.INDICE_SLOT_ACTIVO);
+    }
+
+    private List<Object> resumirConflictos(List<Turno> conflictos) {
+        // Preparar información resumida de conflictos para enviar al frontend
+        return conflictos.stream().map(t -> {
+            return (Object) Map.of(
+                    "id", t.getId(),
+                    "horaInicio", t.getHoraInicio().toString(),
+                    "horaFin", t.getHoraFin().toString(),
+                    "paciente", t.getPaciente().getNombre() + " " + t.getPaciente().getApellido());
+        }).collect(Collectors.toList());
+    }
+
+    private unpsjb.labprog.backend.exception.OverlapException crearOverlapException(Turno turno,
+            List<Object> infoConflictos) {
+        return new unpsjb.labprog.backend.exception.OverlapException(
+                String.format("Ya existe(n) %d turno(s) en conflicto para el médico %s %s en la fecha %s",
+                        infoConflictos.size(),
+                        turno.getStaffMedico().getMedico().getNombre(),
+                        turno.getStaffMedico().getMedico().getApellido(),
+                        turno.getFecha().toString()),
+                infoConflictos);
     }
 
     /**
@@ -1390,7 +1512,7 @@ public class TurnoService {
         System.out.println("✅ DEBUG: Búsqueda completada. Resultados encontrados: " + turnosPage.getTotalElements());
 
         // Convertir a DTOs con información de auditoría
-        return turnosPage.map(this::toDTOWithAuditInfo);
+        return toDTOsWithAuditInfo(turnosPage);
     }
 
     /**
@@ -1399,7 +1521,33 @@ public class TurnoService {
     public List<TurnoDTO> findForExport(TurnoFilterDTO filter) {
         // Validar y limpiar el filtro
         TurnoFilterDTO cleanFilter = validateAndCleanFilter(filter);
+        Specification<Turno> spec = buildExportSpecification(cleanFilter);
+
+        // Usar JpaSpecificationExecutor sin paginación para exportación
+        Sort sort = Sort.by(
+                "DESC".equalsIgnoreCase(cleanFilter.getSortDirection()) ? Sort.Direction.DESC : Sort.Direction.ASC,
+                cleanFilter.getSortBy());
 
+        List<Turno> turnos = repository.findAll(spec, sort);
+
+        System.out.println("✅ DEBUG: Búsqueda para exportación completada. Resultados encontrados: " + turnos.size());
+
+        // Convertir a DTOs con información de auditoría
+        return toDTOsWithAuditInfo(turnos);
+    }
+
+    /**
+     * Cuenta los turnos que incluiría una exportación con los filtros dados (sin cargarlos)
+     */
+    public long contarParaExportacion(TurnoFilterDTO filter) {
+        TurnoFilterDTO cleanFilter = validateAndCleanFilter(filter);
+        return repository.count(buildExportSpecification(cleanFilter));
+    }
+
+    /**
+     * Construye la especificación de búsqueda para exportación a partir de un filtro ya validado
+     */
+    private Specification<Turno> buildExportSpecification(TurnoFilterDTO cleanFilter) {
         EstadoTurno estadoEnum = null;
         if (cleanFilter.getEstado() != null && !cleanFilter.getEstado().isEmpty()) {
             try {
@@ -1436,19 +1584,54 @@ public class TurnoService {
                 cleanFilter.getNombreEspecialidad(),
                 cleanFilter.getNombreCentro());
 
-        // Usar JpaSpecificationExecutor sin paginación para exportación
+        return spec;
+    }
+
+    /**
+     * Recorre los turnos de una exportación en lotes de TAMANO_LOTE_EXPORTACION sin materializar
+     * el resultado completo. La consulta usa un cursor del servidor (fetch size) y el contexto de
+     * persistencia se limpia después de cada lote, por lo que la memoria usada no depende del
+     * tamaño de la exportación. Cada lote se entrega ya convertido a DTO con su resumen de auditoría.
+     *
+     * @param filter         Mismos filtros que findForExport
+     * @param procesadorLote Recibe cada lote en el orden de la consulta
+     */
+    @Transactional(readOnly = true)
+    public void procesarParaExportacion(TurnoFilterDTO filter, Consumer<List<TurnoDTO>> procesadorLote) {
+        TurnoFilterDTO cleanFilter = validateAndCleanFilter(filter);
+        Specification<Turno> spec = buildExportSpecification(cleanFilter);
         Sort sort = Sort.by(
                 "DESC".equalsIgnoreCase(cleanFilter.getSortDirection()) ? Sort.Direction.DESC : Sort.Direction.ASC,
                 cleanFilter.getSortBy());
 
-        List<Turno> turnos = repository.findAll(spec, sort);
-
-        System.out.println("✅ DEBUG: Búsqueda para exportación completada. Resultados encontrados: " + turnos.size());
-
-        // Convertir a DTOs con información de auditoría
-        return turnos.stream()
-                .map(this::toDTOWithAuditInfo)
-                .collect(Collectors.toList());
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Turno> query = cb.createQuery(Turno.class);
+        Root<Turno> root = query.from(Turno.class);
+        Predicate predicado = spec.toPredicate(root, query, cb);
+        if (predicado != null) {
+            query.where(predicado);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        try (Stream<Turno> turnos = entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, TAMANO_LOTE_EXPORTACION)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+
+            List<Turno> lote = new ArrayList<>(TAMANO_LOTE_EXPORTACION);
+            Iterator<Turno> iterador = turnos.iterator();
+            while (iterador.hasNext()) {
+                lote.add(iterador.next());
+                if (lote.size() == TAMANO_LOTE_EXPORTACION) {
+                    procesadorLote.accept(toDTOsWithAuditInfo(lote));
+                    lote.clear();
+                    entityManager.clear();
+                }
+            }
+            if (!lote.isEmpty()) {
+                procesadorLote.accept(toDTOsWithAuditInfo(lote));
+            }
+        }
     }
 
     /**
@@ -1520,35 +1703,52 @@ public class TurnoService {
                 fechaDesde,
                 fechaHasta);
 
+        return toDTOsWithAuditInfo(turnos);
+    }
+
+    /**
+     * Convierte una página de Turno a TurnoDTO incluyendo información de auditoría
+     */
+    private Page<TurnoDTO> toDTOsWithAuditInfo(Page<Turno> turnosPage) {
+        return new PageImpl<>(toDTOsWithAuditInfo(turnosPage.getContent()), turnosPage.getPageable(),
+                turnosPage.getTotalElements());
+    }
+
+    /**
+     * Convierte Turnos a TurnoDTO incluyendo información de auditoría.
+     * El resumen de auditoría se obtiene en lote (no una consulta por turno).
+     */
+    private List<TurnoDTO> toDTOsWithAuditInfo(List<Turno> turnos) {
+        Map<Integer, AuditResumenDTO> resumenes;
+        try {
+            resumenes = auditLogService.getResumenAuditoriaTurnos(turnos);
+        } catch (Exception e) {
+            // Si hay error al obtener auditoría, no fallar la consulta principal
+            System.err.println("Error al obtener resumen de auditoría de " + turnos.size() + " turnos: "
+                    + e.getMessage());
+            resumenes = Collections.emptyMap();
+        }
+
+        Map<Integer, AuditResumenDTO> resumenesFinal = resumenes;
         return turnos.stream()
-                .map(this::toDTOWithAuditInfo)
+                .map(turno -> toDTOWithAuditInfo(turno, resumenesFinal.get(turno.getId())))
                 .collect(Collectors.toList());
     }
 
     /**
      * Convierte Turno a TurnoDTO incluyendo información de auditoría
      */
-    private TurnoDTO toDTOWithAuditInfo(Turno turno) {
+    private TurnoDTO toDTOWithAuditInfo(Turno turno, AuditResumenDTO resumen) {
         TurnoDTO dto = toDTO(turno); // Usar el método existente
 
-        try {
-            // Agregar información de auditoría
-            List<AuditLog> auditHistory = auditLogService.getTurnoAuditHistory(turno.getId());
-            if (!auditHistory.isEmpty()) {
-                // Obtener la última modificación
-                AuditLog lastAudit = auditHistory.get(0); // Ya están ordenados por fecha
-                dto.setUltimoUsuarioModificacion(lastAudit.getPerformedBy());
-                dto.setFechaUltimaModificacion(lastAudit.getPerformedAt());
-                dto.setMotivoUltimaModificacion(lastAudit.getReason());
-                dto.setTotalModificaciones(auditHistory.size());
-            } else {
-                // Si no hay auditoría, significa que es un turno sin modificaciones
-                dto.setTotalModificaciones(0);
-            }
-        } catch (Exception e) {
-            // Si hay error al obtener auditoría, no fallar la consulta principal
-            System.err.println("Error al obtener auditoría para turno " + turno.getId() +
-                    ": " + e.getMessage());
+        if (resumen != null) {
+            // Última modificación
+            dto.setUltimoUsuarioModificacion(resumen.getUltimoUsuario());
+            dto.setFechaUltimaModificacion(resumen.getUltimaModificacion());
+            dto.setMotivoUltimaModificacion(resumen.getUltimoMotivo());
+            dto.setTotalModificaciones(resumen.getTotalModificaciones());
+        } else {
+            // Si no hay auditoría, significa que es un turno sin modificaciones
             dto.setTotalModificaciones(0);
         }
 
@@ -1609,7 +1809,7 @@ public class TurnoService {
      */
     public Page<TurnoDTO> findByTextSearch(String searchText, org.springframework.data.domain.Pageable pageable) {
         if (searchText == null || searchText.trim().isEmpty()) {
-            return repository.findAll(pageable).map(this::toDTOWithAuditInfo);
+            return toDTOsWithAuditInfo(repository.findAll(pageable));
         }
 
         // Usar el mismo texto para buscar en todos los campos
@@ -1622,7 +1822,7 @@ public class TurnoService {
                 searchPattern, // nombreCentro
                 pageable);
 
-        return turnosPage.map(this::toDTOWithAuditInfo);
+        return toDTOsWithAuditInfo(turnosPage);
     }
 
     @Transactional
@@ -2479,10 +2679,39 @@ public class TurnoService {
         }
     }
 
+    /**
+     * Convierte una página de Turno a HistorialTurnoDTO con información completa de auditoría
+     */
+    private Page<HistorialTurnoDTO> toHistorialDTOs(Page<Turno> turnosPage) {
+        return new PageImpl<>(toHistorialDTOs(turnosPage.getContent()), turnosPage.getPageable(),
+                turnosPage.getTotalElements());
+    }
+
+    /**
+     * Convierte Turnos a HistorialTurnoDTO con información completa de auditoría.
+     * El historial de auditoría de todos los turnos se obtiene en lote (no una consulta por turno).
+     */
+    private List<HistorialTurnoDTO> toHistorialDTOs(List<Turno> turnos) {
+        Map<Integer, List<AuditLog>> historiales;
+        try {
+            historiales = auditLogService.getHistorialAuditoriaTurnos(turnos);
+        } catch (Exception e) {
+            System.err.println("Error al obtener auditoría para historial de " + turnos.size() + " turnos: "
+                    + e.getMessage());
+            historiales = Collections.emptyMap();
+        }
+
+        Map<Integer, List<AuditLog>> historialesFinal = historiales;
+        return turnos.stream()
+                .map(turno -> toHistorialDTO(turno,
+                        historialesFinal.getOrDefault(turno.getId(), Collections.emptyList())))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Convierte Turno a HistorialTurnoDTO con información completa de auditoría
      */
-    private HistorialTurnoDTO toHistorialDTO(Turno turno) {
+    private HistorialTurnoDTO toHistorialDTO(Turno turno, List<AuditLog> auditHistory) {
         HistorialTurnoDTO dto = new HistorialTurnoDTO();
 
         // Información básica del turno
@@ -2531,7 +2760,6 @@ public class TurnoService {
 
         // Agregar información de auditoría
         try {
-            List<AuditLog> auditHistory = auditLogService.getTurnoAuditHistory(turno.getId());
             if (!auditHistory.isEmpty()) {
                 // Obtener la última modificación
                 AuditLog lastAudit = auditHistory.get(0);
@@ -2593,9 +2821,7 @@ public class TurnoService {
      */
     public List<HistorialTurnoDTO> getHistorialTurnosByPaciente(Integer pacienteId) {
         List<Turno> turnos = repository.findByPaciente_Id(pacienteId);
-        return turnos.stream()
-                .map(this::toHistorialDTO)
-                .collect(Collectors.toList());
+        return toHistorialDTOs(turnos);
     }
 
     /**
@@ -2604,7 +2830,7 @@ public class TurnoService {
     public Page<HistorialTurnoDTO> getHistorialTurnosByPacientePaged(Integer pacienteId, int page, int size) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "fecha"));
         Page<Turno> turnosPage = repository.findByPaciente_Id(pacienteId, pageRequest);
-        return turnosPage.map(this::toHistorialDTO);
+        return toHistorialDTOs(turnosPage);
     }
 
     /**
@@ -2616,7 +2842,7 @@ public class TurnoService {
         if (turnoOpt.isEmpty()) {
             throw new IllegalArgumentException("Turno no encontrado con ID: " + turnoId);
         }
-        return toHistorialDTO(turnoOpt.get());
+        return toHistorialDTOs(List.of(turnoOpt.get())).get(0);
     }
 
     /**
@@ -2748,7 +2974,7 @@ public class TurnoService {
         System.out.println("✅ DEBUG: Query ejecutada - " + turnosPage.getTotalElements() +
                 " turnos encontrados (página " + (page + 1) + " de " + turnosPage.getTotalPages() + ")");
 
-        return turnosPage.map(this::toHistorialDTO);
+        return toHistorialDTOs(turnosPage);
     }
 
     /**
@@ -2879,9 +3105,7 @@ public class TurnoService {
 
         System.out.println("✅ DEBUG: " + turnosProximos.size() + " turnos próximos encontrados");
 
-        return turnosProximos.stream()
-                .map(this::toHistorialDTO)
-                .collect(Collectors.toList());
+        return toHistorialDTOs(turnosProximos);
     }
 
     /**
@@ -2982,9 +3206,7 @@ public class TurnoService {
 
         System.out.println("✅ DEBUG: Exportando " + turnos.size() + " turnos");
 
-        return turnos.stream()
-                .map(this::toHistorialDTO)
-                .collect(Collectors.toList());
+        return toHistorialDTOs(turnos);
     }
 
 }
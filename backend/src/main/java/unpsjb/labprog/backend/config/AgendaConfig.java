@@ -0,0 +1,55 @@
+package unpsjb.labprog.backend.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuración del executor dedicado a la generación de slots de la agenda.
+ *
+ * Cada esquema de turno se genera de forma independiente, por lo que la agenda puede
+ * repartirlos entre varios hilos. El pool es acotado (agenda.generacion.paralelismo hilos
+ * y una cola limitada); si la cola se llena, el hilo de la petición genera el esquema él mismo.
+ *
+ * agenda.generacion.paralelismo:
+ * - 0 (por defecto): un hilo por núcleo disponible
+ * - 1: generación secuencial en el hilo de la petición
+ * - N: hasta N esquemas en paralelo (tener en cuenta el tamaño del pool de conexiones)
+ */
+@Configuration
+public class AgendaConfig {
+
+    private static final int CAPACIDAD_COLA = 1000;
+
+    @Bean(name = "agendaGeneracionExecutor", destroyMethod = "shutdown")
+    public ExecutorService agendaGeneracionExecutor(
+            @Value("${agenda.generacion.paralelismo:0}") int paralelismo) {
+        int hilos = resolverParalelismo(paralelismo);
+
+        AtomicInteger contador = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread hilo = new Thread(runnable, "agenda-gen-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(hilos, hilos, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(CAPACIDAD_COLA), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Traduce el valor configurado a la cantidad efectiva de hilos (0 o negativo = núcleos disponibles)
+     */
+    public static int resolverParalelismo(int paralelismo) {
+        return paralelismo > 0 ? paralelismo : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,26 @@
+package unpsjb.labprog.backend.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import unpsjb.labprog.backend.business.service.AuditBusquedaService;
+
+/**
+ * Prepara el índice de texto completo de audit_log (columna, trigger e índice GIN), que
+ * Hibernate no puede generar. Los registros existentes los indexa AuditBusquedaService en
+ * segundo plano.
+ */
+@Component
+@Order(5) // Se ejecuta después del TurnoMetricasInitializer
+public class AuditBusquedaInitializer implements CommandLineRunner {
+
+    @Autowired
+    private AuditBusquedaService auditBusquedaService;
+
+    @Override
+    public void run(String... args) throws Exception {
+        auditBusquedaService.prepararIndice();
+    }
+}
@@ -1,5 +1,7 @@
 package unpsjb.labprog.backend.config;
 
+import jakarta.servlet.DispatcherType;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -203,6 +205,9 @@ public class SecurityConfig {
 
                         // ========== ENDPOINTS PÚBLICOS ==========
                         auth
+                                // Despachos ASYNC de respuestas en streaming (exportaciones): la petición
+                                // original ya fue autorizada y el JWT no se vuelve a procesar en el despacho
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                                 // Endpoint raíz y health checks
                                 .requestMatchers("/", "/health", "/actuator/**").permitAll()
                                 // Autenticación y recuperación de contraseñas
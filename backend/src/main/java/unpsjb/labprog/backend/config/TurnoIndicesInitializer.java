@@ -0,0 +1,120 @@
+package unpsjb.labprog.backend.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import unpsjb.labprog.backend.model.Turno;
+
+/**
+ * Crea y verifica los índices de la tabla turno.
+ *
+ * ux_turno_slot_activo: índice único parcial sobre (staff_medico_id, fecha, hora_inicio)
+ * para turnos no cancelados que no son sobreturnos. Hibernate (ddl-auto=update) no puede
+ * generarlo, por eso se crea aquí. Es lo que garantiza que dos pacientes no puedan reservar
+ * el mismo slot en simultáneo; TurnoService.save escribe directamente y traduce la violación
+ * del índice en un OverlapException.
+ *
+ * Los índices compuestos declarados en @Table de Turno los crea Hibernate. Con
+ * turnos.indices.verificar=true (por defecto) el arranque falla si falta alguno de ellos
+ * o el índice único, para no descubrir recién en producción un sequential scan.
+ */
+@Component
+@Order(3)
+public class TurnoIndicesInitializer implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnoIndicesInitializer.class);
+
+    public static final String INDICE_SLOT_ACTIVO = "ux_turno_slot_activo";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${turnos.indices.verificar:true}")
+    private boolean verificarIndices;
+
+    @Override
+    public void run(String... args) throws Exception {
+        crearIndiceSlotActivo();
+
+        if (verificarIndices) {
+            verificarIndicesEsperados();
+        }
+    }
+
+    private void crearIndiceSlotActivo() {
+        if (existeIndice(INDICE_SLOT_ACTIVO)) {
+            return;
+        }
+
+        try {
+            // Los solapamientos previos al índice (sobreturnos confirmados antes de existir la marca)
+            // se marcan como sobreturno, conservando como titular del slot al turno más antiguo
+            int marcados = jdbcTemplate.update("""
+                    UPDATE turno t SET sobreturno = true
+                    WHERE t.estado <> 'CANCELADO'
+                      AND t.sobreturno = false
+                      AND EXISTS (
+                          SELECT 1 FROM turno o
+                          WHERE o.staff_medico_id = t.staff_medico_id
+                            AND o.fecha = t.fecha
+                            AND o.hora_inicio = t.hora_inicio
+                            AND o.estado <> 'CANCELADO'
+                            AND o.sobreturno = false
+                            AND o.id < t.id)
+                    """);
+            if (marcados > 0) {
+                logger.info("📝 {} turno(s) existentes marcados como sobreturno antes de crear {}",
+                        marcados, INDICE_SLOT_ACTIVO);
+            }
+
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + INDICE_SLOT_ACTIVO
+                    + " ON turno (staff_medico_id, fecha, hora_inicio)"
+                    + " WHERE estado <> 'CANCELADO' AND sobreturno = false");
+            logger.info("✅ Índice {} creado", INDICE_SLOT_ACTIVO);
+        } catch (Exception e) {
+            logger.error("❌ No se pudo crear el índice {}: {}", INDICE_SLOT_ACTIVO, e.getMessage());
+        }
+    }
+
+    /**
+     * Verifica que existan todos los índices esperados de la tabla turno.
+     *
+     * @throws IllegalStateException si falta alguno (detiene el arranque)
+     */
+    private void verificarIndicesEsperados() {
+        List<String> esperados = new ArrayList<>();
+        for (Index indice : Turno.class.getAnnotation(Table.class).indexes()) {
+            esperados.add(indice.name());
+        }
+        esperados.add(INDICE_SLOT_ACTIVO);
+
+        List<String> faltantes = esperados.stream()
+                .filter(nombre -> !existeIndice(nombre))
+                .toList();
+
+        if (!faltantes.isEmpty()) {
+            throw new IllegalStateException("Faltan índices en la tabla turno: " + String.join(", ", faltantes)
+                    + ". Crear los índices o desactivar la verificación con turnos.indices.verificar=false");
+        }
+        logger.info("✅ Índices de la tabla turno verificados ({})", esperados.size());
+    }
+
+    private boolean existeIndice(String nombre) {
+        Integer cantidad = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE tablename = 'turno' AND indexname = ?",
+                Integer.class, nombre);
+        return cantidad != null && cantidad > 0;
+    }
+}
@@ -0,0 +1,26 @@
+package unpsjb.labprog.backend.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import unpsjb.labprog.backend.business.service.TurnoMetricasService;
+
+/**
+ * Carga inicial del agregado diario de turnos del dashboard.
+ * Si la tabla turno_metrica_diaria está vacía (primer arranque con la tabla nueva) la
+ * reconstruye desde turno; a partir de ahí la mantienen el listener y la reconciliación nocturna.
+ */
+@Component
+@Order(4) // Se ejecuta después del TurnoIndicesInitializer
+public class TurnoMetricasInitializer implements CommandLineRunner {
+
+    @Autowired
+    private TurnoMetricasService turnoMetricasService;
+
+    @Override
+    public void run(String... args) throws Exception {
+        turnoMetricasService.reconstruirSiVacio();
+    }
+}
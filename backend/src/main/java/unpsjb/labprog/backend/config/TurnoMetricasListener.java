@@ -0,0 +1,181 @@
+package unpsjb.labprog.backend.config;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import unpsjb.labprog.backend.model.Consultorio;
+import unpsjb.labprog.backend.model.EstadoTurno;
+import unpsjb.labprog.backend.model.StaffMedico;
+import unpsjb.labprog.backend.model.Turno;
+
+/**
+ * Mantiene al día la tabla turno_metrica_diaria a partir de los eventos de Hibernate sobre Turno.
+ *
+ * Se engancha a las altas, actualizaciones y bajas (no importa qué servicio las haga) y aplica
+ * el delta con un UPSERT sobre la misma conexión y transacción del cambio: si el turno no se
+ * guarda, tampoco cambia el agregado. Las actualizaciones masivas por JPQL/SQL no disparan estos
+ * eventos; esas diferencias las corrige la reconciliación nocturna de TurnoMetricasService.
+ */
+@Component
+public class TurnoMetricasListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnoMetricasListener.class);
+
+    public static final String SQL_UPSERT = """
+            INSERT INTO turno_metrica_diaria
+                (fecha, centro_atencion_id, consultorio_id, staff_medico_id, especialidad_id, estado,
+                 cantidad, minutos_ocupados)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (fecha, centro_atencion_id, consultorio_id, staff_medico_id, especialidad_id, estado)
+            DO UPDATE SET cantidad = turno_metrica_diaria.cantidad + EXCLUDED.cantidad,
+                          minutos_ocupados = turno_metrica_diaria.minutos_ocupados + EXCLUDED.minutos_ocupados
+            """;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void registrar() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        logger.info("✅ Métricas diarias de turnos: listener registrado");
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Turno) {
+            aplicar(event.getSession(), null, clave(event.getPersister(), event.getState()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Turno)) {
+            return;
+        }
+        if (event.getOldState() == null) {
+            // Actualización sin estado previo (entidad reasociada): la corrige la reconciliación
+            logger.warn("⚠️ Turno {} actualizado sin estado previo, métricas diarias pendientes de reconciliar",
+                    event.getId());
+            return;
+        }
+        aplicar(event.getSession(), clave(event.getPersister(), event.getOldState()),
+                clave(event.getPersister(), event.getState()));
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Turno) {
+            aplicar(event.getSession(), clave(event.getPersister(), event.getDeletedState()), null);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * Resta la fila anterior y suma la nueva (si la clave no cambió no hace nada)
+     */
+    private void aplicar(EventSource session, Clave anterior, Clave nueva) {
+        if (anterior != null && anterior.equals(nueva)) {
+            return;
+        }
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SQL_UPSERT)) {
+                if (anterior != null) {
+                    anterior.cargar(ps, -1);
+                    ps.addBatch();
+                }
+                if (nueva != null) {
+                    nueva.cargar(ps, 1);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    private Clave clave(EntityPersister persister, Object[] estado) {
+        String[] propiedades = persister.getPropertyNames();
+        LocalDate fecha = null;
+        LocalTime horaInicio = null;
+        LocalTime horaFin = null;
+        EstadoTurno estadoTurno = null;
+        Consultorio consultorio = null;
+        StaffMedico staffMedico = null;
+
+        for (int i = 0; i < propiedades.length; i++) {
+            switch (propiedades[i]) {
+                case "fecha" -> fecha = (LocalDate) estado[i];
+                case "horaInicio" -> horaInicio = (LocalTime) estado[i];
+                case "horaFin" -> horaFin = (LocalTime) estado[i];
+                case "estado" -> estadoTurno = (EstadoTurno) estado[i];
+                case "consultorio" -> consultorio = (Consultorio) estado[i];
+                case "staffMedico" -> staffMedico = (StaffMedico) estado[i];
+                default -> {
+                }
+            }
+        }
+
+        if (fecha == null || estadoTurno == null) {
+            return null;
+        }
+
+        int centroId = consultorio != null && consultorio.getCentroAtencion() != null
+                ? consultorio.getCentroAtencion().getId() : 0;
+        int especialidadId = staffMedico != null && staffMedico.getEspecialidad() != null
+                ? staffMedico.getEspecialidad().getId() : 0;
+        long minutos = horaInicio != null && horaFin != null ? ChronoUnit.MINUTES.between(horaInicio, horaFin) : 0;
+
+        return new Clave(fecha, centroId, consultorio != null ? consultorio.getId() : 0,
+                staffMedico != null ? staffMedico.getId() : 0, especialidadId, estadoTurno, minutos);
+    }
+
+    /**
+     * Fila del agregado que corresponde a un estado de turno
+     */
+    private record Clave(LocalDate fecha, int centroId, int consultorioId, int staffMedicoId, int especialidadId,
+            EstadoTurno estado, long minutos) {
+
+        void cargar(PreparedStatement ps, int signo) throws SQLException {
+            ps.setDate(1, Date.valueOf(fecha));
+            ps.setInt(2, centroId);
+            ps.setInt(3, consultorioId);
+            ps.setInt(4, staffMedicoId);
+            ps.setInt(5, especialidadId);
+            ps.setString(6, estado.name());
+            ps.setLong(7, signo);
+            ps.setLong(8, signo * minutos);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package unpsjb.labprog.backend.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Resumen de auditoría de un turno: última modificación y cantidad total de registros.
+ * Se obtiene en lote para no consultar el historial completo turno por turno.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditResumenDTO {
+    private Integer turnoId;
+    private LocalDateTime ultimaModificacion;
+    private String ultimoUsuario;
+    private String ultimoMotivo;
+    private Integer totalModificaciones;
+}
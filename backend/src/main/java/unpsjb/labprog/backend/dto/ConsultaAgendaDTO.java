@@ -0,0 +1,33 @@
+package unpsjb.labprog.backend.dto;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import unpsjb.labprog.backend.model.PreferenciaHoraria;
+
+/**
+ * Consulta a la agenda: filtros de esquemas, ventana de generación y filtros sobre los slots.
+ * La arma AgendaService.nuevaConsulta (que resuelve lo que depende del usuario) y la usan
+ * tanto la agenda pública como la vista completa de eventos.
+ */
+@Getter
+@Setter
+public class ConsultaAgendaDTO {
+
+    // Filtros de esquemas (se aplican en la base)
+    private Integer centroId;
+    private String especialidad;              // Nombre exacto, sin distinguir mayúsculas
+    private Integer staffMedicoId;
+    private Integer medicoIdExcluido;         // Médico autenticado: no ve sus propios turnos
+
+    // Ventana de generación
+    private int semanas = 4;
+
+    // Filtros sobre los slots generados
+    private LocalDate fechaDesde;             // Inclusive (opcional)
+    private LocalDate fechaHasta;             // Inclusive (opcional)
+    private Set<PreferenciaHoraria> preferencias; // Franjas del paciente (vacío = sin filtro)
+}
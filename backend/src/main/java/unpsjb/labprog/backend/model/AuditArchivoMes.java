@@ -0,0 +1,65 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Archivo comprimido (JSONL con gzip) con registros de auditoría que salieron de audit_log.
+ *
+ * Cada fila describe un archivo generado por AuditArchivoService al cerrar un mes: dónde está,
+ * cuántos registros tiene y el rango real de fechas y secuencias que cubre, que es lo que se usa
+ * para decidir qué archivos leer al consultar un rango antiguo.
+ */
+@Entity
+@Table(name = "audit_archivo_mes", indexes = {
+        @Index(name = "idx_audit_archivo_rango", columnList = "desde, hasta")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class AuditArchivoMes {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, length = 7)
+    private String mes; // yyyy-MM del mes cerrado que originó el archivo
+
+    @Column(nullable = false, length = 500)
+    private String archivo; // Ruta del .jsonl.gz
+
+    @Column(nullable = false)
+    private long registros;
+
+    @Column(nullable = false)
+    private LocalDateTime desde; // performedAt mínimo del archivo
+
+    @Column(nullable = false)
+    private LocalDateTime hasta; // performedAt máximo del archivo
+
+    @Column(name = "secuencia_desde")
+    private Long secuenciaDesde; // Rango de la cadena de integridad incluido (null si no estaba sellado)
+
+    @Column(name = "secuencia_hasta")
+    private Long secuenciaHasta;
+
+    @Column(length = 64)
+    private String sha256; // Hash del archivo comprimido
+
+    @Column(name = "tamano_bytes", nullable = false)
+    private long tamanoBytes;
+
+    @Column(name = "creado_en", nullable = false)
+    private LocalDateTime creadoEn;
+}
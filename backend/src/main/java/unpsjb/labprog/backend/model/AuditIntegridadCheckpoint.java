@@ -0,0 +1,52 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Punto de avance de los procesos de integridad de la auditoría.
+ *
+ * Hay una fila por proceso: SELLADO guarda la última secuencia encadenada y su hash, y
+ * VERIFICACION la última secuencia verificada junto con el resultado de la pasada en curso.
+ * Los procesos la bloquean (FOR UPDATE SKIP LOCKED) mientras trabajan, por lo que con varias
+ * instancias de la aplicación solo una avanza cada cadena a la vez.
+ */
+@Entity
+@Table(name = "audit_integridad_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+public class AuditIntegridadCheckpoint {
+
+    public static final String SELLADO = "SELLADO";
+    public static final String VERIFICACION = "VERIFICACION";
+
+    @Id
+    @Column(length = 30)
+    private String nombre;
+
+    @Column(nullable = false)
+    private long secuencia; // Última secuencia sellada / verificada
+
+    @Column(nullable = false, length = 64)
+    private String hash; // Hash del registro en esa secuencia
+
+    @Column(length = 20)
+    private String estado; // VERIFICANDO, OK o ALTERADO (solo verificación)
+
+    @Column(length = 500)
+    private String detalle; // Primera inconsistencia detectada en la pasada
+
+    @Column(name = "pasadas_completas", nullable = false)
+    private long pasadasCompletas;
+
+    @Column(name = "actualizado_en")
+    private LocalDateTime actualizadoEn;
+}
@@ -29,7 +29,8 @@ import lombok.Setter;
         @Index(name = "idx_audit_entity_type_id", columnList = "entityType, entityId"),
         @Index(name = "idx_audit_performed_at", columnList = "performedAt"),
         @Index(name = "idx_audit_performed_by", columnList = "performedBy"),
-        @Index(name = "idx_audit_action", columnList = "action")
+        @Index(name = "idx_audit_action", columnList = "action"),
+        @Index(name = "ux_audit_secuencia_integridad", columnList = "secuencia_integridad", unique = true)
 })
 @Getter
 @Setter
@@ -74,6 +75,16 @@ public class AuditLog {
     @Column(length = 500)
     private String reason; // Motivo del cambio (opcional)
 
+    // Encadenamiento de integridad: solo los escribe AuditIntegridadService al sellar el registro
+    @Column(name = "secuencia_integridad", insertable = false, updatable = false)
+    private Long secuenciaIntegridad; // Posición del registro en la cadena (null = sin sellar)
+
+    @Column(name = "hash_anterior", length = 64, insertable = false, updatable = false)
+    private String hashAnterior; // Hash del registro anterior de la cadena
+
+    @Column(name = "hash_registro", length = 64, insertable = false, updatable = false)
+    private String hashRegistro; // SHA-256 de hashAnterior + secuencia + contenido del registro
+
     @PrePersist
     protected void onCreate() {
         if (performedAt == null) {
@@ -0,0 +1,73 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Correo saliente pendiente o ya procesado (outbox de emails).
+ *
+ * EmailService deja aquí cada correo y los hilos de EmailSalienteService lo envían: PENDIENTE
+ * hasta que un hilo lo toma (ENVIANDO), ENVIADO si el servidor SMTP lo aceptó, o de nuevo
+ * PENDIENTE con proximoIntento más adelante si falló. Agotados los intentos queda FALLIDO.
+ */
+@Entity
+@Table(name = "email_saliente", indexes = {
+        @Index(name = "idx_email_saliente_estado_proximo", columnList = "estado, proximo_intento")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class EmailSaliente {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String ENVIANDO = "ENVIANDO";
+    public static final String ENVIADO = "ENVIADO";
+    public static final String FALLIDO = "FALLIDO";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 320)
+    private String destinatario;
+
+    @Column(nullable = false, length = 500)
+    private String asunto;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String cuerpo;
+
+    @Column(nullable = false)
+    private boolean html;
+
+    @Column(nullable = false, length = 20)
+    private String estado = PENDIENTE;
+
+    @Column(nullable = false)
+    private int intentos = 0;
+
+    @Column(name = "creado_en", nullable = false)
+    private LocalDateTime creadoEn;
+
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "tomado_en")
+    private LocalDateTime tomadoEn;
+
+    @Column(name = "enviado_en")
+    private LocalDateTime enviadoEn;
+
+    @Column(name = "ultimo_error", length = 1000)
+    private String ultimoError;
+}
@@ -0,0 +1,49 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Punto de avance de una tarea programada que procesa por lotes.
+ *
+ * La fila se crea al empezar la pasada, se actualiza en la misma transacción de cada lote y se
+ * borra cuando la pasada termina. Si la pasada se interrumpe (error, reinicio o caída de la
+ * instancia), la siguiente ejecución encuentra la fila y retoma con la misma ventana
+ * (desde/hasta) a partir del último id procesado.
+ */
+@Entity
+@Table(name = "tarea_programada_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+public class TareaProgramadaCheckpoint {
+
+    @Id
+    @Column(length = 100)
+    private String nombre;
+
+    @Column(nullable = false)
+    private LocalDateTime desde;
+
+    @Column(nullable = false)
+    private LocalDateTime hasta;
+
+    @Column(name = "ultimo_id", nullable = false)
+    private Long ultimoId = 0L;
+
+    @Column(nullable = false)
+    private Long procesados = 0L;
+
+    @Column(name = "iniciado_en", nullable = false)
+    private LocalDateTime iniciadoEn;
+
+    @Column(name = "actualizado_en", nullable = false)
+    private LocalDateTime actualizadoEn;
+}
@@ -0,0 +1,55 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Historial de ejecuciones de las tareas programadas coordinadas por TareaProgramadaService
+ */
+@Entity
+@Table(name = "tarea_programada_ejecucion", indexes = {
+        @Index(name = "idx_tarea_ejecucion_nombre_inicio", columnList = "nombre, inicio")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class TareaProgramadaEjecucion {
+
+    public static final String EN_CURSO = "EN_CURSO";
+    public static final String COMPLETADA = "COMPLETADA";
+    public static final String FALLIDA = "FALLIDA";
+    public static final String INTERRUMPIDA = "INTERRUMPIDA"; // La instancia se detuvo sin terminarla
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String nombre;
+
+    @Column(nullable = false, length = 200)
+    private String instancia;
+
+    @Column(nullable = false)
+    private LocalDateTime inicio;
+
+    private LocalDateTime fin;
+
+    @Column(name = "duracion_ms")
+    private Long duracionMs;
+
+    @Column(nullable = false, length = 20)
+    private String estado;
+
+    @Column(length = 1000)
+    private String detalle; // Mensaje de error si falló
+}
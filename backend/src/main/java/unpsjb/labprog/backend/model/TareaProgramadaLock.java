@@ -0,0 +1,44 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Lease de una tarea programada entre las instancias de la aplicación.
+ *
+ * Hay una fila por tarea. La instancia que logra tomarla (la fila no existe o su lease venció)
+ * ejecuta la tarea y renueva expiraEn con un latido mientras trabaja; las demás omiten esa
+ * ejecución. Al terminar, la fila queda tomada al menos el tiempo mínimo de la tarea para
+ * que las instancias cuyo reloj dispara un poco después no la repitan.
+ * Las fechas son las de la base (LOCALTIMESTAMP), no las de cada instancia.
+ */
+@Entity
+@Table(name = "tarea_programada_lock")
+@Getter
+@Setter
+@NoArgsConstructor
+public class TareaProgramadaLock {
+
+    @Id
+    @Column(length = 100)
+    private String nombre;
+
+    @Column(nullable = false, length = 200)
+    private String instancia; // Última instancia que tomó la tarea
+
+    @Column(name = "adquirido_en", nullable = false)
+    private LocalDateTime adquiridoEn;
+
+    @Column(name = "latido_en", nullable = false)
+    private LocalDateTime latidoEn;
+
+    @Column(name = "expira_en", nullable = false)
+    private LocalDateTime expiraEn;
+}
@@ -11,13 +11,22 @@ import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_turno_staff_medico_fecha", columnList = "staff_medico_id, fecha"),
+        @Index(name = "idx_turno_fecha_estado", columnList = "fecha, estado"),
+        @Index(name = "idx_turno_paciente_fecha", columnList = "paciente_id, fecha"),
+        @Index(name = "idx_turno_centro_fecha", columnList = "centro_atencion_id, fecha"),
+        @Index(name = "idx_turno_consultorio_fecha", columnList = "consultorio_id, fecha")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -84,6 +93,14 @@ public class Turno {
     @Column(name = "asistio")
     private Boolean asistio; // null = no informado, true = asistió, false = no asistió
 
+    /**
+     * Indica que el turno se creó como sobreturno (solapamiento confirmado por el usuario).
+     * Los sobreturnos quedan fuera del índice único de slots ux_turno_slot_activo,
+     * que impide reservar dos veces el mismo (staff médico, fecha, hora de inicio).
+     */
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean sobreturno = false;
+
     public void confirmarTurno() {
         if (this.estado != EstadoTurno.PROGRAMADO) {
             throw new IllegalStateException("Solo se pueden confirmar turnos en estado PROGRAMADO.");
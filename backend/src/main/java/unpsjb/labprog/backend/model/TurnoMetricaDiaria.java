@@ -0,0 +1,64 @@
+package unpsjb.labprog.backend.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Agregado diario de turnos para el dashboard.
+ *
+ * Cada fila acumula la cantidad de turnos y los minutos reservados de un día para una
+ * combinación (centro, consultorio, staff médico, especialidad, estado). Las dimensiones son
+ * IDs planos (sin FK) y usan 0 cuando el turno no tiene el dato, para que la clave única
+ * sirva en el UPSERT. La mantiene TurnoMetricasListener en cada alta, cambio o baja de un turno
+ * y TurnoMetricasService la reconstruye por completo cada noche.
+ */
+@Entity
+@Table(name = "turno_metrica_diaria", uniqueConstraints = @UniqueConstraint(
+        name = "ux_turno_metrica_diaria_clave",
+        columnNames = { "fecha", "centro_atencion_id", "consultorio_id", "staff_medico_id", "especialidad_id", "estado" }))
+@Getter
+@Setter
+@NoArgsConstructor
+public class TurnoMetricaDiaria {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "centro_atencion_id", nullable = false)
+    private Integer centroAtencionId; // Centro del consultorio del turno
+
+    @Column(name = "consultorio_id", nullable = false)
+    private Integer consultorioId;
+
+    @Column(name = "staff_medico_id", nullable = false)
+    private Integer staffMedicoId;
+
+    @Column(name = "especialidad_id", nullable = false)
+    private Integer especialidadId; // Especialidad del staff médico
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EstadoTurno estado;
+
+    @Column(nullable = false)
+    private long cantidad;
+
+    @Column(name = "minutos_ocupados", nullable = false)
+    private long minutosOcupados;
+}
@@ -1,17 +1,19 @@
 package unpsjb.labprog.backend.presenter;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -26,18 +28,13 @@ import org.springframework.web.bind.annotation.RestController;
 
 import unpsjb.labprog.backend.Response;
 import unpsjb.labprog.backend.business.repository.EsquemaTurnoRepository;
-import unpsjb.labprog.backend.business.repository.MedicoRepository;
 import unpsjb.labprog.backend.business.service.AgendaService;
 import unpsjb.labprog.backend.business.service.ConfiguracionExcepcionalService;
-import unpsjb.labprog.backend.business.service.PacienteService;
 import unpsjb.labprog.backend.dto.ConfiguracionExcepcionalDTO;
+import unpsjb.labprog.backend.dto.ConsultaAgendaDTO;
 import unpsjb.labprog.backend.dto.TurnoDTO;
 import unpsjb.labprog.backend.dto.TurnoPublicoDTO;
-import unpsjb.labprog.backend.model.DiaDeLaSemana;
 import unpsjb.labprog.backend.model.EsquemaTurno;
-import unpsjb.labprog.backend.model.Medico;
-import unpsjb.labprog.backend.model.Paciente;
-import unpsjb.labprog.backend.model.PreferenciaHoraria;
 import unpsjb.labprog.backend.model.Role;
 import unpsjb.labprog.backend.model.User;
 
@@ -45,6 +42,11 @@ import unpsjb.labprog.backend.model.User;
 @RequestMapping("/api/agenda")
 public class AgendaPresenter {
 
+    private static final Logger logger = LoggerFactory.getLogger(AgendaPresenter.class);
+
+    // Tope del tamaño de página de /eventos/todos (el valor por defecto)
+    private static final int MAX_TAMANO_PAGINA = 200;
+
     @Autowired
     private AgendaService agendaService;
 
@@ -54,12 +56,6 @@ public class AgendaPresenter {
     @Autowired
     private EsquemaTurnoRepository esquemaTurnoRepository;
 
-    @Autowired
-    private MedicoRepository medicoRepository;
-
-    @Autowired
-    private PacienteService pacienteService;
-
         /**
      * Endpoint público: Obtener turnos disponibles SIN datos del paciente
      * Accesible por usuarios anónimos y autenticados
@@ -91,158 +87,67 @@ public class AgendaPresenter {
 
     
 
+    /**
+     * Todos los eventos de la agenda (con datos del paciente) para las semanas pedidas.
+     * Usa el mismo motor que la agenda pública: esquemas filtrados en la base y un único
+     * calendario de excepciones por petición.
+     *
+     * fechaDesde/fechaHasta acotan los eventos devueltos; con page se responde una página
+     * (Response.ok con content, totalElements, ...) en lugar de la lista completa.
+     */
     @GetMapping("/eventos/todos")
-    public List<TurnoDTO> obtenerTodosLosEventos(
+    public ResponseEntity<?> obtenerTodosLosEventos(
             @RequestParam int semanas,
             @RequestParam(required = false) String especialidad,
             @RequestParam(required = false) Integer staffMedicoId,
             @RequestParam(required = false) Integer centroId,
             @RequestParam(name = "filtrarPorPreferencia", defaultValue = "false") boolean filtrarPorPreferencia,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaDesde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaHasta,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "200") int size,
             @AuthenticationPrincipal User currentUser) {
         
-        // 🔒 FILTRO DE AUTO-EXCLUSIÓN: Si es un MÉDICO, obtener su medicoId
-        Integer medicoIdToExclude = null;
-        if (currentUser != null && currentUser.getRole() == Role.MEDICO) {
-            Optional<Medico> medicoOpt = medicoRepository.findByEmail(currentUser.getEmail());
-            if (medicoOpt.isPresent()) {
-                medicoIdToExclude = medicoOpt.get().getId();
-                System.out.println("👨‍⚕️ [AgendaPresenter] Médico autenticado detectado - Excluyendo medicoId: " + medicoIdToExclude);
-            }
+        // FILTRAR POR CENTRO DE ATENCIÓN (multi-tenancy)
+        // Si el usuario es ADMIN/OPERADOR, forzar filtro por su centro
+        Integer centroIdFiltro = centroId;
+        if (centroIdFiltro == null && currentUser != null && 
+            (currentUser.getRole() == Role.ADMINISTRADOR || currentUser.getRole() == Role.OPERADOR) &&
+            currentUser.getCentroAtencion() != null) {
+            centroIdFiltro = currentUser.getCentroAtencion().getId();
         }
         
-        List<EsquemaTurno> esquemas = esquemaTurnoRepository.findAll();
-        List<TurnoDTO> todosLosEventos = new ArrayList<>();
-
-        for (EsquemaTurno esquema : esquemas) {
-            // Skip schemes with null consultorio to prevent errors
-            if (esquema.getConsultorio() == null) {
-                System.err.println("⚠️ Skipping EsquemaTurno ID " + esquema.getId() + 
-                                 " - consultorio is null. Please check database integrity.");
-                continue;
-            }
-            
-            // 🚫 FILTRO DE AUTO-EXCLUSIÓN: Excluir esquemas del médico autenticado
-            if (medicoIdToExclude != null && 
-                esquema.getStaffMedico() != null && 
-                esquema.getStaffMedico().getMedico() != null &&
-                esquema.getStaffMedico().getMedico().getId().equals(medicoIdToExclude)) {
-                System.out.println("🚫 [AgendaPresenter] Excluyendo esquema ID " + esquema.getId() + 
-                                 " del médico autenticado (medicoId: " + medicoIdToExclude + ")");
-                continue; // Skip esquemas del médico autenticado
-            }
-            
-            // FILTRAR POR CENTRO DE ATENCIÓN (multi-tenancy)
-            // Si el usuario es ADMIN/OPERADOR, forzar filtro por su centro
-            Integer centroIdFiltro = centroId;
-            if (centroIdFiltro == null && currentUser != null && 
-                (currentUser.getRole() == Role.ADMINISTRADOR || currentUser.getRole() == Role.OPERADOR)) {
-                if (currentUser.getCentroAtencion() != null) {
-                    centroIdFiltro = currentUser.getCentroAtencion().getId();
-                }
-            }
-            
-            if (centroIdFiltro != null && esquema.getConsultorio().getCentroAtencion() != null) {
-                if (!esquema.getConsultorio().getCentroAtencion().getId().equals(centroIdFiltro)) {
-                    continue; // Skip este esquema si no coincide el centro
-                }
-            }
-            
-            // FILTRAR POR STAFF MÉDICO
-            if (staffMedicoId != null && esquema.getStaffMedico() != null) {
-                if (!esquema.getStaffMedico().getId().equals(staffMedicoId)) {
-                    continue; // Skip este esquema si no coincide el médico
-                }
-            }
-            
-            // FILTRAR POR ESPECIALIDAD
-            if (especialidad != null && !especialidad.isEmpty() && 
-                esquema.getStaffMedico() != null && 
-                esquema.getStaffMedico().getEspecialidad() != null) {
-                
-                String especialidadEsquema = esquema.getStaffMedico().getEspecialidad().getNombre();
-                if (!especialidadEsquema.equalsIgnoreCase(especialidad.trim())) {
-                    continue; // Skip este esquema si no coincide la especialidad
-                }
-            }
-            
-            try {
-                List<TurnoDTO> eventos = agendaService.generarEventosDesdeEsquemaTurno(esquema, semanas);
-                todosLosEventos.addAll(eventos);
-            } catch (Exception e) {
-                System.err.println("❌ Error processing EsquemaTurno ID " + esquema.getId() + ": " + e.getMessage());
-                // Continue processing other schemas instead of failing completely
-                continue;
-            }
-        }
-
-        System.out.println("✅ [AgendaPresenter] Total eventos generados después de filtros: " + todosLosEventos.size());
+        ConsultaAgendaDTO consulta = agendaService.nuevaConsulta(centroIdFiltro, especialidad, staffMedicoId,
+            semanas, filtrarPorPreferencia, currentUser);
+        consulta.setFechaDesde(fechaDesde);
+        consulta.setFechaHasta(fechaHasta);
         
-        // 🕐 FILTRO DE PREFERENCIAS HORARIAS: Para cualquier usuario autenticado que tenga perfil de paciente
-        if (filtrarPorPreferencia && currentUser != null) {
-            // Buscar paciente asociado al usuario, independientemente de su rol principal
-            Paciente paciente = pacienteService.findByUserWithPreferencias(currentUser);
-            
-            if (paciente != null && paciente.getPreferenciasHorarias() != null && !paciente.getPreferenciasHorarias().isEmpty()) {
-                Set<PreferenciaHoraria> preferencias = paciente.getPreferenciasHorarias();
-                System.out.println("🕐 [AgendaPresenter] Filtrando " + todosLosEventos.size() + " turnos por " + preferencias.size() + " preferencias horarias para usuario " + currentUser.getEmail() + " (Rol: " + currentUser.getRole() + ")");
-                
-                List<TurnoDTO> turnosFiltrados = todosLosEventos.stream()
-                    .filter(turno -> {
-                        // Convertir fecha del turno a día de la semana
-                        LocalDate fechaTurno = turno.getFecha();
-                        DayOfWeek dayOfWeek = fechaTurno.getDayOfWeek();
-                        DiaDeLaSemana diaDelTurno = convertirDayOfWeekADiaDeLaSemana(dayOfWeek);
-                        
-                        // Obtener hora de inicio del turno
-                        LocalTime horaInicioTurno = turno.getHoraInicio();
-                        
-                        // Verificar si el turno coincide con ALGUNA preferencia
-                        boolean coincide = preferencias.stream().anyMatch(pref -> {
-                            boolean mismoDia = pref.getDiaDeLaSemana().equals(diaDelTurno);
-                            boolean dentroRango = !horaInicioTurno.isBefore(pref.getHoraDesde()) && 
-                                                 horaInicioTurno.isBefore(pref.getHoraHasta());
-                            
-                            // Debug: Mostrar comparaciones
-                            if (mismoDia) {
-                                System.out.println("   🔍 Turno " + fechaTurno + " " + horaInicioTurno + " coincide día " + diaDelTurno + 
-                                                 " | Rango pref: " + pref.getHoraDesde() + "-" + pref.getHoraHasta() + 
-                                                 " | En rango: " + dentroRango);
-                            }
-                            
-                            return mismoDia && dentroRango;
-                        });
-                        
-                        return coincide;
-                    })
-                    .collect(Collectors.toList());
-                
-                System.out.println("✅ [AgendaPresenter] " + turnosFiltrados.size() + " turnos coinciden con preferencias");
-                return turnosFiltrados;
-            } else {
-                if (paciente == null) {
-                    System.out.println("⚠️ [AgendaPresenter] Usuario " + currentUser.getEmail() + " no tiene perfil de paciente asociado");
-                } else {
-                    System.out.println("⚠️ [AgendaPresenter] Paciente ID " + paciente.getId() + " sin preferencias configuradas, devolviendo todos los turnos");
-                }
-            }
+        List<TurnoDTO> eventos = agendaService.consultarEventos(consulta);
+        logger.debug("Total eventos generados después de filtros: {}", eventos.size());
+        
+        if (page == null) {
+            return ResponseEntity.ok(eventos);
         }
         
-        return todosLosEventos;
-    }
-    
-    /**
-     * Método auxiliar para convertir DayOfWeek a DiaDeLaSemana
-     */
-    private DiaDeLaSemana convertirDayOfWeekADiaDeLaSemana(DayOfWeek dayOfWeek) {
-        switch (dayOfWeek) {
-            case MONDAY: return DiaDeLaSemana.LUNES;
-            case TUESDAY: return DiaDeLaSemana.MARTES;
-            case WEDNESDAY: return DiaDeLaSemana.MIERCOLES;
-            case THURSDAY: return DiaDeLaSemana.JUEVES;
-            case FRIDAY: return DiaDeLaSemana.VIERNES;
-            case SATURDAY: return DiaDeLaSemana.SABADO;
-            case SUNDAY: return DiaDeLaSemana.DOMINGO;
-            default: throw new IllegalArgumentException("Día de la semana no válido: " + dayOfWeek);
+        try {
+            Pageable pageable = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_TAMANO_PAGINA));
+            int desde = (int) Math.min(pageable.getOffset(), eventos.size());
+            int hasta = Math.min(desde + pageable.getPageSize(), eventos.size());
+            Page<TurnoDTO> pagina = new PageImpl<>(eventos.subList(desde, hasta), pageable, eventos.size());
+            
+            var response = Map.of(
+                    "content", pagina.getContent(),
+                    "totalPages", pagina.getTotalPages(),
+                    "totalElements", pagina.getTotalElements(),
+                    "number", pagina.getNumber(),
+                    "size", pagina.getSize(),
+                    "first", pagina.isFirst(),
+                    "last", pagina.isLast(),
+                    "numberOfElements", pagina.getNumberOfElements());
+            
+            return Response.ok(response, "Eventos de la agenda recuperados correctamente");
+        } catch (IllegalArgumentException e) {
+            return Response.error(null, "Parámetros de paginación inválidos: " + e.getMessage());
         }
     }
 
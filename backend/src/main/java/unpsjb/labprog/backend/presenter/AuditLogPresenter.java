@@ -11,11 +11,15 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import unpsjb.labprog.backend.Response;
+import unpsjb.labprog.backend.business.service.AuditArchivoService;
+import unpsjb.labprog.backend.business.service.AuditIntegridadService;
+import unpsjb.labprog.backend.business.service.AuditLogPipelineService;
 import unpsjb.labprog.backend.business.service.AuditLogService;
 import unpsjb.labprog.backend.model.AuditLog;
 
@@ -30,6 +34,15 @@ public class AuditLogPresenter {
     @Autowired
     private AuditLogService auditLogService;
 
+    @Autowired
+    private AuditLogPipelineService auditLogPipelineService;
+
+    @Autowired
+    private AuditIntegridadService auditIntegridadService;
+
+    @Autowired
+    private AuditArchivoService auditArchivoService;
+
     /**
      * Obtiene el historial completo de auditoría de un turno específico
      */
@@ -116,10 +129,24 @@ public class AuditLogPresenter {
      * Busca logs que contengan un término específico
      */
     @GetMapping("/search")
-    public ResponseEntity<Object> searchLogs(@RequestParam String searchTerm) {
+    public ResponseEntity<Object> searchLogs(
+            @RequestParam String searchTerm,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
         try {
-            List<AuditLog> logs = auditLogService.searchLogs(searchTerm);
-            return Response.ok(logs, "Búsqueda de logs completada correctamente");
+            Page<AuditLog> resultado = auditLogService.searchLogs(searchTerm, page, size);
+
+            var response = Map.of(
+                    "content", resultado.getContent(),
+                    "totalPages", resultado.getTotalPages(),
+                    "totalElements", resultado.getTotalElements(),
+                    "number", resultado.getNumber(),
+                    "size", resultado.getSize(),
+                    "first", resultado.isFirst(),
+                    "last", resultado.isLast(),
+                    "numberOfElements", resultado.getNumberOfElements());
+
+            return Response.ok(response, "Búsqueda de logs completada correctamente");
         } catch (Exception e) {
             return Response.error(null, "Error al buscar logs: " + e.getMessage());
         }
@@ -140,6 +167,72 @@ public class AuditLogPresenter {
         }
     }
 
+    /**
+     * Contadores de escritura de auditoría (registros, lotes, errores y tiempo promedio)
+     */
+    @GetMapping("/pipeline")
+    public ResponseEntity<Object> getPipelineStatistics() {
+        try {
+            return Response.ok(auditLogPipelineService.getEstadisticas(),
+                    "Estado de la escritura de auditoría recuperado correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar el estado de la escritura de auditoría: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estado de la cadena de hashes de auditoría: checkpoints de sellado y verificación y throughput
+     */
+    @GetMapping("/integridad")
+    public ResponseEntity<Object> getEstadoIntegridad() {
+        try {
+            return Response.ok(auditIntegridadService.getEstado(),
+                    "Estado de integridad de la auditoría recuperado correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar el estado de integridad: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reinicia la verificación de la cadena desde el primer registro
+     */
+    @PostMapping("/integridad/reverificar")
+    public ResponseEntity<Object> reverificarIntegridad() {
+        try {
+            auditIntegridadService.reiniciarVerificacion();
+            return Response.ok(auditIntegridadService.getEstado(), "Verificación completa de la auditoría reiniciada");
+        } catch (Exception e) {
+            return Response.error(null, "Error al reiniciar la verificación: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archivos comprimidos con los meses de auditoría que ya salieron de la tabla
+     */
+    @GetMapping("/archivo")
+    public ResponseEntity<Object> getEstadoArchivo() {
+        try {
+            return Response.ok(auditArchivoService.getEstado(), "Archivo de auditoría recuperado correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar el archivo de auditoría: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archiva ahora los meses cerrados fuera de la ventana en caliente
+     */
+    @PostMapping("/archivo/ejecutar")
+    public ResponseEntity<Object> archivarMesesCerrados() {
+        try {
+            if (!auditArchivoService.archivarMesesCerradosManual()) {
+                return Response.dbError("Archivado de auditoría omitido, la tarea está tomada");
+            }
+            return Response.ok(auditArchivoService.getEstado(), "Archivado de auditoría ejecutado");
+        } catch (Exception e) {
+            return Response.error(null, "Error al archivar la auditoría: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtiene estadísticas de acciones por día desde una fecha específica
      */
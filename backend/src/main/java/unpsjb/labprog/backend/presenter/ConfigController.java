@@ -105,6 +105,15 @@ public class ConfigController {
         return ResponseEntity.ok("Configuraciones restauradas a valores por defecto.");
     }
 
+    /**
+     * Estadísticas de la caché de configuraciones (aciertos, fallos, cargas)
+     */
+    @GetMapping("/cache")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR')")
+    public ResponseEntity<Map<String, Object>> getEstadisticasCache() {
+        return ResponseEntity.ok(configuracionService.getEstadisticasCache());
+    }
+
     @GetMapping("/historial/{clave}")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'OPERADOR')")
     public ResponseEntity<List<AuditLog>> getHistorial(@PathVariable String clave,
@@ -3,8 +3,10 @@ package unpsjb.labprog.backend.presenter;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import unpsjb.labprog.backend.Response;
+import unpsjb.labprog.backend.business.service.EmailSalienteService;
 import unpsjb.labprog.backend.business.service.EmailService;
 
 import java.util.Map;
@@ -21,6 +23,22 @@ public class EmailController {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private EmailSalienteService emailSalienteService;
+
+    /**
+     * Estado de la cola de correos salientes: profundidad, latencias y fallos.
+     */
+    @GetMapping("/saliente/estadisticas")
+    @PreAuthorize("hasRole('ADMINISTRADOR')")
+    public ResponseEntity<Object> getEstadisticasSaliente() {
+        try {
+            return Response.ok(emailSalienteService.getEstadisticas(), "Estadísticas de correos salientes recuperadas correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar estadísticas de correos salientes: " + e.getMessage());
+        }
+    }
+
     /**
      * Endpoint para probar el envío de correo de texto plano.
      */
@@ -1,5 +1,7 @@
 package unpsjb.labprog.backend.presenter;
 
+import static unpsjb.labprog.backend.presenter.Exportaciones.exportacion;
+
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +14,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import unpsjb.labprog.backend.Response;
 import unpsjb.labprog.backend.business.service.ExportService;
@@ -28,12 +31,13 @@ public class ExportPresenter {
     private ExportService exportService;
 
     @PostMapping("/turnos/csv")
-    public ResponseEntity<String> exportTurnosToCSV(@RequestBody TurnoFilterDTO filter) {
+    public ResponseEntity<?> exportTurnosToCSV(@RequestBody TurnoFilterDTO filter) {
         try {
-            String csvContent = exportService.exportToCSV(filter);
+            // Las filas se escriben a medida que se leen de la base (memoria constante)
+            StreamingResponseBody csvContent = exportacion("CSV", salida -> exportService.exportToCSV(filter, salida));
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.TEXT_PLAIN);
+            headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, java.nio.charset.StandardCharsets.UTF_8));
             headers.setContentDispositionFormData("attachment", "turnos_" +
                     java.time.LocalDate.now().toString() + ".csv");
 
@@ -0,0 +1,31 @@
+package unpsjb.labprog.backend.presenter;
+
+import java.io.IOException;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Utilidades compartidas por los endpoints de exportación con respuesta en streaming.
+ */
+final class Exportaciones {
+
+    private Exportaciones() {
+    }
+
+    /**
+     * Los errores durante la escritura ocurren después de que el controlador devolvió la respuesta
+     * (y posiblemente con el estado 200 ya enviado), fuera del try/catch del endpoint: se registran
+     * acá y se relanzan para que la respuesta se corte en lugar de llegar truncada como completa.
+     */
+    static StreamingResponseBody exportacion(String formato, StreamingResponseBody cuerpo) {
+        return salida -> {
+            try {
+                cuerpo.writeTo(salida);
+            } catch (Exception e) {
+                System.err.println("Export " + formato + " - Error durante la escritura: " + e.getMessage());
+                e.printStackTrace();
+                throw new IOException("Exportación " + formato + " interrumpida: " + e.getMessage(), e);
+            }
+        };
+    }
+}
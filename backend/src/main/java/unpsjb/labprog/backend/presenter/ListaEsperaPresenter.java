@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 
 import unpsjb.labprog.backend.Response;
 import unpsjb.labprog.backend.business.service.ListaEsperaService;
+import unpsjb.labprog.backend.business.service.ReasignacionListaEsperaService;
 import unpsjb.labprog.backend.dto.ListaEsperaDTO;
 
 @RestController
@@ -21,6 +22,9 @@ public class ListaEsperaPresenter {
     @Autowired
     private ListaEsperaService service;
 
+    @Autowired
+    private ReasignacionListaEsperaService reasignacionService;
+
     // Listar toda la lista de espera
     @GetMapping
     public ResponseEntity<Object> getAll() {
@@ -115,6 +119,13 @@ public class ListaEsperaPresenter {
         return Response.ok(estadisticas, "Estadísticas recuperadas correctamente");
     }
 
+    // Métricas de la reasignación de turnos liberados (cola, lotes, tiempo hasta reasignar)
+    @GetMapping("/reasignacion/estadisticas")
+    public ResponseEntity<Object> getEstadisticasReasignacion() {
+        return Response.ok(reasignacionService.getEstadisticas(),
+                "Estadísticas de reasignación recuperadas correctamente");
+    }
+
     // Búsqueda avanzada con filtros
     @GetMapping("/buscar")
     public ResponseEntity<Object> buscarConFiltros(
@@ -0,0 +1,70 @@
+package unpsjb.labprog.backend.presenter;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import unpsjb.labprog.backend.Response;
+import unpsjb.labprog.backend.business.service.TareaProgramadaService;
+import unpsjb.labprog.backend.model.TareaProgramadaEjecucion;
+
+/**
+ * Consulta de la coordinación de tareas programadas entre instancias:
+ * leases vigentes e historial de ejecuciones.
+ */
+@RestController
+@RequestMapping("/api/tareas-programadas")
+@PreAuthorize("hasRole('ADMINISTRADOR')")
+public class TareaProgramadaPresenter {
+
+    @Autowired
+    private TareaProgramadaService tareaProgramadaService;
+
+    /**
+     * Leases de cada tarea y su última ejecución
+     */
+    @GetMapping("/estado")
+    public ResponseEntity<Object> getEstado() {
+        try {
+            return Response.ok(tareaProgramadaService.getEstado(), "Estado de tareas programadas recuperado correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar el estado de tareas programadas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Historial paginado de ejecuciones, opcionalmente filtrado por nombre de tarea
+     */
+    @GetMapping("/historial")
+    public ResponseEntity<Object> getHistorial(
+            @RequestParam(required = false) String nombre,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            Page<TareaProgramadaEjecucion> resultado = tareaProgramadaService.getHistorial(nombre,
+                    PageRequest.of(page, size));
+
+            var response = Map.of(
+                    "content", resultado.getContent(),
+                    "totalPages", resultado.getTotalPages(),
+                    "totalElements", resultado.getTotalElements(),
+                    "number", resultado.getNumber(),
+                    "size", resultado.getSize(),
+                    "first", resultado.isFirst(),
+                    "last", resultado.isLast(),
+                    "numberOfElements", resultado.getNumberOfElements());
+
+            return Response.ok(response, "Historial de tareas programadas recuperado correctamente");
+        } catch (Exception e) {
+            return Response.error(null, "Error al recuperar el historial de tareas programadas: " + e.getMessage());
+        }
+    }
+}
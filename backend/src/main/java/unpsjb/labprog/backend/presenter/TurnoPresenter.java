@@ -1,5 +1,7 @@
 package unpsjb.labprog.backend.presenter;
 
+import static unpsjb.labprog.backend.presenter.Exportaciones.exportacion;
+
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +21,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -659,7 +662,7 @@ public class TurnoPresenter {
      * Exportar turnos a CSV
      */
     @GetMapping("/export/csv")
-    public ResponseEntity<String> exportToCSV(
+    public ResponseEntity<?> exportToCSV(
             @RequestParam(required = false) String estado,
             @RequestParam(required = false) String fechaDesde,
             @RequestParam(required = false) String fechaHasta,
@@ -676,10 +679,11 @@ public class TurnoPresenter {
             filter.setStaffMedicoId(staffMedicoId);
             filter.setCentroId(centroId);
 
-            String csvContent = exportService.exportToCSV(filter);
+            // Las filas se escriben a medida que se leen de la base (memoria constante)
+            StreamingResponseBody csvContent = exportacion("CSV", salida -> exportService.exportToCSV(filter, salida));
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.TEXT_PLAIN);
+            headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, java.nio.charset.StandardCharsets.UTF_8));
             headers.setContentDispositionFormData("attachment", "turnos.csv");
 
             return ResponseEntity.ok()
@@ -696,7 +700,7 @@ public class TurnoPresenter {
      * Exportar turnos a PDF
      */
     @GetMapping("/export/pdf")
-    public ResponseEntity<byte[]> exportToPDF(
+    public ResponseEntity<?> exportToPDF(
             @RequestParam(required = false) String estado,
             @RequestParam(required = false) String fechaDesde,
             @RequestParam(required = false) String fechaHasta,
@@ -713,7 +717,8 @@ public class TurnoPresenter {
             filter.setStaffMedicoId(staffMedicoId);
             filter.setCentroId(centroId);
 
-            byte[] pdfContent = exportService.exportToPDF(filter);
+            // Las páginas se escriben a medida que se completan (memoria constante)
+            StreamingResponseBody pdfContent = exportacion("PDF", salida -> exportService.exportToPDF(filter, salida));
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
@@ -725,7 +730,7 @@ public class TurnoPresenter {
 
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Error al exportar PDF: " + e.getMessage()).getBytes());
+                    .body("Error al exportar PDF: " + e.getMessage());
         }
     }
 
@@ -733,24 +738,16 @@ public class TurnoPresenter {
      * Exportar turnos a PDF usando POST con filtros en el cuerpo
      */
     @PostMapping("/export/pdf")
-    public ResponseEntity<byte[]> exportToPDFPost(@RequestBody TurnoFilterDTO filter) {
+    public ResponseEntity<?> exportToPDFPost(@RequestBody TurnoFilterDTO filter) {
 
         try {
             System.out.println("PDF Export POST - Filtros recibidos: " + filter);
 
-            byte[] pdfContent = exportService.exportToPDF(filter);
-
-            if (pdfContent == null || pdfContent.length == 0) {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body("Error: PDF generado está vacío".getBytes());
-            }
+            StreamingResponseBody pdfContent = exportacion("PDF", salida -> exportService.exportToPDF(filter, salida));
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", "turnos.pdf");
-            headers.setContentLength(pdfContent.length);
-
-            System.out.println("PDF Export POST - Generado correctamente, tamaño: " + pdfContent.length + " bytes");
 
             return ResponseEntity.ok()
                     .headers(headers)
@@ -760,14 +757,16 @@ public class TurnoPresenter {
             System.err.println("PDF Export POST - Error: " + e.getMessage());
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Error al exportar PDF: " + e.getMessage()).getBytes());
+                    .body("Error al exportar PDF: " + e.getMessage());
         }
     }
 
     @PostMapping("/ejecutar-recordatorios")
     public ResponseEntity<Object> ejecutarRecordatoriosManual() {
         try {
-            recordatorioService.enviarRecordatoriosPendientes();
+            if (!recordatorioService.ejecutarRecordatoriosManual()) {
+                return Response.dbError("Ejecución de recordatorios omitida, la tarea está tomada");
+            }
             return Response.ok(null, "Recordatorios ejecutados manualmente por RecordatorioService");
         } catch (Exception e) {
             return Response.error(null, "Error al ejecutar recordatorios: " + e.getMessage());
@@ -782,7 +781,9 @@ public class TurnoPresenter {
     @PostMapping("/ejecutar-cancelacion-automatica")
     public ResponseEntity<Object> ejecutarCancelacionAutomaticaManual() {
         try {
-            turnoAutomationService.ejecutarCancelacionManual();
+            if (!turnoAutomationService.ejecutarCancelacionManual()) {
+                return Response.dbError("Cancelación automática omitida, la tarea está tomada");
+            }
             return Response.ok(null, "Cancelación automática de turnos ejecutada manualmente");
         } catch (Exception e) {
             return Response.error(null, "Error al ejecutar cancelación automática: " + e.getMessage());